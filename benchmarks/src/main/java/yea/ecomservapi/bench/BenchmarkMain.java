@@ -0,0 +1,73 @@
+package yea.ecomservapi.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Punto de entrada de benchmarks.jar. Acepta las mismas opciones que JMH y agrega
+ * dos valores por defecto:
+ * <ul>
+ *     <li>el perfilador {@code gc}, para reportar la tasa de asignación
+ *     ({@code gc.alloc.rate} y {@code gc.alloc.rate.norm}, bytes por operación)
+ *     junto al throughput;</li>
+ *     <li>el resultado en JSON en {@code results/<commit>.json}, para comparar
+ *     commits con {@link CompareResults}. Con cambios sin confirmar el nombre lleva
+ *     {@code -dirty}.</li>
+ * </ul>
+ */
+public final class BenchmarkMain {
+
+    private static final Path RESULTS = Path.of("results");
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        if (cli.shouldHelp() || cli.shouldList() || cli.shouldListProfilers() || cli.shouldListResultFormats()) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cli);
+        if (cli.getProfilers().isEmpty()) {
+            options.addProfiler(GCProfiler.class);
+        }
+        if (!cli.getResult().hasValue()) {
+            Files.createDirectories(RESULTS);
+            Path result = RESULTS.resolve(label() + ".json");
+            options.resultFormat(ResultFormatType.JSON).result(result.toString());
+            System.out.println("Resultados en " + result.toAbsolutePath());
+        }
+        new Runner(options.build()).run();
+    }
+
+    private static String label() {
+        try {
+            Process git = new ProcessBuilder("git", "describe", "--always", "--dirty")
+                    .redirectErrorStream(true)
+                    .start();
+            String output = new String(git.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+            if (git.waitFor(10, TimeUnit.SECONDS) && git.exitValue() == 0 && !output.isEmpty()) {
+                return output;
+            }
+        } catch (IOException e) {
+            // Sin git se usa la fecha
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+    }
+}
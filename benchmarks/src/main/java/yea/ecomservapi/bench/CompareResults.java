@@ -0,0 +1,82 @@
+package yea.ecomservapi.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compara dos resultados JSON de JMH (por ejemplo de dos commits): throughput y bytes
+ * asignados por operación de cada benchmark y combinación de parámetros.
+ * <p>
+ * Uso: {@code CompareResults antes.json después.json}
+ */
+public final class CompareResults {
+
+    private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+    private CompareResults() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Uso: CompareResults <antes.json> <después.json>");
+            System.exit(2);
+        }
+        Map<String, JsonNode> before = read(Path.of(args[0]));
+        Map<String, JsonNode> after = read(Path.of(args[1]));
+
+        System.out.printf("%-80s %14s %14s %8s %14s %14s %8s%n",
+                "Benchmark", "antes", "después", "Δ", "B/op antes", "B/op después", "Δ");
+        for (Map.Entry<String, JsonNode> entry : after.entrySet()) {
+            JsonNode previous = before.get(entry.getKey());
+            JsonNode current = entry.getValue();
+            double score = current.path("primaryMetric").path("score").asDouble();
+            double allocation = allocation(current);
+            if (previous == null) {
+                System.out.printf("%-80s %14s %14.3f %8s %14s %14.0f %8s%n",
+                        entry.getKey(), "-", score, "nuevo", "-", allocation, "");
+                continue;
+            }
+            double previousScore = previous.path("primaryMetric").path("score").asDouble();
+            double previousAllocation = allocation(previous);
+            System.out.printf("%-80s %14.3f %14.3f %8s %14.0f %14.0f %8s%n",
+                    entry.getKey(), previousScore, score, change(previousScore, score),
+                    previousAllocation, allocation, change(previousAllocation, allocation));
+        }
+        System.out.println("Unidad: " + after.values().stream()
+                .map(result -> result.path("primaryMetric").path("scoreUnit").asText())
+                .distinct()
+                .toList());
+    }
+
+    // Clave: benchmark y parámetros, por ejemplo "QuoteStoreBenchmark.listAllQuotesWithSummary engine=memory quotes=100"
+    private static Map<String, JsonNode> read(Path file) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file.toFile())) {
+            String benchmark = result.path("benchmark").asText();
+            StringBuilder key = new StringBuilder(benchmark.substring(benchmark.lastIndexOf('.',
+                    benchmark.lastIndexOf('.') - 1) + 1));
+            Map<String, String> params = new TreeMap<>();
+            result.path("params").fields().forEachRemaining(param -> params.put(param.getKey(), param.getValue().asText()));
+            params.forEach((name, value) -> key.append(' ').append(name).append('=').append(value));
+            results.put(key.toString(), result);
+        }
+        return results;
+    }
+
+    private static double allocation(JsonNode result) {
+        return result.path("secondaryMetrics").path(ALLOCATION).path("score").asDouble(Double.NaN);
+    }
+
+    private static String change(double before, double after) {
+        if (before == 0 || Double.isNaN(before) || Double.isNaN(after)) {
+            return "";
+        }
+        return String.format("%+.1f%%", (after - before) * 100 / before);
+    }
+}
@@ -0,0 +1,131 @@
+package yea.ecomservapi.bench;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+import yea.ecomservapi.kernel.service.FileStorageService;
+import yea.ecomservapi.kernel.service.PdfGeneratorService;
+import yea.ecomservapi.kernel.service.RenderAssetRegistry;
+import yea.ecomservapi.kernel.service.StorageSettings;
+import yea.ecomservapi.modules.quoting.domain.Currency;
+import yea.ecomservapi.modules.quoting.dto.CreateQuoteRequest;
+import yea.ecomservapi.modules.quoting.dto.QuoteItemDTO;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Datos y servicios para los benchmarks, armados sin levantar Spring y con la misma
+ * configuración que application.properties. Los datos salen de una semilla fija:
+ * cada corrida mide exactamente lo mismo.
+ */
+final class Fixtures {
+
+    private static final String[] PRODUCTS = {
+            "Válvula de compuerta bridada clase 150, cuerpo de hierro dúctil",
+            "Tubería PVC SAP clase 10 de 4 pulgadas x 5 m",
+            "Codo de acero al carbono soldable 90 grados SCH 40",
+            "Bomba centrífuga monoblock 5 HP trifásica 220/380 V",
+            "Manómetro de glicerina 0-160 psi dial 4 pulgadas",
+            "Cable NYY 3-1x35 mm2 unipolar",
+            "Empaquetadura de grafito flexible 1/2 pulgada",
+            "Brida slip-on ANSI B16.5 de 6 pulgadas",
+            "Tablero de distribución metálico 24 polos",
+            "Rodamiento rígido de bolas 6205-2RS"
+    };
+
+    private static final String[] UNITS = {"UND", "UND", "UND", "M", "KG", "JGO"};
+
+    private static final String[] SELLERS = {"Carlos Rojas", "María Quispe", "Jorge Salazar", "Lucía Paredes"};
+
+    private static final int CLIENTS = 200;
+
+    private Fixtures() {
+    }
+
+    static CreateQuoteRequest request(int items, long seed) {
+        Random random = new Random(seed);
+        List<QuoteItemDTO> lines = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            int product = random.nextInt(PRODUCTS.length);
+            lines.add(QuoteItemDTO.builder()
+                    .code(String.format("PRD-%03d-%02d", product, random.nextInt(40)))
+                    .description(PRODUCTS[product])
+                    .unitMeasure(UNITS[random.nextInt(UNITS.length)])
+                    .quantity(BigDecimal.valueOf(1 + random.nextInt(50)))
+                    .unitPrice(BigDecimal.valueOf(500 + random.nextInt(250_000), 2))
+                    .build());
+        }
+        int client = random.nextInt(CLIENTS);
+        LocalDate date = LocalDate.of(2023, 1, 2).plusDays(random.nextInt(730));
+        return CreateQuoteRequest.builder()
+                .documentDate(date)
+                .validUntil(date.plusDays(4))
+                .currency(random.nextInt(4) == 0 ? Currency.USD : Currency.PEN)
+                .clientName("Cliente " + client + " S.A.C.")
+                .clientRuc(String.valueOf(20_100_000_000L + client))
+                .clientAddress("Av. Industrial " + (100 + client) + " - Lima")
+                .clientEmail("compras" + client + "@example.com")
+                .vendedor(SELLERS[random.nextInt(SELLERS.length)])
+                .atte("Área de compras")
+                .items(lines)
+                .notes("Precios incluyen flete a Lima metropolitana")
+                .build();
+    }
+
+    static PdfGeneratorService pdfGenerator() {
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode("HTML");
+        resolver.setCharacterEncoding("UTF-8");
+        SpringTemplateEngine engine = new SpringTemplateEngine();
+        engine.setTemplateResolver(resolver);
+
+        RenderAssetRegistry assets = new RenderAssetRegistry();
+        ReflectionTestUtils.setField(assets, "jpegQuality", 0.92f);
+        assets.load();
+
+        // Sin init(): se genera en el hilo del benchmark, sin la cola del pool
+        PdfGeneratorService generator = new PdfGeneratorService(engine, assets, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(generator, "maxItems", 5000);
+        ReflectionTestUtils.setField(generator, "largeThresholdItems", 300);
+        ReflectionTestUtils.setField(generator, "chunkItems", 120);
+        return generator;
+    }
+
+    static FileStorageService storage(Path folder, String engine) {
+        FileStorageService storage = new FileStorageService(StorageSettings.builder()
+                .folder(folder.toString())
+                .sequenceBlock(20)
+                .layout("sharded")
+                .engine(engine)
+                .segmentSizeMb(256)
+                .jsonCompression("none")
+                .pdfCompression("none")
+                .archiveMaxAgeDays(365)
+                .build(), new SimpleMeterRegistry());
+        storage.init();
+        return storage;
+    }
+
+    static void deleteRecursively(Path folder) throws IOException {
+        if (!Files.exists(folder)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(folder)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
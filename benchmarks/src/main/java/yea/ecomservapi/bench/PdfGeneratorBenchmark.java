@@ -0,0 +1,41 @@
+package yea.ecomservapi.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import yea.ecomservapi.kernel.service.PdfGeneratorService;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+import yea.ecomservapi.modules.quoting.service.QuoteService;
+
+/**
+ * Generación del PDF completo (plantilla, maquetación y PDFBox). Con 1.000 ítems se
+ * usa la generación por partes, igual que en producción.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class PdfGeneratorBenchmark {
+
+    @Param({"1", "50", "1000"})
+    int items;
+
+    private PdfGeneratorService generator;
+    private QuoteDTO quote;
+
+    @Setup
+    public void setUp() {
+        generator = Fixtures.pdfGenerator();
+        quote = new QuoteService().buildQuoteDTO(Fixtures.request(items, 42), "CES-00001");
+    }
+
+    @Benchmark
+    public byte[] generateQuotePdf() {
+        return generator.generateQuotePdf(quote);
+    }
+}
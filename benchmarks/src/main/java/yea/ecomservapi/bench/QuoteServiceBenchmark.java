@@ -0,0 +1,39 @@
+package yea.ecomservapi.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import yea.ecomservapi.modules.quoting.dto.CreateQuoteRequest;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+import yea.ecomservapi.modules.quoting.service.QuoteService;
+
+/**
+ * Cálculo de totales al armar la cotización.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class QuoteServiceBenchmark {
+
+    @Param({"1", "50", "1000"})
+    int items;
+
+    private final QuoteService quoteService = new QuoteService();
+    private CreateQuoteRequest request;
+
+    @Setup
+    public void setUp() {
+        request = Fixtures.request(items, 42);
+    }
+
+    @Benchmark
+    public QuoteDTO buildQuoteDTO() {
+        return quoteService.buildQuoteDTO(request, "CES-00001");
+    }
+}
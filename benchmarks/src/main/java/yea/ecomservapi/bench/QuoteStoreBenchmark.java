@@ -0,0 +1,102 @@
+package yea.ecomservapi.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import yea.ecomservapi.kernel.service.FileStorageService;
+import yea.ecomservapi.modules.quoting.dto.CreateQuoteRequest;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+import yea.ecomservapi.modules.quoting.service.QuoteService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Listado de cotizaciones con resumen, lectura de PDF y asignación de números sobre
+ * un almacenamiento con {@code quotes} cotizaciones guardadas.
+ * <p>
+ * Por defecto se llena con el motor {@code memory}: el listado sale del índice en
+ * memoria igual con cualquier motor y así 90.000 cotizaciones se guardan en segundos.
+ * Con {@code -p engine=files} o {@code -p engine=segments} se mide sobre disco (la
+ * carga tarda bastante más); la lectura de PDF es la que cambia entre motores. El
+ * almacén se escribe en el mismo proceso, así que mide lecturas con la caché de
+ * páginas caliente.
+ * <p>
+ * Los números CES-xxxxx tienen cinco dígitos y el almacenamiento no reconoce los de
+ * seis, así que {@code quotes} no puede pasar de {@value #MAX_QUOTES}.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class QuoteStoreBenchmark {
+
+    @Param({"100", "10000", "90000"})
+    int quotes;
+
+    @Param({"memory"})
+    String engine;
+
+    private static final int MAX_QUOTES = 99_999;
+
+    // PDF de relleno: lo medido no depende del contenido del PDF
+    private static final byte[] PDF = new byte[16 * 1024];
+
+    private Path folder;
+    private FileStorageService storage;
+
+    @Setup
+    public void setUp() throws IOException {
+        if (quotes > MAX_QUOTES) {
+            throw new IllegalArgumentException("quotes no puede pasar de " + MAX_QUOTES + ": " + quotes);
+        }
+        folder = Files.createTempDirectory("quote-store-bench");
+        storage = Fixtures.storage(folder, engine);
+        QuoteService quoteService = new QuoteService();
+        for (int i = 0; i < quotes; i++) {
+            // 1 a 20 ítems, como la mayoría de las cotizaciones reales
+            CreateQuoteRequest request = Fixtures.request(1 + i % 20, i);
+            QuoteDTO quote = quoteService.buildQuoteDTO(request, storage.generateNextDocumentNumber());
+            storage.saveQuote(PDF, request, quote);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        storage.shutdown();
+        Fixtures.deleteRecursively(folder);
+    }
+
+    @Benchmark
+    public List<FileStorageService.QuoteSummary> listAllQuotesWithSummary() {
+        return storage.listAllQuotesWithSummary();
+    }
+
+    @Benchmark
+    public Optional<byte[]> getPdf() {
+        return storage.getPdf(String.format("CES-%05d", 1 + ThreadLocalRandom.current().nextInt(quotes)));
+    }
+
+    @Benchmark
+    public String generateNextDocumentNumber() {
+        return storage.generateNextDocumentNumber();
+    }
+
+    // Varios /generate a la vez compiten por el mismo contador
+    @Benchmark
+    @Threads(4)
+    public String generateNextDocumentNumberContended() {
+        return storage.generateNextDocumentNumber();
+    }
+}
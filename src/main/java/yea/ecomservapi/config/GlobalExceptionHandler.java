@@ -1,6 +1,7 @@
 package yea.ecomservapi.config;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.authentication.BadCredentialsException;
@@ -8,6 +9,8 @@ import org.springframework.security.core.AuthenticationException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import yea.ecomservapi.kernel.exception.RenderBusyException;
+import yea.ecomservapi.kernel.exception.StorageBusyException;
 
 import java.time.LocalDateTime;
 import java.util.HashMap;
@@ -45,6 +48,24 @@ public class GlobalExceptionHandler {
         return ResponseEntity.badRequest().body(response);
     }
 
+    @ExceptionHandler(StorageBusyException.class)
+    public ResponseEntity<Map<String, Object>> handleStorageBusy(StorageBusyException ex) {
+        log.warn("Almacenamiento saturado: {}", ex.getMessage());
+        ResponseEntity<Map<String, Object>> response = buildErrorResponse(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage());
+        return ResponseEntity.status(response.getStatusCode())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(response.getBody());
+    }
+
+    @ExceptionHandler(RenderBusyException.class)
+    public ResponseEntity<Map<String, Object>> handleRenderBusy(RenderBusyException ex) {
+        log.warn("Generación de PDF saturada: {}", ex.getMessage());
+        ResponseEntity<Map<String, Object>> response = buildErrorResponse(HttpStatus.TOO_MANY_REQUESTS, ex.getMessage());
+        return ResponseEntity.status(response.getStatusCode())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(response.getBody());
+    }
+
     @ExceptionHandler(RuntimeException.class)
     public ResponseEntity<Map<String, Object>> handleRuntimeException(RuntimeException ex) {
         log.error("Error en la aplicación: {}", ex.getMessage());
@@ -1,8 +1,10 @@
 package yea.ecomservapi.config;
 
+import jakarta.servlet.DispatcherType;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationProvider;
@@ -11,6 +13,8 @@ import org.springframework.security.config.annotation.web.configuration.EnableWe
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.util.matcher.AndRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
@@ -30,6 +34,10 @@ public class SecurityConfig {
     @Value("${app.cors.allowed-origins}")
     private String allowedOrigins;
 
+    // Actuator se sirve en un puerto propio que solo se publica hacia la red interna
+    @Value("${management.server.port:-1}")
+    private int managementPort;
+
     @Bean
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
         log.info("Configurando SecurityFilterChain...");
@@ -38,6 +46,9 @@ public class SecurityConfig {
                 .cors(cors -> cors.configurationSource(corsConfigurationSource()))
                 .csrf(csrf -> csrf.disable())
                 .authorizeHttpRequests(auth -> auth
+                        // Segundo despacho de respuestas asíncronas (SSE, streaming): el request
+                        // original ya pasó la autenticación y el token no se vuelve a leer
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         // Permitir preflight requests
                         .requestMatchers(org.springframework.http.HttpMethod.OPTIONS, "/**").permitAll()
                         // Rutas públicas - auth
@@ -46,6 +57,8 @@ public class SecurityConfig {
                         .requestMatchers("/api/auth/register").permitAll()
                         // Health check y error
                         .requestMatchers("/health", "/error").permitAll()
+                        // Métricas para Prometheus: solo por el puerto de administración
+                        .requestMatchers(prometheusOnManagementPort()).permitAll()
                         .requestMatchers("/").permitAll()
                         // Swagger (solo dev)
                         .requestMatchers("/swagger-ui/**", "/swagger-ui.html").permitAll()
@@ -61,6 +74,12 @@ public class SecurityConfig {
         return http.build();
     }
 
+    // Por el puerto público Actuator no responde, y si se configurara ahí pediría token
+    private RequestMatcher prometheusOnManagementPort() {
+        RequestMatcher managementPortOnly = request -> managementPort > 0 && request.getLocalPort() == managementPort;
+        return new AndRequestMatcher(managementPortOnly, EndpointRequest.to("prometheus"));
+    }
+
     @Bean
     public CorsConfigurationSource corsConfigurationSource() {
         log.info("Configurando CORS con origenes permitidos: {}", allowedOrigins);
@@ -0,0 +1,35 @@
+package yea.ecomservapi.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import yea.ecomservapi.kernel.service.StorageSettings;
+
+@Configuration
+public class StorageConfig {
+
+    @Bean
+    public StorageSettings storageSettings(
+            @Value("${app.storage.cotizaciones:cotizaciones}") String folder,
+            @Value("${app.storage.watch-enabled:true}") boolean watchEnabled,
+            @Value("${app.storage.sequence-block:20}") int sequenceBlock,
+            // flat: todos los archivos en la raíz; sharded: subdirectorios por rango de números
+            @Value("${app.storage.layout:sharded}") String layout,
+            // files: un archivo por blob; segments: segmentos grandes leídos con mmap; memory: sin persistencia
+            @Value("${app.storage.engine:files}") String engine,
+            @Value("${app.storage.segment-size-mb:256}") long segmentSizeMb,
+            // Compresión por tipo de blob: none o gzip (opcional, cambia el formato en disco)
+            @Value("${app.storage.compression.json:none}") String jsonCompression,
+            @Value("${app.storage.compression.pdf:none}") String pdfCompression,
+            // Escritura diferida: /generate responde sin esperar a que la cotización llegue a disco
+            @Value("${app.storage.write-behind.enabled:false}") boolean writeBehindEnabled,
+            @Value("${app.storage.write-behind.capacity:256}") int writeBehindCapacity,
+            @Value("${app.storage.write-behind.writers:2}") int writeBehindWriters,
+            // Archivo por meses: las cotizaciones más antiguas que max-age-days pasan a paquetes comprimidos
+            @Value("${app.storage.archive.enabled:false}") boolean archiveEnabled,
+            @Value("${app.storage.archive.max-age-days:365}") int archiveMaxAgeDays) {
+        return new StorageSettings(folder, watchEnabled, sequenceBlock, layout, engine, segmentSizeMb,
+                jsonCompression, pdfCompression, writeBehindEnabled, writeBehindCapacity, writeBehindWriters,
+                archiveEnabled, archiveMaxAgeDays);
+    }
+}
@@ -1,21 +1,31 @@
 package yea.ecomservapi.controller;
 
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
+import yea.ecomservapi.kernel.service.RenderWarmup;
 
 import java.time.LocalDateTime;
 import java.util.Map;
 
 @RestController
+@RequiredArgsConstructor
 public class HealthController {
 
+    private final RenderWarmup renderWarmup;
+
     @GetMapping("/health")
     public ResponseEntity<Map<String, Object>> health() {
-        return ResponseEntity.ok(Map.of(
-                "status", "UP",
+        // Mientras se calienta la generación de PDF la instancia no recibe tráfico
+        RenderWarmup.WarmupStatus warmup = renderWarmup.status();
+        boolean ready = warmup.ready();
+        return ResponseEntity.status(ready ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE).body(Map.of(
+                "status", ready ? "UP" : "WARMING_UP",
                 "service", "ecomserv-api",
-                "timestamp", LocalDateTime.now().toString()
+                "timestamp", LocalDateTime.now().toString(),
+                "warmup", warmup
         ));
     }
 
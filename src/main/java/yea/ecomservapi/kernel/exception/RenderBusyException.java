@@ -0,0 +1,18 @@
+package yea.ecomservapi.kernel.exception;
+
+import lombok.Getter;
+
+/**
+ * No hay capacidad para generar otro PDF dentro del plazo configurado. Se responde
+ * con 429 y {@code Retry-After} para que el resto de la API siga atendiendo.
+ */
+@Getter
+public class RenderBusyException extends RuntimeException {
+
+    private final int retryAfterSeconds;
+
+    public RenderBusyException(String message, int retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,13 @@
+package yea.ecomservapi.kernel.exception;
+
+/**
+ * El PDF no se generó dentro del plazo (contando la espera en cola). Se responde igual
+ * que {@link RenderBusyException}, pero reintentar con el mismo plazo vuelve a vencer:
+ * los trabajos en segundo plano solo reintentan cuando la cola rechazó el pedido.
+ */
+public class RenderDeadlineException extends RenderBusyException {
+
+    public RenderDeadlineException(String message, int retryAfterSeconds) {
+        super(message, retryAfterSeconds);
+    }
+}
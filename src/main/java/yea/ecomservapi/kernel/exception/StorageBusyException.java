@@ -0,0 +1,18 @@
+package yea.ecomservapi.kernel.exception;
+
+import lombok.Getter;
+
+/**
+ * El almacenamiento no puede aceptar más escrituras por ahora. Se responde con 503 y
+ * {@code Retry-After} para que el cliente reintente en lugar de esperar.
+ */
+@Getter
+public class StorageBusyException extends RuntimeException {
+
+    private final int retryAfterSeconds;
+
+    public StorageBusyException(String message, int retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
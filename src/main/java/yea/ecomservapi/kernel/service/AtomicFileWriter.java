@@ -0,0 +1,436 @@
+package yea.ecomservapi.kernel.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Escribe archivos de forma atómica y durable: el contenido va a un temporal en el
+ * mismo directorio, se sincroniza con fsync y recién entonces se renombra al nombre
+ * final. Un lector (o un reinicio tras una caída) ve el archivo anterior o el nuevo
+ * completo, nunca uno truncado.
+ * <p>
+ * El fsync de los datos lo hace cada hilo sobre su propio temporal, en paralelo. Los
+ * renombres y el fsync del directorio (que los hace persistentes) se confirman en
+ * grupo: mientras un hilo sincroniza los directorios, las demás escrituras se
+ * encolan y el siguiente hilo en tomar el turno las confirma todas juntas con un
+ * solo fsync por directorio.
+ * <p>
+ * Una confirmación de varios archivos (JSON, resumen y PDF de una cotización) no es
+ * atómica por sí sola: una caída entre dos renombres dejaría el JSON nuevo junto al
+ * PDF anterior. Antes de renombrar se escribe un diario con los pares temporal →
+ * destino del grupo; al arrancar, {@link #recover} completa los renombres pendientes.
+ * Si en cambio falla un renombre con la aplicación en marcha, los ya hechos se
+ * deshacen en el momento (ver {@link #renameAll}).
+ */
+@Slf4j
+class AtomicFileWriter {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String JOURNAL_PREFIX = ".commit-";
+    private static final String JOURNAL_SUFFIX = ".journal";
+    // Última línea del diario: sin ella se cortó al escribirse y no se renombró nada
+    private static final String JOURNAL_END = "COMMIT";
+
+    /**
+     * Temporal ya escrito y sincronizado, pendiente de renombrarse a su destino.
+     */
+    record StagedFile(Path temp, Path target) {
+    }
+
+    private static final class PendingCommit {
+        private final List<StagedFile> files;
+        private boolean done;
+        private IOException error;
+
+        private PendingCommit(List<StagedFile> files) {
+            this.files = files;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<PendingCommit> queue = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock commitLock = new ReentrantLock();
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong groups = new AtomicLong();
+
+    private final DirectorySync directorySync = new DirectorySync();
+
+    /**
+     * Los temporales empiezan con punto, así el índice y el watcher los ignoran.
+     */
+    static boolean isTempFile(String fileName) {
+        return fileName.startsWith(".") && fileName.endsWith(TEMP_SUFFIX);
+    }
+
+    static boolean isJournalFile(String fileName) {
+        return fileName.startsWith(JOURNAL_PREFIX) && fileName.endsWith(JOURNAL_SUFFIX);
+    }
+
+    /**
+     * Completa una confirmación interrumpida por una caída: renombra a su destino los
+     * temporales del diario que aún existen y elimina el diario. Un diario incompleto
+     * se descarta sin tocar nada. Debe ejecutarse antes de borrar los temporales
+     * huérfanos.
+     *
+     * @return cantidad de archivos renombrados
+     */
+    int recover(Path journal) throws IOException {
+        Path directory = journal.getParent();
+        List<String> lines = Files.readAllLines(journal, StandardCharsets.UTF_8);
+        int recovered = 0;
+        if (!lines.isEmpty() && lines.get(lines.size() - 1).equals(JOURNAL_END)) {
+            for (String line : lines.subList(0, lines.size() - 1)) {
+                int separator = line.indexOf('\t');
+                if (separator < 0) {
+                    continue;
+                }
+                Path temp = directory.resolve(line.substring(0, separator)).normalize();
+                Path target = directory.resolve(line.substring(separator + 1)).normalize();
+                if (Files.exists(temp)) {
+                    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                    recovered++;
+                }
+            }
+            syncDirectory(directory);
+        }
+        Files.delete(journal);
+        return recovered;
+    }
+
+    /**
+     * Temporal abierto para escribirse por partes, por ejemplo un PDF mientras se
+     * genera. {@link #finish()} lo sincroniza y lo deja listo para {@link #commit}.
+     */
+    static final class StagingStream extends OutputStream {
+
+        private static final int BUFFER_SIZE = 64 * 1024;
+
+        private final Path temp;
+        private final Path target;
+        private final FileChannel channel;
+        private final OutputStream out;
+        private boolean closed;
+
+        private StagingStream(Path temp, Path target) throws IOException {
+            this.temp = temp;
+            this.target = target;
+            this.channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            this.out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        /**
+         * Cierra el temporal sin sincronizarlo; para confirmarlo se usa {@link #finish()}.
+         */
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                channel.close();
+            }
+        }
+
+        StagedFile finish() throws IOException {
+            try {
+                out.flush();
+                channel.force(true);
+                close();
+            } catch (IOException e) {
+                discard();
+                throw e;
+            }
+            return new StagedFile(temp, target);
+        }
+
+        void discard() {
+            try {
+                close();
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                log.warn("No se pudo eliminar el temporal {}: {}", temp, e.getMessage());
+            }
+        }
+    }
+
+    StagingStream open(Path target) throws IOException {
+        return new StagingStream(tempFor(target), target);
+    }
+
+    StagedFile stage(Path target, byte[] content) throws IOException {
+        return stage(target, content, tempFor(target));
+    }
+
+    private static StagedFile stage(Path target, byte[] content, Path temp) throws IOException {
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return new StagedFile(temp, target);
+    }
+
+    /**
+     * Renombra los archivos a su destino en el orden recibido y espera a que el
+     * renombre sea durable. Si falla, los temporales se eliminan.
+     */
+    void commit(List<StagedFile> files) throws IOException {
+        PendingCommit pending = new PendingCommit(files);
+        queue.add(pending);
+        commitLock.lock();
+        try {
+            // Otro hilo pudo confirmar esta escritura como parte de su grupo
+            if (!pending.done) {
+                commitGroup();
+            }
+        } finally {
+            commitLock.unlock();
+        }
+        if (pending.error != null) {
+            throw pending.error;
+        }
+    }
+
+    void discard(List<StagedFile> files) {
+        for (StagedFile file : files) {
+            try {
+                Files.deleteIfExists(file.temp());
+            } catch (IOException e) {
+                log.warn("No se pudo eliminar el temporal {}: {}", file.temp(), e.getMessage());
+            }
+        }
+    }
+
+    private static Path tempFor(Path target) {
+        return target.resolveSibling("." + target.getFileName() + "." + UUID.randomUUID() + TEMP_SUFFIX);
+    }
+
+    long commits() {
+        return commits.get();
+    }
+
+    long groups() {
+        return groups.get();
+    }
+
+    private void commitGroup() {
+        List<PendingCommit> group = new ArrayList<>();
+        for (PendingCommit next = queue.poll(); next != null; next = queue.poll()) {
+            group.add(next);
+        }
+        List<Path> journals = writeJournals(group);
+        Set<Path> directories = new LinkedHashSet<>();
+        for (PendingCommit pending : group) {
+            if (pending.error != null) {
+                continue;
+            }
+            try {
+                renameAll(pending.files, directories);
+            } catch (IOException e) {
+                pending.error = e;
+                discard(pending.files);
+            }
+        }
+        for (Path directory : directories) {
+            syncDirectory(directory);
+        }
+        // Los renombres ya son durables: el diario no hace falta
+        for (Path journal : journals) {
+            try {
+                Files.deleteIfExists(journal);
+            } catch (IOException e) {
+                log.warn("No se pudo eliminar el diario {}: {}", journal, e.getMessage());
+            }
+        }
+        for (PendingCommit pending : group) {
+            pending.done = true;
+        }
+        commits.addAndGet(group.size());
+        groups.incrementAndGet();
+    }
+
+    /**
+     * Renombra los archivos de una confirmación. Si uno falla, los ya renombrados
+     * vuelven a su versión anterior (o se eliminan si no la había), así no queda el
+     * JSON nuevo junto al PDF anterior hasta el próximo arranque. En confirmaciones de
+     * varios archivos la versión anterior se conserva antes con un enlace duro, que
+     * no copia datos. Sin enlaces duros se intenta completar el resto una vez más.
+     */
+    private void renameAll(List<StagedFile> files, Set<Path> directories) throws IOException {
+        List<Path> backups = files.size() > 1 ? backUp(files) : List.of();
+        int renamed = 0;
+        try {
+            for (StagedFile file : files) {
+                rename(file, directories);
+                renamed++;
+            }
+        } catch (IOException e) {
+            if (renamed > 0) {
+                if (backups != null) {
+                    rollBack(files.subList(0, renamed), backups);
+                } else {
+                    rollForward(files.subList(renamed, files.size()), directories, e);
+                    return;
+                }
+            }
+            throw e;
+        } finally {
+            deleteBackups(backups);
+        }
+    }
+
+    private static void rename(StagedFile file, Set<Path> directories) throws IOException {
+        Files.move(file.temp(), file.target(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        directories.add(file.target().getParent());
+    }
+
+    /**
+     * Enlace a la versión actual de cada destino, null donde no había. Devuelve null
+     * si el sistema de archivos no admite enlaces duros.
+     */
+    private static List<Path> backUp(List<StagedFile> files) {
+        List<Path> backups = new ArrayList<>(files.size());
+        try {
+            for (StagedFile file : files) {
+                Path backup = null;
+                if (Files.isRegularFile(file.target())) {
+                    backup = tempFor(file.target());
+                    Files.createLink(backup, file.target());
+                }
+                backups.add(backup);
+            }
+            return backups;
+        } catch (IOException | UnsupportedOperationException e) {
+            log.debug("Sin copia de respaldo para {}: {}", files.get(0).target(), e.getMessage());
+            deleteBackups(backups);
+            return null;
+        }
+    }
+
+    private static void rollBack(List<StagedFile> renamed, List<Path> backups) {
+        for (int i = renamed.size() - 1; i >= 0; i--) {
+            Path target = renamed.get(i).target();
+            Path backup = backups.get(i);
+            try {
+                if (backup != null) {
+                    Files.move(backup, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } else {
+                    Files.deleteIfExists(target);
+                }
+            } catch (IOException e) {
+                log.error("No se pudo deshacer el renombre de {}: {}", target, e.getMessage());
+            }
+        }
+    }
+
+    private static void rollForward(List<StagedFile> remaining, Set<Path> directories, IOException cause)
+            throws IOException {
+        try {
+            for (StagedFile file : remaining) {
+                rename(file, directories);
+            }
+        } catch (IOException e) {
+            e.addSuppressed(cause);
+            log.error("Confirmación incompleta en {}: {}", remaining.get(0).target().getParent(), e.getMessage());
+            throw e;
+        }
+    }
+
+    private static void deleteBackups(List<Path> backups) {
+        if (backups == null) {
+            return;
+        }
+        for (Path backup : backups) {
+            if (backup == null) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(backup);
+            } catch (IOException e) {
+                log.warn("No se pudo eliminar la copia {}: {}", backup, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Un diario por directorio con las confirmaciones de varios archivos del grupo,
+     * sincronizado (archivo y directorio) antes del primer renombre. Si no se puede
+     * escribir, esas confirmaciones fallan sin renombrar nada.
+     */
+    private List<Path> writeJournals(List<PendingCommit> group) {
+        Map<Path, List<PendingCommit>> byDirectory = new LinkedHashMap<>();
+        for (PendingCommit pending : group) {
+            if (pending.files.size() > 1) {
+                byDirectory.computeIfAbsent(pending.files.get(0).target().getParent(), key -> new ArrayList<>())
+                        .add(pending);
+            }
+        }
+        List<Path> journals = new ArrayList<>(byDirectory.size());
+        for (Map.Entry<Path, List<PendingCommit>> entry : byDirectory.entrySet()) {
+            Path directory = entry.getKey();
+            StringBuilder content = new StringBuilder();
+            for (PendingCommit pending : entry.getValue()) {
+                for (StagedFile file : pending.files) {
+                    content.append(directory.relativize(file.temp())).append('\t')
+                            .append(directory.relativize(file.target())).append('\n');
+                }
+            }
+            content.append(JOURNAL_END).append('\n');
+            Path journal = directory.resolve(JOURNAL_PREFIX + UUID.randomUUID() + JOURNAL_SUFFIX);
+            try {
+                stage(journal, content.toString().getBytes(StandardCharsets.UTF_8), journal);
+                syncDirectory(directory);
+                journals.add(journal);
+            } catch (IOException e) {
+                for (PendingCommit pending : entry.getValue()) {
+                    pending.error = e;
+                    discard(pending.files);
+                }
+            }
+        }
+        return journals;
+    }
+
+    // En Linux el renombre solo es durable tras sincronizar el directorio
+    private void syncDirectory(Path directory) {
+        directorySync.sync(directory);
+    }
+}
@@ -0,0 +1,63 @@
+package yea.ecomservapi.kernel.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresión aplicada a un blob al guardarlo. Se usa gzip porque el mismo contenido
+ * almacenado puede enviarse tal cual a los clientes que aceptan
+ * {@code Content-Encoding: gzip}.
+ */
+enum BlobCompression {
+    NONE(""),
+    GZIP(".gz");
+
+    private final String suffix;
+
+    BlobCompression(String suffix) {
+        this.suffix = suffix;
+    }
+
+    /**
+     * Sufijo que se agrega a la extensión del archivo ({@code .json.gz}).
+     */
+    String suffix() {
+        return suffix;
+    }
+
+    static BlobCompression fromProperty(String value) {
+        return "gzip".equalsIgnoreCase(value) ? GZIP : NONE;
+    }
+
+    byte[] encode(byte[] data) throws IOException {
+        if (this == NONE) {
+            return data;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Devuelve el contenido original. Se reconoce gzip por su número mágico, así que
+     * los blobs guardados sin comprimir se leen sin cambios.
+     */
+    static byte[] decode(byte[] stored) throws IOException {
+        if (!isGzip(stored)) {
+            return stored;
+        }
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(stored))) {
+            return in.readAllBytes();
+        }
+    }
+
+    static boolean isGzip(byte[] head) {
+        return head.length >= 2 && (head[0] & 0xff) == 0x1f && (head[1] & 0xff) == 0x8b;
+    }
+}
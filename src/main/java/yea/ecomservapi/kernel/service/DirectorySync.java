@@ -0,0 +1,56 @@
+package yea.ecomservapi.kernel.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Sincroniza un directorio con fsync: en Linux un rename o un archivo nuevo solo es
+ * durable después de eso.
+ * <p>
+ * Si la plataforma no permite abrir un directorio como canal (Windows responde
+ * {@link AccessDeniedException}, algunos sistemas de archivos no implementan canales)
+ * la sincronización se desactiva con un único aviso: ahí el rename ya es durable o no
+ * hay forma de forzarlo. Cualquier otro error se considera transitorio, se avisa y
+ * la próxima sincronización lo vuelve a intentar.
+ */
+@Slf4j
+final class DirectorySync {
+
+    private final AtomicBoolean supported = new AtomicBoolean(true);
+
+    /**
+     * @return {@code false} si la sincronización falló; {@code true} si se hizo o la
+     * plataforma no la admite
+     */
+    boolean sync(Path directory) {
+        if (!supported.get()) {
+            return true;
+        }
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (AccessDeniedException | UnsupportedOperationException e) {
+            if (supported.compareAndSet(true, false)) {
+                log.warn("El sistema de archivos no permite sincronizar directorios, se desactiva: {}",
+                        e.getMessage());
+            }
+            return true;
+        } catch (IOException e) {
+            log.warn("No se pudo abrir {} para sincronizarlo: {}", directory, e.getMessage());
+            return false;
+        }
+        try (channel) {
+            channel.force(true);
+            return true;
+        } catch (IOException e) {
+            log.warn("No se pudo sincronizar el directorio {}: {}", directory, e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package yea.ecomservapi.kernel.service;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Locks por documento, repartidos en franjas fijas. Las escrituras de un documento,
+ * la comprobación y el borrado al archivarlo y la actualización del índice por el
+ * WatchService no se intercalan.
+ */
+final class DocumentLocks {
+
+    private static final int STRIPES = 64;
+
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    DocumentLocks() {
+        Arrays.setAll(locks, i -> new ReentrantLock());
+    }
+
+    ReentrantLock of(String documentNumber) {
+        return locks[Math.floorMod(documentNumber.hashCode(), locks.length)];
+    }
+}
@@ -0,0 +1,138 @@
+package yea.ecomservapi.kernel.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Asigna números de documento CES-xxxxx desde un contador atómico.
+ * <p>
+ * El contador se inicializa una sola vez con el mayor número existente y con la
+ * marca de agua persistida en disco. Para no escribir en disco en cada asignación
+ * se reservan bloques: la marca persistida siempre es mayor o igual al último
+ * número entregado, así que un reinicio nunca repite un número (a lo sumo deja
+ * un hueco del tamaño del bloque).
+ */
+@Slf4j
+class DocumentNumberAllocator {
+
+    private static final Pattern DOCUMENT_NUMBER_PATTERN = Pattern.compile("CES-(\\d{5})");
+
+    private final Path highWaterMarkFile;
+    private final int blockSize;
+    private final AtomicInteger lastAssigned;
+
+    // Mayor número cubierto por la marca persistida
+    private volatile int reserved;
+
+    DocumentNumberAllocator(Path highWaterMarkFile, int highestExisting, int blockSize) {
+        this.highWaterMarkFile = highWaterMarkFile;
+        this.blockSize = Math.max(1, blockSize);
+        this.reserved = readHighWaterMark();
+        this.lastAssigned = new AtomicInteger(Math.max(highestExisting, reserved));
+        log.info("Numeración de documentos inicializada en {} (reservado hasta {})", lastAssigned.get(), reserved);
+    }
+
+    /**
+     * Entrega el siguiente número. Solo se sincroniza cuando el bloque reservado
+     * se agota; el resto de llamadas se resuelven con un incremento atómico.
+     */
+    String next() {
+        int number = lastAssigned.incrementAndGet();
+        if (number > reserved) {
+            reserveUpTo(number);
+        }
+        return format(number);
+    }
+
+    /**
+     * Número que se entregaría a continuación, sin consumirlo.
+     */
+    String peek() {
+        return format(lastAssigned.get() + 1);
+    }
+
+    /**
+     * Registra un número asignado fuera del contador (por ejemplo, enviado por el
+     * cliente o creado por otro proceso) para que no vuelva a entregarse.
+     */
+    void observe(int number) {
+        lastAssigned.accumulateAndGet(number, Math::max);
+        if (number > reserved) {
+            reserveUpTo(number);
+        }
+    }
+
+    /**
+     * Número de un documento CES-xxxxx; los que no siguen el formato no ocupan
+     * números del contador.
+     */
+    static Optional<Integer> sequenceOf(String documentNumber) {
+        Matcher matcher = DOCUMENT_NUMBER_PATTERN.matcher(documentNumber);
+        return matcher.matches() ? Optional.of(Integer.parseInt(matcher.group(1))) : Optional.empty();
+    }
+
+    private synchronized void reserveUpTo(int number) {
+        if (number <= reserved) {
+            return;
+        }
+        int target = number + blockSize - 1;
+        writeHighWaterMark(target);
+        reserved = target;
+    }
+
+    private int readHighWaterMark() {
+        try {
+            if (Files.exists(highWaterMarkFile)) {
+                return Integer.parseInt(Files.readString(highWaterMarkFile, StandardCharsets.UTF_8).trim());
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.warn("No se pudo leer la marca de numeración {}: {}", highWaterMarkFile, e.getMessage());
+        }
+        return 0;
+    }
+
+    // Temporal con nombre propio: otra instancia sobre la misma carpeta puede estar
+    // reservando a la vez y no debe mover el archivo de esta
+    private void writeHighWaterMark(int value) {
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(highWaterMarkFile.toAbsolutePath().getParent(),
+                    highWaterMarkFile.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(Integer.toString(value).getBytes(StandardCharsets.UTF_8)));
+                channel.force(true);
+            }
+            Files.move(tmp, highWaterMarkFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            deleteQuietly(tmp);
+            throw new RuntimeException("Error al reservar números de documento", e);
+        }
+    }
+
+    private static void deleteQuietly(Path tmp) {
+        if (tmp == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(tmp);
+        } catch (IOException e) {
+            log.warn("No se pudo eliminar {}: {}", tmp, e.getMessage());
+        }
+    }
+
+    private static String format(int number) {
+        return String.format("CES-%05d", number);
+    }
+}
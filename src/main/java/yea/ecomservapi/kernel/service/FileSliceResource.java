@@ -0,0 +1,82 @@
+package yea.ecomservapi.kernel.service;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Tramo de un archivo expuesto como {@link org.springframework.core.io.Resource},
+ * para transmitir un blob guardado dentro de un segmento sin copiarlo a memoria.
+ */
+public class FileSliceResource extends AbstractResource {
+
+    private final Path path;
+    private final long offset;
+    private final long length;
+
+    public FileSliceResource(Path path, long offset, long length) {
+        this.path = path;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Tramo [" + offset + ", " + (offset + length) + ") de " + path;
+    }
+
+    @Override
+    public long contentLength() {
+        return length;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        return new InputStream() {
+            private long position = offset;
+            private final long end = offset + length;
+
+            @Override
+            public int read() throws IOException {
+                byte[] single = new byte[1];
+                return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] buffer, int off, int len) throws IOException {
+                if (position >= end) {
+                    return -1;
+                }
+                int toRead = (int) Math.min(len, end - position);
+                int read = channel.read(ByteBuffer.wrap(buffer, off, toRead), position);
+                if (read > 0) {
+                    position += read;
+                }
+                return read;
+            }
+
+            @Override
+            public long skip(long n) {
+                long skipped = Math.max(0, Math.min(n, end - position));
+                position += skipped;
+                return skipped;
+            }
+
+            @Override
+            public int available() {
+                return (int) Math.min(Integer.MAX_VALUE, end - position);
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+}
@@ -1,38 +1,87 @@
 package yea.ecomservapi.kernel.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import yea.ecomservapi.kernel.exception.StorageBusyException;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+import yea.ecomservapi.modules.quoting.dto.QuoteItemDTO;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import java.util.stream.Stream;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
 
 @Service
 @Slf4j
+@RequiredArgsConstructor
 public class FileStorageService {
 
-    @Value("${app.storage.cotizaciones:cotizaciones}")
-    private String cotizacionesFolder;
+    private final StorageSettings settings;
+    private final MeterRegistry meterRegistry;
+
+    private BlobCompression jsonCompression;
+    private BlobCompression pdfCompression;
+
+    // Solo con app.storage.write-behind.enabled=true
+    private WriteBehindQueue writeBehind;
+
+    private static final int WRITE_BEHIND_RETRY_AFTER_SECONDS = 2;
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    // Solo con app.storage.engine=files
+    private QuoteArchive archive;
 
     private Path cotizacionesPath;
 
-    private static final Pattern DOCUMENT_NUMBER_PATTERN = Pattern.compile("CES-(\\d{5})\\.pdf");
+    private QuoteBlobStore blobStore;
+
+    // Solo con app.storage.engine=files
+    private StorageLayout layout;
+
+    private static final String PDF = ".pdf";
+
+    // Resúmenes, búsqueda y totales en memoria
+    private QuoteIndex index;
+
+    private StorageAdmin admin;
+
+    private final DocumentLocks documentLocks = new DocumentLocks();
+
+    // Solo con app.storage.watch.enabled=true y el motor files
+    private StorageWatcher watcher;
+
+    private DocumentNumberAllocator documentNumberAllocator;
 
     @PostConstruct
     public void init() {
-        cotizacionesPath = Paths.get(cotizacionesFolder).toAbsolutePath().normalize();
+        cotizacionesPath = Paths.get(settings.folder()).toAbsolutePath().normalize();
         try {
             Files.createDirectories(cotizacionesPath);
             log.info("Carpeta de cotizaciones creada/verificada: {}", cotizacionesPath);
@@ -40,27 +89,255 @@ public class FileStorageService {
             log.error("No se pudo crear la carpeta de cotizaciones", e);
             throw new RuntimeException("Error al inicializar almacenamiento", e);
         }
+        jsonCompression = BlobCompression.fromProperty(settings.jsonCompression());
+        pdfCompression = BlobCompression.fromProperty(settings.pdfCompression());
+        try {
+            blobStore = openBlobStore();
+        } catch (IOException e) {
+            log.error("No se pudo abrir el almacenamiento {}", settings.engine(), e);
+            throw new RuntimeException("Error al inicializar almacenamiento", e);
+        }
+
+        index = new QuoteIndex(blobStore, archive, this::readStored, objectMapper);
+        index.rebuild();
+        documentNumberAllocator = new DocumentNumberAllocator(
+                cotizacionesPath.resolve(".sequence"), index.highestNumber(), settings.sequenceBlock());
+        admin = new StorageAdmin(blobStore, archive, documentLocks, index, this::readStored,
+                documentNumber -> getPendingPdf(documentNumber).isPresent(), this::refreshIndex,
+                settings.archiveMaxAgeDays());
+        // Los demás backends solo se modifican a través de este servicio
+        if (settings.watchEnabled() && layout != null) {
+            watcher = new StorageWatcher(cotizacionesPath, layout, this::refreshWatched, index::rebuild);
+            if (watcher.start()) {
+                index.trackStoredVersions();
+            }
+        }
+        if (settings.writeBehindEnabled()) {
+            try {
+                // Las cotizaciones que quedaron en el diario se escriben antes de aceptar nuevas
+                writeBehind = new WriteBehindQueue(cotizacionesPath.resolve(".write-behind.journal"),
+                        settings.writeBehindCapacity(), settings.writeBehindWriters(),
+                        quote -> persistQuote(quote.documentNumber(), quote.pdf(), quote.json(), quote.summary()));
+                log.info("Escritura diferida activa: capacidad {}, {} hilos",
+                        settings.writeBehindCapacity(), settings.writeBehindWriters());
+            } catch (IOException e) {
+                log.error("No se pudo abrir el diario de escritura diferida", e);
+                throw new RuntimeException("Error al inicializar almacenamiento", e);
+            }
+        }
+    }
+
+    private QuoteBlobStore openBlobStore() throws IOException {
+        switch (Objects.requireNonNullElse(settings.engine(), "files").toLowerCase(Locale.ROOT)) {
+            case "files" -> {
+                layout = new StorageLayout(cotizacionesPath, "sharded".equalsIgnoreCase(settings.layout()));
+                archive = new QuoteArchive(cotizacionesPath.resolve("archive"), objectMapper);
+                return new FileSystemBlobStore(layout, jsonCompression, pdfCompression);
+            }
+            case "segments" -> {
+                log.info("Motor de almacenamiento por segmentos activo");
+                return new SegmentBlobStore(cotizacionesPath.resolve("segments"), settings.segmentSizeMb() * 1024 * 1024);
+            }
+            case "memory" -> {
+                log.warn("Almacenamiento en memoria: las cotizaciones se pierden al reiniciar");
+                return new InMemoryBlobStore();
+            }
+            default -> throw new IllegalStateException("Motor de almacenamiento desconocido: " + settings.engine());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // Primero se vacía la cola: sus escrituras usan el resto del almacenamiento
+        if (writeBehind != null) {
+            try {
+                writeBehind.close();
+            } catch (IOException e) {
+                log.warn("Error al cerrar escritura diferida: {}", e.getMessage());
+            }
+        }
+        if (watcher != null) {
+            watcher.close();
+        }
+        if (blobStore != null) {
+            try {
+                blobStore.close();
+            } catch (IOException e) {
+                log.warn("Error al cerrar almacenamiento: {}", e.getMessage());
+            }
+        }
+        if (archive != null) {
+            try {
+                archive.close();
+            } catch (IOException e) {
+                log.warn("Error al cerrar archivo de cotizaciones: {}", e.getMessage());
+            }
+        }
+    }
+
+    // Las fechas del request (LocalDate) se guardan como texto ISO
+    private final ObjectMapper objectMapper = JsonMapper.builder()
+            .findAndAddModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .build();
+
+    /**
+     * Guarda el PDF, el JSON y el resumen de una cotización de modo que se vuelvan
+     * visibles juntos: se escriben y sincronizan los temporales, y el PDF (que es lo
+     * que indexa la cotización) se renombra al final como marca de confirmación.
+     * <p>
+     * El resumen se calcula una sola vez a partir del mismo {@link QuoteDTO} con el que
+     * se generó el PDF, así los totales del listado coinciden con los del documento.
+     * <p>
+     * Con escritura diferida la cotización solo se registra en el diario y se encola;
+     * hasta que se escriba, las lecturas la obtienen de la cola. Si la cola está llena
+     * se lanza {@link StorageBusyException}.
+     *
+     * @return nombre del archivo PDF
+     */
+    public String saveQuote(byte[] pdfContent, Object data, QuoteDTO quote) {
+        String documentNumber = quote.getDocumentNumber();
+        int items = QuoteStageMetrics.itemCount(quote);
+        try {
+            byte[] json = QuoteStageMetrics.time(meterRegistry, QuoteStageMetrics.STORE_JSON, items,
+                    () -> objectMapper.writeValueAsBytes(data));
+            QuoteStageMetrics.time(meterRegistry, QuoteStageMetrics.STORE, items, () -> {
+                byte[] summary = objectMapper.writeValueAsBytes(SummarySidecar.of(quote));
+                if (writeBehind != null) {
+                    enqueueQuote(documentNumber, pdfContent, json, summary);
+                } else {
+                    persistQuote(documentNumber, pdfContent, json, summary);
+                }
+                return null;
+            });
+            return documentNumber + PDF;
+        } catch (IOException e) {
+            log.error("Error al guardar cotización: {}", documentNumber, e);
+            throw new RuntimeException("Error al guardar cotización", e);
+        }
+    }
+
+    /**
+     * Abre el PDF de una cotización para guardarlo mientras se genera, sin tenerlo
+     * completo en memoria. Al confirmar con {@link PdfUpload#commit()} se guardan el
+     * PDF, el JSON y el resumen igual que en {@link #saveQuote}.
+     * <p>
+     * Solo el motor {@code files} sin escritura diferida escribe el PDF directo al
+     * archivo; con los demás se acumula en memoria y se guarda con {@link #saveQuote}.
+     */
+    public PdfUpload openPdfUpload(Object data, QuoteDTO quote) {
+        String documentNumber = quote.getDocumentNumber();
+        if (writeBehind != null || !(blobStore instanceof FileSystemBlobStore files)) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            return new PdfUpload(documentNumber, buffer,
+                    () -> saveQuote(buffer.toByteArray(), data, quote), () -> { });
+        }
+        int items = QuoteStageMetrics.itemCount(quote);
+        try {
+            byte[] json = QuoteStageMetrics.time(meterRegistry, QuoteStageMetrics.STORE_JSON, items,
+                    () -> jsonCompression.encode(objectMapper.writeValueAsBytes(data)));
+            byte[] summary = objectMapper.writeValueAsBytes(SummarySidecar.of(quote));
+            boolean gzip = pdfCompression == BlobCompression.GZIP;
+            AtomicFileWriter.StagingStream staging = files.openPdf(documentNumber, gzip);
+            OutputStream pdfOut = gzip ? new GZIPOutputStream(staging, GZIP_BUFFER_SIZE) : staging;
+            // El PDF ya se escribió mientras se generaba: store mide solo la confirmación
+            PdfUpload.Committer committer = () -> QuoteStageMetrics.time(meterRegistry, QuoteStageMetrics.STORE, items, () -> {
+                if (pdfOut instanceof GZIPOutputStream compressed) {
+                    compressed.finish();
+                }
+                AtomicFileWriter.StagedFile pdf = staging.finish();
+                ReentrantLock lock = documentLock(documentNumber);
+                lock.lock();
+                try {
+                    files.putWithStagedPdf(documentNumber, Map.of(
+                            QuoteBlobStore.BlobType.JSON, json,
+                            QuoteBlobStore.BlobType.SUMMARY, summary), pdf);
+                    log.info("Cotización guardada: {}", documentNumber);
+                    refreshIndex(documentNumber);
+                } finally {
+                    lock.unlock();
+                }
+                return null;
+            });
+            return new PdfUpload(documentNumber, pdfOut, committer, () -> {
+                try {
+                    pdfOut.close();
+                } catch (IOException ignored) {
+                    // El temporal se elimina igual
+                }
+                staging.discard();
+            });
+        } catch (IOException e) {
+            log.error("Error al guardar cotización: {}", documentNumber, e);
+            throw new RuntimeException("Error al guardar cotización", e);
+        }
     }
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private void enqueueQuote(String documentNumber, byte[] pdfContent, byte[] json, byte[] summary)
+            throws IOException {
+        // El resumen se publica antes de encolar: así la escritura, al terminar, siempre lo reemplaza
+        QuoteSummary previous = index.publish(documentNumber,
+                index.summarize(documentNumber, pdfContent.length, LocalDateTime.now(), summary, json));
+        boolean accepted;
+        try {
+            accepted = writeBehind.enqueue(
+                    new WriteBehindQueue.PendingQuote(documentNumber, pdfContent, json, summary));
+        } catch (IOException e) {
+            index.restore(documentNumber, previous);
+            throw e;
+        }
+        if (!accepted) {
+            index.restore(documentNumber, previous);
+            throw new StorageBusyException("Cola de escritura llena, reintente en unos segundos",
+                    WRITE_BEHIND_RETRY_AFTER_SECONDS);
+        }
+        DocumentNumberAllocator.sequenceOf(documentNumber).ifPresent(documentNumberAllocator::observe);
+        // Una eliminación pudo quitar el resumen entre la publicación y este punto
+        index.indexPublished(documentNumber, json);
+        log.info("Cotización en cola de escritura: {}", documentNumber);
+    }
+
+    private void persistQuote(String documentNumber, byte[] pdfContent, byte[] json, byte[] summary)
+            throws IOException {
+        Map<QuoteBlobStore.BlobType, byte[]> blobs = Map.of(
+                QuoteBlobStore.BlobType.JSON, jsonCompression.encode(json),
+                QuoteBlobStore.BlobType.SUMMARY, summary,
+                QuoteBlobStore.BlobType.PDF, pdfCompression.encode(pdfContent));
+        ReentrantLock lock = documentLock(documentNumber);
+        lock.lock();
+        try {
+            blobStore.put(documentNumber, blobs);
+            log.info("Cotización guardada: {}", documentNumber);
+            refreshIndex(documentNumber);
+        } finally {
+            lock.unlock();
+        }
+    }
 
     public void saveJson(Object data, String documentNumber) {
+        awaitPendingWrite(documentNumber);
+        ReentrantLock lock = documentLock(documentNumber);
+        lock.lock();
         try {
-            String fileName = documentNumber + ".json";
-            Path filePath = cotizacionesPath.resolve(fileName);
-            objectMapper.writeValue(filePath.toFile(), data);
-            log.info("JSON guardado: {}", filePath);
+            byte[] stored = jsonCompression.encode(objectMapper.writeValueAsBytes(data));
+            blobStore.put(documentNumber, Map.of(QuoteBlobStore.BlobType.JSON, stored));
+            // El JSON cambió sin un QuoteDTO: el resumen guardado ya no corresponde y se
+            // vuelve a calcular desde el JSON
+            blobStore.remove(documentNumber, QuoteBlobStore.BlobType.SUMMARY);
+            log.info("JSON guardado: {}", documentNumber);
+            refreshIndex(documentNumber);
         } catch (IOException e) {
             log.error("Error al guardar JSON: {}", documentNumber, e);
+        } finally {
+            lock.unlock();
         }
     }
 
     public <T> Optional<T> getJson(String documentNumber, Class<T> valueType) {
         try {
-            String fileName = documentNumber + ".json";
-            Path filePath = cotizacionesPath.resolve(fileName);
-            if (Files.exists(filePath)) {
-                return Optional.of(objectMapper.readValue(filePath.toFile(), valueType));
+            Optional<byte[]> json = readStored(documentNumber, QuoteBlobStore.BlobType.JSON);
+            if (json.isPresent()) {
+                return Optional.of(objectMapper.readValue(BlobCompression.decode(json.get()), valueType));
             }
             return Optional.empty();
         } catch (IOException e) {
@@ -69,200 +346,262 @@ public class FileStorageService {
         }
     }
 
+    /**
+     * Devuelve el JSON tal como está guardado. Si está comprimido con gzip y el cliente
+     * lo acepta, se entrega sin descomprimir.
+     */
+    public Optional<EncodedBlob> getJsonBlob(String documentNumber, boolean acceptGzip) {
+        try {
+            Optional<byte[]> stored = readStored(documentNumber, QuoteBlobStore.BlobType.JSON);
+            if (stored.isEmpty()) {
+                return Optional.empty();
+            }
+            byte[] bytes = stored.get();
+            if (BlobCompression.isGzip(bytes) && acceptGzip) {
+                return Optional.of(new EncodedBlob(bytes, true));
+            }
+            return Optional.of(new EncodedBlob(BlobCompression.decode(bytes), false));
+        } catch (IOException e) {
+            log.error("Error al leer JSON: {}", documentNumber, e);
+            return Optional.empty();
+        }
+    }
+
     public String savePdf(byte[] pdfContent, String documentNumber) {
+        awaitPendingWrite(documentNumber);
+        ReentrantLock lock = documentLock(documentNumber);
+        lock.lock();
         try {
-            String fileName = documentNumber + ".pdf";
-            Path filePath = cotizacionesPath.resolve(fileName);
-            Files.write(filePath, pdfContent);
-            log.info("PDF guardado: {}", filePath);
+            String fileName = documentNumber + PDF;
+            blobStore.put(documentNumber, Map.of(QuoteBlobStore.BlobType.PDF, pdfCompression.encode(pdfContent)));
+            log.info("PDF guardado: {}", documentNumber);
+            refreshIndex(documentNumber);
             return fileName;
         } catch (IOException e) {
             log.error("Error al guardar PDF: {}", documentNumber, e);
             throw new RuntimeException("Error al guardar PDF", e);
+        } finally {
+            lock.unlock();
         }
     }
 
     public Optional<byte[]> getPdf(String documentNumber) {
         try {
-            String fileName = documentNumber + ".pdf";
-            Path filePath = cotizacionesPath.resolve(fileName);
-            if (Files.exists(filePath)) {
-                return Optional.of(Files.readAllBytes(filePath));
-            }
-            return Optional.empty();
+            Optional<byte[]> stored = readStored(documentNumber, QuoteBlobStore.BlobType.PDF);
+            return stored.isPresent() ? Optional.of(BlobCompression.decode(stored.get())) : Optional.empty();
         } catch (IOException e) {
             log.error("Error al leer PDF: {}", documentNumber, e);
             return Optional.empty();
         }
     }
 
-    public boolean deletePdf(String documentNumber) {
-        try {
-            String pdfName = documentNumber + ".pdf";
-            String jsonName = documentNumber + ".json";
-            Path pdfPath = cotizacionesPath.resolve(pdfName);
-            Path jsonPath = cotizacionesPath.resolve(jsonName);
+    /**
+     * Ubica el PDF en disco sin leer su contenido, para que pueda enviarse en
+     * streaming (o con sendfile) en lugar de cargarse completo en memoria. Las
+     * cotizaciones archivadas no tienen archivo propio y se leen con {@link #getPdf}.
+     */
+    public Optional<StoredFile> getPdfFile(String documentNumber) {
+        // Mientras está en cola, lo que hay en disco (si algo) es una versión anterior
+        if (getPendingPdf(documentNumber).isPresent()) {
+            return Optional.empty();
+        }
+        return blobStore.locate(documentNumber, QuoteBlobStore.BlobType.PDF);
+    }
 
-            boolean pdfDeleted = Files.deleteIfExists(pdfPath);
-            boolean jsonDeleted = Files.deleteIfExists(jsonPath);
+    /**
+     * PDF de una cotización que aún está en la cola de escritura diferida.
+     */
+    public Optional<byte[]> getPendingPdf(String documentNumber) {
+        if (writeBehind == null) {
+            return Optional.empty();
+        }
+        return writeBehind.pending(documentNumber).map(WriteBehindQueue.PendingQuote::pdf);
+    }
 
-            return pdfDeleted || jsonDeleted;
+    public boolean deletePdf(String documentNumber) {
+        awaitPendingWrite(documentNumber);
+        ReentrantLock lock = documentLock(documentNumber);
+        lock.lock();
+        try {
+            boolean deleted = blobStore.delete(documentNumber);
+            if (archive != null) {
+                deleted |= archive.delete(documentNumber);
+            }
+            index.remove(documentNumber);
+            return deleted;
         } catch (IOException e) {
             log.error("Error al eliminar archivos: {}", documentNumber, e);
             return false;
+        } finally {
+            lock.unlock();
         }
     }
 
     public boolean existsPdf(String documentNumber) {
-        String fileName = documentNumber + ".pdf";
-        Path filePath = cotizacionesPath.resolve(fileName);
-        return Files.exists(filePath);
+        if (getPendingPdf(documentNumber).isPresent()) {
+            return true;
+        }
+        return blobStore.contains(documentNumber, QuoteBlobStore.BlobType.PDF)
+                || archive != null && archive.contains(documentNumber);
     }
 
-    public String generateNextDocumentNumber() {
-        try (Stream<Path> files = Files.list(cotizacionesPath)) {
-            int maxNumber = files
-                    .map(path -> path.getFileName().toString())
-                    .map(DOCUMENT_NUMBER_PATTERN::matcher)
-                    .filter(Matcher::matches)
-                    .map(matcher -> Integer.parseInt(matcher.group(1)))
-                    .max(Integer::compareTo)
-                    .orElse(0);
-
-            return String.format("CES-%05d", maxNumber + 1);
-        } catch (IOException e) {
-            log.error("Error al generar número de documento", e);
-            return "CES-00001";
+    /**
+     * Mueve las cotizaciones del formato plano a sus particiones sin detener el
+     * servicio. Puede repetirse sin efectos si ya no quedan archivos por mover.
+     *
+     * @return cantidad de archivos movidos
+     */
+    public int migrateToShardedLayout() {
+        return admin.migrateToShardedLayout();
+    }
+
+    /**
+     * Recupera el espacio de cotizaciones eliminadas o reescritas en el motor de
+     * segmentos.
+     */
+    public CompactionReport compactStorage() {
+        return admin.compactStorage();
+    }
+
+    @Scheduled(cron = "${app.storage.archive.cron:0 30 3 * * *}")
+    public void scheduledArchive() {
+        if (!settings.archiveEnabled() || !admin.canArchive()) {
+            return;
+        }
+        try {
+            admin.archiveOldQuotes();
+        } catch (RuntimeException e) {
+            log.error("Falló el archivo programado de cotizaciones", e);
         }
     }
 
+    /**
+     * Pasa a los paquetes mensuales del archivo las cotizaciones de los meses
+     * completos anteriores a {@code app.storage.archive.max-age-days}, sin quitar de
+     * la carpeta principal las que cambian mientras se empaquetan.
+     */
+    public ArchiveReport archiveOldQuotes() {
+        return admin.archiveOldQuotes();
+    }
+
+    /**
+     * Mide la compresión lograda sobre las cotizaciones almacenadas, por tipo de blob.
+     * Lee todo el almacén, por lo que está pensado para uso administrativo.
+     */
+    public CompressionReport compressionReport() {
+        return admin.compressionReport();
+    }
+
+    private ReentrantLock documentLock(String documentNumber) {
+        return documentLocks.of(documentNumber);
+    }
+
+    private void awaitPendingWrite(String documentNumber) {
+        if (writeBehind != null) {
+            writeBehind.awaitWritten(documentNumber);
+        }
+    }
+
+    // Devuelve los bytes tal como están guardados; las cotizaciones en cola van sin comprimir
+    private Optional<byte[]> readStored(String documentNumber, QuoteBlobStore.BlobType type) throws IOException {
+        if (writeBehind != null) {
+            Optional<WriteBehindQueue.PendingQuote> pending = writeBehind.pending(documentNumber);
+            if (pending.isPresent()) {
+                return Optional.of(switch (type) {
+                    case PDF -> pending.get().pdf();
+                    case JSON -> pending.get().json();
+                    case SUMMARY -> pending.get().summary();
+                });
+            }
+        }
+        Optional<byte[]> stored = blobStore.get(documentNumber, type);
+        if (stored.isEmpty() && archive != null) {
+            return archive.get(documentNumber, type);
+        }
+        return stored;
+    }
+
+    /**
+     * Asigna un número de documento nuevo. Dos llamadas concurrentes nunca
+     * reciben el mismo número.
+     */
+    public String generateNextDocumentNumber() {
+        return documentNumberAllocator.next();
+    }
+
+    /**
+     * Devuelve el próximo número de documento sin reservarlo.
+     */
+    public String peekNextDocumentNumber() {
+        return documentNumberAllocator.peek();
+    }
+
     public Path getCotizacionesPath() {
         return cotizacionesPath;
     }
 
     public List<QuoteFileInfo> listAllQuotes() {
-        try (Stream<Path> files = Files.list(cotizacionesPath)) {
-            return files
-                    .filter(path -> path.getFileName().toString().endsWith(".pdf"))
-                    .map(this::toQuoteFileInfo)
-                    .filter(Optional::isPresent)
-                    .map(Optional::get)
-                    .sorted((a, b) -> b.documentNumber().compareTo(a.documentNumber()))
-                    .toList();
-        } catch (IOException e) {
-            log.error("Error al listar cotizaciones", e);
-            return List.of();
-        }
+        return index.listFiles();
     }
 
     public List<QuoteSummary> listAllQuotesWithSummary() {
-        try (Stream<Path> files = Files.list(cotizacionesPath)) {
-            return files
-                    .filter(path -> path.getFileName().toString().endsWith(".pdf"))
-                    .map(this::toQuoteSummary)
-                    .filter(Optional::isPresent)
-                    .map(Optional::get)
-                    .sorted((a, b) -> b.createdAt().compareTo(a.createdAt()))
-                    .toList();
-        } catch (IOException e) {
-            log.error("Error al listar cotizaciones con resumen", e);
-            return List.of();
-        }
+        return index.listNewestFirst();
     }
 
-    private Optional<QuoteSummary> toQuoteSummary(Path pdfPath) {
-        try {
-            String fileName = pdfPath.getFileName().toString();
-            String documentNumber = fileName.replace(".pdf", "");
-
-            BasicFileAttributes attrs = Files.readAttributes(pdfPath, BasicFileAttributes.class);
-            long fileSize = attrs.size();
-            LocalDateTime createdAt = LocalDateTime.ofInstant(
-                    attrs.creationTime().toInstant(), ZoneId.systemDefault());
-
-            // Try to read JSON for additional info
-            String clientName = "";
-            String currency = "PEN";
-            double total = 0.0;
-            int itemCount = 0;
-            List<ItemDetail> itemDetails = new java.util.ArrayList<>();
-
-            Path jsonPath = cotizacionesPath.resolve(documentNumber + ".json");
-            if (Files.exists(jsonPath)) {
-                try {
-                    var jsonNode = objectMapper.readTree(jsonPath.toFile());
-
-                    if (jsonNode.has("clientName")) {
-                        clientName = jsonNode.get("clientName").asText("");
-                    }
-                    if (jsonNode.has("currency")) {
-                        currency = jsonNode.get("currency").asText("PEN");
-                    }
-                    if (jsonNode.has("items") && jsonNode.get("items").isArray()) {
-                        var items = jsonNode.get("items");
-                        itemCount = items.size();
-
-                        // Extract first 3 items with details
-                        int count = 0;
-                        for (var item : items) {
-                            double qty = item.has("quantity") ? item.get("quantity").asDouble(0) : 0;
-                            double price = item.has("unitPrice") ? item.get("unitPrice").asDouble(0) : 0;
-                            double subtotal = qty * price;
-
-                            if (count < 3 && item.has("description")) {
-                                String desc = item.get("description").asText("");
-                                // Truncate to 50 chars
-                                if (desc.length() > 50) {
-                                    desc = desc.substring(0, 47) + "...";
-                                }
-                                itemDetails.add(new ItemDetail(desc, qty, subtotal));
-                            }
-                            count++;
-
-                            // Add to total
-                            total += subtotal;
-                        }
-                        // Add IGV 18%
-                        total = total * 1.18;
-                    }
-                } catch (IOException ex) {
-                    log.warn("No se pudo leer JSON para {}: {}", documentNumber, ex.getMessage());
-                }
-            }
+    /**
+     * Devuelve una página de resúmenes filtrada y ordenada en el servidor, paginada
+     * por cursor: las páginas siguientes se mantienen estables aunque se agreguen
+     * cotizaciones.
+     */
+    public QuotePage findQuotes(QuoteQuery query) {
+        return index.find(query);
+    }
 
-            return Optional.of(new QuoteSummary(
-                    documentNumber,
-                    clientName,
-                    currency,
-                    total,
-                    itemCount,
-                    itemDetails,
-                    createdAt,
-                    fileSize));
-        } catch (IOException e) {
-            log.error("Error al leer atributos de archivo: {}", pdfPath, e);
-            return Optional.empty();
+    /**
+     * Búsqueda de texto en ítems (código y descripción), referencia, notas y datos del
+     * cliente, ordenada por relevancia.
+     */
+    public List<QuoteSearchResult> searchQuotes(String query, int limit) {
+        return index.search(query, limit);
+    }
+
+    /**
+     * Totales por mes, cliente, moneda y vendedor y los productos más cotizados. Se
+     * mantienen en cada escritura, así la consulta no lee el almacenamiento.
+     */
+    public QuoteStats getStats() {
+        return index.stats();
+    }
+
+    /**
+     * Recalcula los totales (y la búsqueda) desde el JSON guardado de cada cotización.
+     */
+    public QuoteStats rebuildStats() {
+        return index.rebuildStats();
+    }
+
+    private void refreshIndex(String documentNumber) {
+        index.refresh(documentNumber);
+        if (documentNumberAllocator != null) {
+            DocumentNumberAllocator.sequenceOf(documentNumber).ifPresent(documentNumberAllocator::observe);
         }
     }
 
-    private Optional<QuoteFileInfo> toQuoteFileInfo(Path path) {
+    /**
+     * Cambio visto por el WatchService. Se toma el lock del documento, como en las
+     * escrituras, para no volver a indexar una cotización que se está eliminando. Si
+     * los blobs siguen como al indexarlos (una escritura de esta instancia), no se
+     * vuelve a leer el JSON.
+     */
+    private void refreshWatched(String documentNumber) {
+        ReentrantLock lock = documentLock(documentNumber);
+        lock.lock();
         try {
-            String fileName = path.getFileName().toString();
-            Matcher matcher = DOCUMENT_NUMBER_PATTERN.matcher(fileName);
-            if (!matcher.matches()) {
-                return Optional.empty();
+            if (index.changedSinceIndexed(documentNumber)) {
+                refreshIndex(documentNumber);
             }
-
-            String documentNumber = fileName.replace(".pdf", "");
-            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
-            long fileSize = attrs.size();
-            LocalDateTime createdAt = LocalDateTime.ofInstant(
-                    attrs.creationTime().toInstant(), ZoneId.systemDefault());
-
-            return Optional.of(new QuoteFileInfo(documentNumber, fileName, fileSize, createdAt));
-        } catch (IOException e) {
-            log.error("Error al leer atributos de archivo: {}", path, e);
-            return Optional.empty();
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -273,20 +612,240 @@ public class FileStorageService {
             LocalDateTime createdAt) {
     }
 
+    public record StoredFile(
+            Path path,
+            long offset,
+            long size,
+            Instant lastModified,
+            boolean gzip) {
+
+        /**
+         * ETag fuerte derivado de tamaño, fecha de modificación y posición: cambia con
+         * cada reescritura del documento sin necesidad de leer su contenido. La versión
+         * descomprimida de un blob gzip es otra representación y lleva su propio ETag.
+         */
+        public String etag(boolean decoded) {
+            return "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified.toEpochMilli())
+                    + (offset > 0 ? "-" + Long.toHexString(offset) : "")
+                    + (gzip && decoded ? "-identity" : "") + "\"";
+        }
+
+        /**
+         * Recurso para transmitir los bytes almacenados: el archivo completo, o solo su
+         * tramo cuando el documento vive dentro de un segmento.
+         */
+        public Resource toResource() {
+            return offset == 0 ? new FileSystemResource(path) : new FileSliceResource(path, offset, size);
+        }
+
+        /**
+         * Contenido descomprimido en streaming, para clientes que no aceptan gzip.
+         */
+        public InputStream openDecoded() throws IOException {
+            InputStream stored = toResource().getInputStream();
+            return gzip ? new GZIPInputStream(stored) : stored;
+        }
+    }
+
+    public record EncodedBlob(
+            byte[] content,
+            boolean gzip) {
+    }
+
+    public record CompressionReport(
+            List<CompressionRatio> types) {
+    }
+
+    public record CompressionRatio(
+            String type,
+            int blobs,
+            long storedBytes,
+            long originalBytes,
+            long gzipBytes,
+            double storedRatio,
+            double gzipRatio) {
+    }
+
+    public record CompactionReport(
+            int segmentsCompacted,
+            long bytesReclaimed) {
+    }
+
+    public record QuoteSearchResult(
+            QuoteSummary summary,
+            double score) {
+    }
+
+    public record GroupTotals(
+            String key,
+            long quotes,
+            Map<String, BigDecimal> totalsByCurrency) {
+    }
+
+    public record ProductTotals(
+            String code,
+            String description,
+            long quotes,
+            BigDecimal quantity,
+            Map<String, BigDecimal> totalsByCurrency) {
+    }
+
+    public record QuoteStats(
+            int quotes,
+            List<GroupTotals> byMonth,
+            List<GroupTotals> byClient,
+            List<GroupTotals> byCurrency,
+            List<GroupTotals> byVendedor,
+            List<ProductTotals> topProducts) {
+    }
+
+    public record ArchiveReport(
+            int bundles,
+            int quotesArchived) {
+    }
+
     public record ItemDetail(
             String description,
-            double quantity,
-            double subtotal) {
+            BigDecimal quantity,
+            BigDecimal subtotal) {
     }
 
+    /**
+     * {@code documentDate} es la fecha de la cotización; {@code createdAt}, la del
+     * archivo PDF. Los resúmenes guardados antes de registrar la fecha del documento
+     * no la tienen.
+     */
     public record QuoteSummary(
             String documentNumber,
             String clientName,
             String currency,
-            double total,
+            BigDecimal total,
             int itemCount,
             java.util.List<ItemDetail> itemDetails,
+            LocalDate documentDate,
             LocalDateTime createdAt,
             long fileSize) {
+
+        /**
+         * Filtro de fechas común a la paginación y la exportación: por fecha de la
+         * cotización, o la del PDF si el resumen no la tiene. Los límites se incluyen.
+         */
+        public boolean datedBetween(LocalDate from, LocalDate to) {
+            LocalDate date = documentDate != null ? documentDate : createdAt.toLocalDate();
+            return (from == null || !date.isBefore(from)) && (to == null || !date.isAfter(to));
+        }
+
+        // Sin distinguir mayúsculas; un texto vacío no filtra
+        public boolean clientNameContains(String text) {
+            return text == null || text.isBlank()
+                    || clientName.toLowerCase(Locale.ROOT).contains(text.trim().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Contenido del archivo .summary: los campos del resumen que no dependen del
+     * almacenamiento (fecha y tamaño se toman del PDF).
+     */
+    record SummarySidecar(
+            String clientName,
+            String currency,
+            BigDecimal total,
+            int itemCount,
+            List<ItemDetail> itemDetails,
+            LocalDate documentDate) {
+
+        // Ítems y largo de descripción que se guardan en cada resumen
+        static final int ITEMS = 3;
+        private static final int DESCRIPTION_LENGTH = 50;
+
+        static SummarySidecar of(QuoteDTO quote) {
+            List<QuoteItemDTO> items = quote.getItems() != null ? quote.getItems() : List.of();
+            List<ItemDetail> details = items.stream()
+                    .filter(item -> item.getDescription() != null)
+                    .limit(ITEMS)
+                    .map(item -> new ItemDetail(truncate(item.getDescription()), item.getQuantity(), item.getSubtotal()))
+                    .toList();
+            return new SummarySidecar(
+                    quote.getClientName() != null ? quote.getClientName() : "",
+                    quote.getCurrency() != null ? quote.getCurrency().name() : "PEN",
+                    quote.getTotal() != null ? quote.getTotal() : BigDecimal.ZERO,
+                    items.size(),
+                    details,
+                    quote.getDocumentDate());
+        }
+
+        static SummarySidecar of(QuoteSummary summary) {
+            return new SummarySidecar(summary.clientName(), summary.currency(), summary.total(),
+                    summary.itemCount(), summary.itemDetails(), summary.documentDate());
+        }
+
+        QuoteSummary toSummary(String documentNumber, LocalDateTime createdAt, long fileSize) {
+            return new QuoteSummary(documentNumber, clientName, currency, total, itemCount,
+                    itemDetails != null ? List.copyOf(itemDetails) : List.of(), documentDate, createdAt, fileSize);
+        }
+
+        static String truncate(String description) {
+            return description.length() > DESCRIPTION_LENGTH
+                    ? description.substring(0, DESCRIPTION_LENGTH - 3) + "..."
+                    : description;
+        }
+    }
+
+    public enum QuoteSortField {
+        DOCUMENT_NUMBER(Comparator.comparing(QuoteSummary::documentNumber)),
+        CREATED_AT(Comparator.comparing(QuoteSummary::createdAt)
+                .thenComparing(QuoteSummary::documentNumber)),
+        TOTAL(Comparator.comparing(QuoteSummary::total)
+                .thenComparing(QuoteSummary::documentNumber));
+
+        private final Comparator<QuoteSummary> comparator;
+
+        QuoteSortField(Comparator<QuoteSummary> comparator) {
+            this.comparator = comparator;
+        }
+
+        public Comparator<QuoteSummary> comparator() {
+            return comparator;
+        }
+
+        public static QuoteSortField fromParam(String value) {
+            return switch (value) {
+                case "documentNumber" -> DOCUMENT_NUMBER;
+                case "createdAt" -> CREATED_AT;
+                case "total" -> TOTAL;
+                default -> throw new IllegalArgumentException("Campo de orden no soportado: " + value);
+            };
+        }
+    }
+
+    public record QuoteQuery(
+            String clientName,
+            String currency,
+            LocalDate from,
+            LocalDate to,
+            BigDecimal minTotal,
+            BigDecimal maxTotal,
+            QuoteSortField sort,
+            boolean descending,
+            int limit,
+            String cursor) {
+
+        public boolean matches(QuoteSummary summary) {
+            if (!summary.clientNameContains(clientName) || !summary.datedBetween(from, to)) {
+                return false;
+            }
+            if (currency != null && !currency.isBlank() && !currency.equalsIgnoreCase(summary.currency())) {
+                return false;
+            }
+            if (minTotal != null && summary.total().compareTo(minTotal) < 0) {
+                return false;
+            }
+            return maxTotal == null || summary.total().compareTo(maxTotal) <= 0;
+        }
+    }
+
+    public record QuotePage(
+            List<QuoteSummary> items,
+            String nextCursor) {
     }
 }
@@ -0,0 +1,289 @@
+package yea.ecomservapi.kernel.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Backend de un archivo por blob ({@code CES-00001.pdf}, {@code CES-00001.json.gz},
+ * {@code CES-00001.summary}) dentro de la carpeta de cotizaciones, con la
+ * distribución en particiones de {@link StorageLayout}. Las escrituras son atómicas
+ * y durables mediante {@link AtomicFileWriter}.
+ * <p>
+ * El sufijo {@code .gz} se decide por el contenido: los blobs que llegan comprimidos
+ * con gzip se guardan con él.
+ */
+@Slf4j
+class FileSystemBlobStore implements QuoteBlobStore {
+
+    private static final String PDF = ".pdf";
+    private static final String JSON = ".json";
+    private static final String SUMMARY = ".summary";
+
+    private final StorageLayout layout;
+    private final AtomicFileWriter fileWriter = new AtomicFileWriter();
+    private final BlobCompression jsonCompression;
+    private final BlobCompression pdfCompression;
+
+    FileSystemBlobStore(StorageLayout layout, BlobCompression jsonCompression, BlobCompression pdfCompression) {
+        this.layout = layout;
+        this.jsonCompression = jsonCompression;
+        this.pdfCompression = pdfCompression;
+        recoverInterruptedWrites();
+    }
+
+    StorageLayout layout() {
+        return layout;
+    }
+
+    AtomicFileWriter fileWriter() {
+        return fileWriter;
+    }
+
+    @Override
+    public void put(String documentNumber, Map<BlobType, byte[]> blobs) throws IOException {
+        putWithStagedPdf(documentNumber, blobs, null);
+    }
+
+    /**
+     * Abre el PDF de un documento para escribirlo mientras se genera. Se confirma
+     * junto con los demás blobs en {@link #putWithStagedPdf}.
+     */
+    AtomicFileWriter.StagingStream openPdf(String documentNumber, boolean gzip) throws IOException {
+        String suffix = gzip ? BlobCompression.GZIP.suffix() : "";
+        return fileWriter.open(layout.writePath(documentNumber, PDF + suffix));
+    }
+
+    /**
+     * Igual que {@link #put}, con el PDF ya escrito en un temporal: se confirma al
+     * final, después del JSON y el resumen.
+     */
+    void putWithStagedPdf(String documentNumber, Map<BlobType, byte[]> blobs, AtomicFileWriter.StagedFile pdf)
+            throws IOException {
+        List<PendingWrite> writes = new ArrayList<>(blobs.size());
+        for (BlobType type : BlobType.values()) {
+            byte[] content = blobs.get(type);
+            if (content != null) {
+                String suffix = type != BlobType.SUMMARY && BlobCompression.isGzip(content)
+                        ? BlobCompression.GZIP.suffix() : "";
+                writes.add(new PendingWrite(type, layout.writePath(documentNumber, extension(type) + suffix), content));
+            }
+        }
+        writeAtomically(writes, pdf);
+        for (PendingWrite write : writes) {
+            removeStaleCopies(documentNumber, extension(write.type()), write.target());
+        }
+        if (pdf != null) {
+            removeStaleCopies(documentNumber, PDF, pdf.target());
+        }
+    }
+
+    @Override
+    public Optional<byte[]> get(String documentNumber, BlobType type) throws IOException {
+        Optional<Path> path = locateStored(documentNumber, type);
+        try {
+            return path.isPresent() ? Optional.of(Files.readAllBytes(path.get())) : Optional.empty();
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Optional<FileStorageService.StoredFile> locate(String documentNumber, BlobType type) {
+        Optional<Path> located = locateStored(documentNumber, type);
+        if (located.isEmpty()) {
+            return Optional.empty();
+        }
+        Path filePath = located.get();
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(filePath, BasicFileAttributes.class);
+            return Optional.of(new FileStorageService.StoredFile(filePath, 0, attrs.size(),
+                    attrs.lastModifiedTime().toInstant(),
+                    filePath.getFileName().toString().endsWith(BlobCompression.GZIP.suffix())));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            log.error("Error al leer atributos de {}: {}", filePath, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public boolean contains(String documentNumber, BlobType type) {
+        return locateStored(documentNumber, type).isPresent();
+    }
+
+    @Override
+    public Optional<BlobInfo> info(String documentNumber) {
+        return locateStored(documentNumber, BlobType.PDF).flatMap(this::toInfo);
+    }
+
+    @Override
+    public List<BlobInfo> list() throws IOException {
+        try (Stream<Path> files = layout.listFiles()) {
+            return files.filter(path -> StorageLayout.isPdfFile(path.getFileName().toString()))
+                    .map(this::toInfo)
+                    .flatMap(Optional::stream)
+                    .toList();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public void remove(String documentNumber, BlobType type) throws IOException {
+        for (Path path : storedCandidates(documentNumber, extension(type))) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Override
+    public boolean delete(String documentNumber) throws IOException {
+        boolean pdfDeleted = false;
+        for (Path pdfPath : storedCandidates(documentNumber, PDF)) {
+            pdfDeleted |= Files.deleteIfExists(pdfPath);
+        }
+        boolean jsonDeleted = false;
+        for (Path jsonPath : storedCandidates(documentNumber, JSON)) {
+            jsonDeleted |= Files.deleteIfExists(jsonPath);
+        }
+        remove(documentNumber, BlobType.SUMMARY);
+        return pdfDeleted || jsonDeleted;
+    }
+
+    /**
+     * Mueve las cotizaciones del formato plano a sus particiones, cada documento con
+     * su lock de escritura tomado.
+     *
+     * @return cantidad de archivos movidos
+     */
+    int migrateFlatFiles(Function<String, Lock> documentLock) throws IOException {
+        return layout.migrateFlatFiles(documentLock);
+    }
+
+    @Override
+    public void close() {
+        // Cada escritura se sincroniza al confirmarse: no queda nada abierto
+    }
+
+    private Optional<BlobInfo> toInfo(Path pdfPath) {
+        try {
+            String documentNumber = StorageLayout.documentNumberOf(pdfPath.getFileName().toString()).orElseThrow();
+            BasicFileAttributes attrs = Files.readAttributes(pdfPath, BasicFileAttributes.class);
+            return Optional.of(new BlobInfo(documentNumber, attrs.size(), attrs.creationTime().toInstant(),
+                    attrs.lastModifiedTime().toInstant()));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            log.error("Error al leer atributos de archivo: {}", pdfPath, e);
+            return Optional.empty();
+        }
+    }
+
+    private void writeAtomically(List<PendingWrite> writes, AtomicFileWriter.StagedFile last) throws IOException {
+        List<AtomicFileWriter.StagedFile> staged = new ArrayList<>(writes.size() + 1);
+        try {
+            for (PendingWrite write : writes) {
+                staged.add(fileWriter.stage(write.target(), write.content()));
+            }
+        } catch (IOException e) {
+            fileWriter.discard(staged);
+            if (last != null) {
+                fileWriter.discard(List.of(last));
+            }
+            throw e;
+        }
+        if (last != null) {
+            staged.add(last);
+        }
+        fileWriter.commit(staged);
+    }
+
+    private record PendingWrite(BlobType type, Path target, byte[] content) {
+    }
+
+    /**
+     * Escrituras interrumpidas por una caída: primero se completan las confirmaciones
+     * con diario, después se eliminan los temporales que nunca llegaron a renombrarse.
+     */
+    private void recoverInterruptedWrites() {
+        try {
+            List<Path> journals;
+            try (Stream<Path> files = layout.listFiles()) {
+                journals = files.filter(path -> AtomicFileWriter.isJournalFile(path.getFileName().toString()))
+                        .toList();
+            }
+            for (Path journal : journals) {
+                int recovered = fileWriter.recover(journal);
+                log.warn("Se completó una escritura interrumpida ({} archivos renombrados)", recovered);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("No se pudieron completar las escrituras interrumpidas: {}", e.getMessage());
+        }
+        try (Stream<Path> files = layout.listFiles()) {
+            List<Path> leftovers = files
+                    .filter(path -> AtomicFileWriter.isTempFile(path.getFileName().toString()))
+                    .toList();
+            for (Path leftover : leftovers) {
+                Files.deleteIfExists(leftover);
+            }
+            if (!leftovers.isEmpty()) {
+                log.warn("Se eliminaron {} archivos temporales de escrituras incompletas", leftovers.size());
+            }
+        } catch (IOException | UncheckedIOException e) {
+            log.warn("No se pudieron limpiar los archivos temporales: {}", e.getMessage());
+        }
+    }
+
+    // Al reescribir una cotización (en su partición o con otra compresión) las demás copias quedan obsoletas
+    private void removeStaleCopies(String documentNumber, String extension, Path current) throws IOException {
+        for (Path candidate : storedCandidates(documentNumber, extension)) {
+            if (!candidate.equals(current)) {
+                Files.deleteIfExists(candidate);
+            }
+        }
+    }
+
+    private List<Path> storedCandidates(String documentNumber, String extension) {
+        List<Path> candidates = new ArrayList<>(layout.candidates(documentNumber, extension));
+        candidates.addAll(layout.candidates(documentNumber, extension + BlobCompression.GZIP.suffix()));
+        return candidates;
+    }
+
+    /**
+     * Ubica un blob con o sin compresión. Primero se prueba la variante que escribe la
+     * configuración actual; la otra solo existe en archivos anteriores a un cambio de
+     * configuración.
+     */
+    private Optional<Path> locateStored(String documentNumber, BlobType type) {
+        BlobCompression preferred = switch (type) {
+            case PDF -> pdfCompression;
+            case JSON -> jsonCompression;
+            case SUMMARY -> BlobCompression.NONE;
+        };
+        BlobCompression other = preferred == BlobCompression.GZIP ? BlobCompression.NONE : BlobCompression.GZIP;
+        String extension = extension(type);
+        return layout.locate(documentNumber, extension + preferred.suffix())
+                .or(() -> layout.locate(documentNumber, extension + other.suffix()));
+    }
+
+    private static String extension(BlobType type) {
+        return switch (type) {
+            case PDF -> PDF;
+            case JSON -> JSON;
+            case SUMMARY -> SUMMARY;
+        };
+    }
+}
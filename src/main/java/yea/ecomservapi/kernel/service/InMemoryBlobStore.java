@@ -0,0 +1,89 @@
+package yea.ecomservapi.kernel.service;
+
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Backend sin persistencia: los blobs viven en un mapa y se pierden al reiniciar.
+ * Sirve para pruebas y para medir el resto del servicio sin el costo del disco.
+ * Como no hay archivos, los PDF se sirven desde memoria en lugar de con sendfile.
+ */
+class InMemoryBlobStore implements QuoteBlobStore {
+
+    private record Document(Map<BlobType, byte[]> blobs, Instant createdAt, Instant writtenAt) {
+    }
+
+    private final ConcurrentMap<String, Document> documents = new ConcurrentHashMap<>();
+
+    @Override
+    public void put(String documentNumber, Map<BlobType, byte[]> blobs) {
+        documents.compute(documentNumber, (key, current) -> {
+            Map<BlobType, byte[]> merged = new EnumMap<>(BlobType.class);
+            if (current != null) {
+                merged.putAll(current.blobs());
+            }
+            merged.putAll(blobs);
+            Instant now = Instant.now();
+            return new Document(merged, current != null ? current.createdAt() : now, now);
+        });
+    }
+
+    @Override
+    public Optional<byte[]> get(String documentNumber, BlobType type) {
+        return Optional.ofNullable(documents.get(documentNumber)).map(document -> document.blobs().get(type));
+    }
+
+    @Override
+    public Optional<FileStorageService.StoredFile> locate(String documentNumber, BlobType type) {
+        return Optional.empty();
+    }
+
+    @Override
+    public boolean contains(String documentNumber, BlobType type) {
+        return get(documentNumber, type).isPresent();
+    }
+
+    @Override
+    public Optional<BlobInfo> info(String documentNumber) {
+        Document document = documents.get(documentNumber);
+        if (document == null || !document.blobs().containsKey(BlobType.PDF)) {
+            return Optional.empty();
+        }
+        return Optional.of(new BlobInfo(documentNumber, document.blobs().get(BlobType.PDF).length,
+                document.createdAt(), document.writtenAt()));
+    }
+
+    @Override
+    public List<BlobInfo> list() {
+        return documents.keySet().stream()
+                .map(this::info)
+                .flatMap(Optional::stream)
+                .toList();
+    }
+
+    @Override
+    public void remove(String documentNumber, BlobType type) {
+        documents.computeIfPresent(documentNumber, (key, current) -> {
+            Map<BlobType, byte[]> remaining = new EnumMap<>(current.blobs());
+            remaining.remove(type);
+            return remaining.isEmpty() ? null : new Document(remaining, current.createdAt(), current.writtenAt());
+        });
+    }
+
+    @Override
+    public boolean delete(String documentNumber) {
+        Document removed = documents.remove(documentNumber);
+        return removed != null
+                && (removed.blobs().containsKey(BlobType.PDF) || removed.blobs().containsKey(BlobType.JSON));
+    }
+
+    @Override
+    public void close() {
+        documents.clear();
+    }
+}
@@ -1,22 +1,33 @@
 package yea.ecomservapi.kernel.service;
 
+import com.openhtmltopdf.pdfboxout.PdfBoxRenderer;
 import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.Context;
 import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+import yea.ecomservapi.modules.quoting.dto.QuoteItemDTO;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.time.format.DateTimeFormatter;
-import java.util.Base64;
+import java.util.List;
 import java.util.Locale;
-import org.springframework.core.io.ClassPathResource;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @RequiredArgsConstructor
@@ -24,6 +35,39 @@ import org.springframework.core.io.ClassPathResource;
 public class PdfGeneratorService {
 
     private final TemplateEngine templateEngine;
+    private final RenderAssetRegistry renderAssets;
+    private final MeterRegistry meterRegistry;
+
+    // Hilos dedicados a generar PDF (0 = uno por núcleo) y cola de espera acotada
+    @Value("${app.pdf.render.threads:0}")
+    private int renderThreads;
+
+    @Value("${app.pdf.render.queue-capacity:16}")
+    private int renderQueueCapacity;
+
+    // Plazo total (espera en cola + generación); vencido se responde 429
+    @Value("${app.pdf.render.deadline-ms:15000}")
+    private long renderDeadlineMs;
+
+    // Plazo de los trabajos en segundo plano (0 = sin plazo): nadie espera la respuesta
+    @Value("${app.pdf.render.job-deadline-ms:0}")
+    private long jobRenderDeadlineMs;
+
+    // Sin init() (pruebas unitarias) se genera en el hilo que llama
+    private RenderExecutor renderExecutor;
+
+    // Máximo de ítems por cotización; más se rechaza antes de generar
+    @Value("${app.pdf.max-items:5000}")
+    private int maxItems;
+
+    // Desde esta cantidad de ítems la tabla se genera por partes (ver renderInChunks)
+    @Value("${app.pdf.large.threshold-items:300}")
+    private int largeThresholdItems;
+
+    @Value("${app.pdf.large.chunk-items:120}")
+    private int chunkItems;
+
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
 
     private static final DecimalFormat DECIMAL_FORMAT;
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
@@ -36,19 +80,189 @@ public class PdfGeneratorService {
         DECIMAL_FORMAT = new DecimalFormat("#,##0.00", symbols);
     }
 
+    @PostConstruct
+    public void init() {
+        int threads = renderThreads > 0 ? renderThreads : Runtime.getRuntime().availableProcessors();
+        renderExecutor = new RenderExecutor(threads, renderQueueCapacity, renderDeadlineMs);
+        log.info("Generación de PDF: {} hilos, cola de {}, plazo {} ms", threads, renderQueueCapacity, renderDeadlineMs);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (renderExecutor != null) {
+            renderExecutor.close();
+        }
+    }
+
+    /**
+     * Genera el PDF en el pool de generación. Si no hay lugar, o no está listo a
+     * tiempo, lanza {@link yea.ecomservapi.kernel.exception.RenderBusyException}.
+     */
     public byte[] generateQuotePdf(QuoteDTO quote) {
+        checkItemLimit(quote);
+        if (renderExecutor == null) {
+            return render(quote);
+        }
+        long submitted = System.nanoTime();
+        return renderExecutor.execute(() -> {
+            recordQueueWait(quote, submitted);
+            return render(quote);
+        });
+    }
+
+    /**
+     * Genera el PDF escribiéndolo en {@code out} a medida que se produce, sin armar el
+     * documento en un arreglo. El stream no se cierra. Si el plazo vence, lo que el
+     * render intente escribir después se descarta.
+     */
+    public void writeQuotePdf(QuoteDTO quote, OutputStream out) {
+        writeQuotePdf(quote, out, renderDeadlineMs);
+    }
+
+    /**
+     * Igual que {@link #writeQuotePdf(QuoteDTO, OutputStream)} con el plazo de los
+     * trabajos en segundo plano ({@code app.pdf.render.job-deadline-ms}), pensado para
+     * cotizaciones grandes que tardan más que una respuesta HTTP.
+     */
+    public void writeQuotePdfForJob(QuoteDTO quote, OutputStream out) {
+        writeQuotePdf(quote, out, jobRenderDeadlineMs);
+    }
+
+    private void writeQuotePdf(QuoteDTO quote, OutputStream out, long deadlineMs) {
+        checkItemLimit(quote);
+        RenderOutputStream target = new RenderOutputStream(out);
         try {
-            String html = generateHtml(quote);
-            return convertHtmlToPdf(html);
+            if (renderExecutor == null) {
+                render(quote, target);
+            } else {
+                long submitted = System.nanoTime();
+                renderExecutor.execute(() -> {
+                    recordQueueWait(quote, submitted);
+                    render(quote, target);
+                    return null;
+                }, TimeUnit.MILLISECONDS.toNanos(deadlineMs));
+            }
+        } finally {
+            target.detach();
+        }
+    }
+
+    public RenderStats renderStats() {
+        return renderExecutor != null ? renderExecutor.stats() : null;
+    }
+
+    private void recordQueueWait(QuoteDTO quote, long submitted) {
+        QuoteStageMetrics.record(meterRegistry, QuoteStageMetrics.RENDER_QUEUE,
+                QuoteStageMetrics.itemCount(quote), QuoteStageMetrics.SUCCESS, System.nanoTime() - submitted);
+    }
+
+    private byte[] render(QuoteDTO quote) {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        render(quote, os);
+        return os.toByteArray();
+    }
+
+    /**
+     * Rechaza con {@link IllegalArgumentException} (400) una cotización con más ítems
+     * que {@code app.pdf.max-items}.
+     */
+    public void checkItemLimit(QuoteDTO quote) {
+        checkItemLimit(quote.getItems() != null ? quote.getItems().size() : 0);
+    }
+
+    /**
+     * Igual que {@link #checkItemLimit(QuoteDTO)} con la cantidad del pedido, para
+     * rechazarlo antes de asignarle un número de documento.
+     */
+    public void checkItemLimit(int items) {
+        if (maxItems > 0 && items > maxItems) {
+            throw new IllegalArgumentException(
+                    "La cotización tiene " + items + " ítems; el máximo permitido es " + maxItems);
+        }
+    }
+
+    private void render(QuoteDTO quote, OutputStream out) {
+        List<QuoteItemDTO> items = quote.getItems() != null ? quote.getItems() : List.of();
+        try {
+            if (chunkItems > 0 && items.size() > largeThresholdItems) {
+                renderInChunks(quote, items, out);
+            } else {
+                renderSingle(quote, items, out);
+            }
         } catch (Exception e) {
             log.error("Error generating PDF for quote: {}", quote.getDocumentNumber(), e);
             throw new RuntimeException("Error al generar PDF", e);
         }
     }
 
-    private String generateHtml(QuoteDTO quote) {
+    /**
+     * Cotizaciones grandes: cada parte de la tabla de ítems es un HTML propio que se
+     * maqueta y se agrega como páginas nuevas al mismo documento. Así en memoria solo
+     * está el DOM y la maquetación de una parte a la vez, y el contenido de las
+     * páginas ya generadas queda en un archivo temporal de PDFBox hasta guardar.
+     * <p>
+     * La primera parte lleva la cabecera y la última los totales y condiciones. Cada
+     * parte empieza en una página nueva.
+     */
+    private void renderInChunks(QuoteDTO quote, List<QuoteItemDTO> items, OutputStream out) throws IOException {
+        StageTimes times = new StageTimes();
+        try (PDDocument document = new PDDocument(MemoryUsageSetting.setupTempFileOnly())) {
+            for (int from = 0; from < items.size(); from += chunkItems) {
+                int to = Math.min(items.size(), from + chunkItems);
+                long start = System.nanoTime();
+                String html = generateHtml(quote, items.subList(from, to), from, from == 0, to == items.size());
+                long templated = times.add(QuoteStageMetrics.TEMPLATE, start);
+                PdfRendererBuilder builder = newBuilder(html);
+                builder.usePDDocument(document);
+                try (PdfBoxRenderer renderer = builder.buildPdfRenderer()) {
+                    renderer.layout();
+                    long laidOut = times.add(QuoteStageMetrics.LAYOUT, templated);
+                    renderer.createPDFWithoutClosing();
+                    times.add(QuoteStageMetrics.SERIALIZE, laidOut);
+                }
+            }
+            long start = System.nanoTime();
+            BufferedOutputStream buffered = new BufferedOutputStream(out, OUTPUT_BUFFER_SIZE);
+            document.save(buffered);
+            buffered.flush();
+            times.add(QuoteStageMetrics.SERIALIZE, start);
+            times.completed = true;
+        } finally {
+            times.record(meterRegistry, items.size());
+        }
+    }
+
+    private void renderSingle(QuoteDTO quote, List<QuoteItemDTO> items, OutputStream out) throws IOException {
+        StageTimes times = new StageTimes();
+        try {
+            long start = System.nanoTime();
+            String html = generateHtml(quote, items, 0, true, true);
+            long templated = times.add(QuoteStageMetrics.TEMPLATE, start);
+            // PDFBox escribe el documento en muchas escrituras chicas
+            BufferedOutputStream buffered = new BufferedOutputStream(out, OUTPUT_BUFFER_SIZE);
+            PdfRendererBuilder builder = newBuilder(html);
+            builder.toStream(buffered);
+            try (PdfBoxRenderer renderer = builder.buildPdfRenderer()) {
+                renderer.layout();
+                long laidOut = times.add(QuoteStageMetrics.LAYOUT, templated);
+                renderer.createPDF();
+                buffered.flush();
+                times.add(QuoteStageMetrics.SERIALIZE, laidOut);
+            }
+            times.completed = true;
+        } finally {
+            times.record(meterRegistry, items.size());
+        }
+    }
+
+    private String generateHtml(QuoteDTO quote, List<QuoteItemDTO> items, int itemOffset,
+                                boolean firstChunk, boolean lastChunk) {
         Context context = new Context();
         context.setVariable("quote", quote);
+        context.setVariable("items", items);
+        context.setVariable("itemOffset", itemOffset);
+        context.setVariable("firstChunk", firstChunk);
+        context.setVariable("lastChunk", lastChunk);
         context.setVariable("dateFormatter", DATE_FORMATTER);
 
         // Formatear valores para mostrar
@@ -78,41 +292,123 @@ public class PdfGeneratorService {
         context.setVariable("bankAccount", "1912486011021");
         context.setVariable("bankCCI", "002-19100248601102152");
 
-        // Imágenes embebidas en base64
-        context.setVariable("logoBase64", loadImageAsBase64("static/logo-ecomserv.png"));
-        context.setVariable("firmaBase64", loadImageAsBase64("static/firma_digital.png"));
-        context.setVariable("footerBase64", loadImageAsBase64("static/footer-brands.png"));
+        // Imágenes preparadas al iniciar (ver RenderAssetRegistry)
+        context.setVariable("logoSrc", renderAssets.uri("logo"));
+        context.setVariable("firmaSrc", renderAssets.uri("firma"));
+        context.setVariable("footerSrc", renderAssets.uri("footer"));
 
         return templateEngine.process("quote-template", context);
     }
 
-    private String loadImageAsBase64(String resourcePath) {
-        try {
-            ClassPathResource resource = new ClassPathResource(resourcePath);
-            try (InputStream is = resource.getInputStream()) {
-                byte[] imageBytes = is.readAllBytes();
-                return "data:image/png;base64," + Base64.getEncoder().encodeToString(imageBytes);
+    private PdfRendererBuilder newBuilder(String html) {
+        PdfRendererBuilder builder = new PdfRendererBuilder();
+        builder.useFastMode();
+        renderAssets.configure(builder);
+        builder.withHtmlContent(html, null);
+        return builder;
+    }
+
+    private String formatNumber(BigDecimal number) {
+        if (number == null)
+            return "0.00";
+        return DECIMAL_FORMAT.format(number);
+    }
+
+    /**
+     * Tiempos de plantilla, maquetación y escritura del PDF. Con la generación por
+     * partes se suman las de todas las partes y se registra una medición por PDF.
+     */
+    private static final class StageTimes {
+
+        private long template;
+        private long layout;
+        private long serialize;
+        private boolean completed;
+
+        // Suma el tiempo desde start a la etapa y devuelve el instante actual
+        long add(String stage, long start) {
+            long now = System.nanoTime();
+            switch (stage) {
+                case QuoteStageMetrics.TEMPLATE -> template += now - start;
+                case QuoteStageMetrics.LAYOUT -> layout += now - start;
+                default -> serialize += now - start;
+            }
+            return now;
+        }
+
+        // Si falló, las etapas que no llegaron a correr no se registran
+        void record(MeterRegistry registry, int items) {
+            String outcome = completed ? QuoteStageMetrics.SUCCESS : QuoteStageMetrics.ERROR;
+            record(registry, QuoteStageMetrics.TEMPLATE, items, outcome, template);
+            record(registry, QuoteStageMetrics.LAYOUT, items, outcome, layout);
+            record(registry, QuoteStageMetrics.SERIALIZE, items, outcome, serialize);
+        }
+
+        private void record(MeterRegistry registry, String stage, int items, String outcome, long nanos) {
+            if (completed || nanos > 0) {
+                QuoteStageMetrics.record(registry, stage, items, outcome, nanos);
             }
-        } catch (Exception e) {
-            log.warn("No se pudo cargar imagen: {}", resourcePath, e);
-            return "";
         }
     }
 
-    private byte[] convertHtmlToPdf(String html) throws Exception {
-        try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
-            PdfRendererBuilder builder = new PdfRendererBuilder();
-            builder.useFastMode();
-            builder.withHtmlContent(html, null);
-            builder.toStream(os);
-            builder.run();
-            return os.toByteArray();
+    /**
+     * Stream que recibe el renderizador. PDFBox lo cierra al terminar el documento:
+     * aquí cerrar solo vacía el buffer, porque el stream es de quien pidió el PDF.
+     * Después de {@link #detach()} rechaza las escrituras, para que un render que
+     * siguió corriendo tras vencer el plazo no escriba en una respuesta ajena.
+     */
+    private static final class RenderOutputStream extends FilterOutputStream {
+
+        private boolean detached;
+
+        private RenderOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            ensureAttached();
+            out.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            ensureAttached();
+            out.write(b, off, len);
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            ensureAttached();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+        private synchronized void detach() {
+            detached = true;
+        }
+
+        private void ensureAttached() throws IOException {
+            if (detached) {
+                throw new IOException("Generación de PDF cancelada");
+            }
         }
     }
 
-    private String formatNumber(BigDecimal number) {
-        if (number == null)
-            return "0.00";
-        return DECIMAL_FORMAT.format(number);
+    public record RenderStats(
+            int threads,
+            int queueCapacity,
+            int queued,
+            int active,
+            long completed,
+            long rejected,
+            long expired,
+            double averageQueueWaitMs,
+            double maxQueueWaitMs,
+            double averageRenderMs) {
     }
 }
@@ -0,0 +1,157 @@
+package yea.ecomservapi.kernel.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * PDF de una cotización que se guarda mientras se genera (ver
+ * {@link FileStorageService#openPdfUpload}). Con {@link #teeTo} los mismos bytes van
+ * también a la respuesta HTTP, así el documento se genera una sola vez y no se arma
+ * completo en memoria.
+ * <p>
+ * Los últimos bytes del PDF (donde están la tabla de referencias y el trailer) no se
+ * envían hasta {@link #completeResponse()}, que se llama después de {@link #commit()}:
+ * el cliente nunca recibe un documento completo que no haya quedado guardado. Si el
+ * cliente se desconecta, el PDF se sigue guardando igual.
+ * <p>
+ * Cerrarlo sin {@link #commit()} descarta lo escrito.
+ */
+@Slf4j
+public final class PdfUpload extends OutputStream {
+
+    // Bytes finales que se retienen hasta que el archivo queda guardado
+    static final int HELD_BACK_BYTES = 8 * 1024;
+
+    interface Committer {
+        void commit() throws IOException;
+    }
+
+    private final String documentNumber;
+    private final OutputStream storage;
+    private final Committer committer;
+    private final Runnable discarder;
+
+    private OutputStream response;
+    private boolean responseFailed;
+    private final byte[] tail = new byte[HELD_BACK_BYTES];
+    private int held;
+
+    private long size;
+    private boolean committed;
+    private boolean closed;
+
+    PdfUpload(String documentNumber, OutputStream storage, Committer committer, Runnable discarder) {
+        this.documentNumber = documentNumber;
+        this.storage = storage;
+        this.committer = committer;
+        this.discarder = discarder;
+    }
+
+    /**
+     * Envía también a {@code response} lo que se escriba desde ahora.
+     */
+    public PdfUpload teeTo(OutputStream response) {
+        this.response = response;
+        return this;
+    }
+
+    public String documentNumber() {
+        return documentNumber;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed || committed) {
+            throw new IOException("El PDF " + documentNumber + " ya no admite escrituras");
+        }
+        storage.write(b, off, len);
+        size += len;
+        if (response != null && !responseFailed) {
+            toResponse(b, off, len);
+        }
+    }
+
+    /**
+     * Guarda el PDF junto con el JSON y el resumen de la cotización.
+     */
+    public void commit() {
+        if (closed || committed) {
+            throw new IllegalStateException("El PDF " + documentNumber + " ya fue cerrado");
+        }
+        try {
+            committer.commit();
+            committed = true;
+        } catch (IOException e) {
+            log.error("Error al guardar cotización: {}", documentNumber, e);
+            throw new RuntimeException("Error al guardar cotización", e);
+        }
+    }
+
+    /**
+     * Envía los bytes retenidos y vacía la respuesta. Solo después de {@link #commit()}.
+     */
+    public void completeResponse() throws IOException {
+        if (!committed) {
+            throw new IllegalStateException("El PDF " + documentNumber + " no está guardado");
+        }
+        if (response != null && !responseFailed) {
+            send(tail, 0, held);
+            held = 0;
+            if (!responseFailed) {
+                response.flush();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!committed) {
+            discarder.run();
+        }
+    }
+
+    // Envía lo que excede la cola retenida y guarda en ella los últimos bytes
+    private void toResponse(byte[] b, int off, int len) {
+        int overflow = held + len - HELD_BACK_BYTES;
+        if (overflow > 0) {
+            int fromTail = Math.min(overflow, held);
+            send(tail, 0, fromTail);
+            System.arraycopy(tail, fromTail, tail, 0, held - fromTail);
+            held -= fromTail;
+            int fromInput = overflow - fromTail;
+            send(b, off, fromInput);
+            off += fromInput;
+            len -= fromInput;
+        }
+        System.arraycopy(b, off, tail, held, len);
+        held += len;
+    }
+
+    private void send(byte[] b, int off, int len) {
+        if (len == 0 || responseFailed) {
+            return;
+        }
+        try {
+            response.write(b, off, len);
+        } catch (IOException e) {
+            responseFailed = true;
+            log.warn("Cliente desconectado durante la descarga de {}, el PDF se guarda igual: {}",
+                    documentNumber, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package yea.ecomservapi.kernel.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Archivo de cotizaciones antiguas: un paquete ZIP por mes de creación
+ * ({@code archive/2024-03.zip}) con el PDF y el JSON de cada cotización, y junto a
+ * él su índice ({@code archive/2024-03.index.json}) con la fecha, el tamaño y el
+ * resumen de cada una. Al iniciar solo se leen los índices; los blobs se leen del
+ * ZIP por acceso directo a la entrada.
+ * <p>
+ * Los paquetes no se modifican en el lugar: agregar cotizaciones escribe un paquete
+ * nuevo con sus temporales y lo reemplaza con un rename atómico. Quitarlas solo
+ * reescribe el índice; sus blobs quedan en el ZIP sin referencias hasta que el
+ * próximo {@link #pack} del mes lo reescribe.
+ */
+@Slf4j
+class QuoteArchive implements Closeable {
+
+    record BundleEntry(
+            String documentNumber,
+            LocalDateTime createdAt,
+            long pdfSize,
+            boolean hasJson,
+            FileStorageService.SummarySidecar summary) {
+    }
+
+    /**
+     * Fuente de los blobs a empaquetar: se leen de a uno mientras se escribe el paquete.
+     */
+    @FunctionalInterface
+    interface BlobSource {
+        Optional<byte[]> read(String documentNumber, QuoteBlobStore.BlobType type) throws IOException;
+    }
+
+    private static final Pattern INDEX_NAME = Pattern.compile("(\\d{4}-\\d{2})\\.index\\.json");
+    private static final String PDF = ".pdf";
+    private static final String JSON = ".json";
+
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+    private final AtomicFileWriter fileWriter = new AtomicFileWriter();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<YearMonth, ZipFile> bundles = new HashMap<>();
+    private final Map<YearMonth, Map<String, BundleEntry>> indexes = new HashMap<>();
+    private final Map<String, YearMonth> locations = new HashMap<>();
+
+    QuoteArchive(Path directory, ObjectMapper objectMapper) throws IOException {
+        this.directory = directory;
+        this.objectMapper = objectMapper;
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            // Paquete e índice confirmados a medias: el diario completa los renombres
+            for (Path journal : files.filter(path -> AtomicFileWriter.isJournalFile(path.getFileName().toString()))
+                    .toList()) {
+                fileWriter.recover(journal);
+            }
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : files.toList()) {
+                String fileName = path.getFileName().toString();
+                if (AtomicFileWriter.isTempFile(fileName)) {
+                    // Paquete a medio escribir cuando se detuvo la aplicación
+                    Files.deleteIfExists(path);
+                    continue;
+                }
+                Matcher matcher = INDEX_NAME.matcher(fileName);
+                if (matcher.matches()) {
+                    load(YearMonth.parse(matcher.group(1)));
+                }
+            }
+        }
+    }
+
+    List<BundleEntry> entries() {
+        lock.readLock().lock();
+        try {
+            return indexes.values().stream().flatMap(index -> index.values().stream()).toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    Optional<BundleEntry> entry(String documentNumber) {
+        lock.readLock().lock();
+        try {
+            YearMonth month = locations.get(documentNumber);
+            return month == null ? Optional.empty() : Optional.of(indexes.get(month).get(documentNumber));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    boolean contains(String documentNumber) {
+        lock.readLock().lock();
+        try {
+            return locations.containsKey(documentNumber);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    Optional<byte[]> get(String documentNumber, QuoteBlobStore.BlobType type) throws IOException {
+        if (type == QuoteBlobStore.BlobType.SUMMARY) {
+            // El resumen va en el índice
+            return Optional.empty();
+        }
+        lock.readLock().lock();
+        try {
+            YearMonth month = locations.get(documentNumber);
+            if (month == null) {
+                return Optional.empty();
+            }
+            ZipFile bundle = bundles.get(month);
+            ZipEntry entry = bundle.getEntry(documentNumber + extension(type));
+            if (entry == null) {
+                return Optional.empty();
+            }
+            try (InputStream in = bundle.getInputStream(entry)) {
+                return Optional.of(in.readAllBytes());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Agrega cotizaciones al paquete del mes (creándolo si no existe). Las que ya
+     * estaban en el paquete se reemplazan.
+     */
+    synchronized void pack(YearMonth month, List<BundleEntry> added, BlobSource source) throws IOException {
+        Map<String, BundleEntry> entries = new TreeMap<>(currentIndex(month));
+        Map<String, BundleEntry> fresh = new HashMap<>();
+        for (BundleEntry entry : added) {
+            entries.put(entry.documentNumber(), entry);
+            fresh.put(entry.documentNumber(), entry);
+        }
+        rewrite(month, entries, fresh, source);
+        log.info("Paquete {} actualizado: {} cotizaciones agregadas, {} en total", month, added.size(), entries.size());
+    }
+
+    /**
+     * Quita una cotización de su paquete.
+     *
+     * @return {@code true} si estaba archivada
+     */
+    synchronized boolean delete(String documentNumber) throws IOException {
+        return deleteAll(List.of(documentNumber)) > 0;
+    }
+
+    /**
+     * Quita varias cotizaciones con una sola escritura del índice por mes.
+     *
+     * @return cantidad de cotizaciones que estaban archivadas
+     */
+    synchronized int deleteAll(Collection<String> documentNumbers) throws IOException {
+        Map<YearMonth, List<String>> byMonth = new TreeMap<>();
+        lock.readLock().lock();
+        try {
+            for (String documentNumber : documentNumbers) {
+                YearMonth month = locations.get(documentNumber);
+                if (month != null) {
+                    byMonth.computeIfAbsent(month, key -> new ArrayList<>()).add(documentNumber);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        int removed = 0;
+        for (Map.Entry<YearMonth, List<String>> month : byMonth.entrySet()) {
+            Map<String, BundleEntry> entries = new TreeMap<>(currentIndex(month.getKey()));
+            month.getValue().forEach(entries::remove);
+            if (entries.isEmpty()) {
+                rewrite(month.getKey(), entries, Map.of(), (number, type) -> Optional.empty());
+            } else {
+                rewriteIndex(month.getKey(), entries);
+            }
+            removed += month.getValue().size();
+        }
+        return removed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (ZipFile bundle : bundles.values()) {
+                bundle.close();
+            }
+            bundles.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Map<String, BundleEntry> currentIndex(YearMonth month) {
+        lock.readLock().lock();
+        try {
+            return new HashMap<>(indexes.getOrDefault(month, Map.of()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Escribe el paquete y el índice del mes en temporales (los blobs de {@code fresh}
+     * se leen de {@code source}, el resto se copia del paquete actual) y los publica.
+     * Mientras se escribe el paquete anterior sigue atendiendo lecturas.
+     */
+    private void rewrite(YearMonth month, Map<String, BundleEntry> entries, Map<String, BundleEntry> fresh,
+                         BlobSource source) throws IOException {
+        Path bundlePath = bundlePath(month);
+        Path indexPath = indexPath(month);
+        if (entries.isEmpty()) {
+            lock.writeLock().lock();
+            try {
+                closeBundle(month);
+                Files.deleteIfExists(indexPath);
+                Files.deleteIfExists(bundlePath);
+                forget(month);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return;
+        }
+
+        Path bundleTemp = tempPath(bundlePath);
+        List<BundleEntry> written = new ArrayList<>(entries.size());
+        AtomicFileWriter.StagedFile stagedIndex;
+        try {
+            try (OutputStream out = Files.newOutputStream(bundleTemp, StandardOpenOption.CREATE_NEW);
+                 ZipOutputStream zip = new ZipOutputStream(out)) {
+                for (BundleEntry entry : entries.values()) {
+                    boolean copied = fresh.containsKey(entry.documentNumber())
+                            ? writeFresh(zip, entry, source)
+                            : copyExisting(zip, month, entry);
+                    if (copied) {
+                        written.add(entry);
+                    }
+                }
+            }
+            force(bundleTemp);
+            written.sort(Comparator.comparing(BundleEntry::documentNumber));
+            stagedIndex = fileWriter.stage(indexPath, objectMapper.writeValueAsBytes(written));
+        } catch (IOException e) {
+            Files.deleteIfExists(bundleTemp);
+            throw e;
+        }
+        // Primero el paquete: un índice nuevo nunca apunta a un paquete viejo
+        List<AtomicFileWriter.StagedFile> staged = List.of(
+                new AtomicFileWriter.StagedFile(bundleTemp, bundlePath), stagedIndex);
+
+        lock.writeLock().lock();
+        try {
+            // Se cierra antes del rename: en Windows no se puede reemplazar un archivo abierto
+            closeBundle(month);
+            fileWriter.commit(staged);
+        } finally {
+            try {
+                forget(month);
+                load(month);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Publica un índice nuevo del mes sin tocar el paquete: las entradas que ya no
+     * figuran dejan de ser visibles aunque sus blobs sigan en el ZIP.
+     */
+    private void rewriteIndex(YearMonth month, Map<String, BundleEntry> entries) throws IOException {
+        AtomicFileWriter.StagedFile stagedIndex = fileWriter.stage(indexPath(month),
+                objectMapper.writeValueAsBytes(new ArrayList<>(entries.values())));
+        lock.writeLock().lock();
+        try {
+            fileWriter.commit(List.of(stagedIndex));
+            Map<String, BundleEntry> previous = indexes.put(month, new HashMap<>(entries));
+            if (previous != null) {
+                previous.keySet().stream()
+                        .filter(number -> !entries.containsKey(number))
+                        .forEach(number -> locations.remove(number, month));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Los PDF ya vienen comprimidos: se guardan sin volver a comprimir
+    private boolean writeFresh(ZipOutputStream zip, BundleEntry entry, BlobSource source) throws IOException {
+        Optional<byte[]> pdf = source.read(entry.documentNumber(), QuoteBlobStore.BlobType.PDF);
+        if (pdf.isEmpty()) {
+            return false;
+        }
+        zip.setLevel(Deflater.NO_COMPRESSION);
+        zip.putNextEntry(new ZipEntry(entry.documentNumber() + PDF));
+        zip.write(pdf.get());
+        zip.closeEntry();
+        Optional<byte[]> json = source.read(entry.documentNumber(), QuoteBlobStore.BlobType.JSON);
+        if (json.isPresent()) {
+            zip.setLevel(Deflater.BEST_COMPRESSION);
+            zip.putNextEntry(new ZipEntry(entry.documentNumber() + JSON));
+            zip.write(json.get());
+            zip.closeEntry();
+        }
+        return true;
+    }
+
+    private boolean copyExisting(ZipOutputStream zip, YearMonth month, BundleEntry entry) throws IOException {
+        ZipFile bundle = bundles.get(month);
+        ZipEntry pdf = bundle.getEntry(entry.documentNumber() + PDF);
+        if (pdf == null) {
+            return false;
+        }
+        copyEntry(zip, bundle, pdf, Deflater.NO_COMPRESSION);
+        ZipEntry json = bundle.getEntry(entry.documentNumber() + JSON);
+        if (json != null) {
+            copyEntry(zip, bundle, json, Deflater.BEST_COMPRESSION);
+        }
+        return true;
+    }
+
+    private static void copyEntry(ZipOutputStream zip, ZipFile bundle, ZipEntry entry, int level) throws IOException {
+        zip.setLevel(level);
+        zip.putNextEntry(new ZipEntry(entry.getName()));
+        try (InputStream in = bundle.getInputStream(entry)) {
+            in.transferTo(zip);
+        }
+        zip.closeEntry();
+    }
+
+    private void load(YearMonth month) throws IOException {
+        Path bundlePath = bundlePath(month);
+        if (!Files.exists(bundlePath)) {
+            log.warn("Índice de archivo {} sin su paquete, se ignora", month);
+            return;
+        }
+        List<BundleEntry> entries = objectMapper.readValue(indexPath(month).toFile(), new TypeReference<>() {
+        });
+        Map<String, BundleEntry> index = new HashMap<>();
+        for (BundleEntry entry : entries) {
+            index.put(entry.documentNumber(), entry);
+            locations.put(entry.documentNumber(), month);
+        }
+        indexes.put(month, index);
+        bundles.put(month, new ZipFile(bundlePath.toFile()));
+    }
+
+    private void forget(YearMonth month) {
+        Map<String, BundleEntry> index = indexes.remove(month);
+        if (index != null) {
+            index.keySet().forEach(number -> locations.remove(number, month));
+        }
+    }
+
+    private void closeBundle(YearMonth month) throws IOException {
+        ZipFile bundle = bundles.remove(month);
+        if (bundle != null) {
+            bundle.close();
+        }
+    }
+
+    private static void force(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    private Path bundlePath(YearMonth month) {
+        return directory.resolve(month + ".zip");
+    }
+
+    private Path indexPath(YearMonth month) {
+        return directory.resolve(month + ".index.json");
+    }
+
+    private static Path tempPath(Path target) {
+        return target.resolveSibling("." + target.getFileName() + "." + UUID.randomUUID() + ".tmp");
+    }
+
+    private static String extension(QuoteBlobStore.BlobType type) {
+        return type == QuoteBlobStore.BlobType.PDF ? PDF : JSON;
+    }
+}
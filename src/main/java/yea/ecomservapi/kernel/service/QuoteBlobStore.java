@@ -0,0 +1,77 @@
+package yea.ecomservapi.kernel.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Backend donde se guardan los blobs de cada cotización: PDF, JSON y resumen.
+ * <p>
+ * {@link FileStorageService} mantiene por encima el índice de resúmenes, la
+ * numeración, la compresión y la escritura diferida; el backend solo guarda y
+ * devuelve los bytes tal como le llegan. Se elige con {@code app.storage.engine}:
+ * <ul>
+ *     <li>{@code files}: un archivo por blob ({@link FileSystemBlobStore})</li>
+ *     <li>{@code segments}: segmentos de solo-agregado leídos con mmap ({@link SegmentBlobStore})</li>
+ *     <li>{@code memory}: solo en memoria, para pruebas y mediciones ({@link InMemoryBlobStore})</li>
+ * </ul>
+ */
+interface QuoteBlobStore extends Closeable {
+
+    /**
+     * Tipos de blob en el orden en que se escriben: el PDF, que es lo que hace
+     * visible a la cotización, va al final.
+     */
+    enum BlobType {
+        JSON, SUMMARY, PDF
+    }
+
+    /**
+     * Datos del PDF de una cotización para el índice, sin leer su contenido.
+     * {@code createdAt} ordena el listado; {@code lastModified} es la última vez que
+     * se escribió el PDF.
+     */
+    record BlobInfo(String documentNumber, long pdfSize, Instant createdAt, Instant lastModified) {
+    }
+
+    /**
+     * Guarda los blobs recibidos de un documento, reemplazando las versiones
+     * anteriores. Los blobs se escriben en el orden de {@link BlobType}.
+     */
+    void put(String documentNumber, Map<BlobType, byte[]> blobs) throws IOException;
+
+    Optional<byte[]> get(String documentNumber, BlobType type) throws IOException;
+
+    /**
+     * Ubicación en disco del blob para enviarlo en streaming. Vacío si no existe o
+     * si el backend no guarda archivos.
+     */
+    Optional<FileStorageService.StoredFile> locate(String documentNumber, BlobType type);
+
+    boolean contains(String documentNumber, BlobType type);
+
+    /**
+     * Datos del PDF de un documento, si tiene PDF.
+     */
+    Optional<BlobInfo> info(String documentNumber);
+
+    /**
+     * Todos los documentos que tienen PDF.
+     */
+    List<BlobInfo> list() throws IOException;
+
+    /**
+     * Elimina un solo blob del documento (por ejemplo, un resumen que quedó obsoleto).
+     */
+    void remove(String documentNumber, BlobType type) throws IOException;
+
+    /**
+     * Elimina todos los blobs del documento.
+     *
+     * @return {@code true} si existía el PDF o el JSON
+     */
+    boolean delete(String documentNumber) throws IOException;
+}
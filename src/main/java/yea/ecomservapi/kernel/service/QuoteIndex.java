@@ -0,0 +1,470 @@
+package yea.ecomservapi.kernel.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import yea.ecomservapi.kernel.service.FileStorageService.ItemDetail;
+import yea.ecomservapi.kernel.service.FileStorageService.QuoteFileInfo;
+import yea.ecomservapi.kernel.service.FileStorageService.QuotePage;
+import yea.ecomservapi.kernel.service.FileStorageService.QuoteQuery;
+import yea.ecomservapi.kernel.service.FileStorageService.QuoteSearchResult;
+import yea.ecomservapi.kernel.service.FileStorageService.QuoteStats;
+import yea.ecomservapi.kernel.service.FileStorageService.QuoteSummary;
+import yea.ecomservapi.kernel.service.FileStorageService.StoredFile;
+import yea.ecomservapi.kernel.service.FileStorageService.SummarySidecar;
+import yea.ecomservapi.modules.quoting.service.QuoteService;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Índice en memoria de las cotizaciones: resúmenes por número de documento, búsqueda
+ * de texto y totales. Se construye una vez al iniciar y {@link FileStorageService} lo
+ * actualiza en cada escritura o eliminación (y el WatchService con los cambios de
+ * otras instancias), de modo que los listados no tocan el disco.
+ * <p>
+ * Las actualizaciones de un documento se hacen con su lock tomado.
+ */
+@Slf4j
+class QuoteIndex {
+
+    /**
+     * Lectura de un blob tal como está guardado, incluidas las cotizaciones en la cola
+     * de escritura diferida y las archivadas.
+     */
+    @FunctionalInterface
+    interface BlobReader {
+        Optional<byte[]> read(String documentNumber, QuoteBlobStore.BlobType type) throws IOException;
+    }
+
+    private static final int STATS_TOP_PRODUCTS = 20;
+
+    private final QuoteBlobStore blobStore;
+    // Solo con app.storage.engine=files
+    private final QuoteArchive archive;
+    private final BlobReader reader;
+    private final ObjectMapper objectMapper;
+
+    private final ConcurrentMap<String, QuoteSummary> summaries = new ConcurrentHashMap<>();
+
+    // Búsqueda de texto sobre el JSON guardado; se mantiene junto con los resúmenes
+    private final QuoteSearchIndex searchIndex = new QuoteSearchIndex();
+
+    // Totales por mes, cliente, moneda y vendedor; también se mantienen junto con los resúmenes
+    private final QuoteStatistics statistics = new QuoteStatistics(STATS_TOP_PRODUCTS);
+
+    // Con el WatchService activo: versión de los blobs de cada documento al indexarlo,
+    // para ignorar los eventos de las escrituras de esta instancia
+    private final ConcurrentMap<String, List<Optional<StoredFile>>> indexedVersions = new ConcurrentHashMap<>();
+    private volatile boolean trackVersions;
+
+    QuoteIndex(QuoteBlobStore blobStore, QuoteArchive archive, BlobReader reader, ObjectMapper objectMapper) {
+        this.blobStore = blobStore;
+        this.archive = archive;
+        this.reader = reader;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Reconstruye el índice completo a partir del almacenamiento y el archivo.
+     * Se usa al iniciar y cuando el WatchService pierde eventos (OVERFLOW).
+     */
+    void rebuild() {
+        Map<String, QuoteSummary> fresh = new HashMap<>();
+        if (archive != null) {
+            for (QuoteArchive.BundleEntry entry : archive.entries()) {
+                fresh.put(entry.documentNumber(), toQuoteSummary(entry));
+            }
+        }
+        try {
+            // Una copia en la carpeta principal reemplaza a la archivada
+            for (QuoteBlobStore.BlobInfo info : blobStore.list()) {
+                fresh.put(info.documentNumber(), toQuoteSummary(info));
+            }
+        } catch (IOException | UncheckedIOException e) {
+            log.error("Error al construir índice de cotizaciones", e);
+            return;
+        }
+        summaries.keySet().retainAll(fresh.keySet());
+        summaries.putAll(fresh);
+        log.info("Índice de cotizaciones construido: {} documentos", fresh.size());
+        rebuildContent(fresh.values());
+    }
+
+    /**
+     * Vuelve a leer el documento del almacenamiento (o del archivo) y actualiza su
+     * resumen, la búsqueda y los totales; si ya no existe, lo quita.
+     */
+    void refresh(String documentNumber) {
+        if (trackVersions) {
+            indexedVersions.put(documentNumber, storedVersion(documentNumber));
+        }
+        blobStore.info(documentNumber).map(this::toQuoteSummary)
+                .or(() -> archivedSummary(documentNumber))
+                .ifPresentOrElse(
+                        found -> {
+                            summaries.put(documentNumber, found);
+                            refreshContent(found);
+                        },
+                        () -> {
+                            summaries.remove(documentNumber);
+                            removeContent(documentNumber);
+                        });
+    }
+
+    void remove(String documentNumber) {
+        summaries.remove(documentNumber);
+        indexedVersions.remove(documentNumber);
+        removeContent(documentNumber);
+    }
+
+    /**
+     * Publica el resumen de una cotización que todavía no está en el almacenamiento
+     * (escritura diferida). Devuelve el resumen anterior para {@link #restore}.
+     */
+    QuoteSummary publish(String documentNumber, QuoteSummary summary) {
+        return summaries.put(documentNumber, summary);
+    }
+
+    void restore(String documentNumber, QuoteSummary previous) {
+        if (previous != null) {
+            summaries.put(documentNumber, previous);
+        } else {
+            summaries.remove(documentNumber);
+        }
+    }
+
+    /**
+     * Indexa el JSON de una cotización publicada con {@link #publish}, si sigue en el
+     * índice (una eliminación pudo quitarla entretanto).
+     */
+    void indexPublished(String documentNumber, byte[] json) {
+        QuoteSummary published = summaries.get(documentNumber);
+        if (published != null) {
+            indexContent(published, json);
+        }
+    }
+
+    /**
+     * Desde aquí {@link #refresh} recuerda la versión de los blobs indexados, para que
+     * {@link #changedSinceIndexed} distinga las escrituras de otras instancias.
+     */
+    void trackStoredVersions() {
+        trackVersions = true;
+    }
+
+    // Ubicación, tamaño y fecha de cada blob: distingue otra escritura sin leer el contenido
+    boolean changedSinceIndexed(String documentNumber) {
+        return !storedVersion(documentNumber).equals(indexedVersions.get(documentNumber));
+    }
+
+    private List<Optional<StoredFile>> storedVersion(String documentNumber) {
+        return Arrays.stream(QuoteBlobStore.BlobType.values())
+                .map(type -> blobStore.locate(documentNumber, type))
+                .toList();
+    }
+
+    Collection<QuoteSummary> summaries() {
+        return summaries.values();
+    }
+
+    Collection<String> documentNumbers() {
+        return summaries.keySet();
+    }
+
+    int highestNumber() {
+        return summaries.keySet().stream()
+                .map(DocumentNumberAllocator::sequenceOf)
+                .flatMap(Optional::stream)
+                .max(Integer::compareTo)
+                .orElse(0);
+    }
+
+    List<QuoteFileInfo> listFiles() {
+        return summaries.values().stream()
+                .filter(summary -> DocumentNumberAllocator.sequenceOf(summary.documentNumber()).isPresent())
+                .map(summary -> new QuoteFileInfo(
+                        summary.documentNumber(),
+                        summary.documentNumber() + ".pdf",
+                        summary.fileSize(),
+                        summary.createdAt()))
+                .sorted(Comparator.comparing(QuoteFileInfo::documentNumber).reversed())
+                .toList();
+    }
+
+    List<QuoteSummary> listNewestFirst() {
+        return summaries.values().stream()
+                .sorted(Comparator.comparing(QuoteSummary::createdAt).reversed())
+                .toList();
+    }
+
+    /**
+     * Página de resúmenes filtrada y ordenada con paginación por cursor (keyset): el
+     * cursor codifica la clave de orden del último elemento entregado, por lo que las
+     * páginas siguientes no dependen de offsets y se mantienen estables aunque se
+     * agreguen cotizaciones. Solo se conservan {@code limit + 1} candidatos durante el
+     * recorrido del índice.
+     */
+    QuotePage find(QuoteQuery query) {
+        Comparator<QuoteSummary> order = query.sort().comparator();
+        if (query.descending()) {
+            order = order.reversed();
+        }
+        Optional<QuoteSummary> after = Optional.ofNullable(query.cursor())
+                .filter(cursor -> !cursor.isBlank())
+                .map(cursor -> decodeCursor(cursor, query));
+
+        int capacity = query.limit() + 1;
+        PriorityQueue<QuoteSummary> candidates = new PriorityQueue<>(capacity + 1, order.reversed());
+        for (QuoteSummary summary : summaries.values()) {
+            if (!query.matches(summary)) {
+                continue;
+            }
+            if (after.isPresent() && order.compare(summary, after.get()) <= 0) {
+                continue;
+            }
+            candidates.add(summary);
+            if (candidates.size() > capacity) {
+                candidates.poll();
+            }
+        }
+
+        List<QuoteSummary> items = new ArrayList<>(candidates);
+        items.sort(order);
+        String nextCursor = null;
+        if (items.size() > query.limit()) {
+            items = items.subList(0, query.limit());
+            nextCursor = encodeCursor(items.get(items.size() - 1), query);
+        }
+        return new QuotePage(List.copyOf(items), nextCursor);
+    }
+
+    List<QuoteSearchResult> search(String query, int limit) {
+        List<QuoteSearchResult> results = new ArrayList<>();
+        for (QuoteSearchIndex.SearchHit hit : searchIndex.search(query, limit)) {
+            QuoteSummary summary = summaries.get(hit.documentNumber());
+            if (summary != null) {
+                results.add(new QuoteSearchResult(summary, hit.score()));
+            }
+        }
+        return results;
+    }
+
+    QuoteStats stats() {
+        return statistics.snapshot();
+    }
+
+    /**
+     * Recalcula los totales (y la búsqueda) desde el JSON guardado de cada cotización.
+     */
+    QuoteStats rebuildStats() {
+        rebuildContent(List.copyOf(summaries.values()));
+        return statistics.snapshot();
+    }
+
+    private String encodeCursor(QuoteSummary last, QuoteQuery query) {
+        String raw = String.join("\n",
+                query.sort().name(),
+                query.descending() ? "desc" : "asc",
+                last.documentNumber(),
+                last.createdAt().toString(),
+                last.total().toPlainString());
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private QuoteSummary decodeCursor(String cursor, QuoteQuery query) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\n", -1);
+            if (parts.length != 5
+                    || !parts[0].equals(query.sort().name())
+                    || !parts[1].equals(query.descending() ? "desc" : "asc")) {
+                throw new IllegalArgumentException("Cursor no corresponde al orden solicitado");
+            }
+            // Resumen "sonda": solo lleva los campos que intervienen en el orden
+            return new QuoteSummary(parts[2], null, null, new BigDecimal(parts[4]), 0, List.of(), null,
+                    LocalDateTime.parse(parts[3]), 0);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Cursor de paginación inválido", e);
+        }
+    }
+
+    /**
+     * Vuelve a calcular la búsqueda y los totales leyendo el JSON de cada cotización.
+     */
+    private void rebuildContent(Collection<QuoteSummary> indexed) {
+        long start = System.nanoTime();
+        searchIndex.retainAll(indexed.stream().map(QuoteSummary::documentNumber).toList());
+        statistics.clear();
+        for (QuoteSummary summary : indexed) {
+            refreshContent(summary);
+        }
+        log.info("Índices de búsqueda y totales construidos: {} documentos en {} ms",
+                searchIndex.size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void refreshContent(QuoteSummary summary) {
+        byte[] json = null;
+        try {
+            Optional<byte[]> stored = reader.read(summary.documentNumber(), QuoteBlobStore.BlobType.JSON);
+            if (stored.isPresent()) {
+                json = BlobCompression.decode(stored.get());
+            }
+        } catch (IOException e) {
+            log.warn("No se pudo leer JSON de {} para búsqueda y totales: {}", summary.documentNumber(), e.getMessage());
+        }
+        indexContent(summary, json);
+    }
+
+    // Sin JSON la cotización igual suma a los totales con los datos del resumen
+    private void indexContent(QuoteSummary summary, byte[] json) {
+        JsonNode tree = null;
+        if (json != null) {
+            try {
+                tree = objectMapper.readTree(json);
+            } catch (IOException e) {
+                log.warn("JSON ilegible en {}: {}", summary.documentNumber(), e.getMessage());
+            }
+        }
+        if (tree != null) {
+            searchIndex.put(summary.documentNumber(), tree);
+        } else {
+            searchIndex.remove(summary.documentNumber());
+        }
+        statistics.put(summary, tree);
+    }
+
+    private void removeContent(String documentNumber) {
+        searchIndex.remove(documentNumber);
+        statistics.remove(documentNumber);
+    }
+
+    private QuoteSummary toQuoteSummary(QuoteBlobStore.BlobInfo info) {
+        LocalDateTime createdAt = LocalDateTime.ofInstant(info.createdAt(), ZoneId.systemDefault());
+        byte[] summary = null;
+        try {
+            summary = reader.read(info.documentNumber(), QuoteBlobStore.BlobType.SUMMARY).orElse(null);
+        } catch (IOException ex) {
+            log.warn("No se pudo leer resumen para {}: {}", info.documentNumber(), ex.getMessage());
+        }
+        // El JSON completo solo se lee si la cotización no tiene resumen guardado
+        return summarize(info.documentNumber(), info.pdfSize(), createdAt, summary, null);
+    }
+
+    private Optional<QuoteSummary> archivedSummary(String documentNumber) {
+        return archive == null ? Optional.empty() : archive.entry(documentNumber).map(this::toQuoteSummary);
+    }
+
+    private QuoteSummary toQuoteSummary(QuoteArchive.BundleEntry entry) {
+        return entry.summary().toSummary(entry.documentNumber(), entry.createdAt(), entry.pdfSize());
+    }
+
+    /**
+     * Resumen a partir del archivo .summary o, si falta o no se puede leer, del JSON
+     * (el recibido o, si es {@code null}, el guardado).
+     */
+    QuoteSummary summarize(String documentNumber, long fileSize, LocalDateTime createdAt,
+                           byte[] summary, byte[] json) {
+        if (summary != null && summary.length > 0) {
+            try {
+                return objectMapper.readValue(summary, SummarySidecar.class)
+                        .toSummary(documentNumber, createdAt, fileSize);
+            } catch (IOException ex) {
+                log.warn("Resumen ilegible para {}, se calcula desde el JSON: {}", documentNumber, ex.getMessage());
+            }
+        }
+        if (json == null) {
+            try {
+                json = reader.read(documentNumber, QuoteBlobStore.BlobType.JSON).orElse(null);
+            } catch (IOException ex) {
+                log.warn("No se pudo leer JSON para {}: {}", documentNumber, ex.getMessage());
+            }
+        }
+        return summarizeJson(documentNumber, fileSize, createdAt, json);
+    }
+
+    /**
+     * Resumen de una cotización sin archivo .summary (guardada antes de que existiera
+     * o modificada con {@link FileStorageService#saveJson}). Replica el redondeo de
+     * {@code QuoteService.buildQuoteDTO} para que el total coincida con el PDF.
+     */
+    private QuoteSummary summarizeJson(String documentNumber, long fileSize, LocalDateTime createdAt, byte[] json) {
+        String clientName = "";
+        String currency = "PEN";
+        BigDecimal subtotal = BigDecimal.ZERO;
+        int itemCount = 0;
+        List<ItemDetail> itemDetails = new ArrayList<>();
+        LocalDate documentDate = null;
+
+        try {
+            if (json != null) {
+                var jsonNode = objectMapper.readTree(BlobCompression.decode(json));
+
+                if (jsonNode.has("clientName")) {
+                    clientName = jsonNode.get("clientName").asText("");
+                }
+                if (jsonNode.has("currency")) {
+                    currency = jsonNode.get("currency").asText("PEN");
+                }
+                if (jsonNode.hasNonNull("documentDate")) {
+                    documentDate = parseDate(jsonNode.get("documentDate").asText());
+                }
+                if (jsonNode.has("items") && jsonNode.get("items").isArray()) {
+                    var items = jsonNode.get("items");
+                    itemCount = items.size();
+                    for (var item : items) {
+                        BigDecimal quantity = item.has("quantity") ? item.get("quantity").decimalValue() : BigDecimal.ZERO;
+                        BigDecimal unitPrice = item.has("unitPrice") ? item.get("unitPrice").decimalValue() : BigDecimal.ZERO;
+                        BigDecimal itemSubtotal = quantity.multiply(unitPrice).setScale(2, RoundingMode.HALF_UP);
+                        if (itemDetails.size() < SummarySidecar.ITEMS && item.has("description")) {
+                            itemDetails.add(new ItemDetail(
+                                    SummarySidecar.truncate(item.get("description").asText("")), quantity, itemSubtotal));
+                        }
+                        subtotal = subtotal.add(itemSubtotal);
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            log.warn("No se pudo leer JSON para {}: {}", documentNumber, ex.getMessage());
+        }
+
+        BigDecimal igv = subtotal.multiply(QuoteService.IGV_RATE).setScale(2, RoundingMode.HALF_UP);
+        return new QuoteSummary(
+                documentNumber,
+                clientName,
+                currency,
+                subtotal.add(igv),
+                itemCount,
+                List.copyOf(itemDetails),
+                documentDate,
+                createdAt,
+                fileSize);
+    }
+
+    private static LocalDate parseDate(String value) {
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
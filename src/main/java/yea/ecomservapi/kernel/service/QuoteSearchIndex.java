@@ -0,0 +1,380 @@
+package yea.ecomservapi.kernel.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * Índice invertido en memoria sobre el JSON guardado de cada cotización (el
+ * {@code CreateQuoteRequest}): términos de los ítems, códigos, referencia, notas y
+ * datos del cliente.
+ * <p>
+ * El texto se normaliza para español: minúsculas, sin tildes ni diéresis
+ * ("tubería" y "TUBERIA" son el mismo término), sin palabras vacías y con los
+ * plurales regulares reducidos al singular ("válvulas" → "valvula").
+ * <p>
+ * Cada documento indexado recibe un id interno; reindexar o eliminar una cotización
+ * solo marca su id anterior como borrado. Cuando los ids borrados superan a los
+ * vigentes se depuran las listas de ocurrencias y se renumeran los documentos, así
+ * los ids (y los arreglos de puntaje de cada búsqueda) se mantienen proporcionales a
+ * las cotizaciones vigentes. Las búsquedas toman el lock de lectura y pueden correr
+ * en paralelo.
+ */
+class QuoteSearchIndex {
+
+    record SearchHit(String documentNumber, double score) {
+    }
+
+    // Peso de cada campo del JSON: una coincidencia en el código vale más que en las notas
+    private static final Map<String, Integer> FIELD_WEIGHTS = Map.ofEntries(
+            Map.entry("documentNumber", 3),
+            Map.entry("clientName", 2),
+            Map.entry("clientRuc", 3),
+            Map.entry("clientReference", 3),
+            Map.entry("clientEmail", 1),
+            Map.entry("vendedor", 1),
+            Map.entry("atte", 1),
+            Map.entry("paymentCondition", 1),
+            Map.entry("deliveryTime", 1),
+            Map.entry("warranty", 1),
+            Map.entry("notes", 1));
+    private static final Map<String, Integer> ITEM_FIELD_WEIGHTS = Map.of(
+            "code", 3,
+            "description", 1);
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "al", "con", "de", "del", "el", "en", "la", "las", "lo", "los", "o", "para",
+            "por", "que", "se", "sin", "su", "un", "una", "y");
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+
+    // Parámetros de BM25
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    // El último término de la consulta también busca por prefijo desde este largo
+    private static final int MIN_PREFIX_LENGTH = 3;
+
+    /**
+     * Ocurrencias de un término: ids de documento crecientes y la frecuencia
+     * (ponderada por campo) en cada uno.
+     */
+    private static final class Postings {
+        private int[] docIds = new int[4];
+        private int[] frequencies = new int[4];
+        private int size;
+
+        private void add(int docId, int frequency) {
+            if (size == docIds.length) {
+                docIds = Arrays.copyOf(docIds, size * 2);
+                frequencies = Arrays.copyOf(frequencies, size * 2);
+            }
+            docIds[size] = docId;
+            frequencies[size] = frequency;
+            size++;
+        }
+    }
+
+    private record IndexedDocument(String documentNumber, int length) {
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<String, Postings> postings = new TreeMap<>();
+    private final Map<String, Integer> idsByNumber = new HashMap<>();
+    private final List<IndexedDocument> documents = new ArrayList<>();
+    private long totalLength;
+    private int deleted;
+
+    void put(String documentNumber, JsonNode json) {
+        Map<String, Integer> frequencies = termFrequencies(json);
+        lock.writeLock().lock();
+        try {
+            removeLocked(documentNumber);
+            int docId = documents.size();
+            int length = 0;
+            for (Map.Entry<String, Integer> term : frequencies.entrySet()) {
+                postings.computeIfAbsent(term.getKey(), key -> new Postings()).add(docId, term.getValue());
+                length += term.getValue();
+            }
+            documents.add(new IndexedDocument(documentNumber, length));
+            idsByNumber.put(documentNumber, docId);
+            totalLength += length;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(String documentNumber) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(documentNumber);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deja en el índice solo los documentos indicados.
+     */
+    void retainAll(Collection<String> documentNumbers) {
+        Set<String> keep = Set.copyOf(documentNumbers);
+        lock.writeLock().lock();
+        try {
+            for (String documentNumber : List.copyOf(idsByNumber.keySet())) {
+                if (!keep.contains(documentNumber)) {
+                    removeLocked(documentNumber);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return idsByNumber.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Cotizaciones que contienen todos los términos de la consulta, ordenadas por
+     * relevancia (BM25). El último término también coincide por prefijo, para
+     * búsquedas mientras se escribe.
+     */
+    List<SearchHit> search(String query, int limit) {
+        List<String> terms = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+        if (terms.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        String last = terms.get(terms.size() - 1);
+        // El prefijo se toma de la palabra tal como se escribió, sin reducir el plural
+        String prefix = lastWord(query);
+        if (STOP_WORDS.contains(prefix)) {
+            prefix = "";
+        }
+
+        lock.readLock().lock();
+        try {
+            int liveDocuments = idsByNumber.size();
+            if (liveDocuments == 0) {
+                return List.of();
+            }
+            double averageLength = (double) totalLength / liveDocuments;
+
+            // Por cada término de la consulta, las listas de los términos del índice que coinciden
+            List<List<Postings>> matches = new ArrayList<>(terms.size());
+            for (String term : terms) {
+                List<Postings> lists = new ArrayList<>();
+                Postings exact = postings.get(term);
+                if (exact != null) {
+                    lists.add(exact);
+                }
+                if (term.equals(last) && prefix.length() >= MIN_PREFIX_LENGTH) {
+                    for (Map.Entry<String, Postings> entry
+                            : postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false).entrySet()) {
+                        if (!entry.getKey().equals(term)) {
+                            lists.add(entry.getValue());
+                        }
+                    }
+                }
+                if (lists.isEmpty()) {
+                    return List.of();
+                }
+                matches.add(lists);
+            }
+            // Se recorre primero el término más raro: los demás solo suman puntaje
+            matches.sort(Comparator.comparingInt(QuoteSearchIndex::occurrences));
+
+            // Puntaje y cantidad de términos encontrados por id de documento
+            double[] scores = new double[documents.size()];
+            int[] matched = new int[documents.size()];
+            int[] candidates = new int[0];
+            int candidateCount = 0;
+            for (int i = 0; i < matches.size(); i++) {
+                List<Postings> lists = matches.get(i);
+                double idf = idf(occurrences(lists), liveDocuments);
+                if (i == 0) {
+                    candidates = new int[occurrences(lists)];
+                }
+                for (Postings list : lists) {
+                    for (int j = 0; j < list.size; j++) {
+                        int docId = list.docIds[j];
+                        IndexedDocument document = documents.get(docId);
+                        // Solo siguen en carrera los que tuvieron todos los términos anteriores
+                        if (document == null || matched[docId] < i) {
+                            continue;
+                        }
+                        if (i == 0 && matched[docId] == 0) {
+                            candidates[candidateCount++] = docId;
+                        }
+                        scores[docId] += idf * bm25(list.frequencies[j], document.length(), averageLength);
+                        matched[docId] = i + 1;
+                    }
+                }
+            }
+
+            PriorityQueue<SearchHit> top = new PriorityQueue<>(limit + 1, Comparator.comparingDouble(SearchHit::score));
+            for (int c = 0; c < candidateCount; c++) {
+                int docId = candidates[c];
+                if (matched[docId] < matches.size()) {
+                    continue;
+                }
+                top.add(new SearchHit(documents.get(docId).documentNumber(), scores[docId]));
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+            List<SearchHit> hits = new ArrayList<>(top);
+            hits.sort(Comparator.comparingDouble(SearchHit::score).reversed()
+                    .thenComparing(SearchHit::documentNumber));
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Separa el texto en términos normalizados. Se usa igual para indexar y para
+     * consultar.
+     */
+    static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        List<String> terms = new ArrayList<>();
+        for (String word : SEPARATORS.split(fold(text))) {
+            if (word.isEmpty() || STOP_WORDS.contains(word)) {
+                continue;
+            }
+            terms.add(singular(word));
+        }
+        return terms;
+    }
+
+    private static String fold(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return DIACRITICS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    // Plurales regulares: "valvulas" → "valvula", "motores" → "motor"
+    private static String singular(String word) {
+        int length = word.length();
+        if (length > 4 && word.endsWith("es") && "rlnd".indexOf(word.charAt(length - 3)) >= 0) {
+            return word.substring(0, length - 2);
+        }
+        if (length > 3 && word.charAt(length - 1) == 's' && "aeiou".indexOf(word.charAt(length - 2)) >= 0) {
+            return word.substring(0, length - 1);
+        }
+        return word;
+    }
+
+    private static String lastWord(String query) {
+        String[] words = SEPARATORS.split(fold(query).trim());
+        return words.length == 0 ? "" : words[words.length - 1];
+    }
+
+    private static Map<String, Integer> termFrequencies(JsonNode json) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        if (json == null || !json.isObject()) {
+            return frequencies;
+        }
+        FIELD_WEIGHTS.forEach((field, weight) -> addTerms(frequencies, json.path(field), weight));
+        for (JsonNode item : json.path("items")) {
+            ITEM_FIELD_WEIGHTS.forEach((field, weight) -> addTerms(frequencies, item.path(field), weight));
+        }
+        return frequencies;
+    }
+
+    private static void addTerms(Map<String, Integer> frequencies, JsonNode value, int weight) {
+        if (value.isTextual()) {
+            for (String term : tokenize(value.asText())) {
+                frequencies.merge(term, weight, Integer::sum);
+            }
+        }
+    }
+
+    private void removeLocked(String documentNumber) {
+        Integer docId = idsByNumber.remove(documentNumber);
+        if (docId == null) {
+            return;
+        }
+        IndexedDocument document = documents.set(docId, null);
+        totalLength -= document.length();
+        deleted++;
+        if (deleted > 1024 && deleted > idsByNumber.size()) {
+            purge();
+        }
+    }
+
+    // Quita los documentos borrados y renumera los vigentes de forma contigua. La
+    // renumeración conserva el orden, así las listas de ocurrencias siguen crecientes
+    private void purge() {
+        int[] newIds = new int[documents.size()];
+        int next = 0;
+        for (int docId = 0; docId < documents.size(); docId++) {
+            IndexedDocument document = documents.get(docId);
+            if (document == null) {
+                newIds[docId] = -1;
+                continue;
+            }
+            newIds[docId] = next;
+            documents.set(next, document);
+            idsByNumber.put(document.documentNumber(), next);
+            next++;
+        }
+        documents.subList(next, documents.size()).clear();
+
+        var iterator = postings.values().iterator();
+        while (iterator.hasNext()) {
+            Postings list = iterator.next();
+            int kept = 0;
+            for (int i = 0; i < list.size; i++) {
+                int docId = newIds[list.docIds[i]];
+                if (docId >= 0) {
+                    list.docIds[kept] = docId;
+                    list.frequencies[kept] = list.frequencies[i];
+                    kept++;
+                }
+            }
+            list.size = kept;
+            if (kept == 0) {
+                iterator.remove();
+            }
+        }
+        deleted = 0;
+    }
+
+    private static int occurrences(List<Postings> lists) {
+        int total = 0;
+        for (Postings list : lists) {
+            total += list.size;
+        }
+        return total;
+    }
+
+    private static double idf(int documentFrequency, int documents) {
+        return Math.log(1 + (documents - documentFrequency + 0.5) / (documentFrequency + 0.5));
+    }
+
+    private static double bm25(int frequency, int length, double averageLength) {
+        return frequency * (K1 + 1) / (frequency + K1 * (1 - B + B * length / averageLength));
+    }
+}
@@ -0,0 +1,125 @@
+package yea.ecomservapi.kernel.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import yea.ecomservapi.kernel.exception.RenderBusyException;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tiempos por etapa de la generación de cotizaciones ({@code quote.generate.stage}) y
+ * total de {@code /generate} ({@code quote.generate}), con histograma para calcular
+ * percentiles en Prometheus ({@code /actuator/prometheus}).
+ * <p>
+ * Etiquetas: {@code stage}, {@code items} (rango de cantidad de ítems) y
+ * {@code outcome} ({@code success}, {@code busy} si no hubo lugar para generar, o
+ * {@code error}).
+ * <p>
+ * Cada servicio pasa el {@link MeterRegistry} que recibe de Spring (el de Prometheus);
+ * las pruebas y los benchmarks pasan uno propio.
+ */
+public final class QuoteStageMetrics {
+
+    public static final String STAGE_TIMER = "quote.generate.stage";
+    public static final String TOTAL_TIMER = "quote.generate";
+
+    public static final String DOCUMENT_NUMBER = "document_number";
+    public static final String BUILD_DTO = "build_dto";
+    public static final String RENDER_QUEUE = "render_queue";
+    public static final String TEMPLATE = "template";
+    public static final String LAYOUT = "layout";
+    public static final String SERIALIZE = "serialize";
+    public static final String STORE_JSON = "store_json";
+    public static final String STORE = "store";
+    public static final String DB_RECORD = "db_record";
+
+    public static final String SUCCESS = "success";
+    public static final String BUSY = "busy";
+    public static final String ERROR = "error";
+
+    // Desde 1 ms hasta 1 minuto: acota la cantidad de buckets del histograma
+    private static final Duration MIN_EXPECTED = Duration.ofMillis(1);
+    private static final Duration MAX_EXPECTED = Duration.ofMinutes(1);
+
+    @FunctionalInterface
+    public interface Stage<T, E extends Exception> {
+        T run() throws E;
+    }
+
+    private QuoteStageMetrics() {
+    }
+
+    /**
+     * Ejecuta {@code stage} y registra cuánto tardó, con el resultado según termine
+     * normalmente o con excepción.
+     */
+    public static <T, E extends Exception> T time(MeterRegistry registry, String name, int items,
+                                                  Stage<T, E> stage) throws E {
+        long start = System.nanoTime();
+        String outcome = ERROR;
+        try {
+            T result = stage.run();
+            outcome = SUCCESS;
+            return result;
+        } catch (RuntimeException e) {
+            outcome = outcomeOf(e);
+            throw e;
+        } finally {
+            record(registry, name, items, outcome, System.nanoTime() - start);
+        }
+    }
+
+    public static void record(MeterRegistry registry, String name, int items, String outcome, long nanos) {
+        timer(STAGE_TIMER, "Duración de cada etapa de la generación de una cotización", items, outcome)
+                .tag("stage", name)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public static void recordTotal(MeterRegistry registry, String mode, int items, String outcome, long nanos) {
+        timer(TOTAL_TIMER, "Duración total de /api/quotes/generate", items, outcome)
+                .tag("mode", mode)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public static String outcomeOf(Throwable e) {
+        return e instanceof RenderBusyException ? BUSY : ERROR;
+    }
+
+    public static int itemCount(QuoteDTO quote) {
+        return quote.getItems() != null ? quote.getItems().size() : 0;
+    }
+
+    /**
+     * Rango de cantidad de ítems. Los cortes siguen el costo del PDF: una página, varias,
+     * y desde 300 la generación por partes.
+     */
+    static String itemBucket(int items) {
+        if (items <= 10) {
+            return "1-10";
+        }
+        if (items <= 50) {
+            return "11-50";
+        }
+        if (items <= 300) {
+            return "51-300";
+        }
+        if (items <= 1000) {
+            return "301-1000";
+        }
+        return "1001+";
+    }
+
+    private static Timer.Builder timer(String name, String description, int items, String outcome) {
+        return Timer.builder(name)
+                .description(description)
+                .tag("items", itemBucket(items))
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(MIN_EXPECTED)
+                .maximumExpectedValue(MAX_EXPECTED);
+    }
+}
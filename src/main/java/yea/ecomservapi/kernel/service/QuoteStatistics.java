@@ -0,0 +1,324 @@
+package yea.ecomservapi.kernel.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Totales de cotizaciones por mes, cliente, moneda y vendedor, y los productos más
+ * cotizados. Cada cotización aporta una {@link Contribution}; guardarla de nuevo resta
+ * el aporte anterior y suma el nuevo, así los totales nunca se recalculan desde el
+ * almacenamiento salvo con una reconstrucción explícita.
+ * <p>
+ * Los montos se acumulan por moneda: sumar soles y dólares no tiene sentido. La
+ * consulta devuelve una foto inmutable que se arma una vez por cada cambio. Los
+ * acumuladores se mantienen ordenados al actualizarse (cada cambio saca al
+ * acumulador del orden y lo vuelve a insertar), así armar la foto solo recorre los
+ * grupos y toma los primeros productos, sin ordenar nada.
+ */
+class QuoteStatistics {
+
+    private static final String UNKNOWN = "(sin dato)";
+
+    /**
+     * Lo que una cotización suma a los totales.
+     */
+    private record Contribution(
+            String month,
+            String client,
+            String currency,
+            String vendedor,
+            BigDecimal total,
+            List<ProductLine> products) {
+    }
+
+    private record ProductLine(String key, String code, String description, BigDecimal quantity, BigDecimal amount) {
+    }
+
+    private static final class Accumulator {
+        private final String key;
+        private long quotes;
+        private final Map<String, BigDecimal> amounts = new TreeMap<>();
+        // Se arma al pedirse y se descarta con cada cambio
+        private FileStorageService.GroupTotals totals;
+
+        private Accumulator(String key) {
+            this.key = key;
+        }
+
+        private void add(String currency, BigDecimal amount, int sign) {
+            quotes += sign;
+            BigDecimal updated = amounts.getOrDefault(currency, BigDecimal.ZERO).add(sign > 0 ? amount : amount.negate());
+            if (updated.signum() == 0 && sign < 0) {
+                amounts.remove(currency);
+            } else {
+                amounts.put(currency, updated);
+            }
+            totals = null;
+        }
+
+        private Map<String, BigDecimal> amounts() {
+            return Collections.unmodifiableMap(new TreeMap<>(amounts));
+        }
+
+        private FileStorageService.GroupTotals toTotals() {
+            if (totals == null) {
+                totals = new FileStorageService.GroupTotals(key, quotes, amounts());
+            }
+            return totals;
+        }
+    }
+
+    /**
+     * Acumuladores de un agrupamiento por clave y en el orden en que se consultan.
+     */
+    private static final class Group {
+        private final Map<String, Accumulator> byKey = new HashMap<>();
+        private final TreeSet<Accumulator> ordered;
+
+        private Group(Comparator<Accumulator> order) {
+            this.ordered = new TreeSet<>(order);
+        }
+
+        private void add(String key, Contribution contribution, int sign) {
+            Accumulator accumulator = byKey.get(key);
+            if (accumulator == null) {
+                accumulator = new Accumulator(key);
+                byKey.put(key, accumulator);
+            } else {
+                // Se saca antes de cambiar: su posición depende de la cantidad
+                ordered.remove(accumulator);
+            }
+            accumulator.add(contribution.currency(), contribution.total(), sign);
+            if (accumulator.quotes == 0) {
+                byKey.remove(key);
+            } else {
+                ordered.add(accumulator);
+            }
+        }
+
+        private List<FileStorageService.GroupTotals> totals() {
+            List<FileStorageService.GroupTotals> totals = new ArrayList<>(ordered.size());
+            for (Accumulator accumulator : ordered) {
+                totals.add(accumulator.toTotals());
+            }
+            return totals;
+        }
+
+        private void clear() {
+            byKey.clear();
+            ordered.clear();
+        }
+    }
+
+    private static final class ProductAccumulator {
+        private final String key;
+        private final Accumulator totals;
+        private String code;
+        private String description;
+        private BigDecimal quantity = BigDecimal.ZERO;
+
+        private ProductAccumulator(String key) {
+            this.key = key;
+            this.totals = new Accumulator(key);
+        }
+    }
+
+    private static final Comparator<Accumulator> BY_KEY = Comparator.comparing(accumulator -> accumulator.key);
+    // Por cantidad de cotizaciones, de mayor a menor
+    private static final Comparator<Accumulator> BY_QUOTES =
+            Comparator.comparingLong((Accumulator accumulator) -> accumulator.quotes).reversed()
+                    .thenComparing(accumulator -> accumulator.key);
+    private static final Comparator<ProductAccumulator> PRODUCT_RANKING =
+            Comparator.comparingLong((ProductAccumulator product) -> product.totals.quotes).reversed()
+                    .thenComparing(product -> product.quantity, Comparator.reverseOrder())
+                    .thenComparing(product -> product.description, Comparator.nullsLast(Comparator.naturalOrder()))
+                    .thenComparing(product -> product.key);
+
+    private final Map<String, Contribution> contributions = new HashMap<>();
+    private final Group byMonth = new Group(BY_KEY);
+    private final Group byClient = new Group(BY_QUOTES);
+    private final Group byCurrency = new Group(BY_KEY);
+    private final Group byVendedor = new Group(BY_QUOTES);
+    private final Map<String, ProductAccumulator> byProduct = new HashMap<>();
+    private final TreeSet<ProductAccumulator> productRanking = new TreeSet<>(PRODUCT_RANKING);
+    private final int topProducts;
+
+    private volatile FileStorageService.QuoteStats snapshot;
+
+    QuoteStatistics(int topProducts) {
+        this.topProducts = topProducts;
+    }
+
+    /**
+     * Registra (o reemplaza) el aporte de una cotización. El total, la moneda y el
+     * cliente salen del resumen; la fecha, el vendedor y los ítems, del JSON.
+     */
+    synchronized void put(FileStorageService.QuoteSummary summary, JsonNode json) {
+        Contribution contribution = contributionOf(summary, json);
+        Contribution previous = contributions.put(summary.documentNumber(), contribution);
+        if (previous != null) {
+            apply(previous, -1);
+        }
+        apply(contribution, 1);
+        snapshot = null;
+    }
+
+    synchronized void remove(String documentNumber) {
+        Contribution previous = contributions.remove(documentNumber);
+        if (previous != null) {
+            apply(previous, -1);
+            snapshot = null;
+        }
+    }
+
+    synchronized void clear() {
+        contributions.clear();
+        byMonth.clear();
+        byClient.clear();
+        byCurrency.clear();
+        byVendedor.clear();
+        byProduct.clear();
+        productRanking.clear();
+        snapshot = null;
+    }
+
+    FileStorageService.QuoteStats snapshot() {
+        FileStorageService.QuoteStats current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (snapshot == null) {
+                snapshot = buildSnapshot();
+            }
+            return snapshot;
+        }
+    }
+
+    private void apply(Contribution contribution, int sign) {
+        byMonth.add(contribution.month(), contribution, sign);
+        byClient.add(contribution.client(), contribution, sign);
+        byCurrency.add(contribution.currency(), contribution, sign);
+        byVendedor.add(contribution.vendedor(), contribution, sign);
+        for (ProductLine line : contribution.products()) {
+            ProductAccumulator product = byProduct.get(line.key());
+            if (product == null) {
+                product = new ProductAccumulator(line.key());
+                byProduct.put(line.key(), product);
+            } else {
+                productRanking.remove(product);
+            }
+            product.totals.add(contribution.currency(), line.amount(), sign);
+            product.quantity = sign > 0 ? product.quantity.add(line.quantity()) : product.quantity.subtract(line.quantity());
+            if (sign > 0) {
+                product.code = line.code();
+                product.description = line.description();
+            }
+            if (product.totals.quotes == 0) {
+                byProduct.remove(line.key());
+            } else {
+                productRanking.add(product);
+            }
+        }
+    }
+
+    private FileStorageService.QuoteStats buildSnapshot() {
+        BigDecimal zero = BigDecimal.ZERO;
+        List<FileStorageService.ProductTotals> products = new ArrayList<>(topProducts);
+        for (ProductAccumulator product : productRanking) {
+            if (products.size() == topProducts) {
+                break;
+            }
+            products.add(new FileStorageService.ProductTotals(product.code, product.description,
+                    product.totals.quotes, product.quantity.max(zero), product.totals.amounts()));
+        }
+        return new FileStorageService.QuoteStats(
+                contributions.size(),
+                byMonth.totals(),
+                byClient.totals(),
+                byCurrency.totals(),
+                byVendedor.totals(),
+                List.copyOf(products));
+    }
+
+    private static Contribution contributionOf(FileStorageService.QuoteSummary summary, JsonNode json) {
+        JsonNode request = json != null ? json : MissingNode.getInstance();
+        // Un producto repetido en la misma cotización cuenta una sola vez
+        Map<String, ProductLine> products = new LinkedHashMap<>();
+        for (JsonNode item : request.path("items")) {
+            String code = text(item.path("code"));
+            String description = text(item.path("description"));
+            if (code == null && description == null) {
+                continue;
+            }
+            String key = code != null ? "code:" + code.toUpperCase(Locale.ROOT)
+                    : "description:" + description.toLowerCase(Locale.ROOT);
+            BigDecimal quantity = decimal(item.path("quantity"));
+            BigDecimal amount = decimal(item.path("subtotal"));
+            if (amount.signum() == 0) {
+                // El request guarda cantidad y precio; el subtotal se calcula como en QuoteService
+                amount = quantity.multiply(decimal(item.path("unitPrice"))).setScale(2, RoundingMode.HALF_UP);
+            }
+            products.merge(key, new ProductLine(key, code, description, quantity, amount), (first, second) ->
+                    new ProductLine(key, first.code(), first.description(),
+                            first.quantity().add(second.quantity()), first.amount().add(second.amount())));
+        }
+        String client = summary.clientName() == null || summary.clientName().isBlank()
+                ? UNKNOWN : summary.clientName().trim();
+        String vendedor = text(request.path("vendedor"));
+        return new Contribution(
+                monthOf(summary, request),
+                client,
+                summary.currency() != null ? summary.currency() : "PEN",
+                vendedor != null ? vendedor : UNKNOWN,
+                summary.total() != null ? summary.total() : BigDecimal.ZERO,
+                List.copyOf(products.values()));
+    }
+
+    // Mes de la fecha del documento; si no tiene, el de creación del archivo
+    private static String monthOf(FileStorageService.QuoteSummary summary, JsonNode request) {
+        String documentDate = text(request.path("documentDate"));
+        if (documentDate != null) {
+            try {
+                return YearMonth.from(LocalDate.parse(documentDate)).toString();
+            } catch (DateTimeParseException ignored) {
+                // Se usa la fecha de creación
+            }
+        }
+        return YearMonth.from(summary.createdAt()).toString();
+    }
+
+    private static String text(JsonNode value) {
+        return value.isTextual() && !value.asText().isBlank() ? value.asText().trim() : null;
+    }
+
+    private static BigDecimal decimal(JsonNode value) {
+        if (value.isNumber()) {
+            return value.decimalValue();
+        }
+        if (value.isTextual()) {
+            try {
+                return new BigDecimal(value.asText().trim());
+            } catch (NumberFormatException ignored) {
+                return BigDecimal.ZERO;
+            }
+        }
+        return BigDecimal.ZERO;
+    }
+}
@@ -0,0 +1,216 @@
+package yea.ecomservapi.kernel.service;
+
+import com.openhtmltopdf.extend.FSCacheEx;
+import com.openhtmltopdf.extend.FSCacheValue;
+import com.openhtmltopdf.extend.FSStream;
+import com.openhtmltopdf.pdfboxout.PdfRendererBuilder;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Imágenes fijas del PDF (logo, firma y marcas del pie) preparadas una sola vez al
+ * iniciar. La plantilla las referencia como {@code asset:logo} y el renderizador las
+ * pide a este registro, en lugar de recibir cada vez los PNG leídos del classpath y
+ * codificados en base64 dentro del HTML.
+ * <p>
+ * Los PNG se convierten a JPEG sobre fondo blanco (el fondo del documento): PDFBox
+ * incrusta un JPEG tal cual, mientras que un PNG lo decodifica y lo vuelve a
+ * comprimir en cada PDF. Las métricas de fuentes también se comparten entre PDFs.
+ * <p>
+ * Con {@code app.pdf.assets.reload-on-change=true} (desarrollo) se vuelve a cargar la
+ * imagen cuyo archivo cambió, revisando como mucho una vez por segundo.
+ */
+@Slf4j
+@Component
+public class RenderAssetRegistry {
+
+    static final String PROTOCOL = "asset";
+
+    private static final Map<String, String> ASSETS = Map.of(
+            "logo", "static/logo-ecomserv.png",
+            "firma", "static/firma_digital.png",
+            "footer", "static/footer-brands.png");
+
+    private static final long RELOAD_CHECK_INTERVAL_MS = 1000;
+
+    @Value("${app.pdf.assets.jpeg-quality:0.92}")
+    private float jpegQuality;
+
+    @Value("${app.pdf.assets.reload-on-change:false}")
+    private boolean reloadOnChange;
+
+    private record Asset(byte[] content, long lastModified) {
+    }
+
+    private final ConcurrentMap<String, Asset> assets = new ConcurrentHashMap<>();
+    private final FSCacheEx<String, FSCacheValue> fontMetrics = new SharedCache<>();
+    private volatile long lastReloadCheck;
+
+    @PostConstruct
+    public void load() {
+        ASSETS.forEach((name, path) -> assets.put(name, prepare(path)));
+        log.info("Recursos del PDF listos: {} imágenes, {} KB",
+                assets.size(), assets.values().stream().mapToLong(asset -> asset.content().length).sum() / 1024);
+    }
+
+    /**
+     * URI con la que la plantilla referencia un recurso.
+     */
+    public String uri(String name) {
+        if (!ASSETS.containsKey(name)) {
+            throw new IllegalArgumentException("Recurso de PDF desconocido: " + name);
+        }
+        return PROTOCOL + ":" + name;
+    }
+
+    /**
+     * Hace que el renderizador resuelva las URI {@code asset:} desde este registro y
+     * comparta el caché de métricas de fuentes.
+     */
+    public void configure(PdfRendererBuilder builder) {
+        builder.useProtocolsStreamImplementation(this::open, PROTOCOL);
+        builder.useCacheStore(PdfRendererBuilder.CacheStore.PDF_FONT_METRICS, fontMetrics);
+    }
+
+    byte[] content(String name) {
+        if (reloadOnChange) {
+            reloadChanged();
+        }
+        Asset asset = assets.get(name);
+        return asset != null ? asset.content() : null;
+    }
+
+    private FSStream open(String uri) {
+        byte[] content = content(uri.substring(PROTOCOL.length() + 1));
+        if (content == null) {
+            log.warn("Recurso de PDF no encontrado: {}", uri);
+            return null;
+        }
+        return new FSStream() {
+            @Override
+            public InputStream getStream() {
+                return new ByteArrayInputStream(content);
+            }
+
+            @Override
+            public Reader getReader() {
+                return new InputStreamReader(getStream(), StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+    private void reloadChanged() {
+        long now = System.currentTimeMillis();
+        if (now - lastReloadCheck < RELOAD_CHECK_INTERVAL_MS) {
+            return;
+        }
+        lastReloadCheck = now;
+        ASSETS.forEach((name, path) -> {
+            Asset current = assets.get(name);
+            if (current != null && lastModified(new ClassPathResource(path)) != current.lastModified()) {
+                assets.put(name, prepare(path));
+                log.info("Recurso de PDF recargado: {}", path);
+            }
+        });
+    }
+
+    private Asset prepare(String path) {
+        ClassPathResource resource = new ClassPathResource(path);
+        try (InputStream in = resource.getInputStream()) {
+            byte[] original = in.readAllBytes();
+            return new Asset(toJpeg(original, path), lastModified(resource));
+        } catch (IOException e) {
+            log.error("No se pudo cargar recurso de PDF: {}", path, e);
+            throw new UncheckedIOException("Error al cargar recursos del PDF", e);
+        }
+    }
+
+    private byte[] toJpeg(byte[] original, String path) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(original));
+        if (image == null) {
+            log.warn("Formato de imagen no reconocido, se usa sin convertir: {}", path);
+            return original;
+        }
+        BufferedImage opaque = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = opaque.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+            graphics.drawImage(image, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(opaque, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    // Dentro de un jar no hay fecha de modificación: el recurso nunca se recarga
+    private static long lastModified(ClassPathResource resource) {
+        try {
+            return resource.lastModified();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static final class SharedCache<K, V> implements FSCacheEx<K, V> {
+
+        private final ConcurrentMap<K, V> values = new ConcurrentHashMap<>();
+
+        @Override
+        public void put(K key, V value) {
+            values.put(key, value);
+        }
+
+        @Override
+        public V get(K key, Callable<? extends V> loader) {
+            return values.computeIfAbsent(key, k -> {
+                try {
+                    return loader.call();
+                } catch (Exception e) {
+                    throw new IllegalStateException("No se pudo cargar " + k, e);
+                }
+            });
+        }
+
+        @Override
+        public V get(K key) {
+            return values.get(key);
+        }
+    }
+}
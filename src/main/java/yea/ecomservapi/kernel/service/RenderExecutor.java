@@ -0,0 +1,157 @@
+package yea.ecomservapi.kernel.service;
+
+import yea.ecomservapi.kernel.exception.RenderBusyException;
+import yea.ecomservapi.kernel.exception.RenderDeadlineException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hilos dedicados a generar PDF, con una cola acotada. El hilo del request solo
+ * espera el resultado: como mucho {@code threads} PDF se generan a la vez y el resto
+ * de la API conserva CPU y memoria aunque lleguen muchas vistas previas juntas.
+ * <p>
+ * Con la cola llena se lanza {@link RenderBusyException}; si el PDF no está listo
+ * dentro del plazo (contando la espera en cola), {@link RenderDeadlineException}. Un
+ * trabajo que pasó el plazo esperando en cola se descarta sin generarse.
+ */
+class RenderExecutor implements AutoCloseable {
+
+    private static final long SHUTDOWN_TIMEOUT_MS = 10_000;
+
+    private final ThreadPoolExecutor pool;
+    private final int threads;
+    private final int queueCapacity;
+    private final long deadlineNanos;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder queueWaitNanos = new LongAdder();
+    private final LongAccumulator maxQueueWaitNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder renderNanos = new LongAdder();
+    private final AtomicLong started = new AtomicLong();
+
+    RenderExecutor(int threads, int queueCapacity, long deadlineMillis) {
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+        this.deadlineNanos = TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+        AtomicInteger sequence = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                task -> {
+                    Thread thread = new Thread(task, "pdf-render-" + sequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Ejecuta la tarea en el pool y espera su resultado, con el plazo configurado. Las
+     * excepciones no verificadas de la tarea se relanzan tal cual.
+     */
+    <T> T execute(Callable<T> task) {
+        return execute(task, deadlineNanos);
+    }
+
+    /**
+     * Igual que {@link #execute(Callable)} con un plazo propio en nanosegundos; 0 o
+     * menos espera sin límite (solo la cola llena rechaza).
+     */
+    <T> T execute(Callable<T> task, long deadlineNanos) {
+        long submittedAt = System.nanoTime();
+        Future<T> future;
+        try {
+            future = pool.submit(() -> {
+                long startedAt = System.nanoTime();
+                long waited = startedAt - submittedAt;
+                queueWaitNanos.add(waited);
+                maxQueueWaitNanos.accumulate(waited);
+                started.incrementAndGet();
+                if (deadlineNanos > 0 && waited >= deadlineNanos) {
+                    // El request ya respondió 429: generar el PDF sería trabajo perdido
+                    return null;
+                }
+                try {
+                    return task.call();
+                } finally {
+                    renderNanos.add(System.nanoTime() - startedAt);
+                    completed.increment();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw busy("Demasiados PDF en proceso, reintente en unos segundos");
+        }
+
+        try {
+            if (deadlineNanos <= 0) {
+                return future.get();
+            }
+            return future.get(deadlineNanos - (System.nanoTime() - submittedAt), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            expired.increment();
+            RenderBusyException busy = busy("El PDF no se generó dentro del plazo, reintente en unos segundos");
+            throw new RenderDeadlineException(busy.getMessage(), busy.getRetryAfterSeconds());
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Generación de PDF interrumpida", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new RuntimeException("Error al generar PDF", e.getCause());
+        }
+    }
+
+    PdfGeneratorService.RenderStats stats() {
+        long startedCount = started.get();
+        long completedCount = completed.sum();
+        return new PdfGeneratorService.RenderStats(
+                threads,
+                queueCapacity,
+                pool.getQueue().size(),
+                pool.getActiveCount(),
+                completedCount,
+                rejected.sum(),
+                expired.sum(),
+                startedCount == 0 ? 0 : queueWaitNanos.sum() / startedCount / 1e6,
+                maxQueueWaitNanos.get() / 1e6,
+                completedCount == 0 ? 0 : renderNanos.sum() / completedCount / 1e6);
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+        try {
+            if (!pool.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Estimación de cuándo se libera lugar: lo que hay en cola repartido entre los hilos
+    private RenderBusyException busy(String message) {
+        long completedCount = completed.sum();
+        double averageSeconds = completedCount == 0 ? 1 : renderNanos.sum() / (double) completedCount / 1e9;
+        int pending = pool.getQueue().size() + pool.getActiveCount();
+        int retryAfter = (int) Math.ceil(pending * averageSeconds / threads);
+        return new RenderBusyException(message, Math.max(1, retryAfter));
+    }
+}
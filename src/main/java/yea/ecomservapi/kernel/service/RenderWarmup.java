@@ -0,0 +1,166 @@
+package yea.ecomservapi.kernel.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import yea.ecomservapi.modules.quoting.domain.Currency;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+import yea.ecomservapi.modules.quoting.dto.QuoteItemDTO;
+import yea.ecomservapi.modules.quoting.service.QuoteService;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calentamiento de la generación de PDF al iniciar. El primer PDF después de un
+ * despliegue tarda varias veces más que los siguientes: la plantilla se compila en
+ * el primer uso, las clases de openhtmltopdf y PDFBox se cargan recién entonces y el
+ * JIT todavía no optimizó nada.
+ * <p>
+ * Como {@link ApplicationRunner} corre antes de que Spring marque la aplicación como
+ * lista para recibir tráfico. Genera una cotización de ejemplo varias veces, lo que
+ * deja compilada la plantilla en el caché de Thymeleaf y cargadas las métricas de
+ * fuentes y las imágenes. Mientras tanto {@code /health} responde 503 con el avance,
+ * así el balanceador no envía pedidos a una instancia fría.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RenderWarmup implements ApplicationRunner {
+
+    public enum State {
+        PENDING, RUNNING, READY, FAILED, DISABLED
+    }
+
+    public record WarmupStatus(
+            State state,
+            int completed,
+            int total,
+            long elapsedMs,
+            Long firstRenderMs,
+            Long lastRenderMs) {
+
+        /**
+         * Lista para recibir tráfico. Si el calentamiento falla la instancia igual se
+         * habilita: el resto de la API funciona y el error queda en el log.
+         */
+        public boolean ready() {
+            return state == State.READY || state == State.FAILED || state == State.DISABLED;
+        }
+    }
+
+    private final PdfGeneratorService pdfGeneratorService;
+
+    @Value("${app.pdf.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.pdf.warmup.iterations:20}")
+    private int iterations;
+
+    // Pasado este tiempo se termina aunque falten iteraciones
+    @Value("${app.pdf.warmup.max-seconds:30}")
+    private int maxSeconds;
+
+    private volatile WarmupStatus status = new WarmupStatus(State.PENDING, 0, 0, 0, null, null);
+
+    @Override
+    public void run(ApplicationArguments args) {
+        warmUp();
+    }
+
+    public WarmupStatus status() {
+        return status;
+    }
+
+    void warmUp() {
+        if (!enabled || iterations <= 0) {
+            status = new WarmupStatus(State.DISABLED, 0, 0, 0, null, null);
+            return;
+        }
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(maxSeconds);
+        status = new WarmupStatus(State.RUNNING, 0, iterations, 0, null, null);
+        log.info("Calentando generación de PDF: {} iteraciones", iterations);
+
+        Long first = null;
+        Long last = null;
+        int completed = 0;
+        try {
+            while (completed < iterations && System.nanoTime() < deadline) {
+                // Alterna monedas para recorrer ambas ramas de la plantilla
+                QuoteDTO quote = sampleQuote(completed % 2 == 0 ? Currency.PEN : Currency.USD);
+                long renderStart = System.nanoTime();
+                pdfGeneratorService.generateQuotePdf(quote);
+                last = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - renderStart);
+                if (first == null) {
+                    first = last;
+                }
+                completed++;
+                status = new WarmupStatus(State.RUNNING, completed, iterations, elapsedMs(start), first, last);
+            }
+            status = new WarmupStatus(State.READY, completed, iterations, elapsedMs(start), first, last);
+            log.info("Generación de PDF lista en {} ms: {} PDF, primero {} ms, último {} ms",
+                    elapsedMs(start), completed, first, last);
+        } catch (RuntimeException e) {
+            status = new WarmupStatus(State.FAILED, completed, iterations, elapsedMs(start), first, last);
+            log.error("Falló el calentamiento de la generación de PDF", e);
+        }
+    }
+
+    private static long elapsedMs(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    // Cotización de ejemplo con datos en todos los campos que muestra la plantilla
+    private static QuoteDTO sampleQuote(Currency currency) {
+        List<QuoteItemDTO> items = new ArrayList<>();
+        BigDecimal subtotal = BigDecimal.ZERO;
+        for (int i = 1; i <= 12; i++) {
+            BigDecimal quantity = BigDecimal.valueOf(i);
+            BigDecimal unitPrice = new BigDecimal("125.50").multiply(BigDecimal.valueOf(i));
+            BigDecimal lineTotal = quantity.multiply(unitPrice).setScale(2, RoundingMode.HALF_UP);
+            subtotal = subtotal.add(lineTotal);
+            items.add(QuoteItemDTO.builder()
+                    .code("WARM-" + i)
+                    .description("Válvula de compuerta bridada de " + i + " pulgadas, cuerpo de hierro dúctil")
+                    .unitMeasure("UND")
+                    .quantity(quantity)
+                    .unitPrice(unitPrice)
+                    .subtotal(lineTotal)
+                    .build());
+        }
+        BigDecimal igv = subtotal.multiply(QuoteService.IGV_RATE).setScale(2, RoundingMode.HALF_UP);
+        LocalDate today = LocalDate.now();
+        return QuoteDTO.builder()
+                .documentNumber("WARMUP")
+                .documentDate(today)
+                .validUntil(today.plusDays(4))
+                .currency(currency)
+                .clientName("Cliente de calentamiento S.A.C.")
+                .clientRuc("20000000001")
+                .clientAddress("Av. Ejemplo 123 - Lima")
+                .clientPhone("014000000")
+                .clientEmail("calentamiento@example.com")
+                .clientReference("Calentamiento")
+                .clientMobile("999999999")
+                .vendedor("Sistema")
+                .atte("Compras")
+                .items(items)
+                .subtotal(subtotal)
+                .igv(igv)
+                .total(subtotal.add(igv))
+                .paymentCondition("CONTADO")
+                .validityDays(4)
+                .deliveryTime("SEGUN STOCK INMEDIATO")
+                .warranty("12 MESES")
+                .notes("Cotización generada al iniciar para calentar la generación de PDF")
+                .build();
+    }
+}
@@ -0,0 +1,109 @@
+package yea.ecomservapi.kernel.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Backend sobre {@link SegmentStore}: los blobs se agregan a segmentos grandes y se
+ * leen de los segmentos mapeados en memoria, sin una llamada al sistema por lectura.
+ * Pensado para almacenes grandes con muchas más lecturas que escrituras.
+ */
+class SegmentBlobStore implements QuoteBlobStore {
+
+    private final SegmentStore segmentStore;
+
+    SegmentBlobStore(Path directory, long maxSegmentSize) throws IOException {
+        this.segmentStore = new SegmentStore(directory, maxSegmentSize);
+    }
+
+    @Override
+    public void put(String documentNumber, Map<BlobType, byte[]> blobs) throws IOException {
+        Map<SegmentStore.BlobType, byte[]> records = new LinkedHashMap<>();
+        for (BlobType type : BlobType.values()) {
+            byte[] content = blobs.get(type);
+            if (content != null) {
+                records.put(segmentType(type), content);
+            }
+        }
+        segmentStore.put(documentNumber, records);
+    }
+
+    @Override
+    public Optional<byte[]> get(String documentNumber, BlobType type) throws IOException {
+        // Almacenes anteriores marcaban un resumen quitado con un blob vacío
+        return segmentStore.get(documentNumber, segmentType(type))
+                .filter(content -> type != BlobType.SUMMARY || content.length > 0);
+    }
+
+    @Override
+    public Optional<FileStorageService.StoredFile> locate(String documentNumber, BlobType type) {
+        return segmentStore.locate(documentNumber, segmentType(type))
+                .map(blob -> new FileStorageService.StoredFile(blob.segment(), blob.offset(), blob.length(),
+                        Instant.ofEpochMilli(blob.writtenAt()), isGzipSlice(blob)));
+    }
+
+    @Override
+    public boolean contains(String documentNumber, BlobType type) {
+        return segmentStore.contains(documentNumber, segmentType(type));
+    }
+
+    @Override
+    public Optional<BlobInfo> info(String documentNumber) {
+        return segmentStore.locate(documentNumber, SegmentStore.BlobType.PDF)
+                .map(blob -> new BlobInfo(documentNumber, blob.length(), Instant.ofEpochMilli(blob.createdAt()),
+                        Instant.ofEpochMilli(blob.writtenAt())));
+    }
+
+    @Override
+    public List<BlobInfo> list() {
+        return segmentStore.entries().stream()
+                .filter(entry -> entry.pdfLength() >= 0)
+                .map(entry -> new BlobInfo(entry.documentNumber(), entry.pdfLength(),
+                        Instant.ofEpochMilli(entry.createdAt()), Instant.ofEpochMilli(entry.pdfWrittenAt())))
+                .toList();
+    }
+
+    @Override
+    public void remove(String documentNumber, BlobType type) throws IOException {
+        segmentStore.remove(documentNumber, segmentType(type));
+    }
+
+    @Override
+    public boolean delete(String documentNumber) throws IOException {
+        return segmentStore.delete(documentNumber);
+    }
+
+    SegmentStore.CompactionResult compact() throws IOException {
+        return segmentStore.compact();
+    }
+
+    @Override
+    public void close() throws IOException {
+        segmentStore.close();
+    }
+
+    private static SegmentStore.BlobType segmentType(BlobType type) {
+        return switch (type) {
+            case PDF -> SegmentStore.BlobType.PDF;
+            case JSON -> SegmentStore.BlobType.JSON;
+            case SUMMARY -> SegmentStore.BlobType.SUMMARY;
+        };
+    }
+
+    private static boolean isGzipSlice(SegmentStore.BlobLocation blob) {
+        if (blob.length() < 2) {
+            return false;
+        }
+        try (InputStream in = new FileSliceResource(blob.segment(), blob.offset(), 2).getInputStream()) {
+            return BlobCompression.isGzip(in.readNBytes(2));
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
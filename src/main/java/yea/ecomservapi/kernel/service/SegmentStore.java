@@ -0,0 +1,887 @@
+package yea.ecomservapi.kernel.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Motor de almacenamiento que agrega los PDF y JSON de las cotizaciones a archivos
+ * de segmento grandes en lugar de crear dos archivos pequeños por cotización.
+ * <p>
+ * Cada registro del segmento tiene el formato
+ * {@code [magic][tipo][largo clave][largo datos][timestamp][clave][datos][crc32]}.
+ * La ubicación del último PDF, JSON y resumen de cada documento se guarda en un índice hash
+ * de direccionamiento abierto mapeado en memoria ({@code index.dat}). Los segmentos
+ * también se leen mapeados en modo solo-lectura, así que una lectura es una búsqueda
+ * en el índice más una copia desde memoria, sin llamadas al sistema.
+ * <p>
+ * El índice es un dato derivado: si la aplicación no se cerró limpiamente se
+ * reconstruye recorriendo los segmentos, y un registro final truncado se descarta.
+ * Las eliminaciones agregan una lápida, y quitar un solo blob agrega un registro
+ * {@code CLEAR} con el código de su tipo; {@link #compact()} copia los registros
+ * vivos de los segmentos con mucho espacio muerto y los elimina.
+ * <p>
+ * Una escritura vuelve cuando sus registros están sincronizados en disco. El fsync
+ * se hace fuera del lock de escritura y se comparte: las escrituras que llegan
+ * mientras otro hilo sincroniza quedan cubiertas por el siguiente fsync.
+ */
+@Slf4j
+class SegmentStore implements Closeable {
+
+    enum BlobType {
+        PDF(1), JSON(2), TOMBSTONE(3), SUMMARY(4), CLEAR(5);
+
+        private final byte code;
+
+        BlobType(int code) {
+            this.code = (byte) code;
+        }
+
+        static BlobType fromCode(byte code) {
+            for (BlobType type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+            throw new IllegalArgumentException("Tipo de registro desconocido: " + code);
+        }
+    }
+
+    /**
+     * Ubicación de un blob dentro de un segmento: permite enviarlo con sendfile.
+     * {@code createdAt} es la primera escritura del documento (orden del listado) y
+     * {@code writtenAt}, la del registro vigente de este blob.
+     */
+    record BlobLocation(Path segment, long offset, int length, long createdAt, long writtenAt) {
+    }
+
+    record Entry(String documentNumber, int pdfLength, long createdAt, long pdfWrittenAt, boolean hasJson) {
+    }
+
+    record CompactionResult(int segmentsCompacted, long bytesReclaimed) {
+    }
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d{6})\\.dat");
+    private static final int RECORD_MAGIC = 0x51534547; // "QSEG"
+    private static final int RECORD_HEADER = 4 + 1 + 2 + 4 + 8;
+    private static final int RECORD_TRAILER = 4;
+    private static final double COMPACTION_LIVE_RATIO = 0.5;
+    private static final long MAP_WINDOW = 16L * 1024 * 1024;
+
+    // Índice: cabecera de 64 bytes seguida de entradas de 136 bytes. Un índice con
+    // otro magic (de una versión anterior) se reconstruye desde los segmentos.
+    private static final int INDEX_MAGIC = 0x51494433; // "QID3"
+    private static final int INDEX_HEADER = 64;
+    private static final int ENTRY_SIZE = 136;
+    private static final int MAX_KEY_BYTES = 48;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final double MAX_LOAD = 0.7;
+
+    private static final int H_MAGIC = 0;
+    private static final int H_CAPACITY = 4;
+    private static final int H_USED = 8;
+    private static final int H_LIVE = 12;
+    private static final int H_CLEAN = 16;
+
+    private static final int E_STATE = 0;
+    private static final int E_KEY_LENGTH = 1;
+    private static final int E_KEY = 2;
+    private static final int E_PDF_SEGMENT = 52;
+    private static final int E_PDF_OFFSET = 56;
+    private static final int E_PDF_LENGTH = 64;
+    private static final int E_JSON_SEGMENT = 68;
+    private static final int E_JSON_OFFSET = 72;
+    private static final int E_JSON_LENGTH = 80;
+    private static final int E_CREATED_AT = 84;
+    private static final int E_SUMMARY_SEGMENT = 92;
+    private static final int E_SUMMARY_OFFSET = 96;
+    private static final int E_SUMMARY_LENGTH = 104;
+    // Marca de tiempo del registro vigente de cada blob: cambia con cada reescritura
+    private static final int E_PDF_WRITTEN_AT = 112;
+    private static final int E_JSON_WRITTEN_AT = 120;
+    private static final int E_SUMMARY_WRITTEN_AT = 128;
+
+    private static final List<BlobType> BLOB_TYPES = List.of(BlobType.PDF, BlobType.JSON, BlobType.SUMMARY);
+
+    private static final byte SLOT_EMPTY = 0;
+    private static final byte SLOT_USED = 1;
+    private static final byte SLOT_DELETED = 2;
+
+    private final Path directory;
+    private final long maxSegmentSize;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TreeMap<Integer, FileChannel> segments = new TreeMap<>();
+    // Vistas de solo-lectura de los segmentos en ventanas de MAP_WINDOW bytes, por
+    // (segmento << 32 | ventana). Al leer datos recién escritos solo se vuelve a mapear
+    // la última ventana del segmento activo, nunca el segmento entero
+    private final Map<Long, MappedByteBuffer> mappedWindows = new ConcurrentHashMap<>();
+
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private int capacity;
+
+    private int activeSegment;
+    private long activeSize;
+
+    // Escrituras agregadas (bajo el lock de escritura) y las ya sincronizadas en disco
+    private final ReentrantLock forceLock = new ReentrantLock();
+    private long appended;
+    private volatile long forced;
+
+    private final DirectorySync directorySync = new DirectorySync();
+
+    SegmentStore(Path directory, long maxSegmentSize) throws IOException {
+        this.directory = directory;
+        this.maxSegmentSize = maxSegmentSize;
+        Files.createDirectories(directory);
+        openSegments();
+        openIndex();
+    }
+
+    // ==================== Escritura ====================
+
+    void put(String documentNumber, BlobType type, byte[] data) throws IOException {
+        put(documentNumber, Map.of(type, data));
+    }
+
+    /**
+     * Agrega varios blobs de un documento, en el orden del mapa, con un solo fsync.
+     */
+    void put(String documentNumber, Map<BlobType, byte[]> blobs) throws IOException {
+        if (blobs.containsKey(BlobType.TOMBSTONE) || blobs.containsKey(BlobType.CLEAR)) {
+            throw new IllegalArgumentException("Use delete() o remove() para eliminar");
+        }
+        byte[] key = encodeKey(documentNumber);
+        long sequence;
+        lock.writeLock().lock();
+        try {
+            long now = System.currentTimeMillis();
+            for (Map.Entry<BlobType, byte[]> blob : blobs.entrySet()) {
+                long payloadOffset = append(blob.getKey(), key, blob.getValue(), now);
+                int base = entryBase(findOrInsert(key));
+                if (index.getLong(base + E_CREATED_AT) == 0) {
+                    index.putLong(base + E_CREATED_AT, now);
+                }
+                setLocation(base, blob.getKey(), activeSegment, payloadOffset, blob.getValue().length, now);
+            }
+            sequence = ++appended;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        awaitDurable(sequence);
+    }
+
+    boolean delete(String documentNumber) throws IOException {
+        byte[] key = encodeKey(documentNumber);
+        long sequence;
+        lock.writeLock().lock();
+        try {
+            int slot = find(key);
+            if (slot < 0) {
+                return false;
+            }
+            append(BlobType.TOMBSTONE, key, new byte[0], System.currentTimeMillis());
+            removeSlot(slot);
+            sequence = ++appended;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        awaitDurable(sequence);
+        return true;
+    }
+
+    /**
+     * Quita un solo blob del documento; los demás se conservan.
+     *
+     * @return {@code true} si el blob existía
+     */
+    boolean remove(String documentNumber, BlobType type) throws IOException {
+        int lengthField = lengthField(type);
+        byte[] key = encodeKey(documentNumber);
+        long sequence;
+        lock.writeLock().lock();
+        try {
+            int slot = find(key);
+            if (slot < 0 || index.getInt(entryBase(slot) + lengthField) < 0) {
+                return false;
+            }
+            append(BlobType.CLEAR, key, new byte[]{type.code}, System.currentTimeMillis());
+            index.putInt(entryBase(slot) + lengthField, -1);
+            sequence = ++appended;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        awaitDurable(sequence);
+        return true;
+    }
+
+    /**
+     * Espera a que la escritura {@code sequence} esté en disco. Un solo hilo
+     * sincroniza a la vez y cubre todo lo agregado hasta ese momento; el lock de
+     * lectura evita que el segmento activo cambie o se cierre durante el fsync.
+     */
+    private void awaitDurable(long sequence) throws IOException {
+        if (forced >= sequence) {
+            return;
+        }
+        forceLock.lock();
+        try {
+            if (forced >= sequence) {
+                return;
+            }
+            lock.readLock().lock();
+            try {
+                long target = appended;
+                segments.get(activeSegment).force(false);
+                forced = target;
+            } finally {
+                lock.readLock().unlock();
+            }
+        } finally {
+            forceLock.unlock();
+        }
+    }
+
+    // ==================== Lectura ====================
+
+    Optional<byte[]> get(String documentNumber, BlobType type) throws IOException {
+        byte[] key = encodeKey(documentNumber);
+        lock.readLock().lock();
+        try {
+            int slot = find(key);
+            if (slot < 0) {
+                return Optional.empty();
+            }
+            int base = entryBase(slot);
+            int length = index.getInt(base + lengthField(type));
+            if (length < 0) {
+                return Optional.empty();
+            }
+            int segment = index.getInt(base + segmentField(type));
+            long offset = index.getLong(base + offsetField(type));
+            byte[] data = new byte[length];
+            MappedByteBuffer mapped = mapped(segment, offset, length);
+            if (mapped != null) {
+                mapped.get((int) (offset % MAP_WINDOW), data);
+            } else {
+                readFully(segments.get(segment), ByteBuffer.wrap(data), offset);
+            }
+            return Optional.of(data);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    Optional<BlobLocation> locate(String documentNumber, BlobType type) {
+        byte[] key = encodeKey(documentNumber);
+        lock.readLock().lock();
+        try {
+            int slot = find(key);
+            if (slot < 0) {
+                return Optional.empty();
+            }
+            int base = entryBase(slot);
+            int length = index.getInt(base + lengthField(type));
+            if (length < 0) {
+                return Optional.empty();
+            }
+            return Optional.of(new BlobLocation(
+                    segmentPath(index.getInt(base + segmentField(type))),
+                    index.getLong(base + offsetField(type)),
+                    length,
+                    index.getLong(base + E_CREATED_AT),
+                    index.getLong(base + writtenAtField(type))));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    boolean contains(String documentNumber, BlobType type) {
+        return locate(documentNumber, type).isPresent();
+    }
+
+    List<Entry> entries() {
+        lock.readLock().lock();
+        try {
+            List<Entry> entries = new ArrayList<>(index.getInt(H_LIVE));
+            for (int slot = 0; slot < capacity; slot++) {
+                int base = entryBase(slot);
+                if (index.get(base + E_STATE) != SLOT_USED) {
+                    continue;
+                }
+                entries.add(new Entry(
+                        readKey(base),
+                        index.getInt(base + E_PDF_LENGTH),
+                        index.getLong(base + E_CREATED_AT),
+                        index.getLong(base + E_PDF_WRITTEN_AT),
+                        index.getInt(base + E_JSON_LENGTH) >= 0));
+            }
+            return entries;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ventana mapeada que contiene {@code [offset, offset + length)}, o {@code null} si
+     * el blob cruza el borde entre dos ventanas (se lee con el canal).
+     */
+    private MappedByteBuffer mapped(int segment, long offset, int length) throws IOException {
+        long window = offset / MAP_WINDOW;
+        long windowStart = window * MAP_WINDOW;
+        long end = offset + length;
+        if (end > windowStart + MAP_WINDOW) {
+            return null;
+        }
+        long key = ((long) segment << 32) | window;
+        MappedByteBuffer current = mappedWindows.get(key);
+        if (current != null && windowStart + current.capacity() >= end) {
+            return current;
+        }
+        FileChannel channel = segments.get(segment);
+        long windowSize = Math.min(MAP_WINDOW, channel.size() - windowStart);
+        MappedByteBuffer fresh = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowSize);
+        // Otro lector pudo mapear una vista más grande mientras tanto
+        return mappedWindows.merge(key, fresh,
+                (existing, candidate) -> existing.capacity() >= candidate.capacity() ? existing : candidate);
+    }
+
+    // ==================== Compactación ====================
+
+    /**
+     * Reescribe los registros vivos de los segmentos cerrados cuya proporción de
+     * datos vivos es menor al 50% y elimina esos segmentos.
+     * <p>
+     * Orden ante caídas: las copias se sincronizan en el segmento activo, después el
+     * índice y recién entonces se borran los segmentos viejos. Una caída en cualquier
+     * punto deja cada registro vivo en al menos un segmento en disco.
+     */
+    CompactionResult compact() throws IOException {
+        lock.writeLock().lock();
+        try {
+            Map<Integer, Long> liveBytes = new HashMap<>();
+            for (int slot = 0; slot < capacity; slot++) {
+                int base = entryBase(slot);
+                if (index.get(base + E_STATE) != SLOT_USED) {
+                    continue;
+                }
+                int keyLength = index.get(base + E_KEY_LENGTH);
+                for (BlobType type : BLOB_TYPES) {
+                    int length = index.getInt(base + lengthField(type));
+                    if (length >= 0) {
+                        liveBytes.merge(index.getInt(base + segmentField(type)),
+                                (long) RECORD_HEADER + keyLength + length + RECORD_TRAILER, Long::sum);
+                    }
+                }
+            }
+
+            List<Integer> compactedSegments = new ArrayList<>();
+            long reclaimed = 0;
+            for (Integer segment : new ArrayList<>(segments.headMap(activeSegment).keySet())) {
+                long size = segments.get(segment).size();
+                long live = liveBytes.getOrDefault(segment, 0L);
+                if (size == 0 || (double) live / size >= COMPACTION_LIVE_RATIO) {
+                    continue;
+                }
+                relocateLiveRecords(segment);
+                preserveTombstones(segment);
+                compactedSegments.add(segment);
+                reclaimed += size - live;
+            }
+            if (compactedSegments.isEmpty()) {
+                return new CompactionResult(0, 0);
+            }
+
+            segments.get(activeSegment).force(false);
+            forced = appended;
+            index.force();
+            for (Integer segment : compactedSegments) {
+                FileChannel channel = segments.remove(segment);
+                mappedWindows.keySet().removeIf(key -> key >>> 32 == segment);
+                channel.close();
+                Files.deleteIfExists(segmentPath(segment));
+            }
+            log.info("Compactación de segmentos: {} segmentos, {} bytes recuperados",
+                    compactedSegments.size(), reclaimed);
+            return new CompactionResult(compactedSegments.size(), reclaimed);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void relocateLiveRecords(int segment) throws IOException {
+        FileChannel source = segments.get(segment);
+        for (int slot = 0; slot < capacity; slot++) {
+            int base = entryBase(slot);
+            if (index.get(base + E_STATE) != SLOT_USED) {
+                continue;
+            }
+            byte[] key = readKeyBytes(base);
+            for (BlobType type : BLOB_TYPES) {
+                int length = index.getInt(base + lengthField(type));
+                if (length < 0 || index.getInt(base + segmentField(type)) != segment) {
+                    continue;
+                }
+                // La copia conserva la marca de tiempo de la escritura original
+                long writtenAt = index.getLong(base + writtenAtField(type));
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                readFully(source, payload, index.getLong(base + offsetField(type)));
+                long offset = append(type, key, payload.array(), writtenAt);
+                setLocation(base, type, activeSegment, offset, length, writtenAt);
+            }
+        }
+    }
+
+    /**
+     * Una lápida (o un {@code CLEAR}) solo puede descartarse si no queda ningún
+     * segmento anterior con registros de esa clave; de lo contrario, una
+     * reconstrucción del índice resucitaría lo eliminado.
+     */
+    private void preserveTombstones(int segment) throws IOException {
+        if (segments.headMap(segment).isEmpty()) {
+            return;
+        }
+        FileChannel channel = segments.get(segment);
+        List<byte[]> tombstones = new ArrayList<>();
+        List<byte[]> clears = new ArrayList<>();
+        List<byte[]> clearedTypes = new ArrayList<>();
+        forEachRecord(channel, (type, key, payloadOffset, length, timestamp) -> {
+            if (type == BlobType.TOMBSTONE && find(key) < 0) {
+                tombstones.add(key);
+            } else if (type == BlobType.CLEAR) {
+                BlobType cleared = readClearedType(channel, payloadOffset);
+                int slot = find(key);
+                if (slot >= 0 && index.getInt(entryBase(slot) + lengthField(cleared)) < 0) {
+                    clears.add(key);
+                    clearedTypes.add(new byte[]{cleared.code});
+                }
+            }
+        });
+        for (byte[] key : tombstones) {
+            append(BlobType.TOMBSTONE, key, new byte[0], System.currentTimeMillis());
+        }
+        for (int i = 0; i < clears.size(); i++) {
+            append(BlobType.CLEAR, clears.get(i), clearedTypes.get(i), System.currentTimeMillis());
+        }
+    }
+
+    private static BlobType readClearedType(FileChannel channel, long payloadOffset) throws IOException {
+        ByteBuffer code = ByteBuffer.allocate(1);
+        readFully(channel, code, payloadOffset);
+        return BlobType.fromCode(code.get(0));
+    }
+
+    // ==================== Segmentos ====================
+
+    private void openSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : files.toList()) {
+                Matcher matcher = SEGMENT_NAME.matcher(path.getFileName().toString());
+                if (matcher.matches()) {
+                    segments.put(Integer.parseInt(matcher.group(1)), openChannel(path));
+                }
+            }
+        }
+        if (segments.isEmpty()) {
+            segments.put(1, openChannel(segmentPath(1)));
+        }
+        activeSegment = segments.lastKey();
+        activeSize = segments.get(activeSegment).size();
+    }
+
+    private FileChannel openChannel(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private Path segmentPath(int segment) {
+        return directory.resolve(String.format("segment-%06d.dat", segment));
+    }
+
+    /**
+     * Agrega un registro al segmento activo y devuelve la posición de sus datos.
+     */
+    private long append(BlobType type, byte[] key, byte[] data, long timestamp) throws IOException {
+        int recordLength = RECORD_HEADER + key.length + data.length + RECORD_TRAILER;
+        if (activeSize > 0 && activeSize + recordLength > maxSegmentSize) {
+            // El segmento que se cierra queda en disco: los fsync siguientes solo cubren el activo
+            segments.get(activeSegment).force(false);
+            activeSegment++;
+            segments.put(activeSegment, openChannel(segmentPath(activeSegment)));
+            syncDirectory();
+            activeSize = 0;
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(recordLength);
+        record.putInt(RECORD_MAGIC)
+                .put(type.code)
+                .putShort((short) key.length)
+                .putInt(data.length)
+                .putLong(timestamp)
+                .put(key)
+                .put(data);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 4, recordLength - 4 - RECORD_TRAILER);
+        record.putInt((int) crc.getValue());
+        record.flip();
+
+        long recordStart = activeSize;
+        FileChannel channel = segments.get(activeSegment);
+        while (record.hasRemaining()) {
+            channel.write(record, recordStart + record.position());
+        }
+        activeSize += recordLength;
+        return recordStart + RECORD_HEADER + key.length;
+    }
+
+    // ==================== Índice mapeado ====================
+
+    private void openIndex() throws IOException {
+        Path indexPath = directory.resolve("index.dat");
+        boolean reusable = false;
+        if (Files.exists(indexPath)) {
+            mapIndex(indexPath);
+            reusable = index.getInt(H_MAGIC) == INDEX_MAGIC && index.get(H_CLEAN) == 1;
+        }
+        if (!reusable) {
+            log.info("Reconstruyendo índice de segmentos en {}", directory);
+            rebuildIndex(indexPath);
+        }
+        // Marca de cierre limpio: si el proceso muere, el próximo arranque reconstruye
+        index.put(H_CLEAN, (byte) 0);
+        index.force();
+    }
+
+    private void mapIndex(Path indexPath) throws IOException {
+        if (indexChannel != null) {
+            indexChannel.close();
+        }
+        indexChannel = FileChannel.open(indexPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexChannel.size());
+        capacity = index.getInt(H_CAPACITY);
+    }
+
+    private void rebuildIndex(Path indexPath) throws IOException {
+        createEmptyIndex(indexPath, INITIAL_CAPACITY);
+        for (Map.Entry<Integer, FileChannel> segment : segments.entrySet()) {
+            replaySegment(segment.getKey(), segment.getValue());
+        }
+        activeSize = segments.get(activeSegment).size();
+    }
+
+    private void createEmptyIndex(Path indexPath, int newCapacity) throws IOException {
+        Path tmp = indexPath.resolveSibling("index.dat.tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    INDEX_HEADER + (long) newCapacity * ENTRY_SIZE);
+            buffer.putInt(H_MAGIC, INDEX_MAGIC);
+            buffer.putInt(H_CAPACITY, newCapacity);
+            buffer.force();
+        }
+        Files.move(tmp, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        mapIndex(indexPath);
+    }
+
+    /**
+     * Aplica al índice los registros de un segmento. Un registro incompleto o con
+     * CRC inválido marca el final de los datos válidos y el segmento se trunca ahí.
+     */
+    private void replaySegment(int segment, FileChannel channel) throws IOException {
+        long validEnd = forEachRecord(channel, (type, key, payloadOffset, length, timestamp) -> {
+            if (type == BlobType.TOMBSTONE) {
+                int slot = find(key);
+                if (slot >= 0) {
+                    removeSlot(slot);
+                }
+                return;
+            }
+            if (type == BlobType.CLEAR) {
+                int slot = find(key);
+                if (slot >= 0) {
+                    index.putInt(entryBase(slot) + lengthField(readClearedType(channel, payloadOffset)), -1);
+                }
+                return;
+            }
+            int base = entryBase(findOrInsert(key));
+            // Una copia compactada puede aparecer después de registros más nuevos
+            long createdAt = index.getLong(base + E_CREATED_AT);
+            if (createdAt == 0 || timestamp < createdAt) {
+                index.putLong(base + E_CREATED_AT, timestamp);
+            }
+            setLocation(base, type, segment, payloadOffset, length, timestamp);
+        });
+        long size = channel.size();
+        if (validEnd < size) {
+            log.warn("Segmento {} truncado en {} (registro incompleto de {} bytes)", segment, validEnd, size - validEnd);
+            channel.truncate(validEnd);
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        void visit(BlobType type, byte[] key, long payloadOffset, int length, long timestamp) throws IOException;
+    }
+
+    /**
+     * Recorre los registros válidos de un segmento y devuelve la posición donde
+     * terminan.
+     */
+    private long forEachRecord(FileChannel channel, RecordVisitor visitor) throws IOException {
+        long position = 0;
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        while (position + RECORD_HEADER + RECORD_TRAILER <= size) {
+            header.clear();
+            readFully(channel, header, position);
+            header.flip();
+            int magic = header.getInt();
+            byte typeCode = header.get();
+            int keyLength = header.getShort();
+            int dataLength = header.getInt();
+            long timestamp = header.getLong();
+            int recordLength = RECORD_HEADER + keyLength + dataLength + RECORD_TRAILER;
+            if (magic != RECORD_MAGIC || keyLength <= 0 || dataLength < 0 || position + recordLength > size) {
+                break;
+            }
+
+            ByteBuffer body = ByteBuffer.allocate(recordLength - RECORD_HEADER);
+            readFully(channel, body, position + RECORD_HEADER);
+            CRC32 crc = new CRC32();
+            crc.update(header.array(), 4, RECORD_HEADER - 4);
+            crc.update(body.array(), 0, keyLength + dataLength);
+            if ((int) crc.getValue() != body.getInt(keyLength + dataLength)) {
+                break;
+            }
+
+            byte[] key = new byte[keyLength];
+            System.arraycopy(body.array(), 0, key, 0, keyLength);
+            visitor.visit(BlobType.fromCode(typeCode), key, position + RECORD_HEADER + keyLength,
+                    dataLength, timestamp);
+            position += recordLength;
+        }
+        return position;
+    }
+
+    private int find(byte[] key) {
+        int mask = capacity - 1;
+        for (int i = 0, slot = hash(key) & mask; i < capacity; i++, slot = (slot + 1) & mask) {
+            int base = entryBase(slot);
+            byte state = index.get(base + E_STATE);
+            if (state == SLOT_EMPTY) {
+                return -1;
+            }
+            if (state == SLOT_USED && keyEquals(base, key)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int findOrInsert(byte[] key) throws IOException {
+        int existing = find(key);
+        if (existing >= 0) {
+            return existing;
+        }
+        if (index.getInt(H_USED) + 1 > capacity * MAX_LOAD) {
+            resize();
+        }
+        int mask = capacity - 1;
+        int slot = hash(key) & mask;
+        while (index.get(entryBase(slot) + E_STATE) == SLOT_USED) {
+            slot = (slot + 1) & mask;
+        }
+        int base = entryBase(slot);
+        if (index.get(base + E_STATE) == SLOT_EMPTY) {
+            index.putInt(H_USED, index.getInt(H_USED) + 1);
+        }
+        for (int i = 0; i < ENTRY_SIZE; i++) {
+            index.put(base + i, (byte) 0);
+        }
+        index.put(base + E_STATE, SLOT_USED);
+        index.put(base + E_KEY_LENGTH, (byte) key.length);
+        index.put(base + E_KEY, key);
+        index.putInt(base + E_PDF_LENGTH, -1);
+        index.putInt(base + E_JSON_LENGTH, -1);
+        index.putInt(base + E_SUMMARY_LENGTH, -1);
+        index.putInt(H_LIVE, index.getInt(H_LIVE) + 1);
+        return slot;
+    }
+
+    private void removeSlot(int slot) {
+        index.put(entryBase(slot) + E_STATE, SLOT_DELETED);
+        index.putInt(H_LIVE, index.getInt(H_LIVE) - 1);
+    }
+
+    /**
+     * Duplica la capacidad (o solo limpia lápidas si hay muchas) copiando las
+     * entradas vivas a un índice nuevo que reemplaza al anterior con un rename.
+     */
+    private void resize() throws IOException {
+        int live = index.getInt(H_LIVE);
+        int newCapacity = live + 1 > capacity * MAX_LOAD / 2 ? capacity * 2 : capacity;
+        MappedByteBuffer old = index;
+        int oldCapacity = capacity;
+
+        createEmptyIndex(directory.resolve("index.dat"), newCapacity);
+        int mask = capacity - 1;
+        for (int oldSlot = 0; oldSlot < oldCapacity; oldSlot++) {
+            int oldBase = INDEX_HEADER + oldSlot * ENTRY_SIZE;
+            if (old.get(oldBase + E_STATE) != SLOT_USED) {
+                continue;
+            }
+            byte[] key = new byte[old.get(oldBase + E_KEY_LENGTH)];
+            old.get(oldBase + E_KEY, key);
+            int slot = hash(key) & mask;
+            while (index.get(entryBase(slot) + E_STATE) != SLOT_EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            for (int i = 0; i < ENTRY_SIZE; i++) {
+                index.put(entryBase(slot) + i, old.get(oldBase + i));
+            }
+        }
+        index.putInt(H_USED, live);
+        index.putInt(H_LIVE, live);
+    }
+
+    private void setLocation(int base, BlobType type, int segment, long offset, int length, long writtenAt) {
+        index.putInt(base + segmentField(type), segment);
+        index.putLong(base + offsetField(type), offset);
+        index.putInt(base + lengthField(type), length);
+        index.putLong(base + writtenAtField(type), writtenAt);
+    }
+
+    private static int segmentField(BlobType type) {
+        return switch (type) {
+            case PDF -> E_PDF_SEGMENT;
+            case JSON -> E_JSON_SEGMENT;
+            case SUMMARY -> E_SUMMARY_SEGMENT;
+            case TOMBSTONE, CLEAR -> throw new IllegalArgumentException("Las lápidas no se indexan");
+        };
+    }
+
+    private static int offsetField(BlobType type) {
+        return switch (type) {
+            case PDF -> E_PDF_OFFSET;
+            case JSON -> E_JSON_OFFSET;
+            case SUMMARY -> E_SUMMARY_OFFSET;
+            case TOMBSTONE, CLEAR -> throw new IllegalArgumentException("Las lápidas no se indexan");
+        };
+    }
+
+    private static int lengthField(BlobType type) {
+        return switch (type) {
+            case PDF -> E_PDF_LENGTH;
+            case JSON -> E_JSON_LENGTH;
+            case SUMMARY -> E_SUMMARY_LENGTH;
+            case TOMBSTONE, CLEAR -> throw new IllegalArgumentException("Las lápidas no se indexan");
+        };
+    }
+
+    private static int writtenAtField(BlobType type) {
+        return switch (type) {
+            case PDF -> E_PDF_WRITTEN_AT;
+            case JSON -> E_JSON_WRITTEN_AT;
+            case SUMMARY -> E_SUMMARY_WRITTEN_AT;
+            case TOMBSTONE, CLEAR -> throw new IllegalArgumentException("Las lápidas no se indexan");
+        };
+    }
+
+    private static int entryBase(int slot) {
+        return INDEX_HEADER + slot * ENTRY_SIZE;
+    }
+
+    private boolean keyEquals(int base, byte[] key) {
+        if (index.get(base + E_KEY_LENGTH) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (index.get(base + E_KEY + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] readKeyBytes(int base) {
+        byte[] key = new byte[index.get(base + E_KEY_LENGTH)];
+        index.get(base + E_KEY, key);
+        return key;
+    }
+
+    private String readKey(int base) {
+        return new String(readKeyBytes(base), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] encodeKey(String documentNumber) {
+        byte[] key = documentNumber.getBytes(StandardCharsets.UTF_8);
+        if (key.length == 0 || key.length > MAX_KEY_BYTES) {
+            throw new IllegalArgumentException("Número de documento inválido para el almacén de segmentos: "
+                    + documentNumber);
+        }
+        return key;
+    }
+
+    private static int hash(byte[] key) {
+        int h = 0;
+        for (byte b : key) {
+            h = 31 * h + b;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    // El segmento nuevo solo sobrevive a una caída si su entrada en el directorio es durable
+    private void syncDirectory() {
+        directorySync.sync(directory);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Fin de segmento inesperado");
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            for (FileChannel channel : segments.values()) {
+                channel.force(true);
+                channel.close();
+            }
+            segments.clear();
+            mappedWindows.clear();
+            if (index != null) {
+                index.put(H_CLEAN, (byte) 1);
+                index.force();
+                indexChannel.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
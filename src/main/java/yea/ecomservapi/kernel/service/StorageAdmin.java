@@ -0,0 +1,246 @@
+package yea.ecomservapi.kernel.service;
+
+import lombok.extern.slf4j.Slf4j;
+import yea.ecomservapi.kernel.service.FileStorageService.ArchiveReport;
+import yea.ecomservapi.kernel.service.FileStorageService.CompactionReport;
+import yea.ecomservapi.kernel.service.FileStorageService.CompressionRatio;
+import yea.ecomservapi.kernel.service.FileStorageService.CompressionReport;
+import yea.ecomservapi.kernel.service.FileStorageService.QuoteSummary;
+import yea.ecomservapi.kernel.service.FileStorageService.SummarySidecar;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Operaciones administrativas del almacenamiento: migración al formato particionado,
+ * compactación de segmentos, archivo por meses y medición de la compresión. Trabajan
+ * sobre el mismo backend, índice y locks que {@link FileStorageService}, que las
+ * expone.
+ */
+@Slf4j
+class StorageAdmin {
+
+    private final QuoteBlobStore blobStore;
+    // Solo con app.storage.engine=files
+    private final QuoteArchive archive;
+    private final DocumentLocks locks;
+    private final QuoteIndex index;
+    private final QuoteIndex.BlobReader reader;
+    // Cotizaciones que siguen en la cola de escritura diferida
+    private final Predicate<String> queued;
+    // Vuelve a indexar un documento después de quitarlo de la carpeta principal
+    private final Consumer<String> refresh;
+    private final int archiveMaxAgeDays;
+
+    StorageAdmin(QuoteBlobStore blobStore, QuoteArchive archive, DocumentLocks locks, QuoteIndex index,
+                 QuoteIndex.BlobReader reader, Predicate<String> queued, Consumer<String> refresh,
+                 int archiveMaxAgeDays) {
+        this.blobStore = blobStore;
+        this.archive = archive;
+        this.locks = locks;
+        this.index = index;
+        this.reader = reader;
+        this.queued = queued;
+        this.refresh = refresh;
+        this.archiveMaxAgeDays = archiveMaxAgeDays;
+    }
+
+    /**
+     * Mueve las cotizaciones del formato plano a sus particiones sin detener el
+     * servicio. Puede repetirse sin efectos si ya no quedan archivos por mover.
+     *
+     * @return cantidad de archivos movidos
+     */
+    int migrateToShardedLayout() {
+        if (!(blobStore instanceof FileSystemBlobStore files)) {
+            throw new IllegalStateException("La migración de carpetas requiere app.storage.engine=files");
+        }
+        try {
+            return files.migrateFlatFiles(locks::of);
+        } catch (IOException e) {
+            log.error("Error al migrar cotizaciones al formato particionado", e);
+            throw new RuntimeException("Error al migrar almacenamiento", e);
+        }
+    }
+
+    /**
+     * Recupera el espacio de cotizaciones eliminadas o reescritas en el motor de
+     * segmentos.
+     */
+    CompactionReport compactStorage() {
+        if (!(blobStore instanceof SegmentBlobStore segments)) {
+            throw new IllegalStateException("La compactación requiere app.storage.engine=segments");
+        }
+        try {
+            SegmentStore.CompactionResult result = segments.compact();
+            return new CompactionReport(result.segmentsCompacted(), result.bytesReclaimed());
+        } catch (IOException e) {
+            log.error("Error al compactar segmentos", e);
+            throw new RuntimeException("Error al compactar almacenamiento", e);
+        }
+    }
+
+    boolean canArchive() {
+        return archive != null;
+    }
+
+    /**
+     * Pasa a los paquetes mensuales del archivo las cotizaciones de los meses
+     * completos anteriores a {@code app.storage.archive.max-age-days}. Una cotización
+     * solo se quita de la carpeta principal si ninguno de sus blobs (PDF, JSON o
+     * resumen) cambió mientras se empaquetaba: se compara una huella de su contenido
+     * antes de empaquetar y, con el lock del documento tomado, justo antes de borrar.
+     * Puede repetirse: lo ya archivado no está en la carpeta principal.
+     */
+    ArchiveReport archiveOldQuotes() {
+        if (archive == null) {
+            throw new IllegalStateException("El archivo por meses requiere app.storage.engine=files");
+        }
+        YearMonth cutoff = YearMonth.from(LocalDate.now().minusDays(archiveMaxAgeDays));
+        Map<YearMonth, List<QuoteSummary>> byMonth = index.summaries().stream()
+                .filter(summary -> YearMonth.from(summary.createdAt()).isBefore(cutoff))
+                .filter(summary -> !queued.test(summary.documentNumber()))
+                .filter(summary -> blobStore.contains(summary.documentNumber(), QuoteBlobStore.BlobType.PDF))
+                .collect(Collectors.groupingBy(summary -> YearMonth.from(summary.createdAt()),
+                        TreeMap::new, Collectors.toList()));
+
+        int bundles = 0;
+        int archived = 0;
+        for (Map.Entry<YearMonth, List<QuoteSummary>> month : byMonth.entrySet()) {
+            Map<String, byte[]> versions = new HashMap<>();
+            List<QuoteArchive.BundleEntry> entries = new ArrayList<>();
+            for (QuoteSummary summary : month.getValue()) {
+                String documentNumber = summary.documentNumber();
+                ReentrantLock lock = locks.of(documentNumber);
+                lock.lock();
+                try {
+                    if (blobStore.info(documentNumber).isEmpty()) {
+                        continue;
+                    }
+                    versions.put(documentNumber, fingerprint(documentNumber));
+                    entries.add(new QuoteArchive.BundleEntry(documentNumber, summary.createdAt(),
+                            summary.fileSize(), blobStore.contains(documentNumber, QuoteBlobStore.BlobType.JSON),
+                            SummarySidecar.of(summary)));
+                } catch (IOException e) {
+                    log.warn("No se pudo leer {} para archivarla: {}", documentNumber, e.getMessage());
+                } finally {
+                    lock.unlock();
+                }
+            }
+            try {
+                // Se guardan sin la compresión de la carpeta principal: el paquete ya comprime
+                archive.pack(month.getKey(), entries, (documentNumber, type) -> {
+                    Optional<byte[]> stored = blobStore.get(documentNumber, type);
+                    return stored.isPresent() ? Optional.of(BlobCompression.decode(stored.get())) : Optional.empty();
+                });
+            } catch (IOException | UncheckedIOException e) {
+                log.error("Error al archivar cotizaciones de {}", month.getKey(), e);
+                throw new RuntimeException("Error al archivar cotizaciones", e);
+            }
+            bundles++;
+            for (Map.Entry<String, byte[]> version : versions.entrySet()) {
+                String documentNumber = version.getKey();
+                ReentrantLock lock = locks.of(documentNumber);
+                lock.lock();
+                try {
+                    if (!Arrays.equals(fingerprint(documentNumber), version.getValue())) {
+                        log.info("{} cambió mientras se archivaba, se conserva en la carpeta principal", documentNumber);
+                        continue;
+                    }
+                    blobStore.delete(documentNumber);
+                    archived++;
+                    refresh.accept(documentNumber);
+                } catch (IOException e) {
+                    log.warn("No se pudo quitar {} de la carpeta principal: {}", documentNumber, e.getMessage());
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+        log.info("Archivo de cotizaciones: {} en {} paquetes", archived, bundles);
+        return new ArchiveReport(bundles, archived);
+    }
+
+    /**
+     * Mide la compresión lograda sobre las cotizaciones almacenadas: bytes en disco,
+     * bytes sin comprimir y lo que ocuparían con gzip, por tipo de blob. Lee todo el
+     * almacén, por lo que está pensado para uso administrativo.
+     */
+    CompressionReport compressionReport() {
+        CompressionStats pdf = new CompressionStats("pdf");
+        CompressionStats json = new CompressionStats("json");
+        for (String documentNumber : index.documentNumbers()) {
+            try {
+                reader.read(documentNumber, QuoteBlobStore.BlobType.PDF).ifPresent(pdf::add);
+                reader.read(documentNumber, QuoteBlobStore.BlobType.JSON).ifPresent(json::add);
+            } catch (IOException | UncheckedIOException e) {
+                log.warn("No se pudo medir la compresión de {}: {}", documentNumber, e.getMessage());
+            }
+        }
+        return new CompressionReport(List.of(pdf.toRatio(), json.toRatio()));
+    }
+
+    // SHA-256 de todos los blobs guardados del documento, tal como están en el backend
+    private byte[] fingerprint(String documentNumber) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (QuoteBlobStore.BlobType type : QuoteBlobStore.BlobType.values()) {
+            Optional<byte[]> stored = blobStore.get(documentNumber, type);
+            int length = stored.map(bytes -> bytes.length).orElse(-1);
+            digest.update(new byte[]{(byte) type.ordinal(),
+                    (byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length});
+            stored.ifPresent(digest::update);
+        }
+        return digest.digest();
+    }
+
+    // Acumulador de CompressionRatio mientras se recorre el almacén
+    private static final class CompressionStats {
+        private final String type;
+        private int blobs;
+        private long storedBytes;
+        private long originalBytes;
+        private long gzipBytes;
+
+        CompressionStats(String type) {
+            this.type = type;
+        }
+
+        void add(byte[] stored) {
+            try {
+                byte[] original = BlobCompression.decode(stored);
+                blobs++;
+                storedBytes += stored.length;
+                originalBytes += original.length;
+                gzipBytes += BlobCompression.isGzip(stored) ? stored.length : BlobCompression.GZIP.encode(original).length;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        CompressionRatio toRatio() {
+            return new CompressionRatio(type, blobs, storedBytes, originalBytes, gzipBytes,
+                    originalBytes == 0 ? 1.0 : (double) storedBytes / originalBytes,
+                    originalBytes == 0 ? 1.0 : (double) gzipBytes / originalBytes);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package yea.ecomservapi.kernel.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Resuelve la ubicación de los archivos de una cotización dentro de la carpeta de
+ * almacenamiento.
+ * <p>
+ * En modo particionado cada documento CES-xxxxx vive en un subdirectorio por rango
+ * de 1000 números ({@code 000/}, {@code 001/}, ...), de modo que ningún directorio
+ * crece sin límite. Los números que no siguen el formato CES se reparten en 256
+ * subdirectorios por hash ({@code x00/} a {@code xff/}). La ruta se calcula a partir
+ * del número de documento, sin listar directorios.
+ * <p>
+ * Los archivos del formato plano anterior (en la raíz) se siguen encontrando, lo que
+ * permite migrar el almacén mientras la aplicación atiende tráfico.
+ */
+@Slf4j
+class StorageLayout {
+
+    private static final Pattern CES_NUMBER = Pattern.compile("CES-(\\d+)");
+    private static final Pattern SHARD_NAME = Pattern.compile("\\d{3}|x[0-9a-f]{2}");
+    private static final int SHARD_SIZE = 1000;
+    private static final String GZIP_SUFFIX = ".gz";
+    private static final List<String> DOCUMENT_EXTENSIONS = List.of(".pdf.gz", ".json.gz", ".pdf", ".json", ".summary");
+
+    private final Path root;
+    private final boolean sharded;
+
+    StorageLayout(Path root, boolean sharded) {
+        this.root = root;
+        this.sharded = sharded;
+    }
+
+    boolean isSharded() {
+        return sharded;
+    }
+
+    /**
+     * Número de documento de un archivo de cotización (PDF o JSON, comprimido o no, o
+     * su resumen).
+     */
+    static Optional<String> documentNumberOf(String fileName) {
+        if (fileName.startsWith(".")) {
+            return Optional.empty();
+        }
+        return DOCUMENT_EXTENSIONS.stream()
+                .filter(fileName::endsWith)
+                .findFirst()
+                .map(extension -> fileName.substring(0, fileName.length() - extension.length()));
+    }
+
+    static boolean isPdfFile(String fileName) {
+        return !fileName.startsWith(".") && (fileName.endsWith(".pdf") || fileName.endsWith(".pdf.gz"));
+    }
+
+    Path shardDirectory(String documentNumber) {
+        Matcher matcher = CES_NUMBER.matcher(documentNumber);
+        if (matcher.matches()) {
+            return root.resolve(String.format("%03d", Long.parseLong(matcher.group(1)) / SHARD_SIZE));
+        }
+        return root.resolve(String.format("x%02x", Math.floorMod(documentNumber.hashCode(), 256)));
+    }
+
+    boolean isShardDirectory(Path directory) {
+        return root.equals(directory.getParent())
+                && SHARD_NAME.matcher(directory.getFileName().toString()).matches();
+    }
+
+    /**
+     * Ruta donde se escribe un archivo nuevo según el modo configurado.
+     */
+    Path writePath(String documentNumber, String extension) throws IOException {
+        if (!sharded) {
+            return root.resolve(documentNumber + extension);
+        }
+        Path directory = shardDirectory(documentNumber);
+        Files.createDirectories(directory);
+        return directory.resolve(documentNumber + extension);
+    }
+
+    /**
+     * Ubica un archivo existente. Se consulta la partición, luego la raíz y otra vez
+     * la partición: como la migración mueve archivos con un rename atómico, esta
+     * secuencia encuentra el archivo aunque se mueva entre dos consultas.
+     */
+    Optional<Path> locate(String documentNumber, String extension) {
+        String fileName = documentNumber + extension;
+        Path shardPath = shardDirectory(documentNumber).resolve(fileName);
+        if (Files.exists(shardPath)) {
+            return Optional.of(shardPath);
+        }
+        Path flatPath = root.resolve(fileName);
+        if (Files.exists(flatPath)) {
+            return Optional.of(flatPath);
+        }
+        return Files.exists(shardPath) ? Optional.of(shardPath) : Optional.empty();
+    }
+
+    /**
+     * Todas las ubicaciones posibles de un archivo, para eliminarlo sin importar
+     * si ya fue migrado.
+     */
+    List<Path> candidates(String documentNumber, String extension) {
+        String fileName = documentNumber + extension;
+        return List.of(shardDirectory(documentNumber).resolve(fileName), root.resolve(fileName));
+    }
+
+    /**
+     * Archivos de la raíz y de todas las particiones. El llamador debe cerrar el stream.
+     */
+    Stream<Path> listFiles() throws IOException {
+        List<Path> directories;
+        try (Stream<Path> entries = Files.list(root)) {
+            directories = entries.filter(Files::isDirectory).filter(this::isShardDirectory).toList();
+        }
+        Stream<Path> files = Files.list(root).filter(Files::isRegularFile);
+        for (Path directory : directories) {
+            files = Stream.concat(files, listDirectory(directory));
+        }
+        return files;
+    }
+
+    private Stream<Path> listDirectory(Path directory) {
+        try {
+            return Files.list(directory).filter(Files::isRegularFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Mueve los archivos de cotizaciones de la raíz a su partición. Es idempotente y
+     * puede ejecutarse con la aplicación en marcha: cada documento se migra con su
+     * lock tomado, así ninguna escritura se intercala, y sus archivos pasan juntos con
+     * renames atómicos que las lecturas encuentran en cualquiera de las dos rutas.
+     *
+     * @param documentLock lock de escritura de cada documento
+     * @return cantidad de archivos movidos
+     */
+    int migrateFlatFiles(Function<String, Lock> documentLock) throws IOException {
+        if (!sharded) {
+            throw new IllegalStateException("La migración requiere app.storage.layout=sharded");
+        }
+        Map<String, List<Path>> flatFiles;
+        try (Stream<Path> entries = Files.list(root)) {
+            flatFiles = entries
+                    .filter(Files::isRegularFile)
+                    .filter(path -> documentNumberOf(path.getFileName().toString()).isPresent())
+                    .collect(Collectors.groupingBy(
+                            path -> documentNumberOf(path.getFileName().toString()).orElseThrow(),
+                            TreeMap::new, Collectors.toList()));
+        }
+
+        int moved = 0;
+        for (Map.Entry<String, List<Path>> document : flatFiles.entrySet()) {
+            Lock lock = documentLock.apply(document.getKey());
+            lock.lock();
+            try {
+                moved += migrateDocument(document.getKey(), document.getValue());
+            } finally {
+                lock.unlock();
+            }
+        }
+        log.info("Migración a formato particionado: {} archivos movidos", moved);
+        return moved;
+    }
+
+    private int migrateDocument(String documentNumber, List<Path> flatFiles) throws IOException {
+        Path directory = shardDirectory(documentNumber);
+        Files.createDirectories(directory);
+        int moved = 0;
+        for (Path source : flatFiles) {
+            String fileName = source.getFileName().toString();
+            if (hasShardCopy(directory, fileName)) {
+                // Lo escrito en la partición es más reciente: nunca se mueve encima
+                Files.deleteIfExists(source);
+                continue;
+            }
+            try {
+                Files.move(source, directory.resolve(fileName), StandardCopyOption.ATOMIC_MOVE);
+                moved++;
+            } catch (NoSuchFileException e) {
+                // Eliminado entre el listado y el lock
+            } catch (AtomicMoveNotSupportedException e) {
+                throw new IOException("El sistema de archivos no soporta rename atómico para " + source, e);
+            }
+        }
+        return moved;
+    }
+
+    // Con o sin comprimir: una escritura nueva puede haber usado otra compresión
+    private static boolean hasShardCopy(Path directory, String fileName) {
+        String plain = fileName.endsWith(GZIP_SUFFIX)
+                ? fileName.substring(0, fileName.length() - GZIP_SUFFIX.length())
+                : fileName;
+        return Files.exists(directory.resolve(plain)) || Files.exists(directory.resolve(plain + GZIP_SUFFIX));
+    }
+}
@@ -0,0 +1,31 @@
+package yea.ecomservapi.kernel.service;
+
+import lombok.Builder;
+
+/**
+ * Configuración de {@link FileStorageService} ({@code app.storage.*}). En la aplicación
+ * la arma {@code StorageConfig} desde las propiedades; las pruebas y los benchmarks la
+ * construyen con el builder.
+ *
+ * @param folder          carpeta de cotizaciones
+ * @param layout          {@code flat} o {@code sharded}
+ * @param engine          {@code files}, {@code segments} o {@code memory}
+ * @param jsonCompression {@code none} o {@code gzip}
+ * @param pdfCompression  {@code none} o {@code gzip}
+ */
+@Builder(toBuilder = true)
+public record StorageSettings(
+        String folder,
+        boolean watchEnabled,
+        int sequenceBlock,
+        String layout,
+        String engine,
+        long segmentSizeMb,
+        String jsonCompression,
+        String pdfCompression,
+        boolean writeBehindEnabled,
+        int writeBehindCapacity,
+        int writeBehindWriters,
+        boolean archiveEnabled,
+        int archiveMaxAgeDays) {
+}
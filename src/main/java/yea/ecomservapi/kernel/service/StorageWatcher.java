@@ -0,0 +1,134 @@
+package yea.ecomservapi.kernel.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Observa la carpeta de cotizaciones y sus particiones con un WatchService, para
+ * que el índice refleje lo que escriben o eliminan otras instancias. Cada archivo
+ * que cambia se informa por su número de documento; si el WatchService pierde
+ * eventos (OVERFLOW) se pide reconstruir el índice completo.
+ */
+@Slf4j
+class StorageWatcher implements Closeable {
+
+    private final Path root;
+    private final StorageLayout layout;
+    private final Consumer<String> onChange;
+    private final Runnable onOverflow;
+
+    private WatchService watchService;
+    private Thread watcherThread;
+
+    StorageWatcher(Path root, StorageLayout layout, Consumer<String> onChange, Runnable onOverflow) {
+        this.root = root;
+        this.layout = layout;
+        this.onChange = onChange;
+        this.onOverflow = onOverflow;
+    }
+
+    /**
+     * Registra la carpeta y las particiones existentes y arranca el hilo que atiende
+     * los eventos.
+     *
+     * @return {@code false} si el sistema de archivos no permitió observar la carpeta
+     */
+    boolean start() {
+        try {
+            watchService = root.getFileSystem().newWatchService();
+            watchDirectory(root);
+            try (Stream<Path> entries = Files.list(root)) {
+                for (Path directory : entries.filter(layout::isShardDirectory).toList()) {
+                    watchDirectory(directory);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("No se pudo iniciar WatchService, el índice solo reflejará cambios de esta instancia: {}",
+                    e.getMessage());
+            close();
+            return false;
+        }
+        watcherThread = new Thread(this::watchLoop, "cotizaciones-watcher");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.warn("Error al cerrar WatchService: {}", e.getMessage());
+            }
+        }
+        if (watcherThread != null) {
+            watcherThread.interrupt();
+        }
+    }
+
+    // WatchService no es recursivo: cada partición se registra por separado
+    private void watchDirectory(Path directory) throws IOException {
+        directory.register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+    }
+
+    private void registerNewShard(Path directory) {
+        try {
+            watchDirectory(directory);
+            // Archivos creados antes de registrar la partición no generan eventos
+            try (Stream<Path> files = Files.list(directory)) {
+                files.map(path -> path.getFileName().toString())
+                        .filter(StorageLayout::isPdfFile)
+                        .map(StorageLayout::documentNumberOf)
+                        .flatMap(Optional::stream)
+                        .forEach(onChange);
+            }
+        } catch (IOException e) {
+            log.warn("No se pudo observar la partición {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private void watchLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    onOverflow.run();
+                    continue;
+                }
+                Path changed = ((Path) key.watchable()).resolve((Path) event.context());
+                String fileName = changed.getFileName().toString();
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && layout.isShardDirectory(changed)) {
+                    registerNewShard(changed);
+                } else {
+                    StorageLayout.documentNumberOf(fileName).ifPresent(onChange);
+                }
+            }
+            if (!key.reset()) {
+                log.warn("WatchService dejó de observar {}", root);
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,351 @@
+package yea.ecomservapi.kernel.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Cola de escritura diferida para cotizaciones: el request termina en cuanto la
+ * cotización queda registrada en un diario en disco, y unos hilos en segundo plano
+ * la escriben en el almacenamiento definitivo.
+ * <p>
+ * El diario es un archivo de solo-agregado con un registro por cotización: número,
+ * PDF, JSON y resumen, cada uno precedido de su largo, entre un magic y un crc32.
+ * Registrar cuesta una escritura secuencial y un fsync, que se comparte
+ * entre los hilos que registran a la vez. Cuando la cola se vacía el diario se
+ * trunca; si la aplicación se detiene antes, las cotizaciones pendientes se
+ * escriben al iniciar.
+ * <p>
+ * El diario lleva el PDF ya generado y no solo el pedido: así recuperar al iniciar no
+ * depende de volver a generar (plantillas, imágenes y tipo de cambio pueden haber
+ * cambiado) y el PDF que se entregó es el que queda guardado. El costo es que el
+ * hilo del request escribe el PDF completo y espera su fsync; lo que se evita son
+ * las escrituras aleatorias y los fsync por archivo del almacenamiento definitivo.
+ * <p>
+ * La capacidad es limitada: con la cola llena {@link #enqueue} devuelve
+ * {@code false} para que el llamador aplique contrapresión.
+ */
+@Slf4j
+class WriteBehindQueue implements Closeable {
+
+    record PendingQuote(String documentNumber, byte[] pdf, byte[] json, byte[] summary) {
+    }
+
+    @FunctionalInterface
+    interface QuoteWriter {
+        void write(PendingQuote quote) throws IOException;
+    }
+
+    private static final int RECORD_MAGIC = 0x51574232; // "QWB2"
+    private static final long RETRY_DELAY_MS = 1000;
+    private static final long SHUTDOWN_TIMEOUT_MS = 30_000;
+
+    private final FileChannel journal;
+    private final QuoteWriter writer;
+    private final Semaphore slots;
+    private final List<BlockingQueue<PendingQuote>> queues = new ArrayList<>();
+    private final List<Thread> writers = new ArrayList<>();
+    private final ConcurrentMap<String, PendingQuote> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Object journalLock = new Object();
+    private final Object syncLock = new Object();
+    private final Object written = new Object();
+
+    private volatile long writePosition;
+    private long syncedPosition;
+    private volatile boolean closing;
+
+    WriteBehindQueue(Path journalPath, int capacity, int writerThreads, QuoteWriter writer) throws IOException {
+        this.writer = writer;
+        this.slots = new Semaphore(Math.max(1, capacity));
+        this.journal = FileChannel.open(journalPath,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        replayJournal();
+
+        // Cada documento va siempre al mismo hilo, así dos versiones de una misma
+        // cotización se escriben en el orden en que llegaron
+        for (int i = 0; i < Math.max(1, writerThreads); i++) {
+            BlockingQueue<PendingQuote> queue = new LinkedBlockingQueue<>();
+            Thread thread = new Thread(() -> drain(queue), "cotizaciones-writer-" + i);
+            thread.setDaemon(true);
+            queues.add(queue);
+            writers.add(thread);
+        }
+        writers.forEach(Thread::start);
+    }
+
+    /**
+     * Registra la cotización en el diario y la encola.
+     *
+     * @return {@code false} si la cola está llena
+     */
+    boolean enqueue(PendingQuote quote) throws IOException {
+        if (closing || !slots.tryAcquire()) {
+            return false;
+        }
+        inFlight.incrementAndGet();
+        try {
+            long end;
+            synchronized (journalLock) {
+                end = append(quote);
+            }
+            syncTo(end);
+        } catch (IOException e) {
+            inFlight.decrementAndGet();
+            slots.release();
+            throw e;
+        }
+        pending.put(quote.documentNumber(), quote);
+        queues.get(Math.floorMod(quote.documentNumber().hashCode(), queues.size())).add(quote);
+        return true;
+    }
+
+    /**
+     * Última versión aún no escrita de la cotización, si la hay.
+     */
+    Optional<PendingQuote> pending(String documentNumber) {
+        return Optional.ofNullable(pending.get(documentNumber));
+    }
+
+    int size() {
+        return pending.size();
+    }
+
+    /**
+     * Espera a que la cotización termine de escribirse. Se usa antes de operaciones
+     * que modifican los archivos directamente, como eliminar.
+     */
+    void awaitWritten(String documentNumber) {
+        synchronized (written) {
+            while (pending.containsKey(documentNumber) && !closing) {
+                try {
+                    written.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Deja de aceptar cotizaciones y espera a que se escriban las encoladas. Lo que
+     * no alcance a escribirse queda en el diario para el próximo inicio.
+     */
+    @Override
+    public void close() throws IOException {
+        closing = true;
+        long deadline = System.currentTimeMillis() + SHUTDOWN_TIMEOUT_MS;
+        for (Thread thread : writers) {
+            try {
+                thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (!pending.isEmpty()) {
+            log.warn("{} cotizaciones quedan en el diario y se escribirán al reiniciar", pending.size());
+        }
+        journal.close();
+    }
+
+    private void drain(BlockingQueue<PendingQuote> queue) {
+        while (!closing || !queue.isEmpty()) {
+            PendingQuote quote;
+            try {
+                quote = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (quote == null) {
+                continue;
+            }
+            if (!writeWithRetry(quote)) {
+                // Se conserva en el diario
+                return;
+            }
+            synchronized (written) {
+                pending.remove(quote.documentNumber(), quote);
+                written.notifyAll();
+            }
+            slots.release();
+            if (inFlight.decrementAndGet() == 0) {
+                truncateJournal();
+            }
+        }
+    }
+
+    private boolean writeWithRetry(PendingQuote quote) {
+        while (true) {
+            try {
+                writer.write(quote);
+                return true;
+            } catch (IOException | RuntimeException e) {
+                log.error("Error en escritura diferida de {}, se reintentará: {}",
+                        quote.documentNumber(), e.getMessage());
+            }
+            if (closing) {
+                return false;
+            }
+            try {
+                Thread.sleep(RETRY_DELAY_MS);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }
+    }
+
+    private long append(PendingQuote quote) throws IOException {
+        byte[] key = quote.documentNumber().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 2 + key.length + 4 + quote.pdf().length
+                + 4 + quote.json().length + 4 + quote.summary().length + 4);
+        buffer.putInt(RECORD_MAGIC);
+        buffer.putShort((short) key.length);
+        buffer.put(key);
+        buffer.putInt(quote.pdf().length);
+        buffer.put(quote.pdf());
+        buffer.putInt(quote.json().length);
+        buffer.put(quote.json());
+        buffer.putInt(quote.summary().length);
+        buffer.put(quote.summary());
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 4, buffer.position() - 4);
+        buffer.putInt((int) crc.getValue());
+        buffer.flip();
+
+        long position = writePosition;
+        while (buffer.hasRemaining()) {
+            position += journal.write(buffer, position);
+        }
+        writePosition = position;
+        return position;
+    }
+
+    // Un solo fsync cubre todos los registros agregados hasta ese momento
+    private void syncTo(long end) throws IOException {
+        synchronized (syncLock) {
+            if (syncedPosition >= end) {
+                return;
+            }
+            long target = writePosition;
+            journal.force(false);
+            syncedPosition = target;
+        }
+    }
+
+    private void truncateJournal() {
+        synchronized (journalLock) {
+            synchronized (syncLock) {
+                if (inFlight.get() != 0) {
+                    return;
+                }
+                try {
+                    journal.truncate(0);
+                    journal.force(false);
+                    writePosition = 0;
+                    syncedPosition = 0;
+                } catch (IOException e) {
+                    log.warn("No se pudo truncar el diario de escritura diferida: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void replayJournal() throws IOException {
+        Map<String, PendingQuote> recovered = new LinkedHashMap<>();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(journal.position(0))));
+        try {
+            while (true) {
+                PendingQuote quote = readRecord(in);
+                if (quote == null) {
+                    break;
+                }
+                // La última versión de cada documento es la que vale
+                recovered.remove(quote.documentNumber());
+                recovered.put(quote.documentNumber(), quote);
+            }
+        } catch (EOFException e) {
+            log.warn("Registro final incompleto en el diario de escritura diferida, se descarta");
+        }
+
+        for (PendingQuote quote : recovered.values()) {
+            writer.write(quote);
+        }
+        if (!recovered.isEmpty()) {
+            log.info("Escritura diferida: {} cotizaciones recuperadas del diario", recovered.size());
+        }
+        journal.truncate(0);
+        journal.force(false);
+    }
+
+    private PendingQuote readRecord(DataInputStream in) throws IOException {
+        int magic;
+        try {
+            magic = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (magic != RECORD_MAGIC) {
+            log.warn("Diario de escritura diferida corrupto, se ignora el resto");
+            return null;
+        }
+        byte[] key = new byte[in.readUnsignedShort()];
+        in.readFully(key);
+        byte[] pdf = readBlock(in);
+        byte[] json = readBlock(in);
+        byte[] summary = readBlock(in);
+        int storedCrc = in.readInt();
+
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(2).putShort((short) key.length).array());
+        crc.update(key);
+        updateWithBlock(crc, pdf);
+        updateWithBlock(crc, json);
+        updateWithBlock(crc, summary);
+        if ((int) crc.getValue() != storedCrc) {
+            log.warn("CRC inválido en el diario de escritura diferida, se ignora el resto");
+            return null;
+        }
+        return new PendingQuote(new String(key, StandardCharsets.UTF_8), pdf, json, summary);
+    }
+
+    private byte[] readBlock(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        // Un largo imposible solo puede venir de un registro truncado
+        if (length < 0 || length > journal.size()) {
+            throw new EOFException();
+        }
+        byte[] block = new byte[length];
+        in.readFully(block);
+        return block;
+    }
+
+    private static void updateWithBlock(CRC32 crc, byte[] block) {
+        crc.update(ByteBuffer.allocate(4).putInt(block.length).array());
+        crc.update(block);
+    }
+}
@@ -1,23 +1,48 @@
 package yea.ecomservapi.modules.quoting.controller;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import yea.ecomservapi.kernel.service.FileStorageService;
 import yea.ecomservapi.kernel.service.PdfGeneratorService;
+import yea.ecomservapi.kernel.service.PdfUpload;
+import yea.ecomservapi.kernel.service.QuoteStageMetrics;
 import yea.ecomservapi.modules.quoting.dto.CreateQuoteRequest;
 import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+import yea.ecomservapi.modules.quoting.service.QuoteBackfillService;
+import yea.ecomservapi.modules.quoting.service.QuoteExportService;
+import yea.ecomservapi.modules.quoting.service.QuoteJobService;
+import yea.ecomservapi.modules.quoting.service.QuotePreviewService;
+import yea.ecomservapi.modules.quoting.service.QuoteRecordService;
 import yea.ecomservapi.modules.quoting.service.QuoteService;
 import yea.ecomservapi.modules.quoting.service.EmailService;
 import yea.ecomservapi.modules.quoting.dto.SendEmailRequest;
 
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/quotes")
@@ -30,29 +55,72 @@ public class QuoteController {
     private final PdfGeneratorService pdfGeneratorService;
     private final FileStorageService fileStorageService;
     private final EmailService emailService;
+    private final QuoteRecordService quoteRecordService;
+    private final QuoteBackfillService quoteBackfillService;
+    private final QuoteExportService quoteExportService;
+    private final QuotePreviewService quotePreviewService;
+    private final QuoteJobService quoteJobService;
+    private final MeterRegistry meterRegistry;
 
+    // Genera el PDF directo hacia el archivo y la respuesta, sin armarlo en memoria
+    @Value("${app.pdf.generate.streaming:false}")
+    private boolean streamingGenerate;
+
+    @Value("${app.quotes.export.timeout-ms:1800000}")
+    private long exportTimeoutMs;
+
+    private static final int MAX_PAGE_SIZE = 200;
+
+    // Atributos de request que Tomcat reconoce para servir archivos con sendfile
+    private static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    /**
+     * Cada etapa queda medida en {@code quote.generate.stage} y el total en
+     * {@code quote.generate} (ver {@link QuoteStageMetrics}).
+     */
     @PostMapping("/generate")
-    public ResponseEntity<byte[]> generateAndSavePdf(@Valid @RequestBody CreateQuoteRequest request) {
-        // Generar número de documento o usar el proporcionado
-        String documentNumber;
-        if (request.getDocumentNumber() != null && !request.getDocumentNumber().isBlank()
-                && !request.getDocumentNumber().equals("CES-XXXXX")) {
-            documentNumber = request.getDocumentNumber();
-        } else {
-            documentNumber = fileStorageService.generateNextDocumentNumber();
+    public ResponseEntity<byte[]> generateAndSavePdf(@Valid @RequestBody CreateQuoteRequest request,
+                                                     HttpServletResponse response) throws IOException {
+        int items = request.getItems() != null ? request.getItems().size() : 0;
+        String mode = streamingGenerate ? "streaming" : "buffered";
+        long start = System.nanoTime();
+        String outcome = QuoteStageMetrics.ERROR;
+        try {
+            ResponseEntity<byte[]> result = generateAndSave(request, response, items);
+            outcome = QuoteStageMetrics.SUCCESS;
+            return result;
+        } catch (RuntimeException e) {
+            outcome = QuoteStageMetrics.outcomeOf(e);
+            throw e;
+        } finally {
+            QuoteStageMetrics.recordTotal(meterRegistry, mode, items, outcome, System.nanoTime() - start);
         }
+    }
 
-        // Construir DTO con el número generado
-        QuoteDTO quoteDTO = quoteService.buildQuoteDTO(request, documentNumber);
+    private ResponseEntity<byte[]> generateAndSave(CreateQuoteRequest request, HttpServletResponse response,
+                                                   int items) throws IOException {
+        // Antes de numerar: un pedido rechazado no consume número de documento
+        pdfGeneratorService.checkItemLimit(items);
+        QuoteDTO quoteDTO = buildQuote(request, items);
+        String documentNumber = quoteDTO.getDocumentNumber();
+        boolean replacing = fileStorageService.existsPdf(documentNumber);
+
+        if (streamingGenerate) {
+            streamAndSavePdf(request, quoteDTO, response, items, replacing);
+            return null;
+        }
 
         // Generar PDF
         byte[] pdf = pdfGeneratorService.generateQuotePdf(quoteDTO);
 
-        // Guardar PDF en carpeta local
-        fileStorageService.savePdf(pdf, documentNumber);
+        // Guardar PDF, datos JSON (para futura edición) y resumen de forma atómica
+        fileStorageService.saveQuote(pdf, request, quoteDTO);
 
-        // Guardar datos JSON para futura edición
-        fileStorageService.saveJson(request, documentNumber);
+        // Registro en base de datos para listados y búsquedas
+        recordQuote(request, quoteDTO, items, replacing);
 
         return ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_DISPOSITION,
@@ -61,28 +129,183 @@ public class QuoteController {
                 .body(pdf);
     }
 
+    /**
+     * Variante de {@code /generate} para cotizaciones grandes: responde 202 con el id del
+     * trabajo apenas lo encola, sin mantener la conexión abierta mientras se genera.
+     * El estado se consulta en {@code Location} o por SSE en {@code /jobs/{id}/events};
+     * al terminar, {@code pdfUrl} apunta al PDF guardado.
+     */
+    @PostMapping("/generate/async")
+    public ResponseEntity<QuoteJobService.JobStatus> generateAsync(@Valid @RequestBody CreateQuoteRequest request) {
+        int items = request.getItems() != null ? request.getItems().size() : 0;
+        pdfGeneratorService.checkItemLimit(items);
+
+        // El número se asigna recién cuando el trabajo entró a la cola
+        QuoteJobService.JobStatus job = quoteJobService.submit(request, items, () -> buildQuote(request, items));
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/quotes/jobs/" + job.id()))
+                .body(job);
+    }
+
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<QuoteJobService.JobStatus> getJob(@PathVariable String id) {
+        return quoteJobService.status(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping(value = "/jobs/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> jobEvents(@PathVariable String id) {
+        return quoteJobService.subscribe(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    // Número de documento (el del request o uno nuevo) y DTO con los totales calculados
+    private QuoteDTO buildQuote(CreateQuoteRequest request, int items) {
+        // Generar número de documento o usar el proporcionado
+        String documentNumber;
+        if (request.getDocumentNumber() != null && !request.getDocumentNumber().isBlank()
+                && !request.getDocumentNumber().equals("CES-XXXXX")) {
+            documentNumber = request.getDocumentNumber();
+        } else {
+            documentNumber = QuoteStageMetrics.time(meterRegistry, QuoteStageMetrics.DOCUMENT_NUMBER, items,
+                    fileStorageService::generateNextDocumentNumber);
+        }
+
+        // Construir DTO con el número generado
+        return QuoteStageMetrics.time(meterRegistry, QuoteStageMetrics.BUILD_DTO, items,
+                () -> quoteService.buildQuoteDTO(request, documentNumber));
+    }
+
+    /**
+     * El registro en base de datos va después de guardar los archivos. Si falla, una
+     * cotización nueva se borra del almacenamiento y el pedido falla entero: no queda
+     * en archivos sin su registro y el cliente puede reintentar (el número se pierde).
+     * Si reemplazaba una existente, los archivos anteriores ya no están; quedan los
+     * nuevos y el registro se actualiza con el próximo guardado.
+     */
+    private void recordQuote(CreateQuoteRequest request, QuoteDTO quoteDTO, int items, boolean replacing) {
+        try {
+            QuoteStageMetrics.time(meterRegistry, QuoteStageMetrics.DB_RECORD, items, () -> {
+                quoteRecordService.save(quoteDTO, request);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            if (!replacing) {
+                fileStorageService.deletePdf(quoteDTO.getDocumentNumber());
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Genera el PDF una sola vez y lo escribe a la vez en el archivo y en la respuesta.
+     * El final del documento se envía recién cuando quedó guardado y registrado.
+     */
+    private void streamAndSavePdf(CreateQuoteRequest request, QuoteDTO quoteDTO, HttpServletResponse response,
+                                  int items, boolean replacing) throws IOException {
+        response.setContentType(MediaType.APPLICATION_PDF_VALUE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=" + quoteDTO.getDocumentNumber() + ".pdf");
+        try (PdfUpload upload = fileStorageService.openPdfUpload(request, quoteDTO)
+                .teeTo(response.getOutputStream())) {
+            pdfGeneratorService.writeQuotePdf(quoteDTO, upload);
+            upload.commit();
+            recordQuote(request, quoteDTO, items, replacing);
+            upload.completeResponse();
+        } catch (RuntimeException e) {
+            // Si todavía no salió nada, el manejador de errores responde normalmente (429, 500)
+            if (!response.isCommitted()) {
+                response.reset();
+            }
+            throw e;
+        }
+    }
+
     @PostMapping("/preview")
     public ResponseEntity<byte[]> previewPdf(@Valid @RequestBody CreateQuoteRequest request) {
-        // Solo genera el PDF sin guardarlo (para vista previa)
-        String tempNumber = "PREVIEW-" + System.currentTimeMillis();
-        QuoteDTO quoteDTO = quoteService.buildQuoteDTO(request, tempNumber);
-        byte[] pdf = pdfGeneratorService.generateQuotePdf(quoteDTO);
+        // Solo genera el PDF sin guardarlo (para vista previa); los pedidos iguales salen del caché
+        QuotePreviewService.Preview preview = quotePreviewService.preview(request);
 
         return ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=preview.pdf")
                 .contentType(MediaType.APPLICATION_PDF)
-                .body(pdf);
+                .eTag("\"" + preview.key() + "\"")
+                .body(preview.pdf());
+    }
+
+    @GetMapping("/preview/stats")
+    public ResponseEntity<QuotePreviewService.PreviewCacheStats> previewStats() {
+        return ResponseEntity.ok(quotePreviewService.stats());
     }
 
     @GetMapping("/{documentNumber}/pdf")
-    public ResponseEntity<byte[]> downloadPdf(@PathVariable String documentNumber) {
-        return fileStorageService.getPdf(documentNumber)
-                .map(pdf -> ResponseEntity.ok()
-                        .header(HttpHeaders.CONTENT_DISPOSITION,
-                                "attachment; filename=" + documentNumber + ".pdf")
-                        .contentType(MediaType.APPLICATION_PDF)
-                        .body(pdf))
-                .orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<Resource> downloadPdf(@PathVariable String documentNumber, ServletWebRequest webRequest) {
+        Optional<FileStorageService.StoredFile> stored = fileStorageService.getPdfFile(documentNumber);
+        if (stored.isEmpty()) {
+            // Sin archivo en disco (escritura diferida en cola o almacenamiento en memoria):
+            // se sirve desde memoria
+            return fileStorageService.getPdf(documentNumber)
+                    .map(pdf -> ResponseEntity.ok()
+                            .header(HttpHeaders.CONTENT_DISPOSITION,
+                                    "attachment; filename=" + documentNumber + ".pdf")
+                            .contentType(MediaType.APPLICATION_PDF)
+                            .cacheControl(CacheControl.noStore())
+                            .body((Resource) new ByteArrayResource(pdf)))
+                    .orElse(ResponseEntity.notFound().build());
+        }
+        FileStorageService.StoredFile file = stored.get();
+        HttpServletRequest request = webRequest.getRequest();
+        // Un PDF guardado con gzip se envía tal cual si el cliente lo acepta
+        boolean decode = file.gzip() && !acceptsGzip(request);
+        String etag = file.etag(decode);
+
+        // If-None-Match / If-Modified-Since: Spring responde 304 y no se envía el archivo
+        if (webRequest.checkNotModified(etag, file.lastModified().toEpochMilli())) {
+            return null;
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=" + documentNumber + ".pdf")
+                .contentType(MediaType.APPLICATION_PDF)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .eTag(etag)
+                .lastModified(file.lastModified());
+        if (file.gzip()) {
+            response.varyBy(HttpHeaders.ACCEPT_ENCODING);
+        }
+
+        if (decode) {
+            // Sin longitud conocida ni rangos: se descomprime en streaming
+            try {
+                return response.body(new InputStreamResource(file.openDecoded()));
+            } catch (IOException e) {
+                throw new RuntimeException("Error al leer PDF", e);
+            }
+        }
+        if (file.gzip()) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+
+        // Descarga completa: si Tomcat soporta sendfile, el kernel copia el archivo
+        // directamente al socket sin pasar por el heap
+        if (request.getHeader(HttpHeaders.RANGE) == null
+                && "GET".equals(request.getMethod())
+                && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTR, file.path().toString());
+            request.setAttribute(SENDFILE_START_ATTR, file.offset());
+            request.setAttribute(SENDFILE_END_ATTR, file.offset() + file.size());
+            return response
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                    .contentLength(file.size())
+                    .build();
+        }
+
+        // Range o conector sin sendfile: Spring transmite el archivo (o los rangos
+        // pedidos, con 206) en bloques desde el canal, sin cargarlo completo
+        return response.body(file.toResource());
     }
 
     @GetMapping("/{documentNumber}/exists")
@@ -94,12 +317,13 @@ public class QuoteController {
     @DeleteMapping("/{documentNumber}")
     public ResponseEntity<Void> deletePdf(@PathVariable String documentNumber) {
         boolean deleted = fileStorageService.deletePdf(documentNumber);
+        quoteRecordService.delete(documentNumber);
         return deleted ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
     }
 
     @GetMapping("/next-number")
     public ResponseEntity<Map<String, String>> getNextDocumentNumber() {
-        String nextNumber = fileStorageService.generateNextDocumentNumber();
+        String nextNumber = fileStorageService.peekNextDocumentNumber();
         return ResponseEntity.ok(Map.of("documentNumber", nextNumber));
     }
 
@@ -113,10 +337,122 @@ public class QuoteController {
         return ResponseEntity.ok(fileStorageService.listAllQuotesWithSummary());
     }
 
+    @GetMapping("/page")
+    public ResponseEntity<FileStorageService.QuotePage> listQuotesPage(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "25") int limit,
+            @RequestParam(required = false) String clientName,
+            @RequestParam(required = false) String currency,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) BigDecimal minTotal,
+            @RequestParam(required = false) BigDecimal maxTotal,
+            @RequestParam(defaultValue = "createdAt") String sort,
+            @RequestParam(defaultValue = "desc") String direction) {
+        FileStorageService.QuoteQuery query = new FileStorageService.QuoteQuery(
+                clientName,
+                currency,
+                from,
+                to,
+                minTotal,
+                maxTotal,
+                FileStorageService.QuoteSortField.fromParam(sort),
+                !"asc".equalsIgnoreCase(direction),
+                Math.max(1, Math.min(limit, MAX_PAGE_SIZE)),
+                cursor);
+        return ResponseEntity.ok(fileStorageService.findQuotes(query));
+    }
+
+    @GetMapping("/stats")
+    public ResponseEntity<FileStorageService.QuoteStats> getStats() {
+        return ResponseEntity.ok(fileStorageService.getStats());
+    }
+
+    @PostMapping("/stats/rebuild")
+    public ResponseEntity<FileStorageService.QuoteStats> rebuildStats() {
+        return ResponseEntity.ok(fileStorageService.rebuildStats());
+    }
+
+    /**
+     * Búsqueda de texto (sin distinguir tildes ni mayúsculas) en ítems, códigos,
+     * referencia, notas y cliente. El último término también coincide por prefijo.
+     */
+    @GetMapping("/search")
+    public ResponseEntity<List<FileStorageService.QuoteSearchResult>> searchQuotes(
+            @RequestParam("q") String query,
+            @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(fileStorageService.searchQuotes(query, Math.max(1, Math.min(limit, MAX_PAGE_SIZE))));
+    }
+
+    /**
+     * ZIP con el PDF y el JSON de cada cotización que cumple los filtros. Se genera
+     * mientras se envía, sin armar el archivo en memoria ni en disco. Tiene su propio
+     * límite de tiempo ({@code app.quotes.export.timeout-ms}) en lugar del global de
+     * peticiones asíncronas, porque una exportación grande puede tardar varios minutos.
+     */
+    @GetMapping("/export")
+    public WebAsyncTask<Void> exportQuotes(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) String clientName,
+            @RequestParam(required = false) String fromNumber,
+            @RequestParam(required = false) String toNumber,
+            HttpServletResponse response) {
+        QuoteExportService.ExportFilter filter =
+                new QuoteExportService.ExportFilter(from, to, clientName, fromNumber, toNumber);
+        response.setContentType("application/zip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=cotizaciones.zip");
+        return new WebAsyncTask<>(exportTimeoutMs, () -> {
+            quoteExportService.writeZip(filter, response.getOutputStream());
+            response.flushBuffer();
+            return null;
+        });
+    }
+
+    @PostMapping("/storage/migrate")
+    public ResponseEntity<Map<String, Integer>> migrateStorage() {
+        int moved = fileStorageService.migrateToShardedLayout();
+        return ResponseEntity.ok(Map.of("moved", moved));
+    }
+
+    @PostMapping("/storage/compact")
+    public ResponseEntity<FileStorageService.CompactionReport> compactStorage() {
+        return ResponseEntity.ok(fileStorageService.compactStorage());
+    }
+
+    @PostMapping("/storage/archive")
+    public ResponseEntity<FileStorageService.ArchiveReport> archiveStorage() {
+        return ResponseEntity.ok(fileStorageService.archiveOldQuotes());
+    }
+
+    @PostMapping("/storage/backfill-db")
+    public ResponseEntity<QuoteBackfillService.BackfillReport> backfillDatabase() {
+        return ResponseEntity.ok(quoteBackfillService.backfill());
+    }
+
+    @GetMapping("/render/stats")
+    public ResponseEntity<PdfGeneratorService.RenderStats> renderStats() {
+        return ResponseEntity.ok(pdfGeneratorService.renderStats());
+    }
+
+    @GetMapping("/storage/compression")
+    public ResponseEntity<FileStorageService.CompressionReport> compressionReport() {
+        return ResponseEntity.ok(fileStorageService.compressionReport());
+    }
+
     @GetMapping("/{documentNumber}/data")
-    public ResponseEntity<CreateQuoteRequest> getQuoteData(@PathVariable String documentNumber) {
-        return fileStorageService.getJson(documentNumber, CreateQuoteRequest.class)
-                .map(ResponseEntity::ok)
+    public ResponseEntity<byte[]> getQuoteData(@PathVariable String documentNumber, HttpServletRequest request) {
+        // Se devuelve el JSON guardado sin deserializarlo; comprimido si el cliente lo acepta
+        return fileStorageService.getJsonBlob(documentNumber, acceptsGzip(request))
+                .map(blob -> {
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .varyBy(HttpHeaders.ACCEPT_ENCODING);
+                    if (blob.gzip()) {
+                        response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+                    }
+                    return response.body(blob.content());
+                })
                 .orElse(ResponseEntity.notFound().build());
     }
 
@@ -157,4 +493,49 @@ public class QuoteController {
                     .body(Map.of("success", false, "message", "Error al enviar el correo"));
         }
     }
+
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        return acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+    }
+
+    /**
+     * Si {@code Accept-Encoding} admite gzip: listado con q mayor que 0, o por
+     * {@code *} si gzip no aparece. {@code gzip;q=0} lo rechaza aunque esté {@code *}.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzip = null;
+        Double any = null;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            double quality = quality(parts);
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                gzip = gzip == null ? quality : Math.max(gzip, quality);
+            } else if (coding.equals("*")) {
+                any = quality;
+            }
+        }
+        Double effective = gzip != null ? gzip : any;
+        return effective != null && effective > 0;
+    }
+
+    // Valor de q de un elemento de Accept-Encoding; sin q vale 1 y uno inválido, 0
+    private static double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.length() > 2 && (parameter.charAt(0) == 'q' || parameter.charAt(0) == 'Q')
+                    && parameter.charAt(1) == '=') {
+                try {
+                    double quality = Double.parseDouble(parameter.substring(2).trim());
+                    return quality >= 0 && quality <= 1 ? quality : 0;
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
 }
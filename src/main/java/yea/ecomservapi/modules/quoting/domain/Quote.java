@@ -0,0 +1,102 @@
+package yea.ecomservapi.modules.quoting.domain;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+import yea.ecomservapi.modules.quoting.dto.CreateQuoteRequest;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registro de una cotización emitida. El PDF sigue guardado en FileStorageService;
+ * aquí quedan los campos por los que se lista y filtra, y una copia del request
+ * original en jsonb para poder regenerarla.
+ */
+@Entity
+@Table(name = "quotes", indexes = {
+        @Index(name = "idx_quotes_client_ruc", columnList = "client_ruc"),
+        @Index(name = "idx_quotes_document_date", columnList = "document_date"),
+        @Index(name = "idx_quotes_currency", columnList = "currency"),
+        @Index(name = "idx_quotes_total", columnList = "total")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class Quote {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "document_number", unique = true, nullable = false, length = 20)
+    private String documentNumber;
+
+    @Column(name = "document_date", nullable = false)
+    private LocalDate documentDate;
+
+    @Column(name = "valid_until")
+    private LocalDate validUntil;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 3)
+    private Currency currency;
+
+    @Column(name = "client_id")
+    private Long clientId;
+
+    @Column(name = "client_name")
+    private String clientName;
+
+    @Column(name = "client_ruc", length = 20)
+    private String clientRuc;
+
+    @Column(precision = 14, scale = 2, nullable = false)
+    private BigDecimal subtotal;
+
+    @Column(precision = 14, scale = 2, nullable = false)
+    private BigDecimal igv;
+
+    @Column(precision = 14, scale = 2, nullable = false)
+    private BigDecimal total;
+
+    @OneToMany(mappedBy = "quote", cascade = CascadeType.ALL, orphanRemoval = true)
+    @OrderBy("position")
+    @Builder.Default
+    private List<QuoteItem> items = new ArrayList<>();
+
+    @JdbcTypeCode(SqlTypes.JSON)
+    @Column(name = "request", columnDefinition = "jsonb")
+    private CreateQuoteRequest request;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public void replaceItems(List<QuoteItem> newItems) {
+        items.clear();
+        newItems.forEach(item -> item.setQuote(this));
+        items.addAll(newItems);
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        if (createdAt == null) {
+            createdAt = LocalDateTime.now();
+        }
+        updatedAt = LocalDateTime.now();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,48 @@
+package yea.ecomservapi.modules.quoting.domain;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.math.BigDecimal;
+
+@Entity
+@Table(name = "quote_items", indexes = {
+        @Index(name = "idx_quote_items_quote_id", columnList = "quote_id")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class QuoteItem {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "quote_id", nullable = false)
+    private Quote quote;
+
+    // Orden del item dentro de la cotización
+    @Column(nullable = false)
+    private int position;
+
+    @Column(length = 20)
+    private String code;
+
+    @Column(columnDefinition = "text")
+    private String description;
+
+    @Column(name = "unit_measure", length = 10)
+    private String unitMeasure;
+
+    @Column(precision = 14, scale = 4, nullable = false)
+    private BigDecimal quantity;
+
+    @Column(name = "unit_price", precision = 14, scale = 4, nullable = false)
+    private BigDecimal unitPrice;
+
+    @Column(precision = 14, scale = 2, nullable = false)
+    private BigDecimal subtotal;
+}
@@ -0,0 +1,15 @@
+package yea.ecomservapi.modules.quoting.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import yea.ecomservapi.modules.quoting.domain.Quote;
+
+import java.util.Optional;
+
+@Repository
+public interface QuoteRepository extends JpaRepository<Quote, Long> {
+
+    Optional<Quote> findByDocumentNumber(String documentNumber);
+
+    void deleteByDocumentNumber(String documentNumber);
+}
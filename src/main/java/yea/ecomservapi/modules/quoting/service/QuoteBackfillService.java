@@ -0,0 +1,188 @@
+package yea.ecomservapi.modules.quoting.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import yea.ecomservapi.kernel.service.FileStorageService;
+import yea.ecomservapi.modules.quoting.dto.CreateQuoteRequest;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+import yea.ecomservapi.modules.quoting.dto.QuoteItemDTO;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Importa a la tabla quotes las cotizaciones que solo existen como JSON en el
+ * almacenamiento de archivos.
+ * <p>
+ * Usa JDBC en lotes en lugar de JPA: con ids IDENTITY Hibernate no puede agrupar los
+ * INSERT y haría uno por cotización y otro por item. Cada lote va en su propia
+ * transacción, y las cotizaciones que ya están en la base se omiten, así que el
+ * proceso se puede repetir sin duplicar.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class QuoteBackfillService {
+
+    private static final String INSERT_QUOTE = """
+            INSERT INTO quotes (document_number, document_date, valid_until, currency, client_id,
+                                client_name, client_ruc, subtotal, igv, total, request, created_at, updated_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?::jsonb, ?, ?)
+            ON CONFLICT (document_number) DO NOTHING
+            """;
+
+    private static final String SELECT_IDS =
+            "SELECT id, document_number FROM quotes WHERE document_number = ANY(?)";
+
+    private static final String INSERT_ITEM = """
+            INSERT INTO quote_items (quote_id, position, code, description, unit_measure,
+                                     quantity, unit_price, subtotal)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private final FileStorageService fileStorageService;
+    private final QuoteService quoteService;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${app.quotes.backfill-batch-size:200}")
+    private int batchSize;
+
+    public record BackfillReport(int imported, int skipped, int failed) {
+    }
+
+    private record PendingRecord(QuoteDTO quote, CreateQuoteRequest request, String requestJson,
+                                 LocalDateTime createdAt) {
+    }
+
+    public BackfillReport backfill() {
+        List<FileStorageService.QuoteSummary> summaries = fileStorageService.listAllQuotesWithSummary();
+        int imported = 0;
+        int failed = 0;
+        List<PendingRecord> batch = new ArrayList<>(batchSize);
+
+        for (FileStorageService.QuoteSummary summary : summaries) {
+            PendingRecord record = read(summary);
+            if (record == null) {
+                failed++;
+                continue;
+            }
+            batch.add(record);
+            if (batch.size() >= batchSize) {
+                imported += insertBatch(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            imported += insertBatch(batch);
+        }
+
+        int skipped = summaries.size() - imported - failed;
+        log.info("Backfill de cotizaciones: {} importadas, {} ya existían, {} con error", imported, skipped, failed);
+        return new BackfillReport(imported, skipped, failed);
+    }
+
+    private PendingRecord read(FileStorageService.QuoteSummary summary) {
+        String documentNumber = summary.documentNumber();
+        try {
+            CreateQuoteRequest request = fileStorageService.getJson(documentNumber, CreateQuoteRequest.class)
+                    .orElse(null);
+            if (request == null || request.getItems() == null) {
+                log.warn("Cotización {} sin datos JSON válidos, se omite", documentNumber);
+                return null;
+            }
+            // Mismos totales que se imprimieron en el PDF
+            QuoteDTO quote = quoteService.buildQuoteDTO(request, documentNumber);
+            // Sin fecha en el JSON se usa la de creación, no la del día del backfill
+            if (request.getDocumentDate() == null) {
+                LocalDate created = summary.createdAt().toLocalDate();
+                quote.setDocumentDate(created);
+                quote.setValidUntil(request.getValidUntil() != null ? request.getValidUntil() : created.plusDays(4));
+            }
+            return new PendingRecord(quote, request, objectMapper.writeValueAsString(request), summary.createdAt());
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.warn("No se pudo importar la cotización {}: {}", documentNumber, e.getMessage());
+            return null;
+        }
+    }
+
+    private int insertBatch(List<PendingRecord> batch) {
+        Integer inserted = transactionTemplate.execute(status -> {
+            int[] counts = jdbcTemplate.batchUpdate(INSERT_QUOTE, batch, batch.size(), this::setQuoteValues)[0];
+
+            // Solo las cotizaciones recién insertadas reciben sus items
+            List<PendingRecord> created = new ArrayList<>();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    created.add(batch.get(i));
+                }
+            }
+            if (created.isEmpty()) {
+                return 0;
+            }
+
+            Map<String, Long> ids = findIds(created);
+            List<Object[]> items = new ArrayList<>();
+            for (PendingRecord record : created) {
+                Long quoteId = ids.get(record.quote().getDocumentNumber());
+                List<QuoteItemDTO> quoteItems = record.quote().getItems();
+                for (int position = 0; position < quoteItems.size(); position++) {
+                    QuoteItemDTO item = quoteItems.get(position);
+                    items.add(new Object[]{quoteId, position, item.getCode(), item.getDescription(),
+                            item.getUnitMeasure(), item.getQuantity(), item.getUnitPrice(), item.getSubtotal()});
+                }
+            }
+            jdbcTemplate.batchUpdate(INSERT_ITEM, items);
+            return created.size();
+        });
+        return inserted != null ? inserted : 0;
+    }
+
+    private void setQuoteValues(PreparedStatement ps, PendingRecord record) throws SQLException {
+        QuoteDTO quote = record.quote();
+        Timestamp createdAt = Timestamp.valueOf(record.createdAt());
+        ps.setString(1, quote.getDocumentNumber());
+        ps.setObject(2, quote.getDocumentDate());
+        ps.setObject(3, quote.getValidUntil());
+        ps.setString(4, quote.getCurrency().name());
+        ps.setObject(5, record.request().getClientId(), Types.BIGINT);
+        ps.setString(6, quote.getClientName());
+        ps.setString(7, quote.getClientRuc());
+        ps.setBigDecimal(8, quote.getSubtotal());
+        ps.setBigDecimal(9, quote.getIgv());
+        ps.setBigDecimal(10, quote.getTotal());
+        ps.setString(11, record.requestJson());
+        ps.setTimestamp(12, createdAt);
+        ps.setTimestamp(13, createdAt);
+    }
+
+    private Map<String, Long> findIds(List<PendingRecord> records) {
+        String[] numbers = records.stream().map(record -> record.quote().getDocumentNumber()).toArray(String[]::new);
+        Map<String, Long> ids = new HashMap<>();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement ps = connection.prepareStatement(SELECT_IDS);
+            Array array = connection.createArrayOf("varchar", numbers);
+            ps.setArray(1, array);
+            return ps;
+        }, (RowCallbackHandler) rs ->
+                ids.put(rs.getString("document_number"), rs.getLong("id")));
+        return ids;
+    }
+}
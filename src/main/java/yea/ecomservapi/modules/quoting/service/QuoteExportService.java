@@ -0,0 +1,127 @@
+package yea.ecomservapi.modules.quoting.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import yea.ecomservapi.kernel.service.FileStorageService;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.NoSuchFileException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Exporta cotizaciones (PDF y JSON) en un ZIP que se escribe directamente en la
+ * respuesta a medida que se leen los archivos. Cada PDF se copia en bloques desde
+ * el almacenamiento, así la memoria usada no depende de cuántas cotizaciones se
+ * exporten ni de su tamaño.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class QuoteExportService {
+
+    private final FileStorageService fileStorageService;
+
+    public record ExportFilter(
+            LocalDate from,
+            LocalDate to,
+            String clientName,
+            String fromNumber,
+            String toNumber) {
+
+        // Fechas como en QuoteQuery (ver QuoteSummary#datedBetween).
+        // Los números CES-xxxxx tienen ancho fijo: el orden de texto es el numérico
+        public boolean matches(FileStorageService.QuoteSummary summary) {
+            if (!summary.datedBetween(from, to) || !summary.clientNameContains(clientName)) {
+                return false;
+            }
+            if (fromNumber != null && !fromNumber.isBlank() && summary.documentNumber().compareTo(fromNumber) < 0) {
+                return false;
+            }
+            return toNumber == null || toNumber.isBlank() || summary.documentNumber().compareTo(toNumber) <= 0;
+        }
+    }
+
+    /**
+     * Escribe el ZIP con las cotizaciones que cumplen el filtro, ordenadas por número.
+     *
+     * @return cantidad de cotizaciones exportadas
+     */
+    public int writeZip(ExportFilter filter, OutputStream out) throws IOException {
+        List<FileStorageService.QuoteSummary> selected = fileStorageService.listAllQuotesWithSummary().stream()
+                .filter(filter::matches)
+                .sorted(Comparator.comparing(FileStorageService.QuoteSummary::documentNumber))
+                .toList();
+
+        int exported = 0;
+        ZipOutputStream zip = new ZipOutputStream(out);
+        for (FileStorageService.QuoteSummary summary : selected) {
+            if (writePdf(zip, summary)) {
+                writeJson(zip, summary);
+                exported++;
+            }
+        }
+        // finish() y no close(): el stream de la respuesta lo cierra el contenedor
+        zip.finish();
+        zip.flush();
+        log.info("Exportación ZIP: {} cotizaciones", exported);
+        return exported;
+    }
+
+    // Los PDF ya vienen comprimidos: se guardan sin volver a comprimir
+    private boolean writePdf(ZipOutputStream zip, FileStorageService.QuoteSummary summary) throws IOException {
+        String documentNumber = summary.documentNumber();
+        Optional<InputStream> pdf = openPdf(documentNumber);
+        if (pdf.isEmpty()) {
+            // Eliminada después de armar la lista
+            return false;
+        }
+        try (InputStream in = pdf.get()) {
+            zip.setLevel(Deflater.NO_COMPRESSION);
+            zip.putNextEntry(entry(documentNumber + ".pdf", summary));
+            in.transferTo(zip);
+            zip.closeEntry();
+        }
+        return true;
+    }
+
+    private Optional<InputStream> openPdf(String documentNumber) throws IOException {
+        Optional<FileStorageService.StoredFile> stored = fileStorageService.getPdfFile(documentNumber);
+        if (stored.isPresent()) {
+            try {
+                return Optional.of(stored.get().openDecoded());
+            } catch (NoSuchFileException e) {
+                return Optional.empty();
+            }
+        }
+        // En cola de escritura o en un almacenamiento sin archivos
+        return fileStorageService.getPdf(documentNumber).map(ByteArrayInputStream::new);
+    }
+
+    private void writeJson(ZipOutputStream zip, FileStorageService.QuoteSummary summary) throws IOException {
+        Optional<FileStorageService.EncodedBlob> json = fileStorageService.getJsonBlob(summary.documentNumber(), false);
+        if (json.isEmpty()) {
+            return;
+        }
+        zip.setLevel(Deflater.DEFAULT_COMPRESSION);
+        zip.putNextEntry(entry(summary.documentNumber() + ".json", summary));
+        zip.write(json.get().content());
+        zip.closeEntry();
+    }
+
+    private static ZipEntry entry(String name, FileStorageService.QuoteSummary summary) {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setTime(summary.createdAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        return entry;
+    }
+}
@@ -0,0 +1,372 @@
+package yea.ecomservapi.modules.quoting.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import yea.ecomservapi.kernel.exception.RenderBusyException;
+import yea.ecomservapi.kernel.exception.RenderDeadlineException;
+import yea.ecomservapi.kernel.service.FileStorageService;
+import yea.ecomservapi.kernel.service.PdfGeneratorService;
+import yea.ecomservapi.kernel.service.PdfUpload;
+import yea.ecomservapi.kernel.service.QuoteStageMetrics;
+import yea.ecomservapi.modules.quoting.dto.CreateQuoteRequest;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Generación de cotizaciones en segundo plano. {@code POST /generate/async} responde
+ * enseguida con el id del trabajo; el PDF se genera y se guarda en hilos propios y el
+ * cliente consulta el estado o se suscribe a sus eventos (SSE) hasta que termine.
+ * Después descarga el PDF como cualquier cotización guardada.
+ * <p>
+ * Como mucho {@code threads} trabajos corren a la vez y {@code queue-capacity}
+ * esperan; con la cola llena se responde 429. Los trabajos terminados se conservan
+ * {@code retention-minutes} y, como mucho, {@code max-retained}.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class QuoteJobService {
+
+    public enum State {
+        QUEUED, RUNNING, SUCCEEDED, FAILED;
+
+        public boolean finished() {
+            return this == SUCCEEDED || this == FAILED;
+        }
+    }
+
+    public record JobStatus(
+            String id,
+            State state,
+            String documentNumber,
+            int items,
+            Instant createdAt,
+            Instant startedAt,
+            Instant finishedAt,
+            String pdfUrl,
+            String error) {
+    }
+
+    private final PdfGeneratorService pdfGeneratorService;
+    private final FileStorageService fileStorageService;
+    private final QuoteRecordService quoteRecordService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.quotes.jobs.threads:2}")
+    private int threads;
+
+    @Value("${app.quotes.jobs.queue-capacity:50}")
+    private int queueCapacity;
+
+    @Value("${app.quotes.jobs.retention-minutes:30}")
+    private long retentionMinutes;
+
+    @Value("${app.quotes.jobs.max-retained:1000}")
+    private int maxRetained;
+
+    // Veces que un trabajo reintenta si el pool de generación de PDF está lleno
+    @Value("${app.quotes.jobs.render-attempts:3}")
+    private int renderAttempts;
+
+    @Value("${app.quotes.jobs.sse-timeout-ms:300000}")
+    private long sseTimeoutMs;
+
+    private static final int RETRY_AFTER_SECONDS = 5;
+    // Lo que ve el cliente cuando falla; el detalle queda en el log
+    private static final String JOB_FAILED = "Error al generar la cotización";
+    private static final long SHUTDOWN_TIMEOUT_MS = 30_000;
+
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger sequence = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                task -> {
+                    Thread thread = new Thread(task, "quote-job-" + sequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        log.info("Trabajos de cotización: {} hilos, cola de {}, se conservan {} min",
+                threads, queueCapacity, retentionMinutes);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor == null) {
+            return;
+        }
+        // Los trabajos en curso terminan; los que esperan en cola se pierden
+        executor.shutdown();
+        executor.getQueue().clear();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Encola la generación y guardado de la cotización. {@code quote} arma el DTO y le
+     * asigna el número de documento; se llama recién cuando el trabajo entró a la
+     * cola, así un rechazo no consume número. Con la cola llena lanza
+     * {@link RenderBusyException}.
+     */
+    public JobStatus submit(CreateQuoteRequest request, int items, Supplier<QuoteDTO> quote) {
+        purgeExpired();
+        Job job = new Job(UUID.randomUUID().toString(), items, Instant.now());
+        // El hilo del trabajo espera el DTO numerado antes de empezar
+        CompletableFuture<QuoteDTO> numbered = new CompletableFuture<>();
+        try {
+            executor.execute(() -> run(job, request, numbered));
+        } catch (RejectedExecutionException e) {
+            throw new RenderBusyException("Hay demasiadas cotizaciones en proceso, intente en unos segundos",
+                    RETRY_AFTER_SECONDS);
+        }
+        QuoteDTO quoteDTO;
+        try {
+            quoteDTO = quote.get();
+        } catch (RuntimeException | Error e) {
+            numbered.completeExceptionally(e);
+            throw e;
+        }
+        job.numbered(quoteDTO.getDocumentNumber());
+        JobStatus queued = job.status();
+        jobs.put(job.id, job);
+        numbered.complete(quoteDTO);
+        log.info("Trabajo {} encolado: {} ({} ítems)", job.id, queued.documentNumber(), job.items);
+        return queued;
+    }
+
+    public Optional<JobStatus> status(String id) {
+        return Optional.ofNullable(jobs.get(id)).map(Job::status);
+    }
+
+    /**
+     * Eventos {@code status} con cada cambio de estado del trabajo, empezando por el
+     * actual. El stream se cierra cuando el trabajo termina.
+     */
+    public Optional<SseEmitter> subscribe(String id) {
+        Job job = jobs.get(id);
+        if (job == null) {
+            return Optional.empty();
+        }
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+        job.subscribe(emitter);
+        return Optional.of(emitter);
+    }
+
+    @Scheduled(fixedDelayString = "${app.quotes.jobs.purge-interval-ms:60000}")
+    public void purgeExpired() {
+        Instant cutoff = Instant.now().minus(Duration.ofMinutes(retentionMinutes));
+        jobs.values().removeIf(job -> job.finishedBefore(cutoff));
+
+        // Sobre el máximo se descartan los terminados más antiguos; los activos ya están acotados por la cola
+        int excess = jobs.size() - maxRetained;
+        if (excess > 0) {
+            List<Job> oldest = jobs.values().stream()
+                    .filter(job -> job.status().state().finished())
+                    .sorted(Comparator.comparing(job -> job.status().finishedAt()))
+                    .limit(excess)
+                    .toList();
+            oldest.forEach(job -> jobs.remove(job.id));
+        }
+    }
+
+    private void run(Job job, CreateQuoteRequest request, CompletableFuture<QuoteDTO> numbered) {
+        QuoteDTO quote;
+        try {
+            quote = numbered.join();
+        } catch (CompletionException | CancellationException e) {
+            // No se pudo armar el pedido: el error ya se respondió en submit
+            return;
+        }
+        job.start();
+        try {
+            boolean replacing = fileStorageService.existsPdf(quote.getDocumentNumber());
+            generateAndSave(request, quote);
+            record(request, quote, job.items, replacing);
+            job.succeed("/api/quotes/" + quote.getDocumentNumber() + "/pdf");
+            log.info("Trabajo {} terminado: {}", job.id, quote.getDocumentNumber());
+        } catch (RenderBusyException e) {
+            log.warn("Trabajo {} sin lugar para generar: {}", job.id, quote.getDocumentNumber());
+            job.fail(e.getMessage());
+        } catch (RuntimeException e) {
+            log.error("Trabajo {} falló: {}", job.id, quote.getDocumentNumber(), e);
+            job.fail(JOB_FAILED);
+        } catch (Error e) {
+            // Se marca terminado igual; el error sigue hacia el hilo
+            log.error("Trabajo {} falló: {}", job.id, quote.getDocumentNumber(), e);
+            job.fail(JOB_FAILED);
+            throw e;
+        } finally {
+            JobStatus status = job.status();
+            QuoteStageMetrics.recordTotal(meterRegistry, "async", job.items,
+                    status.state() == State.SUCCEEDED ? QuoteStageMetrics.SUCCESS : QuoteStageMetrics.ERROR,
+                    Duration.between(status.createdAt(), status.finishedAt()).toNanos());
+        }
+    }
+
+    // Mismo orden que /generate: archivos primero; si el registro falla, una cotización nueva se borra
+    private void record(CreateQuoteRequest request, QuoteDTO quote, int items, boolean replacing) {
+        try {
+            QuoteStageMetrics.time(meterRegistry, QuoteStageMetrics.DB_RECORD, items,
+                    () -> quoteRecordService.save(quote, request));
+        } catch (RuntimeException e) {
+            if (!replacing) {
+                fileStorageService.deletePdf(quote.getDocumentNumber());
+            }
+            throw e;
+        }
+    }
+
+    // Si la cola de generación está llena se espera y se reintenta: aquí nadie espera la
+    // respuesta. Un plazo vencido no se reintenta, volvería a vencer con el mismo plazo
+    private void generateAndSave(CreateQuoteRequest request, QuoteDTO quote) {
+        for (int attempt = 1; ; attempt++) {
+            try (PdfUpload upload = fileStorageService.openPdfUpload(request, quote)) {
+                pdfGeneratorService.writeQuotePdfForJob(quote, upload);
+                upload.commit();
+                return;
+            } catch (RenderBusyException e) {
+                if (e instanceof RenderDeadlineException || attempt >= renderAttempts) {
+                    throw e;
+                }
+                sleep(TimeUnit.SECONDS.toMillis(e.getRetryAfterSeconds()));
+            }
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Trabajo interrumpido", e);
+        }
+    }
+
+    /**
+     * Estado de un trabajo y sus suscriptores SSE. Los cambios de estado y las
+     * suscripciones se sincronizan sobre el trabajo, así ningún suscriptor se pierde
+     * el evento final.
+     */
+    private static final class Job {
+
+        private final String id;
+        private final int items;
+        private final Instant createdAt;
+        private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+
+        private State state = State.QUEUED;
+        private String documentNumber;
+        private Instant startedAt;
+        private Instant finishedAt;
+        private String pdfUrl;
+        private String error;
+
+        private Job(String id, int items, Instant createdAt) {
+            this.id = id;
+            this.items = items;
+            this.createdAt = createdAt;
+        }
+
+        synchronized void numbered(String documentNumber) {
+            this.documentNumber = documentNumber;
+        }
+
+        synchronized JobStatus status() {
+            return new JobStatus(id, state, documentNumber, items, createdAt, startedAt, finishedAt, pdfUrl, error);
+        }
+
+        synchronized boolean finishedBefore(Instant cutoff) {
+            return finishedAt != null && finishedAt.isBefore(cutoff);
+        }
+
+        synchronized void start() {
+            state = State.RUNNING;
+            startedAt = Instant.now();
+            publish();
+        }
+
+        synchronized void succeed(String pdfUrl) {
+            this.pdfUrl = pdfUrl;
+            finish(State.SUCCEEDED);
+        }
+
+        synchronized void fail(String error) {
+            this.error = error;
+            finish(State.FAILED);
+        }
+
+        synchronized void subscribe(SseEmitter emitter) {
+            emitter.onCompletion(() -> emitters.remove(emitter));
+            emitter.onTimeout(() -> emitters.remove(emitter));
+            emitter.onError(e -> emitters.remove(emitter));
+            if (!send(emitter, status())) {
+                return;
+            }
+            if (state.finished()) {
+                emitter.complete();
+            } else {
+                emitters.add(emitter);
+            }
+        }
+
+        private void finish(State finalState) {
+            state = finalState;
+            finishedAt = Instant.now();
+            publish();
+            emitters.forEach(SseEmitter::complete);
+            emitters.clear();
+        }
+
+        private void publish() {
+            JobStatus status = status();
+            emitters.removeIf(emitter -> !send(emitter, status));
+        }
+
+        // Un cliente desconectado solo deja de recibir eventos; Spring cierra su request
+        private static boolean send(SseEmitter emitter, JobStatus status) {
+            try {
+                emitter.send(SseEmitter.event().name("status").data(status));
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package yea.ecomservapi.modules.quoting.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.DecimalNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import yea.ecomservapi.kernel.service.PdfGeneratorService;
+import yea.ecomservapi.modules.quoting.dto.CreateQuoteRequest;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Vistas previas de cotizaciones con caché. El formulario pide una vista previa casi
+ * en cada cambio y muchas veces con los mismos datos: el PDF se guarda por el hash de
+ * la cotización ya armada (con fechas y condiciones por defecto resueltas) y un pedido
+ * igual se responde sin generar.
+ * <p>
+ * El caché es LRU y está acotado por tamaño total. Si llegan a la vez varios pedidos
+ * iguales, solo el primero genera el PDF y los demás esperan ese mismo resultado.
+ */
+@Service
+@RequiredArgsConstructor
+public class QuotePreviewService {
+
+    private static final String PREVIEW_PREFIX = "PREVIEW-";
+
+    private final QuoteService quoteService;
+    private final PdfGeneratorService pdfGeneratorService;
+
+    @Value("${app.pdf.preview.cache-max-mb:32}")
+    private long cacheMaxMb;
+
+    // Serialización canónica: propiedades y mapas en orden alfabético, fechas ISO
+    private final ObjectMapper canonicalMapper = JsonMapper.builder()
+            .findAndAddModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+            .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+            .build();
+
+    // Orden de acceso: el primero es el menos usado recientemente
+    private final LinkedHashMap<String, byte[]> cache = new LinkedHashMap<>(64, 0.75f, true);
+    private final ConcurrentMap<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+    private long cachedBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder collapsed = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public record Preview(String key, byte[] pdf) {
+    }
+
+    public record PreviewCacheStats(
+            long hits,
+            long misses,
+            long collapsed,
+            long evictions,
+            int entries,
+            long bytes,
+            long maxBytes,
+            double hitRatio) {
+    }
+
+    /**
+     * Devuelve el PDF de vista previa, del caché si ya se generó uno igual.
+     */
+    public Preview preview(CreateQuoteRequest request) {
+        QuoteDTO quote = quoteService.buildQuoteDTO(request, null);
+        String key = key(quote);
+
+        byte[] cached = cached(key);
+        if (cached != null) {
+            hits.increment();
+            return new Preview(key, cached);
+        }
+
+        CompletableFuture<byte[]> pending = new CompletableFuture<>();
+        CompletableFuture<byte[]> existing = inFlight.putIfAbsent(key, pending);
+        if (existing != null) {
+            collapsed.increment();
+            return new Preview(key, join(existing));
+        }
+
+        try {
+            // Otro pedido igual pudo terminar entre la consulta al caché y el registro
+            cached = cached(key);
+            if (cached != null) {
+                hits.increment();
+                pending.complete(cached);
+                return new Preview(key, cached);
+            }
+            misses.increment();
+            // El número es estable para que el mismo contenido genere el mismo PDF
+            quote.setDocumentNumber(PREVIEW_PREFIX + key.substring(0, 8).toUpperCase(Locale.ROOT));
+            byte[] pdf = pdfGeneratorService.generateQuotePdf(quote);
+            store(key, pdf);
+            pending.complete(pdf);
+            return new Preview(key, pdf);
+        } catch (RuntimeException e) {
+            pending.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, pending);
+        }
+    }
+
+    public synchronized PreviewCacheStats stats() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum() + collapsed.sum();
+        return new PreviewCacheStats(hitCount, misses.sum(), collapsed.sum(), evictions.sum(),
+                cache.size(), cachedBytes, maxBytes(), lookups == 0 ? 0 : (double) hitCount / lookups);
+    }
+
+    /**
+     * Hash SHA-256 del JSON canónico de la cotización. Los importes se comparan por
+     * valor ("2" y "2.00" dan la misma clave): el PDF los muestra con dos decimales.
+     */
+    String key(QuoteDTO quote) {
+        try {
+            JsonNode canonical = normalize(canonicalMapper.valueToTree(quote));
+            byte[] json = canonicalMapper.writeValueAsString(canonical).getBytes(StandardCharsets.UTF_8);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(json));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("No se pudo calcular la clave de la vista previa", e);
+        }
+    }
+
+    private synchronized byte[] cached(String key) {
+        return cache.get(key);
+    }
+
+    private synchronized void store(String key, byte[] pdf) {
+        long maxBytes = maxBytes();
+        if (pdf.length > maxBytes) {
+            return;
+        }
+        byte[] previous = cache.put(key, pdf);
+        cachedBytes += pdf.length - (previous != null ? previous.length : 0);
+        Iterator<Map.Entry<String, byte[]>> eldest = cache.entrySet().iterator();
+        while (cachedBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, byte[]> entry = eldest.next();
+            cachedBytes -= entry.getValue().length;
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private long maxBytes() {
+        return cacheMaxMb * 1024 * 1024;
+    }
+
+    private static byte[] join(CompletableFuture<byte[]> pending) {
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw e;
+        }
+    }
+
+    private static JsonNode normalize(JsonNode node) {
+        if (node instanceof ObjectNode object) {
+            object.fields().forEachRemaining(field -> field.setValue(normalize(field.getValue())));
+        } else if (node instanceof ArrayNode array) {
+            for (int i = 0; i < array.size(); i++) {
+                array.set(i, normalize(array.get(i)));
+            }
+        } else if (node.isNumber()) {
+            BigDecimal value = node.decimalValue().stripTrailingZeros();
+            return DecimalNode.valueOf(value.scale() < 0 ? value.setScale(0) : value);
+        }
+        return node;
+    }
+}
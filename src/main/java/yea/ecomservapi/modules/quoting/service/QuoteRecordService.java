@@ -0,0 +1,68 @@
+package yea.ecomservapi.modules.quoting.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import yea.ecomservapi.modules.quoting.domain.Quote;
+import yea.ecomservapi.modules.quoting.domain.QuoteItem;
+import yea.ecomservapi.modules.quoting.dto.CreateQuoteRequest;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+import yea.ecomservapi.modules.quoting.dto.QuoteItemDTO;
+import yea.ecomservapi.modules.quoting.repository.QuoteRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Mantiene el registro en base de datos de cada cotización emitida. El PDF y el JSON
+ * siguen en FileStorageService.
+ */
+@Service
+@RequiredArgsConstructor
+@Transactional
+public class QuoteRecordService {
+
+    private final QuoteRepository quoteRepository;
+
+    /**
+     * Crea o reemplaza el registro de la cotización con los totales ya calculados.
+     */
+    public Quote save(QuoteDTO quoteDTO, CreateQuoteRequest request) {
+        Quote quote = quoteRepository.findByDocumentNumber(quoteDTO.getDocumentNumber())
+                .orElseGet(Quote::new);
+        quote.setDocumentNumber(quoteDTO.getDocumentNumber());
+        quote.setDocumentDate(quoteDTO.getDocumentDate());
+        quote.setValidUntil(quoteDTO.getValidUntil());
+        quote.setCurrency(quoteDTO.getCurrency());
+        quote.setClientId(request.getClientId());
+        quote.setClientName(quoteDTO.getClientName());
+        quote.setClientRuc(quoteDTO.getClientRuc());
+        quote.setSubtotal(quoteDTO.getSubtotal());
+        quote.setIgv(quoteDTO.getIgv());
+        quote.setTotal(quoteDTO.getTotal());
+        quote.setRequest(request);
+        quote.replaceItems(toItems(quoteDTO.getItems()));
+        return quoteRepository.save(quote);
+    }
+
+    public void delete(String documentNumber) {
+        quoteRepository.deleteByDocumentNumber(documentNumber);
+    }
+
+    private static List<QuoteItem> toItems(List<QuoteItemDTO> items) {
+        List<QuoteItem> result = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            QuoteItemDTO item = items.get(i);
+            result.add(QuoteItem.builder()
+                    .position(i)
+                    .code(item.getCode())
+                    .description(item.getDescription())
+                    .unitMeasure(item.getUnitMeasure())
+                    .quantity(item.getQuantity())
+                    .unitPrice(item.getUnitPrice())
+                    .subtotal(item.getSubtotal())
+                    .build());
+        }
+        return result;
+    }
+}
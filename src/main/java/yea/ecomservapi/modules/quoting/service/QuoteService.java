@@ -17,7 +17,8 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class QuoteService {
 
-    private static final BigDecimal IGV_RATE = new BigDecimal("0.18");
+    // Tasa del IGV; la usan también los resúmenes de cotizaciones antiguas
+    public static final BigDecimal IGV_RATE = new BigDecimal("0.18");
 
     public QuoteDTO buildQuoteDTO(CreateQuoteRequest request, String documentNumber) {
         // Calcular totales
@@ -0,0 +1,212 @@
+package yea.ecomservapi.kernel.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AtomicQuoteWriteTest {
+
+    private static final int THREADS = 16;
+    private static final int QUOTES = 200;
+
+    @TempDir
+    Path storageDir;
+
+    private final List<FileStorageService> services = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        services.forEach(FileStorageService::shutdown);
+    }
+
+    @Test
+    void concurrentSavesAreGroupCommitted() throws Exception {
+        FileStorageService storage = newStorage();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < QUOTES; i++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    String number = storage.generateNextDocumentNumber();
+                    storage.saveQuote(new byte[64 * 1024], Map.of("clientName", number), quote(number, number));
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(storage.listAllQuotesWithSummary()).hasSize(QUOTES)
+                .allSatisfy(summary -> assertThat(summary.clientName()).isEqualTo(summary.documentNumber()));
+        assertThat(tempFiles()).isEmpty();
+
+        FileSystemBlobStore blobStore = (FileSystemBlobStore) ReflectionTestUtils.getField(storage, "blobStore");
+        assertThat(blobStore.fileWriter().commits()).isEqualTo(QUOTES);
+    }
+
+    @Test
+    void commitsQueuedBehindAGroupShareTheNextOne() throws Exception {
+        AtomicFileWriter writer = new AtomicFileWriter();
+        ReentrantLock commitLock = (ReentrantLock) ReflectionTestUtils.getField(writer, "commitLock");
+
+        // Con el turno tomado, las escrituras se acumulan en la cola hasta liberarlo
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        commitLock.lock();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                Path target = storageDir.resolve("archivo-" + i);
+                AtomicFileWriter.StagedFile staged = writer.stage(target, new byte[]{(byte) i});
+                futures.add(pool.submit(() -> {
+                    writer.commit(List.of(staged));
+                    return null;
+                }));
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (commitLock.getQueueLength() < THREADS) {
+                assertThat(System.nanoTime()).as("tiempo de espera agotado").isLessThan(deadline);
+                Thread.sleep(1);
+            }
+        } finally {
+            commitLock.unlock();
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(writer.commits()).isEqualTo(THREADS);
+        assertThat(writer.groups()).isEqualTo(1);
+        assertThat(tempFiles()).isEmpty();
+    }
+
+    @Test
+    void aRewriteInterruptedBetweenRenamesIsCompletedAtStartup() throws Exception {
+        // Caída a mitad de la confirmación: el JSON ya es el nuevo, el PDF sigue en su temporal
+        Path shard = Files.createDirectories(storageDir.resolve("000"));
+        Files.write(shard.resolve("CES-00001.pdf"), new byte[]{1});
+        Files.writeString(shard.resolve("CES-00001.json"), "{\"clientName\":\"después\"}");
+        Files.write(shard.resolve(".CES-00001.pdf.b.tmp"), new byte[]{2, 2});
+        Files.writeString(shard.resolve(".commit-1.journal"), """
+                .CES-00001.json.a.tmp\tCES-00001.json
+                .CES-00001.pdf.b.tmp\tCES-00001.pdf
+                COMMIT
+                """);
+
+        FileStorageService storage = newStorage();
+
+        assertThat(storage.getPdf("CES-00001")).contains(new byte[]{2, 2});
+        assertThat(storage.listAllQuotesWithSummary()).singleElement()
+                .satisfies(summary -> assertThat(summary.clientName()).isEqualTo("después"));
+        assertThat(tempFiles()).isEmpty();
+        assertThat(shard.resolve(".commit-1.journal")).doesNotExist();
+    }
+
+    @Test
+    void aJournalCutShortIsDiscardedWithItsTempFiles() throws Exception {
+        // Caída mientras se escribía el diario: todavía no se renombró nada
+        Path shard = Files.createDirectories(storageDir.resolve("000"));
+        Files.write(shard.resolve("CES-00001.pdf"), new byte[]{1});
+        Files.write(shard.resolve(".CES-00001.pdf.b.tmp"), new byte[]{2, 2});
+        Files.writeString(shard.resolve(".commit-1.journal"), ".CES-00001.pdf.b.tmp\tCES-00001.pdf\n");
+
+        FileStorageService storage = newStorage();
+
+        assertThat(storage.getPdf("CES-00001")).contains(new byte[]{1});
+        assertThat(tempFiles()).isEmpty();
+        assertThat(shard.resolve(".commit-1.journal")).doesNotExist();
+    }
+
+    @Test
+    void aRenameFailingMidCommitRestoresTheFilesAlreadyRenamed() throws Exception {
+        AtomicFileWriter writer = new AtomicFileWriter();
+        Path json = storageDir.resolve("CES-00001.json");
+        Path summary = storageDir.resolve("CES-00001.summary");
+        Files.writeString(json, "antes");
+        // Un directorio no vacío en lugar del PDF hace fallar el último renombre
+        Path pdf = Files.createDirectories(storageDir.resolve("CES-00001.pdf"));
+        Files.write(pdf.resolve("ocupado"), new byte[]{1});
+
+        assertThatThrownBy(() -> writer.commit(List.of(
+                writer.stage(json, "después".getBytes(StandardCharsets.UTF_8)),
+                writer.stage(summary, new byte[]{2}),
+                writer.stage(pdf, new byte[]{3}))))
+                .isInstanceOf(IOException.class);
+
+        assertThat(json).hasContent("antes");
+        assertThat(summary).doesNotExist();
+        assertThat(tempFiles()).isEmpty();
+    }
+
+    @Test
+    void rewriteReplacesBothFiles() {
+        FileStorageService storage = newStorage();
+
+        storage.saveQuote(new byte[]{1}, Map.of("clientName", "antes"), quote("CES-00001", "antes"));
+        storage.saveQuote(new byte[]{2, 2}, Map.of("clientName", "después"), quote("CES-00001", "después"));
+
+        assertThat(storage.getPdf("CES-00001")).contains(new byte[]{2, 2});
+        assertThat(storage.listAllQuotesWithSummary()).singleElement()
+                .satisfies(summary -> assertThat(summary.clientName()).isEqualTo("después"));
+    }
+
+    @Test
+    void interruptedWritesAreDiscardedAtStartup() throws Exception {
+        // Caída antes del renombre: temporales huérfanos y un JSON sin su PDF
+        Files.write(storageDir.resolve(".CES-00005.pdf.1234.tmp"), new byte[]{1});
+        Files.write(storageDir.resolve(".CES-00005.json.1234.tmp"), new byte[]{1});
+        Files.writeString(storageDir.resolve("CES-00006.json"), "{\"clientName\":\"x\"}");
+
+        FileStorageService storage = newStorage();
+
+        assertThat(tempFiles()).isEmpty();
+        assertThat(storage.listAllQuotesWithSummary()).isEmpty();
+        assertThat(storage.existsPdf("CES-00005")).isFalse();
+    }
+
+    private static QuoteDTO quote(String documentNumber, String clientName) {
+        return QuoteDTO.builder().documentNumber(documentNumber).clientName(clientName).build();
+    }
+
+    private List<Path> tempFiles() throws Exception {
+        try (Stream<Path> files = Files.walk(storageDir)) {
+            return files.filter(path -> AtomicFileWriter.isTempFile(path.getFileName().toString())).toList();
+        }
+    }
+
+    private FileStorageService newStorage() {
+        FileStorageService storage = TestStorage.in(storageDir).open();
+        services.add(storage);
+        return storage;
+    }
+}
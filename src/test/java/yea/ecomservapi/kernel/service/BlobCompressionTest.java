@@ -0,0 +1,108 @@
+package yea.ecomservapi.kernel.service;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import yea.ecomservapi.modules.quoting.dto.CreateQuoteRequest;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+import yea.ecomservapi.modules.quoting.dto.QuoteItemDTO;
+import yea.ecomservapi.modules.quoting.service.QuoteService;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BlobCompressionTest {
+
+    private static final byte[] PDF = "%PDF-1.7 cotización %%EOF".repeat(200).getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path storageDir;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"files", "segments"})
+    void eachBlobTypeIsStoredWithItsOwnCompression(String engine) throws IOException {
+        FileStorageService storage = TestStorage.in(storageDir.resolve("json")).engine(engine)
+                .jsonCompression("gzip").pdfCompression("none").open();
+        try {
+            save(storage, "CES-00001");
+            assertThat(BlobCompression.isGzip(stored(storage, "CES-00001", QuoteBlobStore.BlobType.JSON))).isTrue();
+            assertThat(stored(storage, "CES-00001", QuoteBlobStore.BlobType.PDF)).isEqualTo(PDF);
+            assertThat(storage.getPdf("CES-00001")).hasValue(PDF);
+        } finally {
+            storage.shutdown();
+        }
+
+        storage = TestStorage.in(storageDir.resolve("pdf")).engine(engine)
+                .jsonCompression("none").pdfCompression("gzip").open();
+        try {
+            save(storage, "CES-00001");
+            assertThat(BlobCompression.isGzip(stored(storage, "CES-00001", QuoteBlobStore.BlobType.JSON))).isFalse();
+            assertThat(BlobCompression.isGzip(stored(storage, "CES-00001", QuoteBlobStore.BlobType.PDF))).isTrue();
+            assertThat(storage.getPdf("CES-00001")).hasValue(PDF);
+            assertThat(storage.getJson("CES-00001", CreateQuoteRequest.class))
+                    .hasValueSatisfying(json -> assertThat(json.getClientName()).isEqualTo("Minera Andina"));
+        } finally {
+            storage.shutdown();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"files", "segments"})
+    void gzipIsPassedThroughOnlyWhenAcceptedAndPlainBlobsAreNeverGzipped(String engine) {
+        // CES-00001 se guarda sin comprimir; CES-00002 ya con gzip activado
+        FileStorageService storage = TestStorage.in(storageDir).engine(engine).jsonCompression("none").open();
+        try {
+            save(storage, "CES-00001");
+        } finally {
+            storage.shutdown();
+        }
+        storage = TestStorage.in(storageDir).engine(engine).jsonCompression("gzip").open();
+        try {
+            save(storage, "CES-00002");
+
+            assertThat(storage.getJsonBlob("CES-00002", true)).hasValueSatisfying(blob -> {
+                assertThat(blob.gzip()).isTrue();
+                assertThat(BlobCompression.isGzip(blob.content())).isTrue();
+            });
+            assertThat(storage.getJsonBlob("CES-00002", false)).hasValueSatisfying(blob -> {
+                assertThat(blob.gzip()).isFalse();
+                assertThat(new String(blob.content(), StandardCharsets.UTF_8)).contains("Minera Andina");
+            });
+            // Lo guardado antes de activar gzip se lee y se envía tal cual
+            assertThat(storage.getJsonBlob("CES-00001", true)).hasValueSatisfying(blob -> {
+                assertThat(blob.gzip()).isFalse();
+                assertThat(new String(blob.content(), StandardCharsets.UTF_8)).contains("Minera Andina");
+            });
+            assertThat(storage.getJson("CES-00001", CreateQuoteRequest.class)).isPresent();
+        } finally {
+            storage.shutdown();
+        }
+    }
+
+    private static void save(FileStorageService storage, String documentNumber) {
+        CreateQuoteRequest request = CreateQuoteRequest.builder()
+                .clientName("Minera Andina")
+                .items(List.of(QuoteItemDTO.builder()
+                        .code("VLV-020")
+                        .description("Válvula de compuerta")
+                        .quantity(BigDecimal.ONE)
+                        .unitPrice(new BigDecimal("100.00"))
+                        .build()))
+                .build();
+        QuoteDTO quote = new QuoteService().buildQuoteDTO(request, documentNumber);
+        storage.saveQuote(PDF, request, quote);
+    }
+
+    // Bytes tal como quedaron en el backend
+    private static byte[] stored(FileStorageService storage, String documentNumber, QuoteBlobStore.BlobType type)
+            throws IOException {
+        QuoteBlobStore blobStore = (QuoteBlobStore) ReflectionTestUtils.getField(storage, "blobStore");
+        return blobStore.get(documentNumber, type).orElseThrow();
+    }
+}
@@ -0,0 +1,105 @@
+package yea.ecomservapi.kernel.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DocumentNumberAllocatorTest {
+
+    private static final int THREADS = 32;
+    private static final int CALLS = 800;
+
+    @TempDir
+    Path storageDir;
+
+    private final List<FileStorageService> services = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        services.forEach(FileStorageService::shutdown);
+    }
+
+    @Test
+    void concurrentGenerateCallsNeverReturnDuplicates() throws Exception {
+        FileStorageService storage = newStorage();
+        Set<String> numbers = ConcurrentHashMap.newKeySet();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < CALLS; i++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    String number = storage.generateNextDocumentNumber();
+                    assertThat(numbers.add(number)).as("número duplicado %s", number).isTrue();
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(numbers).hasSize(CALLS);
+        assertThat(numbers).contains("CES-00001", String.format("CES-%05d", CALLS));
+    }
+
+    @Test
+    void restartNeverReusesAllocatedNumbers() {
+        FileStorageService first = newStorage();
+        String last = null;
+        for (int i = 0; i < 45; i++) {
+            last = first.generateNextDocumentNumber();
+        }
+        first.shutdown();
+
+        // Ningún archivo fue escrito: solo la marca persistida protege la numeración
+        FileStorageService second = newStorage();
+        String next = second.generateNextDocumentNumber();
+
+        assertThat(next).isGreaterThan(last);
+    }
+
+    @Test
+    void seedsFromHighestExistingDocument() throws Exception {
+        Files.write(storageDir.resolve("CES-00041.pdf"), new byte[]{1});
+        Files.write(storageDir.resolve("CES-00007.pdf"), new byte[]{1});
+
+        FileStorageService storage = newStorage();
+
+        assertThat(storage.peekNextDocumentNumber()).isEqualTo("CES-00042");
+        assertThat(storage.generateNextDocumentNumber()).isEqualTo("CES-00042");
+    }
+
+    @Test
+    void explicitNumbersAdvanceTheCounter() {
+        FileStorageService storage = newStorage();
+
+        storage.savePdf(new byte[]{1}, "CES-00100");
+
+        assertThat(storage.generateNextDocumentNumber()).isEqualTo("CES-00101");
+    }
+
+    private FileStorageService newStorage() {
+        FileStorageService storage = TestStorage.in(storageDir).open();
+        services.add(storage);
+        return storage;
+    }
+}
@@ -0,0 +1,152 @@
+package yea.ecomservapi.kernel.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thymeleaf.context.StandardEngineContextFactory;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+import yea.ecomservapi.modules.quoting.domain.Currency;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+import yea.ecomservapi.modules.quoting.dto.QuoteItemDTO;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LargeQuoteRenderingTest {
+
+    @Test
+    void chunkedRenderKeepsItemOrderHeaderAndTotals() throws IOException {
+        PdfGeneratorService generator = newGenerator(100, 5000);
+
+        byte[] pdf = generator.generateQuotePdf(quote(400));
+
+        try (PDDocument document = PDDocument.load(pdf)) {
+            String text = new PDFTextStripper().getText(document);
+            assertThat(occurrences(text, "COTIZACIÓN:")).isEqualTo(1);
+            assertThat(occurrences(text, "Subtotal")).isEqualTo(1);
+            // Cada parte repite el encabezado de la tabla
+            assertThat(occurrences(text, "DESCRIPCION")).isEqualTo(4);
+            int previous = -1;
+            for (int i = 1; i <= 400; i++) {
+                int position = text.indexOf("PRD-" + i + " ");
+                assertThat(position).as("ítem %d", i).isGreaterThan(previous);
+                previous = position;
+            }
+            assertThat(text.indexOf("Subtotal")).isGreaterThan(previous);
+        }
+    }
+
+    @Test
+    void rejectsQuotesAboveTheItemCap() {
+        PdfGeneratorService generator = newGenerator(100, 50);
+
+        assertThatThrownBy(() -> generator.generateQuotePdf(quote(51)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("51");
+    }
+
+    /**
+     * La memoria queda acotada porque cada HTML que se maqueta lleva como mucho
+     * {@code chunk-items} ítems: se mide cuántos ítems recibe cada pasada del template.
+     */
+    @Test
+    void largeQuotesAreTemplatedInChunksOfAtMostChunkItems() {
+        List<Integer> templated = new ArrayList<>();
+        PdfGeneratorService generator = newGenerator(templateEngine(templated), 100, 5000);
+
+        generator.writeQuotePdf(quote(1000), OutputStream.nullOutputStream());
+
+        assertThat(templated).hasSize(10).allSatisfy(items -> assertThat(items).isEqualTo(100));
+
+        templated.clear();
+        generator.writeQuotePdf(quote(1050), OutputStream.nullOutputStream());
+        assertThat(templated).hasSize(11).allSatisfy(items -> assertThat(items).isLessThanOrEqualTo(100));
+        assertThat(templated.stream().mapToInt(Integer::intValue).sum()).isEqualTo(1050);
+    }
+
+    @Test
+    void quotesUpToTheThresholdAreTemplatedAtOnce() {
+        List<Integer> templated = new ArrayList<>();
+        PdfGeneratorService generator = newGenerator(templateEngine(templated), 100, 5000);
+
+        generator.writeQuotePdf(quote(150), OutputStream.nullOutputStream());
+
+        assertThat(templated).containsExactly(150);
+    }
+
+    private static PdfGeneratorService newGenerator(int chunkItems, int maxItems) {
+        return newGenerator(templateEngine(new ArrayList<>()), chunkItems, maxItems);
+    }
+
+    private static PdfGeneratorService newGenerator(SpringTemplateEngine engine, int chunkItems, int maxItems) {
+        RenderAssetRegistry assets = new RenderAssetRegistry();
+        ReflectionTestUtils.setField(assets, "jpegQuality", 0.92f);
+        assets.load();
+        PdfGeneratorService generator = new PdfGeneratorService(engine, assets, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(generator, "maxItems", maxItems);
+        ReflectionTestUtils.setField(generator, "largeThresholdItems", 150);
+        ReflectionTestUtils.setField(generator, "chunkItems", chunkItems);
+        return generator;
+    }
+
+    // Anota en templated la cantidad de ítems de cada pasada del template
+    private static SpringTemplateEngine templateEngine(List<Integer> templated) {
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode("HTML");
+        resolver.setCharacterEncoding("UTF-8");
+        SpringTemplateEngine engine = new SpringTemplateEngine();
+        engine.setTemplateResolver(resolver);
+        StandardEngineContextFactory contexts = new StandardEngineContextFactory();
+        engine.setEngineContextFactory((configuration, templateData, resolutionAttributes, context) -> {
+            templated.add(((List<?>) context.getVariable("items")).size());
+            return contexts.createEngineContext(configuration, templateData, resolutionAttributes, context);
+        });
+        return engine;
+    }
+
+    private static QuoteDTO quote(int itemCount) {
+        List<QuoteItemDTO> items = new ArrayList<>(itemCount);
+        for (int i = 1; i <= itemCount; i++) {
+            items.add(QuoteItemDTO.builder()
+                    .code("PRD-" + i)
+                    .description("Tubería PVC clase 10 de " + i + " metros con accesorios")
+                    .unitMeasure("UND")
+                    .quantity(BigDecimal.ONE)
+                    .unitPrice(new BigDecimal("10.00"))
+                    .subtotal(new BigDecimal("10.00"))
+                    .build());
+        }
+        BigDecimal subtotal = new BigDecimal("10.00").multiply(BigDecimal.valueOf(itemCount));
+        return QuoteDTO.builder()
+                .documentNumber("CES-00001")
+                .documentDate(LocalDate.of(2024, 3, 5))
+                .validUntil(LocalDate.of(2024, 3, 20))
+                .currency(Currency.PEN)
+                .clientName("Licitación")
+                .items(items)
+                .subtotal(subtotal)
+                .igv(subtotal.multiply(new BigDecimal("0.18")))
+                .total(subtotal.multiply(new BigDecimal("1.18")))
+                .build();
+    }
+
+    private static int occurrences(String text, String value) {
+        int count = 0;
+        for (int i = text.indexOf(value); i >= 0; i = text.indexOf(value, i + value.length())) {
+            count++;
+        }
+        return count;
+    }
+}
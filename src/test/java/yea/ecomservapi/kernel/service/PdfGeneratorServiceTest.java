@@ -0,0 +1,112 @@
+package yea.ecomservapi.kernel.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+import yea.ecomservapi.modules.quoting.domain.Currency;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+import yea.ecomservapi.modules.quoting.dto.QuoteItemDTO;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PdfGeneratorServiceTest {
+
+    @Test
+    void staticImagesAreEmbeddedAsPreparedJpegs() throws IOException {
+        RenderAssetRegistry assets = new RenderAssetRegistry();
+        ReflectionTestUtils.setField(assets, "jpegQuality", 0.92f);
+        assets.load();
+        PdfGeneratorService generator = new PdfGeneratorService(templateEngine(), assets, new SimpleMeterRegistry());
+
+        byte[] pdf = generator.generateQuotePdf(quote());
+
+        try (PDDocument document = PDDocument.load(pdf)) {
+            PDResources resources = document.getPage(0).getResources();
+            List<String> filters = new ArrayList<>();
+            for (COSName name : resources.getXObjectNames()) {
+                if (resources.getXObject(name) instanceof PDImageXObject image) {
+                    filters.add(image.getSuffix());
+                }
+            }
+            // logo, firma y marcas del pie, incrustados tal cual sin recomprimir
+            assertThat(filters).hasSize(3).containsOnly("jpg");
+        }
+    }
+
+    @Test
+    void writesThePdfIntoTheCallersStreamFromTheRenderPool() throws IOException {
+        RenderAssetRegistry assets = new RenderAssetRegistry();
+        ReflectionTestUtils.setField(assets, "jpegQuality", 0.92f);
+        assets.load();
+        PdfGeneratorService generator = new PdfGeneratorService(templateEngine(), assets, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(generator, "renderThreads", 1);
+        ReflectionTestUtils.setField(generator, "renderQueueCapacity", 1);
+        ReflectionTestUtils.setField(generator, "renderDeadlineMs", 30_000L);
+        generator.init();
+        try {
+            AtomicBoolean closed = new AtomicBoolean();
+            ByteArrayOutputStream out = new ByteArrayOutputStream() {
+                @Override
+                public void close() {
+                    closed.set(true);
+                }
+            };
+
+            generator.writeQuotePdf(quote(), out);
+
+            // PDFBox cierra el stream al terminar; el del que llama sigue abierto
+            assertThat(closed).isFalse();
+            try (PDDocument document = PDDocument.load(out.toByteArray())) {
+                assertThat(document.getNumberOfPages()).isPositive();
+            }
+        } finally {
+            generator.shutdown();
+        }
+    }
+
+    private static SpringTemplateEngine templateEngine() {
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode("HTML");
+        resolver.setCharacterEncoding("UTF-8");
+        SpringTemplateEngine engine = new SpringTemplateEngine();
+        engine.setTemplateResolver(resolver);
+        return engine;
+    }
+
+    private static QuoteDTO quote() {
+        return QuoteDTO.builder()
+                .documentNumber("CES-00001")
+                .documentDate(LocalDate.of(2024, 3, 5))
+                .validUntil(LocalDate.of(2024, 3, 20))
+                .currency(Currency.PEN)
+                .clientName("Cliente")
+                .items(List.of(QuoteItemDTO.builder()
+                        .code("VLV-020")
+                        .description("Válvula de compuerta")
+                        .unitMeasure("UND")
+                        .quantity(BigDecimal.ONE)
+                        .unitPrice(new BigDecimal("100.00"))
+                        .subtotal(new BigDecimal("100.00"))
+                        .build()))
+                .subtotal(new BigDecimal("100.00"))
+                .igv(new BigDecimal("18.00"))
+                .total(new BigDecimal("118.00"))
+                .build();
+    }
+}
@@ -0,0 +1,114 @@
+package yea.ecomservapi.kernel.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PdfUploadTest {
+
+    @TempDir
+    Path storageDir;
+
+    private FileStorageService storage;
+
+    @AfterEach
+    void tearDown() {
+        storage.shutdown();
+    }
+
+    @Test
+    void teesToResponseButHoldsBackTheTailUntilStored() throws IOException {
+        storage = newStorage("gzip");
+        byte[] pdf = randomPdf(100_000);
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+
+        try (PdfUpload upload = storage.openPdfUpload(Map.of("clientName", "Minera Andina"), quote("CES-00001"))
+                .teeTo(response)) {
+            for (int off = 0; off < pdf.length; off += 1000) {
+                upload.write(pdf, off, Math.min(1000, pdf.length - off));
+            }
+            assertThat(response.size()).isEqualTo(pdf.length - PdfUpload.HELD_BACK_BYTES);
+            assertThat(storage.existsPdf("CES-00001")).isFalse();
+
+            upload.commit();
+            upload.completeResponse();
+        }
+
+        assertThat(response.toByteArray()).isEqualTo(pdf);
+        assertThat(storage.getPdf("CES-00001")).hasValue(pdf);
+        assertThat(storage.listAllQuotesWithSummary()).singleElement()
+                .satisfies(summary -> assertThat(summary.total()).isEqualByComparingTo("118.00"));
+        assertThat(tempFiles()).isEmpty();
+    }
+
+    @Test
+    void closingWithoutCommitDiscardsThePdf() throws IOException {
+        storage = newStorage("none");
+
+        try (PdfUpload upload = storage.openPdfUpload(Map.of(), quote("CES-00002"))) {
+            upload.write(randomPdf(20_000));
+        }
+
+        assertThat(storage.existsPdf("CES-00002")).isFalse();
+        assertThat(tempFiles()).isEmpty();
+    }
+
+    @Test
+    void keepsStoringWhenTheClientDisconnects() throws IOException {
+        storage = newStorage("none");
+        byte[] pdf = randomPdf(50_000);
+        OutputStream disconnected = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+
+        try (PdfUpload upload = storage.openPdfUpload(Map.of(), quote("CES-00003")).teeTo(disconnected)) {
+            upload.write(pdf);
+            upload.commit();
+            upload.completeResponse();
+        }
+
+        assertThat(storage.getPdf("CES-00003")).hasValue(pdf);
+    }
+
+    private FileStorageService newStorage(String pdfCompression) {
+        return TestStorage.in(storageDir).pdfCompression(pdfCompression).open();
+    }
+
+    private static QuoteDTO quote(String documentNumber) {
+        return QuoteDTO.builder()
+                .documentNumber(documentNumber)
+                .clientName("Minera Andina")
+                .total(new BigDecimal("118.00"))
+                .build();
+    }
+
+    private static byte[] randomPdf(int size) {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        System.arraycopy("%PDF-1.7".getBytes(), 0, content, 0, 8);
+        return content;
+    }
+
+    private List<Path> tempFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(storageDir)) {
+            return files.filter(path -> AtomicFileWriter.isTempFile(path.getFileName().toString())).toList();
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package yea.ecomservapi.kernel.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QuoteArchiveTest {
+
+    @TempDir
+    Path storageDir;
+
+    private final List<FileStorageService> services = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        services.forEach(FileStorageService::shutdown);
+    }
+
+    @Test
+    void archivedQuotesAreStillServedAndLeaveTheHotDirectory() throws IOException {
+        FileStorageService storage = newStorage();
+        storage.saveQuote(new byte[]{1, 2, 3}, Map.of("clientName", "Cliente"), quote("CES-00001", "Cliente"));
+        storage.saveQuote(new byte[]{4, 5}, Map.of("clientName", "Otro"), quote("CES-00002", "Otro"));
+
+        FileStorageService.ArchiveReport report = storage.archiveOldQuotes();
+
+        assertThat(report.quotesArchived()).isEqualTo(2);
+        assertThat(hotFiles()).isEmpty();
+        assertThat(storageDir.resolve("archive").resolve(YearMonth.now() + ".zip")).exists();
+        assertThat(storage.getPdfFile("CES-00001")).isEmpty();
+        assertThat(storage.getPdf("CES-00001")).contains(new byte[]{1, 2, 3});
+        assertThat(storage.getJson("CES-00002", Map.class)).hasValueSatisfying(
+                json -> assertThat(json).containsEntry("clientName", "Otro"));
+        assertThat(storage.existsPdf("CES-00002")).isTrue();
+        assertThat(storage.listAllQuotesWithSummary()).hasSize(2);
+
+        // Nada nuevo que archivar
+        assertThat(storage.archiveOldQuotes().quotesArchived()).isZero();
+    }
+
+    @Test
+    void archiveSurvivesARestartAndSupportsDeletes() {
+        FileStorageService storage = newStorage();
+        storage.saveQuote(new byte[]{1}, Map.of("clientName", "Cliente"), quote("CES-00001", "Cliente"));
+        storage.saveQuote(new byte[]{2}, Map.of("clientName", "Otro"), quote("CES-00002", "Otro"));
+        storage.archiveOldQuotes();
+        storage.shutdown();
+
+        FileStorageService restarted = newStorage();
+
+        assertThat(restarted.listAllQuotesWithSummary())
+                .extracting(FileStorageService.QuoteSummary::clientName)
+                .containsExactlyInAnyOrder("Cliente", "Otro");
+        assertThat(restarted.listAllQuotesWithSummary()).allSatisfy(
+                summary -> assertThat(summary.total()).isEqualByComparingTo("118.00"));
+
+        assertThat(restarted.deletePdf("CES-00001")).isTrue();
+        assertThat(restarted.getPdf("CES-00001")).isEmpty();
+        assertThat(restarted.getPdf("CES-00002")).contains(new byte[]{2});
+        assertThat(restarted.listAllQuotes()).extracting(FileStorageService.QuoteFileInfo::documentNumber)
+                .containsExactly("CES-00002");
+    }
+
+    @Test
+    void aNewerHotCopyWinsOverTheArchivedOne() {
+        FileStorageService storage = newStorage();
+        storage.saveQuote(new byte[]{1}, Map.of("clientName", "antes"), quote("CES-00001", "antes"));
+        storage.archiveOldQuotes();
+
+        storage.saveQuote(new byte[]{2, 2}, Map.of("clientName", "después"), quote("CES-00001", "después"));
+
+        assertThat(storage.getPdf("CES-00001")).contains(new byte[]{2, 2});
+        assertThat(storage.listAllQuotesWithSummary()).singleElement()
+                .satisfies(summary -> assertThat(summary.clientName()).isEqualTo("después"));
+    }
+
+    @Test
+    void aJsonWrittenWhileArchivingKeepsTheQuoteInTheHotDirectory() throws IOException {
+        FileStorageService storage = newStorage();
+        storage.saveQuote(new byte[]{1}, Map.of("clientName", "Cliente"), quote("CES-00001", "Cliente"));
+        storage.saveQuote(new byte[]{2}, Map.of("clientName", "Otro"), quote("CES-00002", "Otro"));
+
+        // El JSON se edita justo cuando el archivo lee el PDF para empaquetarlo, que es
+        // la lectura que se hace sin el lock del documento (la huella se toma con él)
+        StorageAdmin admin = (StorageAdmin) ReflectionTestUtils.getField(storage, "admin");
+        QuoteBlobStore blobStore = (QuoteBlobStore) ReflectionTestUtils.getField(admin, "blobStore");
+        ReentrantLock documentLock = ReflectionTestUtils.invokeMethod(storage, "documentLock", "CES-00001");
+        AtomicBoolean edited = new AtomicBoolean();
+        ReflectionTestUtils.setField(admin, "blobStore", new DelegatingBlobStore(blobStore) {
+            @Override
+            public Optional<byte[]> get(String documentNumber, BlobType type) throws IOException {
+                Optional<byte[]> stored = super.get(documentNumber, type);
+                if (documentNumber.equals("CES-00001") && type == BlobType.PDF
+                        && !documentLock.isHeldByCurrentThread() && !edited.getAndSet(true)) {
+                    Thread writer = new Thread(() -> storage.saveJson(Map.of("clientName", "editado"), "CES-00001"));
+                    writer.start();
+                    try {
+                        writer.join();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return stored;
+            }
+        });
+
+        FileStorageService.ArchiveReport report = storage.archiveOldQuotes();
+
+        assertThat(edited).isTrue();
+        assertThat(report.quotesArchived()).isEqualTo(1);
+        assertThat(storage.getPdfFile("CES-00001")).isPresent();
+        assertThat(storage.getJson("CES-00001", Map.class)).hasValueSatisfying(
+                json -> assertThat(json).containsEntry("clientName", "editado"));
+        assertThat(storage.getPdfFile("CES-00002")).isEmpty();
+    }
+
+    @Test
+    void deletesOnlyRewriteTheMonthIndex() throws IOException {
+        FileStorageService storage = newStorage();
+        storage.saveQuote(new byte[]{1}, Map.of("clientName", "Cliente"), quote("CES-00001", "Cliente"));
+        storage.saveQuote(new byte[]{2}, Map.of("clientName", "Otro"), quote("CES-00002", "Otro"));
+        storage.archiveOldQuotes();
+        Path bundle = storageDir.resolve("archive").resolve(YearMonth.now() + ".zip");
+        byte[] packed = Files.readAllBytes(bundle);
+
+        assertThat(storage.deletePdf("CES-00001")).isTrue();
+
+        assertThat(bundle).hasBinaryContent(packed);
+        assertThat(storage.getPdf("CES-00001")).isEmpty();
+        assertThat(storage.listAllQuotes()).extracting(FileStorageService.QuoteFileInfo::documentNumber)
+                .containsExactly("CES-00002");
+
+        // El próximo empaquetado del mes descarta los blobs sin referencias
+        storage.saveQuote(new byte[]{3}, Map.of("clientName", "Nuevo"), quote("CES-00003", "Nuevo"));
+        storage.archiveOldQuotes();
+        try (ZipFile zip = new ZipFile(bundle.toFile())) {
+            assertThat(zip.stream().map(ZipEntry::getName))
+                    .noneMatch(name -> name.startsWith("CES-00001"))
+                    .anyMatch(name -> name.startsWith("CES-00003"));
+        }
+    }
+
+    private List<Path> hotFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(storageDir)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(path -> path.getFileName().toString().startsWith("CES-"))
+                    .toList();
+        }
+    }
+
+    private static QuoteDTO quote(String documentNumber, String clientName) {
+        return QuoteDTO.builder()
+                .documentNumber(documentNumber)
+                .clientName(clientName)
+                .total(new BigDecimal("118.00"))
+                .build();
+    }
+
+    private static class DelegatingBlobStore implements QuoteBlobStore {
+
+        private final QuoteBlobStore delegate;
+
+        DelegatingBlobStore(QuoteBlobStore delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void put(String documentNumber, Map<BlobType, byte[]> blobs) throws IOException {
+            delegate.put(documentNumber, blobs);
+        }
+
+        @Override
+        public Optional<byte[]> get(String documentNumber, BlobType type) throws IOException {
+            return delegate.get(documentNumber, type);
+        }
+
+        @Override
+        public Optional<FileStorageService.StoredFile> locate(String documentNumber, BlobType type) {
+            return delegate.locate(documentNumber, type);
+        }
+
+        @Override
+        public boolean contains(String documentNumber, BlobType type) {
+            return delegate.contains(documentNumber, type);
+        }
+
+        @Override
+        public Optional<BlobInfo> info(String documentNumber) {
+            return delegate.info(documentNumber);
+        }
+
+        @Override
+        public List<BlobInfo> list() throws IOException {
+            return delegate.list();
+        }
+
+        @Override
+        public void remove(String documentNumber, BlobType type) throws IOException {
+            delegate.remove(documentNumber, type);
+        }
+
+        @Override
+        public boolean delete(String documentNumber) throws IOException {
+            return delegate.delete(documentNumber);
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+
+    // Con una antigüedad negativa el mes en curso ya cuenta como archivable
+    private FileStorageService newStorage() {
+        FileStorageService storage = TestStorage.in(storageDir).archiveMaxAgeDays(-62).open();
+        services.add(storage);
+        return storage;
+    }
+}
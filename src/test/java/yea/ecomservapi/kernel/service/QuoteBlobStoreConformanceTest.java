@@ -0,0 +1,154 @@
+package yea.ecomservapi.kernel.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Mismo comportamiento observable con cualquier backend de {@link QuoteBlobStore}.
+ * El rendimiento de cada motor se mide en el módulo {@code benchmarks}.
+ */
+class QuoteBlobStoreConformanceTest {
+
+    @TempDir
+    Path storageDir;
+
+    private final List<FileStorageService> services = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        services.forEach(FileStorageService::shutdown);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"files", "segments", "memory"})
+    void savedQuoteIsReadBack(String engine) {
+        FileStorageService storage = newStorage(engine);
+
+        storage.saveQuote(new byte[]{1, 2, 3}, Map.of("clientName", "Cliente"), quote("CES-00001", "Cliente"));
+
+        assertThat(storage.existsPdf("CES-00001")).isTrue();
+        assertThat(storage.getPdf("CES-00001")).contains(new byte[]{1, 2, 3});
+        assertThat(storage.getJson("CES-00001", Map.class)).hasValueSatisfying(
+                json -> assertThat(json).containsEntry("clientName", "Cliente"));
+        assertThat(storage.listAllQuotesWithSummary()).singleElement().satisfies(summary -> {
+            assertThat(summary.clientName()).isEqualTo("Cliente");
+            assertThat(summary.total()).isEqualByComparingTo("118.00");
+            assertThat(summary.fileSize()).isEqualTo(3);
+        });
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"files", "segments", "memory"})
+    void rewriteReplacesThePreviousVersion(String engine) {
+        FileStorageService storage = newStorage(engine);
+
+        storage.saveQuote(new byte[]{1}, Map.of("clientName", "antes"), quote("CES-00001", "antes"));
+        storage.saveQuote(new byte[]{2, 2}, Map.of("clientName", "después"), quote("CES-00001", "después"));
+
+        assertThat(storage.getPdf("CES-00001")).contains(new byte[]{2, 2});
+        assertThat(storage.listAllQuotesWithSummary()).singleElement()
+                .satisfies(summary -> assertThat(summary.clientName()).isEqualTo("después"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"files", "segments", "memory"})
+    void separateJsonAndPdfWritesKeepTheSummaryConsistent(String engine) {
+        FileStorageService storage = newStorage(engine);
+
+        storage.saveQuote(new byte[]{1}, Map.of("clientName", "antes"), quote("CES-00001", "antes"));
+        storage.saveJson(Map.of("clientName", "editado"), "CES-00001");
+        storage.savePdf(new byte[]{9, 9, 9, 9}, "CES-00001");
+
+        assertThat(storage.getPdf("CES-00001")).contains(new byte[]{9, 9, 9, 9});
+        assertThat(storage.listAllQuotesWithSummary()).singleElement().satisfies(summary -> {
+            assertThat(summary.clientName()).isEqualTo("editado");
+            assertThat(summary.fileSize()).isEqualTo(4);
+        });
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"files", "segments", "memory"})
+    void deleteRemovesEveryBlob(String engine) {
+        FileStorageService storage = newStorage(engine);
+        storage.saveQuote(new byte[]{1}, Map.of("clientName", "Cliente"), quote("CES-00001", "Cliente"));
+        storage.saveQuote(new byte[]{2}, Map.of("clientName", "Otro"), quote("CES-00002", "Otro"));
+
+        assertThat(storage.deletePdf("CES-00001")).isTrue();
+        assertThat(storage.deletePdf("CES-00001")).isFalse();
+
+        assertThat(storage.existsPdf("CES-00001")).isFalse();
+        assertThat(storage.getPdf("CES-00001")).isEmpty();
+        assertThat(storage.getJson("CES-00001", Map.class)).isEmpty();
+        assertThat(storage.listAllQuotes()).extracting(FileStorageService.QuoteFileInfo::documentNumber)
+                .containsExactly("CES-00002");
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"files", "segments", "memory"})
+    void removeDropsOnlyThatBlob(String engine) throws Exception {
+        FileStorageService storage = newStorage(engine);
+        storage.saveQuote(new byte[]{1}, Map.of("clientName", "Cliente"), quote("CES-00001", "Cliente"));
+        QuoteBlobStore blobStore = (QuoteBlobStore) ReflectionTestUtils.getField(storage, "blobStore");
+
+        blobStore.remove("CES-00001", QuoteBlobStore.BlobType.JSON);
+
+        assertThat(blobStore.contains("CES-00001", QuoteBlobStore.BlobType.JSON)).isFalse();
+        assertThat(blobStore.get("CES-00001", QuoteBlobStore.BlobType.JSON)).isEmpty();
+        assertThat(blobStore.get("CES-00001", QuoteBlobStore.BlobType.PDF)).contains(new byte[]{1});
+
+        blobStore.remove("CES-00001", QuoteBlobStore.BlobType.PDF);
+        blobStore.remove("CES-00001", QuoteBlobStore.BlobType.PDF);
+
+        assertThat(blobStore.info("CES-00001")).isEmpty();
+        assertThat(blobStore.list()).isEmpty();
+        assertThat(blobStore.contains("CES-00001", QuoteBlobStore.BlobType.SUMMARY)).isTrue();
+
+        if (!engine.equals("memory")) {
+            storage.shutdown();
+            QuoteBlobStore restarted = (QuoteBlobStore) ReflectionTestUtils.getField(newStorage(engine), "blobStore");
+            assertThat(restarted.contains("CES-00001", QuoteBlobStore.BlobType.JSON)).isFalse();
+            assertThat(restarted.contains("CES-00001", QuoteBlobStore.BlobType.PDF)).isFalse();
+            assertThat(restarted.contains("CES-00001", QuoteBlobStore.BlobType.SUMMARY)).isTrue();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"files", "segments"})
+    void persistentEnginesSurviveARestart(String engine) {
+        FileStorageService storage = newStorage(engine);
+        storage.saveQuote(new byte[]{7}, Map.of("clientName", "Cliente"), quote("CES-00010", "Cliente"));
+        storage.shutdown();
+
+        FileStorageService restarted = newStorage(engine);
+
+        assertThat(restarted.getPdf("CES-00010")).contains(new byte[]{7});
+        assertThat(restarted.listAllQuotesWithSummary()).singleElement()
+                .satisfies(summary -> assertThat(summary.clientName()).isEqualTo("Cliente"));
+    }
+
+    private static QuoteDTO quote(String documentNumber, String clientName) {
+        return QuoteDTO.builder()
+                .documentNumber(documentNumber)
+                .clientName(clientName)
+                .total(new BigDecimal("118.00"))
+                .build();
+    }
+
+    private FileStorageService newStorage(String engine) {
+        FileStorageService storage = TestStorage.in(storageDir).engine(engine).open();
+        services.add(storage);
+        return storage;
+    }
+}
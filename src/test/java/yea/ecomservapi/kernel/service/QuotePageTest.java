@@ -0,0 +1,172 @@
+package yea.ecomservapi.kernel.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import yea.ecomservapi.kernel.service.FileStorageService.QuotePage;
+import yea.ecomservapi.kernel.service.FileStorageService.QuoteQuery;
+import yea.ecomservapi.kernel.service.FileStorageService.QuoteSortField;
+import yea.ecomservapi.kernel.service.FileStorageService.QuoteSummary;
+import yea.ecomservapi.modules.quoting.domain.Currency;
+import yea.ecomservapi.modules.quoting.dto.CreateQuoteRequest;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+import yea.ecomservapi.modules.quoting.dto.QuoteItemDTO;
+import yea.ecomservapi.modules.quoting.service.QuoteExportService;
+import yea.ecomservapi.modules.quoting.service.QuoteService;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class QuotePageTest {
+
+    @TempDir
+    Path storageDir;
+
+    private FileStorageService storage;
+
+    @BeforeEach
+    void setUp() {
+        storage = TestStorage.in(storageDir).open();
+        save("CES-00001", "Minera Andina", Currency.PEN, "100.00");
+        save("CES-00002", "Constructora Sur", Currency.USD, "400.00");
+        save("CES-00003", "Minera del Norte", Currency.USD, "250.00");
+        save("CES-00004", "Agro Norte", Currency.PEN, "50.00");
+        save("CES-00005", "minera pacífico", Currency.PEN, "900.00");
+    }
+
+    @AfterEach
+    void tearDown() {
+        storage.shutdown();
+    }
+
+    @Test
+    void pagesWalkTheWholeOrderWithoutGapsOrRepeats() {
+        List<String> seen = new ArrayList<>();
+        QuotePage page = storage.findQuotes(query(QuoteSortField.TOTAL, true, 2, null));
+        assertThat(numbers(page)).containsExactly("CES-00005", "CES-00002");
+        seen.addAll(numbers(page));
+        while (page.nextCursor() != null) {
+            page = storage.findQuotes(query(QuoteSortField.TOTAL, true, 2, page.nextCursor()));
+            seen.addAll(numbers(page));
+        }
+
+        assertThat(seen).containsExactly("CES-00005", "CES-00002", "CES-00003", "CES-00001", "CES-00004");
+        assertThat(page.items()).hasSize(1);
+
+        assertThat(numbers(storage.findQuotes(query(QuoteSortField.DOCUMENT_NUMBER, false, 5, null))))
+                .containsExactly("CES-00001", "CES-00002", "CES-00003", "CES-00004", "CES-00005");
+        // Una página exacta no deja cursor colgando
+        assertThat(storage.findQuotes(query(QuoteSortField.DOCUMENT_NUMBER, false, 5, null)).nextCursor()).isNull();
+    }
+
+    @Test
+    void cursorStaysStableWhenQuotesAreInsertedBetweenPages() {
+        QuotePage first = storage.findQuotes(query(QuoteSortField.TOTAL, false, 2, null));
+        assertThat(numbers(first)).containsExactly("CES-00004", "CES-00001");
+
+        // Una antes del cursor (no debe correr la página) y una después (debe aparecer)
+        save("CES-00006", "Minera Andina", Currency.PEN, "10.00");
+        save("CES-00007", "Minera Andina", Currency.PEN, "300.00");
+
+        QuotePage second = storage.findQuotes(query(QuoteSortField.TOTAL, false, 2, first.nextCursor()));
+        assertThat(numbers(second)).containsExactly("CES-00003", "CES-00007");
+        QuotePage third = storage.findQuotes(query(QuoteSortField.TOTAL, false, 2, second.nextCursor()));
+        assertThat(numbers(third)).containsExactly("CES-00002", "CES-00005");
+        assertThat(third.nextCursor()).isNull();
+    }
+
+    @Test
+    void filtersAreAppliedBeforePaging() {
+        LocalDate today = LocalDate.now();
+
+        assertThat(numbers(storage.findQuotes(new QuoteQuery(" MINERA ", null, null, null, null, null,
+                QuoteSortField.DOCUMENT_NUMBER, false, 10, null))))
+                .containsExactly("CES-00001", "CES-00003", "CES-00005");
+        assertThat(numbers(storage.findQuotes(new QuoteQuery(null, "usd", null, null, null, null,
+                QuoteSortField.DOCUMENT_NUMBER, false, 10, null))))
+                .containsExactly("CES-00002", "CES-00003");
+        // Totales con IGV: 118.00, 472.00, 295.00, 59.00 y 1062.00; los límites se incluyen
+        assertThat(numbers(storage.findQuotes(new QuoteQuery(null, null, null, null,
+                new BigDecimal("118"), new BigDecimal("472.00"),
+                QuoteSortField.DOCUMENT_NUMBER, false, 10, null))))
+                .containsExactly("CES-00001", "CES-00002", "CES-00003");
+        assertThat(storage.findQuotes(new QuoteQuery(null, null, today, today, null, null,
+                QuoteSortField.DOCUMENT_NUMBER, false, 10, null)).items()).hasSize(5);
+        assertThat(storage.findQuotes(new QuoteQuery(null, null, today.plusDays(1), null, null, null,
+                QuoteSortField.DOCUMENT_NUMBER, false, 10, null)).items()).isEmpty();
+        assertThat(storage.findQuotes(new QuoteQuery(null, null, null, today.minusDays(1), null, null,
+                QuoteSortField.DOCUMENT_NUMBER, false, 10, null)).items()).isEmpty();
+
+        // Filtro y cursor combinados
+        QuotePage first = storage.findQuotes(new QuoteQuery("minera", "PEN", null, null, null, null,
+                QuoteSortField.CREATED_AT, true, 1, null));
+        QuotePage second = storage.findQuotes(new QuoteQuery("minera", "PEN", null, null, null, null,
+                QuoteSortField.CREATED_AT, true, 1, first.nextCursor()));
+        assertThat(List.of(numbers(first).get(0), numbers(second).get(0)))
+                .containsExactlyInAnyOrder("CES-00001", "CES-00005");
+        assertThat(second.nextCursor()).isNull();
+    }
+
+    @Test
+    void datesFilterOnTheQuoteDateLikeTheExport() {
+        CreateQuoteRequest request = CreateQuoteRequest.builder().clientName("Minera Andina").build();
+        storage.saveQuote(new byte[]{1}, request, QuoteDTO.builder().documentNumber("CES-00006")
+                .clientName("Minera Andina").currency(Currency.PEN).total(BigDecimal.TEN)
+                .documentDate(LocalDate.of(2024, 3, 5)).build());
+        LocalDate march1 = LocalDate.of(2024, 3, 1);
+        LocalDate march31 = LocalDate.of(2024, 3, 31);
+
+        assertThat(numbers(storage.findQuotes(new QuoteQuery(null, null, march1, march31, null, null,
+                QuoteSortField.DOCUMENT_NUMBER, false, 10, null)))).containsExactly("CES-00006");
+        // Lo guardado hoy sigue entrando por su fecha, pero ya no la de marzo
+        assertThat(numbers(storage.findQuotes(new QuoteQuery(null, null, LocalDate.now(), null, null, null,
+                QuoteSortField.DOCUMENT_NUMBER, false, 10, null)))).doesNotContain("CES-00006").hasSize(5);
+        assertThat(storage.findQuotes(new QuoteQuery(null, null, march1, march31, null, null,
+                QuoteSortField.DOCUMENT_NUMBER, false, 10, null)).items())
+                .allMatch(summary -> new QuoteExportService.ExportFilter(march1, march31, null, null, null)
+                        .matches(summary));
+    }
+
+    @Test
+    void aCursorFromAnotherOrderOrGarbageIsRejected() {
+        String cursor = storage.findQuotes(query(QuoteSortField.TOTAL, true, 2, null)).nextCursor();
+
+        assertThatThrownBy(() -> storage.findQuotes(query(QuoteSortField.TOTAL, false, 2, cursor)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> storage.findQuotes(query(QuoteSortField.DOCUMENT_NUMBER, true, 2, cursor)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> storage.findQuotes(query(QuoteSortField.TOTAL, true, 2, "no-es-un-cursor")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Cursor");
+    }
+
+    private static QuoteQuery query(QuoteSortField sort, boolean descending, int limit, String cursor) {
+        return new QuoteQuery(null, null, null, null, null, null, sort, descending, limit, cursor);
+    }
+
+    private static List<String> numbers(QuotePage page) {
+        return page.items().stream().map(QuoteSummary::documentNumber).toList();
+    }
+
+    private void save(String documentNumber, String clientName, Currency currency, String unitPrice) {
+        CreateQuoteRequest request = CreateQuoteRequest.builder()
+                .clientName(clientName)
+                .currency(currency)
+                .items(List.of(QuoteItemDTO.builder()
+                        .code("VLV-020")
+                        .description("Válvula de compuerta")
+                        .quantity(BigDecimal.ONE)
+                        .unitPrice(new BigDecimal(unitPrice))
+                        .build()))
+                .build();
+        QuoteDTO quote = new QuoteService().buildQuoteDTO(request, documentNumber);
+        storage.saveQuote(new byte[]{1}, request, quote);
+    }
+}
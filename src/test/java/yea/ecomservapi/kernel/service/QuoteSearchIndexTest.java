@@ -0,0 +1,111 @@
+package yea.ecomservapi.kernel.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QuoteSearchIndexTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path storageDir;
+
+    @Test
+    void tokenizerFoldsAccentsCaseAndRegularPlurals() {
+        assertThat(QuoteSearchIndex.tokenize("Válvulas de PVC para TUBERÍAS, código VLV-020"))
+                .containsExactly("valvula", "pvc", "tuberia", "codigo", "vlv", "020");
+        assertThat(QuoteSearchIndex.tokenize("motores y pingüinos")).containsExactly("motor", "pinguino");
+    }
+
+    @Test
+    void searchRequiresEveryTermAndRanksByRelevance() {
+        QuoteSearchIndex index = new QuoteSearchIndex();
+        index.put("CES-00001", json(Map.of("clientName", "Minera Andina",
+                "items", List.of(Map.of("code", "VLV-020", "description", "Válvula de compuerta")))));
+        index.put("CES-00002", json(Map.of("clientName", "Constructora Sur",
+                "notes", "Incluye válvula de repuesto",
+                "items", List.of(Map.of("code", "TUB-100", "description", "Tubería PVC 4\"")))));
+        index.put("CES-00003", json(Map.of("clientName", "Agrícola Norte",
+                "items", List.of(Map.of("code", "BMB-001", "description", "Bomba centrífuga")))));
+
+        assertThat(index.search("valvula", 10)).extracting(QuoteSearchIndex.SearchHit::documentNumber)
+                .containsExactly("CES-00001", "CES-00002");
+        assertThat(index.search("VÁLVULAS tubería", 10)).extracting(QuoteSearchIndex.SearchHit::documentNumber)
+                .containsExactly("CES-00002");
+        assertThat(index.search("vlv-020", 10)).extracting(QuoteSearchIndex.SearchHit::documentNumber)
+                .containsExactly("CES-00001");
+        // Prefijo en el último término
+        assertThat(index.search("bomba centri", 10)).extracting(QuoteSearchIndex.SearchHit::documentNumber)
+                .containsExactly("CES-00003");
+        assertThat(index.search("grúa", 10)).isEmpty();
+
+        index.remove("CES-00001");
+        index.put("CES-00002", json(Map.of("clientName", "Constructora Sur")));
+
+        assertThat(index.search("valvula", 10)).isEmpty();
+        assertThat(index.size()).isEqualTo(2);
+    }
+
+    @Test
+    void reindexingCompactsDocumentIds() {
+        QuoteSearchIndex index = new QuoteSearchIndex();
+        index.put("CES-00001", json(Map.of("clientName", "Minera Andina")));
+        for (int i = 0; i < 5000; i++) {
+            index.put("CES-00002", json(Map.of("clientName", "Constructora Sur", "notes", "versión " + i)));
+        }
+
+        // Los ids borrados se descartan al depurar: no crecen con cada reindexado
+        List<?> documents = (List<?>) ReflectionTestUtils.getField(index, "documents");
+        assertThat(documents).hasSizeLessThanOrEqualTo(2 + 1025);
+        assertThat(index.search("minera", 10)).extracting(QuoteSearchIndex.SearchHit::documentNumber)
+                .containsExactly("CES-00001");
+        assertThat(index.search("constructora 4999", 10)).extracting(QuoteSearchIndex.SearchHit::documentNumber)
+                .containsExactly("CES-00002");
+        assertThat(index.search("constructora 10", 10)).isEmpty();
+    }
+
+    @Test
+    void storageKeepsTheIndexInSyncWithSavesDeletesAndRestarts() {
+        FileStorageService storage = newStorage();
+        storage.saveQuote(new byte[]{1}, Map.of("clientReference", "Proyecto Chinchero",
+                "items", List.of(Map.of("description", "Cable vulcanizado"))), quote("CES-00001"));
+        storage.saveQuote(new byte[]{2}, Map.of("notes", "Entrega en almacén de Cusco"), quote("CES-00002"));
+
+        assertThat(storage.searchQuotes("chinchero cable", 10)).singleElement()
+                .satisfies(result -> assertThat(result.summary().documentNumber()).isEqualTo("CES-00001"));
+
+        storage.deletePdf("CES-00001");
+        assertThat(storage.searchQuotes("chinchero", 10)).isEmpty();
+        storage.shutdown();
+
+        FileStorageService restarted = newStorage();
+        try {
+            assertThat(restarted.searchQuotes("almacen cusco", 10)).singleElement()
+                    .satisfies(result -> assertThat(result.summary().documentNumber()).isEqualTo("CES-00002"));
+        } finally {
+            restarted.shutdown();
+        }
+    }
+
+    private JsonNode json(Map<String, Object> request) {
+        return objectMapper.valueToTree(request);
+    }
+
+    private static QuoteDTO quote(String documentNumber) {
+        return QuoteDTO.builder().documentNumber(documentNumber).clientName("Cliente").build();
+    }
+
+    private FileStorageService newStorage() {
+        return TestStorage.in(storageDir).open();
+    }
+}
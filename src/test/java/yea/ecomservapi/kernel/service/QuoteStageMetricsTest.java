@@ -0,0 +1,118 @@
+package yea.ecomservapi.kernel.service;
+
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+import yea.ecomservapi.modules.quoting.domain.Currency;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+import yea.ecomservapi.modules.quoting.dto.QuoteItemDTO;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class QuoteStageMetricsTest {
+
+    @TempDir
+    Path storageDir;
+
+    private PrometheusMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.close();
+    }
+
+    @Test
+    void recordsRenderAndStorageStagesByItemBucket() {
+        PdfGeneratorService generator = newGenerator();
+        FileStorageService storage = TestStorage.in(storageDir).meterRegistry(registry).open();
+        try {
+            QuoteDTO quote = quote(3);
+            storage.saveQuote(generator.generateQuotePdf(quote), Map.of("clientName", "Minera Andina"), quote);
+        } finally {
+            storage.shutdown();
+        }
+
+        for (String stage : List.of("template", "layout", "serialize", "store_json", "store")) {
+            assertThat(registry.find(QuoteStageMetrics.STAGE_TIMER)
+                    .tags("stage", stage, "items", "1-10", "outcome", "success")
+                    .timer())
+                    .as(stage)
+                    .satisfies(timer -> assertThat(timer.count()).isEqualTo(1));
+        }
+        // Histograma para percentiles en Prometheus
+        assertThat(registry.scrape())
+                .contains("quote_generate_stage_seconds_bucket{")
+                .contains("stage=\"layout\"");
+    }
+
+    @Test
+    void aFailedStageIsRecordedWithItsOutcome() {
+        assertThatThrownBy(() -> QuoteStageMetrics.time(registry, QuoteStageMetrics.BUILD_DTO, 400, () -> {
+            throw new IllegalStateException("falla");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(registry.find(QuoteStageMetrics.STAGE_TIMER)
+                .tags("stage", "build_dto", "items", "301-1000", "outcome", "error")
+                .timer())
+                .isNotNull();
+    }
+
+    private PdfGeneratorService newGenerator() {
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode("HTML");
+        resolver.setCharacterEncoding("UTF-8");
+        SpringTemplateEngine engine = new SpringTemplateEngine();
+        engine.setTemplateResolver(resolver);
+        RenderAssetRegistry assets = new RenderAssetRegistry();
+        ReflectionTestUtils.setField(assets, "jpegQuality", 0.92f);
+        assets.load();
+        return new PdfGeneratorService(engine, assets, registry);
+    }
+
+    private static QuoteDTO quote(int itemCount) {
+        List<QuoteItemDTO> items = new ArrayList<>();
+        for (int i = 1; i <= itemCount; i++) {
+            items.add(QuoteItemDTO.builder()
+                    .code("VLV-" + i)
+                    .description("Válvula de compuerta")
+                    .unitMeasure("UND")
+                    .quantity(BigDecimal.ONE)
+                    .unitPrice(new BigDecimal("100.00"))
+                    .subtotal(new BigDecimal("100.00"))
+                    .build());
+        }
+        BigDecimal subtotal = new BigDecimal("100.00").multiply(BigDecimal.valueOf(itemCount));
+        return QuoteDTO.builder()
+                .documentNumber("CES-00001")
+                .documentDate(LocalDate.of(2024, 3, 5))
+                .validUntil(LocalDate.of(2024, 3, 9))
+                .currency(Currency.PEN)
+                .clientName("Minera Andina")
+                .items(items)
+                .subtotal(subtotal)
+                .igv(subtotal.multiply(new BigDecimal("0.18")))
+                .total(subtotal.multiply(new BigDecimal("1.18")))
+                .build();
+    }
+}
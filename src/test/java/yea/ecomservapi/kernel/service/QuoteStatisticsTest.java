@@ -0,0 +1,87 @@
+package yea.ecomservapi.kernel.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import yea.ecomservapi.modules.quoting.domain.Currency;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class QuoteStatisticsTest {
+
+    @TempDir
+    Path storageDir;
+
+    private FileStorageService storage;
+
+    @BeforeEach
+    void setUp() {
+        storage = TestStorage.in(storageDir).open();
+    }
+
+    @AfterEach
+    void tearDown() {
+        storage.shutdown();
+    }
+
+    @Test
+    void totalsFollowSavesRewritesAndDeletes() {
+        save("CES-00001", "Minera Andina", "Ana", "2024-03-05", Currency.PEN, "118.00", "VLV-020");
+        save("CES-00002", "Minera Andina", "Luis", "2024-03-20", Currency.USD, "59.00", "VLV-020");
+        save("CES-00003", "Constructora Sur", "Ana", "2024-04-02", Currency.PEN, "236.00", "TUB-100");
+
+        FileStorageService.QuoteStats stats = storage.getStats();
+        assertThat(stats.quotes()).isEqualTo(3);
+        assertThat(stats.byMonth()).extracting(FileStorageService.GroupTotals::key)
+                .containsExactly("2024-03", "2024-04");
+        assertThat(stats.byClient().get(0)).satisfies(client -> {
+            assertThat(client.key()).isEqualTo("Minera Andina");
+            assertThat(client.totalsByCurrency().get("PEN")).isEqualByComparingTo("118.00");
+            assertThat(client.totalsByCurrency().get("USD")).isEqualByComparingTo("59.00");
+        });
+        assertThat(stats.byVendedor()).extracting(FileStorageService.GroupTotals::key, FileStorageService.GroupTotals::quotes)
+                .containsExactly(tuple("Ana", 2L), tuple("Luis", 1L));
+        assertThat(stats.topProducts().get(0)).satisfies(product -> {
+            assertThat(product.code()).isEqualTo("VLV-020");
+            assertThat(product.quotes()).isEqualTo(2);
+        });
+
+        // Reescribir reemplaza el aporte anterior; eliminar lo resta
+        save("CES-00003", "Constructora Sur", "Ana", "2024-04-02", Currency.PEN, "300.00", "TUB-100");
+        storage.deletePdf("CES-00002");
+
+        stats = storage.getStats();
+        assertThat(stats.quotes()).isEqualTo(2);
+        assertThat(stats.byCurrency()).singleElement().satisfies(currency ->
+                assertThat(currency.totalsByCurrency().get("PEN")).isEqualByComparingTo("418.00"));
+        assertThat(stats.byVendedor()).extracting(FileStorageService.GroupTotals::key).containsExactly("Ana");
+
+        assertThat(storage.rebuildStats()).isEqualTo(stats);
+    }
+
+    private void save(String documentNumber, String client, String vendedor, String date, Currency currency,
+                      String total, String code) {
+        Map<String, Object> request = Map.of(
+                "clientName", client,
+                "vendedor", vendedor,
+                "documentDate", date,
+                "currency", currency.name(),
+                "items", List.of(Map.of("code", code, "description", "Producto " + code,
+                        "quantity", 2, "unitPrice", 10)));
+        QuoteDTO quote = QuoteDTO.builder()
+                .documentNumber(documentNumber)
+                .clientName(client)
+                .currency(currency)
+                .total(new BigDecimal(total))
+                .build();
+        storage.saveQuote(new byte[]{1}, request, quote);
+    }
+}
@@ -0,0 +1,145 @@
+package yea.ecomservapi.kernel.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import yea.ecomservapi.modules.quoting.dto.CreateQuoteRequest;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+import yea.ecomservapi.modules.quoting.dto.QuoteItemDTO;
+import yea.ecomservapi.modules.quoting.service.QuoteService;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class QuoteSummaryIndexTest {
+
+    private static final Duration WATCH_TIMEOUT = Duration.ofSeconds(10);
+
+    @TempDir
+    Path storageDir;
+
+    private final List<FileStorageService> services = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        services.forEach(FileStorageService::shutdown);
+    }
+
+    @Test
+    void indexIsBuiltAtStartupFromTheStoredQuotes() {
+        FileStorageService storage = open(TestStorage.in(storageDir));
+        save(storage, "CES-00001", "Minera Andina", "100.00");
+        save(storage, "CES-01500", "Constructora Sur", "250.00");
+        storage.shutdown();
+
+        FileStorageService restarted = open(TestStorage.in(storageDir));
+
+        assertThat(restarted.listAllQuotesWithSummary())
+                .extracting(FileStorageService.QuoteSummary::documentNumber,
+                        FileStorageService.QuoteSummary::clientName)
+                .containsExactlyInAnyOrder(
+                        tuple("CES-00001", "Minera Andina"),
+                        tuple("CES-01500", "Constructora Sur"));
+    }
+
+    @Test
+    void savesAndDeletesUpdateTheIndexWithoutRescanning() throws Exception {
+        FileStorageService storage = open(TestStorage.in(storageDir));
+        save(storage, "CES-00001", "Minera Andina", "100.00");
+
+        // Sin WatchService: un archivo que aparece por fuera no se ve, el listado sale de memoria
+        Files.copy(storageDir.resolve("000").resolve("CES-00001.pdf"),
+                storageDir.resolve("000").resolve("CES-00002.pdf"));
+        assertThat(storage.listAllQuotesWithSummary()).extracting(FileStorageService.QuoteSummary::documentNumber)
+                .containsExactly("CES-00001");
+
+        save(storage, "CES-00001", "Minera Andina SAC", "300.00");
+        assertThat(storage.listAllQuotesWithSummary()).singleElement().satisfies(summary -> {
+            assertThat(summary.clientName()).isEqualTo("Minera Andina SAC");
+            assertThat(summary.total()).isEqualByComparingTo(expectedTotal("300.00"));
+        });
+
+        assertThat(storage.deletePdf("CES-00001")).isTrue();
+        assertThat(storage.listAllQuotesWithSummary()).isEmpty();
+    }
+
+    @Test
+    void watcherPicksUpQuotesWrittenAndDeletedByAnotherInstance() throws Exception {
+        FileStorageService watching = open(TestStorage.in(storageDir).watch());
+        save(watching, "CES-00001", "Minera Andina", "100.00");
+        FileStorageService other = open(TestStorage.in(storageDir));
+
+        // Misma partición, y una partición nueva que el watcher tiene que registrar
+        save(other, "CES-00002", "Constructora Sur", "250.00");
+        save(other, "CES-01000", "Agro Norte", "75.00");
+        eventually(() -> assertThat(watching.listAllQuotesWithSummary())
+                .extracting(FileStorageService.QuoteSummary::documentNumber)
+                .containsExactlyInAnyOrder("CES-00001", "CES-00002", "CES-01000"));
+        eventually(() -> assertThat(watching.listAllQuotesWithSummary())
+                .filteredOn(summary -> summary.documentNumber().equals("CES-01000"))
+                .singleElement()
+                .satisfies(summary -> assertThat(summary.clientName()).isEqualTo("Agro Norte")));
+
+        save(other, "CES-00002", "Constructora Sur SAC", "250.00");
+        eventually(() -> assertThat(watching.listAllQuotesWithSummary())
+                .filteredOn(summary -> summary.documentNumber().equals("CES-00002"))
+                .singleElement()
+                .satisfies(summary -> assertThat(summary.clientName()).isEqualTo("Constructora Sur SAC")));
+
+        other.deletePdf("CES-00001");
+        eventually(() -> assertThat(watching.listAllQuotesWithSummary())
+                .extracting(FileStorageService.QuoteSummary::documentNumber)
+                .containsExactlyInAnyOrder("CES-00002", "CES-01000"));
+    }
+
+    private FileStorageService open(TestStorage config) {
+        FileStorageService storage = config.open();
+        services.add(storage);
+        return storage;
+    }
+
+    // Los eventos del WatchService llegan de forma asíncrona
+    private static void eventually(Runnable assertion) throws InterruptedException {
+        long deadline = System.nanoTime() + WATCH_TIMEOUT.toNanos();
+        while (true) {
+            try {
+                assertion.run();
+                return;
+            } catch (AssertionError e) {
+                if (System.nanoTime() > deadline) {
+                    throw e;
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    private static void save(FileStorageService storage, String documentNumber, String clientName, String unitPrice) {
+        CreateQuoteRequest request = request(clientName, unitPrice);
+        QuoteDTO quote = new QuoteService().buildQuoteDTO(request, documentNumber);
+        storage.saveQuote(new byte[]{1}, request, quote);
+    }
+
+    private static BigDecimal expectedTotal(String unitPrice) {
+        return new QuoteService().buildQuoteDTO(request("", unitPrice), "CES-00001").getTotal();
+    }
+
+    private static CreateQuoteRequest request(String clientName, String unitPrice) {
+        return CreateQuoteRequest.builder()
+                .clientName(clientName)
+                .items(List.of(QuoteItemDTO.builder()
+                        .code("VLV-020")
+                        .description("Válvula de compuerta")
+                        .quantity(BigDecimal.ONE)
+                        .unitPrice(new BigDecimal(unitPrice))
+                        .build()))
+                .build();
+    }
+}
@@ -0,0 +1,122 @@
+package yea.ecomservapi.kernel.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import yea.ecomservapi.modules.quoting.dto.CreateQuoteRequest;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+import yea.ecomservapi.modules.quoting.dto.QuoteItemDTO;
+import yea.ecomservapi.modules.quoting.service.QuoteService;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QuoteSummarySidecarTest {
+
+    @TempDir
+    Path storageDir;
+
+    private final List<FileStorageService> services = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        services.forEach(FileStorageService::shutdown);
+    }
+
+    @Test
+    void summaryTotalsMatchTheRenderedQuote() {
+        FileStorageService storage = newStorage("files");
+        CreateQuoteRequest request = request();
+        QuoteDTO quote = new QuoteService().buildQuoteDTO(request, "CES-00001");
+
+        storage.saveQuote(new byte[]{1}, request, quote);
+
+        FileStorageService.QuoteSummary summary = storage.listAllQuotesWithSummary().get(0);
+        assertThat(summary.total()).isEqualByComparingTo(quote.getTotal());
+        assertThat(summary.itemCount()).isEqualTo(4);
+        assertThat(summary.itemDetails()).hasSize(3);
+        assertThat(summary.itemDetails().get(0).description()).hasSize(50).endsWith("...");
+    }
+
+    @Test
+    void listingDoesNotReadTheJsonWhenASummaryExists() throws Exception {
+        CreateQuoteRequest request = request();
+        QuoteDTO quote = new QuoteService().buildQuoteDTO(request, "CES-00001");
+        newStorage("files").saveQuote(new byte[]{1}, request, quote);
+        Files.writeString(storageDir.resolve("CES-00001.json"), "no es json");
+
+        FileStorageService restarted = newStorage("files");
+
+        assertThat(restarted.listAllQuotesWithSummary()).singleElement()
+                .satisfies(summary -> assertThat(summary.total()).isEqualByComparingTo(quote.getTotal()));
+    }
+
+    @Test
+    void legacyQuotesAreSummarizedWithTheSameRounding() throws Exception {
+        // Cotización guardada antes de existir el archivo .summary
+        Files.write(storageDir.resolve("CES-00002.pdf"), new byte[]{1});
+        Files.writeString(storageDir.resolve("CES-00002.json"), """
+                {"clientName":"Cliente","items":[
+                  {"description":"a","quantity":3,"unitPrice":33.335},
+                  {"description":"b","quantity":1,"unitPrice":0.105}]}
+                """);
+        QuoteDTO expected = new QuoteService().buildQuoteDTO(CreateQuoteRequest.builder()
+                .items(List.of(item("a", "3", "33.335"), item("b", "1", "0.105")))
+                .build(), "CES-00002");
+
+        FileStorageService storage = newStorage("files");
+
+        assertThat(storage.listAllQuotesWithSummary()).singleElement()
+                .satisfies(summary -> assertThat(summary.total()).isEqualByComparingTo(expected.getTotal()));
+    }
+
+    @Test
+    void segmentEngineStoresTheSummary() {
+        FileStorageService storage = newStorage("segments");
+        CreateQuoteRequest request = request();
+        QuoteDTO quote = new QuoteService().buildQuoteDTO(request, "CES-00003");
+
+        storage.saveQuote(new byte[]{1}, request, quote);
+        storage.shutdown();
+        FileStorageService restarted = newStorage("segments");
+
+        assertThat(restarted.listAllQuotesWithSummary()).singleElement()
+                .satisfies(summary -> assertThat(summary.total()).isEqualByComparingTo(quote.getTotal()));
+    }
+
+    private static CreateQuoteRequest request() {
+        return CreateQuoteRequest.builder()
+                .clientName("Cliente")
+                .items(List.of(
+                        item("Servidor de rack con dos fuentes redundantes y garantía extendida", "3", "33.335"),
+                        item("b", "1", "0.105"),
+                        item("c", "2.5", "10.01"),
+                        item("d", "7", "1.999")))
+                .build();
+    }
+
+    private static QuoteItemDTO item(String description, String quantity, String unitPrice) {
+        return QuoteItemDTO.builder()
+                .description(description)
+                .quantity(new BigDecimal(quantity))
+                .unitPrice(new BigDecimal(unitPrice))
+                .build();
+    }
+
+    private FileStorageService newStorage(String engine) {
+        // Formato plano y JSON sin comprimir: las pruebas editan los archivos en la raíz
+        FileStorageService storage = TestStorage.in(storageDir)
+                .layout("flat")
+                .engine(engine)
+                .segmentSizeMb(1)
+                .jsonCompression("none")
+                .open();
+        services.add(storage);
+        return storage;
+    }
+}
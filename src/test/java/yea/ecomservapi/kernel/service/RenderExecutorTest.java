@@ -0,0 +1,107 @@
+package yea.ecomservapi.kernel.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import yea.ecomservapi.kernel.exception.RenderBusyException;
+import yea.ecomservapi.kernel.exception.RenderDeadlineException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RenderExecutorTest {
+
+    private RenderExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        executor.close();
+    }
+
+    @Test
+    void rejectsWithRetryAfterWhenThePoolAndQueueAreFull() throws Exception {
+        executor = new RenderExecutor(1, 1, 10_000);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> executor.execute(() -> {
+            release.await();
+            return "primero";
+        }));
+        waitUntil(() -> executor.stats().active() == 1);
+        CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> executor.execute(() -> "segundo"));
+        waitUntil(() -> executor.stats().queued() == 1);
+
+        assertThatThrownBy(() -> executor.execute(() -> "tercero"))
+                .isInstanceOfSatisfying(RenderBusyException.class,
+                        e -> assertThat(e.getRetryAfterSeconds()).isPositive());
+
+        release.countDown();
+        assertThat(running.get(5, TimeUnit.SECONDS)).isEqualTo("primero");
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isEqualTo("segundo");
+        assertThat(executor.stats().rejected()).isEqualTo(1);
+        assertThat(executor.stats().completed()).isEqualTo(2);
+    }
+
+    @Test
+    void failsFastWhenTheDeadlinePassesAndSkipsExpiredQueuedWork() throws Exception {
+        executor = new RenderExecutor(1, 4, 100);
+        CountDownLatch release = new CountDownLatch(1);
+        // Ignora la interrupción al cancelarse, como un render que no revisa el flag
+        CompletableFuture<Void> slow = CompletableFuture.runAsync(() -> executor.execute(() -> {
+            while (release.getCount() > 0) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+            return null;
+        }));
+        waitUntil(() -> executor.stats().active() == 1);
+
+        assertThatThrownBy(() -> executor.execute(() -> "nunca"))
+                .isInstanceOf(RenderDeadlineException.class);
+        release.countDown();
+        assertThat(slow).failsWithin(5, TimeUnit.SECONDS);
+
+        // El trabajo vencido en cola no llega a ejecutarse
+        waitUntil(() -> executor.stats().queued() == 0 && executor.stats().active() == 0);
+        assertThat(executor.stats().completed()).isEqualTo(1);
+        assertThat(executor.stats().expired()).isEqualTo(2);
+    }
+
+    @Test
+    void withoutADeadlineTheCallerWaitsPastTheConfiguredOne() throws Exception {
+        executor = new RenderExecutor(1, 4, 50);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> slow = CompletableFuture.supplyAsync(() -> executor.execute(() -> {
+            release.await();
+            return "lento";
+        }, 0));
+        CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> executor.execute(() -> "en cola", 0));
+        waitUntil(() -> executor.stats().queued() == 1);
+
+        Thread.sleep(200);
+        release.countDown();
+        assertThat(slow.get(5, TimeUnit.SECONDS)).isEqualTo("lento");
+        assertThat(queued.get(5, TimeUnit.SECONDS)).isEqualTo("en cola");
+        assertThat(executor.stats().expired()).isZero();
+    }
+
+    @Test
+    void taskExceptionsReachTheCaller() {
+        executor = new RenderExecutor(2, 2, 10_000);
+
+        assertThatThrownBy(() -> executor.execute(() -> {
+            throw new IllegalStateException("plantilla inválida");
+        })).isInstanceOf(IllegalStateException.class).hasMessage("plantilla inválida");
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condición no cumplida a tiempo").isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+}
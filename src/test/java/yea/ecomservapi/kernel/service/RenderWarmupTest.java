@@ -0,0 +1,62 @@
+package yea.ecomservapi.kernel.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import yea.ecomservapi.modules.quoting.domain.Currency;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RenderWarmupTest {
+
+    @Test
+    void rendersSampleQuotesInBothCurrenciesBeforeReportingReady() {
+        List<QuoteDTO> rendered = new ArrayList<>();
+        RenderWarmup warmup = newWarmup(new PdfGeneratorService(null, null, new SimpleMeterRegistry()) {
+            @Override
+            public byte[] generateQuotePdf(QuoteDTO quote) {
+                rendered.add(quote);
+                return new byte[0];
+            }
+        }, 4);
+        assertThat(warmup.status().ready()).isFalse();
+
+        warmup.warmUp();
+
+        assertThat(warmup.status()).satisfies(status -> {
+            assertThat(status.state()).isEqualTo(RenderWarmup.State.READY);
+            assertThat(status.completed()).isEqualTo(4);
+            assertThat(status.ready()).isTrue();
+        });
+        assertThat(rendered).extracting(QuoteDTO::getCurrency)
+                .containsExactly(Currency.PEN, Currency.USD, Currency.PEN, Currency.USD);
+        assertThat(rendered.get(0).getItems()).isNotEmpty();
+    }
+
+    @Test
+    void aFailedWarmupDoesNotKeepTheInstanceOutOfRotation() {
+        RenderWarmup warmup = newWarmup(new PdfGeneratorService(null, null, new SimpleMeterRegistry()) {
+            @Override
+            public byte[] generateQuotePdf(QuoteDTO quote) {
+                throw new RuntimeException("Error al generar PDF");
+            }
+        }, 4);
+
+        warmup.warmUp();
+
+        assertThat(warmup.status().state()).isEqualTo(RenderWarmup.State.FAILED);
+        assertThat(warmup.status().ready()).isTrue();
+    }
+
+    private static RenderWarmup newWarmup(PdfGeneratorService generator, int iterations) {
+        RenderWarmup warmup = new RenderWarmup(generator);
+        ReflectionTestUtils.setField(warmup, "enabled", true);
+        ReflectionTestUtils.setField(warmup, "iterations", iterations);
+        ReflectionTestUtils.setField(warmup, "maxSeconds", 30);
+        return warmup;
+    }
+}
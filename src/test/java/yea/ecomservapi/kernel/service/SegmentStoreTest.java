@@ -0,0 +1,185 @@
+package yea.ecomservapi.kernel.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SegmentStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void storesAndReplacesBlobs() throws Exception {
+        try (SegmentStore store = new SegmentStore(directory, 1024 * 1024)) {
+            store.put("CES-00001", SegmentStore.BlobType.PDF, bytes("pdf-v1"));
+            store.put("CES-00001", SegmentStore.BlobType.JSON, bytes("{}"));
+            store.put("CES-00001", SegmentStore.BlobType.PDF, bytes("pdf-v2"));
+
+            assertThat(store.get("CES-00001", SegmentStore.BlobType.PDF)).hasValue(bytes("pdf-v2"));
+            assertThat(store.get("CES-00001", SegmentStore.BlobType.JSON)).hasValue(bytes("{}"));
+            assertThat(store.get("CES-00002", SegmentStore.BlobType.PDF)).isEmpty();
+        }
+    }
+
+    @Test
+    void aRewriteAdvancesTheBlobTimestampButNotTheCreationDate() throws Exception {
+        byte[] filler = new byte[4096];
+        try (SegmentStore store = new SegmentStore(directory, 16 * 1024)) {
+            store.put("CES-00001", SegmentStore.BlobType.JSON, bytes("{}"));
+            store.put("CES-00001", SegmentStore.BlobType.PDF, bytes("pdf-v1"));
+            SegmentStore.BlobLocation first = store.locate("CES-00001", SegmentStore.BlobType.PDF).orElseThrow();
+            Thread.sleep(5);
+            store.put("CES-00001", SegmentStore.BlobType.PDF, bytes("pdf-v2"));
+
+            SegmentStore.BlobLocation rewritten = store.locate("CES-00001", SegmentStore.BlobType.PDF).orElseThrow();
+            assertThat(rewritten.writtenAt()).isGreaterThan(first.writtenAt());
+            assertThat(rewritten.createdAt()).isEqualTo(first.createdAt());
+            assertThat(store.locate("CES-00001", SegmentStore.BlobType.JSON).orElseThrow().writtenAt())
+                    .isLessThan(rewritten.writtenAt());
+
+            // La compactación copia los registros vivos sin cambiar sus marcas de tiempo
+            for (int i = 2; i <= 12; i++) {
+                store.put(number(i), SegmentStore.BlobType.PDF, filler);
+                store.delete(number(i));
+            }
+            assertThat(store.compact().segmentsCompacted()).isPositive();
+            assertThat(store.locate("CES-00001", SegmentStore.BlobType.PDF).orElseThrow())
+                    .satisfies(location -> {
+                        assertThat(location.writtenAt()).isEqualTo(rewritten.writtenAt());
+                        assertThat(location.createdAt()).isEqualTo(first.createdAt());
+                    });
+        }
+
+        // Y la reconstrucción del índice desde los segmentos las recupera
+        Files.delete(directory.resolve("index.dat"));
+        try (SegmentStore rebuilt = new SegmentStore(directory, 16 * 1024)) {
+            SegmentStore.BlobLocation location = rebuilt.locate("CES-00001", SegmentStore.BlobType.PDF).orElseThrow();
+            assertThat(rebuilt.get("CES-00001", SegmentStore.BlobType.PDF)).hasValue(bytes("pdf-v2"));
+            assertThat(location.writtenAt()).isGreaterThan(location.createdAt());
+            assertThat(rebuilt.entries()).singleElement()
+                    .satisfies(entry -> assertThat(entry.pdfWrittenAt()).isEqualTo(location.writtenAt()));
+        }
+    }
+
+    @Test
+    void reopensAfterCleanShutdownAndAfterCrash() throws Exception {
+        SegmentStore store = new SegmentStore(directory, 1024 * 1024);
+        for (int i = 1; i <= 2000; i++) {
+            store.put(number(i), SegmentStore.BlobType.PDF, bytes("pdf-" + i));
+        }
+        store.delete(number(7));
+        store.close();
+
+        try (SegmentStore reopened = new SegmentStore(directory, 1024 * 1024)) {
+            assertThat(reopened.entries()).hasSize(1999);
+            assertThat(reopened.get(number(1500), SegmentStore.BlobType.PDF)).hasValue(bytes("pdf-1500"));
+            assertThat(reopened.contains(number(7), SegmentStore.BlobType.PDF)).isFalse();
+        }
+
+        // Simula una caída: índice sin marca de cierre limpio y un registro a medio escribir
+        new SegmentStore(directory, 1024 * 1024);
+        Files.write(directory.resolve("segment-000001.dat"), new byte[]{0x51, 0x53, 0x45},
+                StandardOpenOption.APPEND);
+
+        try (SegmentStore recovered = new SegmentStore(directory, 1024 * 1024)) {
+            assertThat(recovered.entries()).hasSize(1999);
+            assertThat(recovered.get(number(2000), SegmentStore.BlobType.PDF)).hasValue(bytes("pdf-2000"));
+            recovered.put("CES-09999", SegmentStore.BlobType.PDF, bytes("after-crash"));
+            assertThat(recovered.get("CES-09999", SegmentStore.BlobType.PDF)).hasValue(bytes("after-crash"));
+        }
+    }
+
+    @Test
+    void compactionReclaimsDeletedSpaceWithoutResurrectingDeletes() throws Exception {
+        byte[] payload = new byte[4096];
+        try (SegmentStore store = new SegmentStore(directory, 64 * 1024)) {
+            for (int i = 1; i <= 100; i++) {
+                store.put(number(i), SegmentStore.BlobType.PDF, payload);
+            }
+            for (int i = 1; i <= 90; i++) {
+                store.delete(number(i));
+            }
+
+            SegmentStore.CompactionResult result = store.compact();
+
+            assertThat(result.segmentsCompacted()).isPositive();
+            assertThat(result.bytesReclaimed()).isPositive();
+            assertThat(store.entries()).hasSize(10);
+            assertThat(store.get(number(95), SegmentStore.BlobType.PDF)).hasValue(payload);
+        }
+
+        // Reconstrucción completa desde los segmentos que quedan
+        Files.delete(directory.resolve("index.dat"));
+        try (SegmentStore rebuilt = new SegmentStore(directory, 64 * 1024)) {
+            assertThat(rebuilt.entries()).hasSize(10);
+            assertThat(rebuilt.contains(number(5), SegmentStore.BlobType.PDF)).isFalse();
+        }
+    }
+
+    @Test
+    void aCrashRightAfterCompactionKeepsEveryLiveRecord() throws Exception {
+        byte[] payload = new byte[4096];
+        SegmentStore store = new SegmentStore(directory, 64 * 1024);
+        for (int i = 1; i <= 100; i++) {
+            store.put(number(i), SegmentStore.BlobType.PDF, payload);
+            store.put(number(i), SegmentStore.BlobType.JSON, bytes("{\"n\":" + i + "}"));
+        }
+        for (int i = 1; i <= 90; i++) {
+            store.delete(number(i));
+        }
+        assertThat(store.compact().segmentsCompacted()).isPositive();
+
+        // Caída sin cerrar: los segmentos viejos ya no existen y el índice no tiene marca
+        // de cierre limpio, así que se reconstruye solo desde las copias reubicadas
+        try (SegmentStore recovered = new SegmentStore(directory, 64 * 1024)) {
+            assertThat(recovered.entries()).hasSize(10);
+            for (int i = 91; i <= 100; i++) {
+                assertThat(recovered.get(number(i), SegmentStore.BlobType.PDF)).hasValue(payload);
+                assertThat(recovered.get(number(i), SegmentStore.BlobType.JSON)).hasValue(bytes("{\"n\":" + i + "}"));
+            }
+            assertThat(recovered.contains(number(5), SegmentStore.BlobType.PDF)).isFalse();
+        }
+    }
+
+    @Test
+    void aRemovedBlobStaysRemovedAcrossCompactionAndRebuild() throws Exception {
+        byte[] payload = new byte[4096];
+        try (SegmentStore store = new SegmentStore(directory, 64 * 1024)) {
+            store.put("CES-00001", SegmentStore.BlobType.JSON, bytes("{}"));
+            store.put("CES-00001", SegmentStore.BlobType.PDF, bytes("pdf"));
+            for (int i = 2; i <= 40; i++) {
+                store.put(number(i), SegmentStore.BlobType.PDF, payload);
+            }
+            assertThat(store.remove("CES-00001", SegmentStore.BlobType.JSON)).isTrue();
+            assertThat(store.remove("CES-00001", SegmentStore.BlobType.JSON)).isFalse();
+            for (int i = 2; i <= 40; i++) {
+                store.delete(number(i));
+            }
+            store.compact();
+
+            assertThat(store.get("CES-00001", SegmentStore.BlobType.JSON)).isEmpty();
+            assertThat(store.get("CES-00001", SegmentStore.BlobType.PDF)).hasValue(bytes("pdf"));
+        }
+
+        Files.delete(directory.resolve("index.dat"));
+        try (SegmentStore rebuilt = new SegmentStore(directory, 64 * 1024)) {
+            assertThat(rebuilt.contains("CES-00001", SegmentStore.BlobType.JSON)).isFalse();
+            assertThat(rebuilt.get("CES-00001", SegmentStore.BlobType.PDF)).hasValue(bytes("pdf"));
+        }
+    }
+
+    private static String number(int i) {
+        return String.format("CES-%05d", i);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
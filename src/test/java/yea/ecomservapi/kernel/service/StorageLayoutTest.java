@@ -0,0 +1,173 @@
+package yea.ecomservapi.kernel.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import yea.ecomservapi.modules.quoting.dto.CreateQuoteRequest;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+import yea.ecomservapi.modules.quoting.dto.QuoteItemDTO;
+import yea.ecomservapi.modules.quoting.service.QuoteService;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StorageLayoutTest {
+
+    private static final List<String> DOCUMENTS = List.of("CES-00001", "CES-01500", "COT-ANTIGUA");
+
+    @TempDir
+    Path root;
+
+    @Test
+    void shardsAreComputedFromTheDocumentNumber() throws IOException {
+        StorageLayout layout = new StorageLayout(root, true);
+
+        assertThat(layout.shardDirectory("CES-00001")).isEqualTo(root.resolve("000"));
+        assertThat(layout.shardDirectory("CES-00999")).isEqualTo(root.resolve("000"));
+        assertThat(layout.shardDirectory("CES-01000")).isEqualTo(root.resolve("001"));
+        assertThat(layout.shardDirectory("CES-99999")).isEqualTo(root.resolve("099"));
+        // Fuera del formato CES se reparte por hash, también con hashCode negativo
+        assertThat(layout.shardDirectory("COT-ANTIGUA").getFileName().toString()).matches("x[0-9a-f]{2}");
+        assertThat("polygenelubricants".hashCode()).isEqualTo(Integer.MIN_VALUE);
+        assertThat(layout.shardDirectory("polygenelubricants")).isEqualTo(root.resolve("x00"));
+
+        assertThat(layout.writePath("CES-01500", ".pdf")).isEqualTo(root.resolve("001").resolve("CES-01500.pdf"));
+        assertThat(layout.isShardDirectory(root.resolve("001"))).isTrue();
+        assertThat(layout.isShardDirectory(root.resolve("archive"))).isFalse();
+        assertThat(new StorageLayout(root, false).writePath("CES-01500", ".pdf")).isEqualTo(root.resolve("CES-01500.pdf"));
+    }
+
+    @Test
+    void migrationMovesFlatFilesAndLookupsKeepWorking() throws IOException {
+        writeFlatStore();
+
+        FileStorageService storage = TestStorage.in(root).open();
+        try {
+            // Antes de migrar se leen desde la raíz
+            assertReadable(storage);
+
+            assertThat(storage.migrateToShardedLayout()).isEqualTo(DOCUMENTS.size() * 3);
+
+            assertThat(quoteFilesIn(root)).isEmpty();
+            assertThat(root.resolve("000").resolve("CES-00001.pdf")).exists();
+            assertThat(root.resolve("001").resolve("CES-01500.json")).exists();
+            assertReadable(storage);
+
+            // Ya migrado: no queda nada por mover
+            assertThat(storage.migrateToShardedLayout()).isZero();
+        } finally {
+            storage.shutdown();
+        }
+
+        storage = TestStorage.in(root).open();
+        try {
+            assertReadable(storage);
+        } finally {
+            storage.shutdown();
+        }
+    }
+
+    @Test
+    void aPartiallyMigratedStoreFinishesAndKeepsTheShardCopy() throws IOException {
+        writeFlatStore();
+        // Interrumpida a mitad de camino: un PDF ya movido y un PDF reescrito en la partición
+        Files.createDirectories(root.resolve("000"));
+        Files.move(root.resolve("CES-00001.pdf"), root.resolve("000").resolve("CES-00001.pdf"));
+        Files.createDirectories(root.resolve("001"));
+        Files.write(root.resolve("001").resolve("CES-01500.pdf"), pdf("CES-01500 v2"));
+
+        FileStorageService storage = TestStorage.in(root).open();
+        try {
+            assertThat(storage.getPdf("CES-01500")).hasValue(pdf("CES-01500 v2"));
+
+            // Nueve archivos: uno ya estaba y el PDF viejo de CES-01500 se descarta
+            assertThat(storage.migrateToShardedLayout()).isEqualTo(DOCUMENTS.size() * 3 - 2);
+
+            assertThat(quoteFilesIn(root)).isEmpty();
+            assertThat(storage.getPdf("CES-00001")).hasValue(pdf("CES-00001"));
+            assertThat(storage.getPdf("CES-01500")).hasValue(pdf("CES-01500 v2"));
+            assertThat(storage.listAllQuotesWithSummary()).hasSize(DOCUMENTS.size());
+        } finally {
+            storage.shutdown();
+        }
+    }
+
+    @Test
+    void aFlatFileIsDroppedWhenTheShardHasANewerCopyInAnotherCompression() throws IOException {
+        writeFlatStore();
+
+        FileStorageService storage = TestStorage.in(root).jsonCompression("gzip").open();
+        try {
+            storage.saveJson(request("CES-01500 v2"), "CES-01500");
+            assertThat(root.resolve("001").resolve("CES-01500.json.gz")).exists();
+
+            storage.migrateToShardedLayout();
+
+            assertThat(quoteFilesIn(root)).isEmpty();
+            assertThat(root.resolve("001").resolve("CES-01500.json")).doesNotExist();
+            assertThat(storage.getJson("CES-01500", CreateQuoteRequest.class))
+                    .hasValueSatisfying(json -> assertThat(json.getClientName()).isEqualTo("Cliente CES-01500 v2"));
+        } finally {
+            storage.shutdown();
+        }
+    }
+
+    // Almacén en formato plano: PDF, JSON y resumen de cada cotización en la raíz
+    private void writeFlatStore() {
+        FileStorageService flat = TestStorage.in(root).layout("flat").open();
+        try {
+            for (String documentNumber : DOCUMENTS) {
+                CreateQuoteRequest request = request(documentNumber);
+                QuoteDTO quote = new QuoteService().buildQuoteDTO(request, documentNumber);
+                flat.saveQuote(pdf(documentNumber), request, quote);
+            }
+        } finally {
+            flat.shutdown();
+        }
+        assertThat(quoteFilesIn(root)).hasSize(DOCUMENTS.size() * 3);
+    }
+
+    private static void assertReadable(FileStorageService storage) {
+        for (String documentNumber : DOCUMENTS) {
+            assertThat(storage.existsPdf(documentNumber)).as(documentNumber).isTrue();
+            assertThat(storage.getJson(documentNumber, CreateQuoteRequest.class))
+                    .hasValueSatisfying(json -> assertThat(json.getClientName()).isEqualTo("Cliente " + documentNumber));
+        }
+        assertThat(storage.getPdf("CES-00001")).hasValue(pdf("CES-00001"));
+        assertThat(storage.listAllQuotesWithSummary())
+                .extracting(FileStorageService.QuoteSummary::clientName)
+                .containsExactlyInAnyOrder("Cliente CES-00001", "Cliente CES-01500", "Cliente COT-ANTIGUA");
+    }
+
+    private static List<Path> quoteFilesIn(Path directory) {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(path -> StorageLayout.documentNumberOf(path.getFileName().toString()).isPresent())
+                    .toList();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] pdf(String content) {
+        return ("%PDF " + content).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static CreateQuoteRequest request(String documentNumber) {
+        return CreateQuoteRequest.builder()
+                .clientName("Cliente " + documentNumber)
+                .items(List.of(QuoteItemDTO.builder()
+                        .code("VLV-020")
+                        .description("Válvula de compuerta")
+                        .quantity(BigDecimal.ONE)
+                        .unitPrice(new BigDecimal("100.00"))
+                        .build()))
+                .build();
+    }
+}
@@ -0,0 +1,85 @@
+package yea.ecomservapi.kernel.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import java.nio.file.Path;
+
+/**
+ * {@link FileStorageService} para pruebas, configurado sin levantar Spring. Parte de
+ * los valores de application.properties (particionado, motor {@code files}, sin
+ * compresión) sin WatchService; cada prueba cambia solo lo que mide.
+ */
+public final class TestStorage {
+
+    private final StorageSettings.StorageSettingsBuilder settings;
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private TestStorage(Path directory) {
+        settings = StorageSettings.builder()
+                .folder(directory.toString())
+                .watchEnabled(false)
+                .sequenceBlock(20)
+                .layout("sharded")
+                .engine("files")
+                .segmentSizeMb(64)
+                .jsonCompression("none")
+                .pdfCompression("none")
+                .archiveMaxAgeDays(365);
+    }
+
+    public static TestStorage in(Path directory) {
+        return new TestStorage(directory);
+    }
+
+    public TestStorage layout(String layout) {
+        settings.layout(layout);
+        return this;
+    }
+
+    public TestStorage engine(String engine) {
+        settings.engine(engine);
+        return this;
+    }
+
+    public TestStorage segmentSizeMb(long segmentSizeMb) {
+        settings.segmentSizeMb(segmentSizeMb);
+        return this;
+    }
+
+    public TestStorage jsonCompression(String mode) {
+        settings.jsonCompression(mode);
+        return this;
+    }
+
+    public TestStorage pdfCompression(String mode) {
+        settings.pdfCompression(mode);
+        return this;
+    }
+
+    public TestStorage writeBehind(int capacity, int writers) {
+        settings.writeBehindEnabled(true).writeBehindCapacity(capacity).writeBehindWriters(writers);
+        return this;
+    }
+
+    public TestStorage archiveMaxAgeDays(int days) {
+        settings.archiveMaxAgeDays(days);
+        return this;
+    }
+
+    public TestStorage watch() {
+        settings.watchEnabled(true);
+        return this;
+    }
+
+    public TestStorage meterRegistry(MeterRegistry registry) {
+        meterRegistry = registry;
+        return this;
+    }
+
+    public FileStorageService open() {
+        FileStorageService storage = new FileStorageService(settings.build(), meterRegistry);
+        storage.init();
+        return storage;
+    }
+}
@@ -0,0 +1,107 @@
+package yea.ecomservapi.kernel.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WriteBehindQueueTest {
+
+    @TempDir
+    Path storageDir;
+
+    @Test
+    void pendingQuotesAreServedFromTheQueue() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> written = new CopyOnWriteArrayList<>();
+        WriteBehindQueue queue = new WriteBehindQueue(storageDir.resolve("journal"), 8, 1, quote -> {
+            awaitQuietly(release);
+            written.add(quote.documentNumber());
+        });
+
+        assertThat(queue.enqueue(pendingQuote("CES-00001", "a"))).isTrue();
+        assertThat(queue.pending("CES-00001")).hasValueSatisfying(
+                quote -> assertThat(new String(quote.json(), StandardCharsets.UTF_8)).isEqualTo("a"));
+
+        release.countDown();
+        queue.awaitWritten("CES-00001");
+        assertThat(queue.pending("CES-00001")).isEmpty();
+        assertThat(written).containsExactly("CES-00001");
+        queue.close();
+    }
+
+    @Test
+    void fullQueueRejectsNewQuotes() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        WriteBehindQueue queue = new WriteBehindQueue(storageDir.resolve("journal"), 2, 1,
+                quote -> awaitQuietly(release));
+
+        assertThat(queue.enqueue(pendingQuote("CES-00001", "a"))).isTrue();
+        assertThat(queue.enqueue(pendingQuote("CES-00002", "b"))).isTrue();
+        assertThat(queue.enqueue(pendingQuote("CES-00003", "c"))).isFalse();
+
+        release.countDown();
+        queue.close();
+    }
+
+    @Test
+    void unwrittenQuotesAreReplayedFromTheJournal() throws Exception {
+        Path journal = storageDir.resolve("journal");
+        // Simula una caída: el escritor nunca termina y la cola no se cierra
+        WriteBehindQueue crashed = new WriteBehindQueue(journal, 8, 1, quote -> awaitQuietly(new CountDownLatch(1)));
+        crashed.enqueue(pendingQuote("CES-00001", "a"));
+        crashed.enqueue(pendingQuote("CES-00002", "b"));
+        crashed.enqueue(pendingQuote("CES-00001", "c"));
+        // Registro final cortado a la mitad
+        Files.write(journal, new byte[]{0x51, 0x57, 0x42}, StandardOpenOption.APPEND);
+
+        List<String> replayed = new CopyOnWriteArrayList<>();
+        WriteBehindQueue recovered = new WriteBehindQueue(journal, 8, 1,
+                quote -> replayed.add(quote.documentNumber() + "=" + new String(quote.json(), StandardCharsets.UTF_8)));
+
+        assertThat(replayed).containsExactly("CES-00002=b", "CES-00001=c");
+        assertThat(Files.size(journal)).isZero();
+        recovered.close();
+    }
+
+    @Test
+    void storageServesQueuedQuotesAndFlushesOnShutdown() {
+        FileStorageService storage = TestStorage.in(storageDir).layout("flat").writeBehind(64, 2).open();
+
+        for (int i = 1; i <= 50; i++) {
+            String number = String.format("CES-%05d", i);
+            storage.saveQuote(new byte[]{(byte) i}, Map.of("clientName", number),
+                    QuoteDTO.builder().documentNumber(number).clientName(number).build());
+            assertThat(storage.existsPdf(number)).isTrue();
+            assertThat(storage.getPdf(number)).contains(new byte[]{(byte) i});
+        }
+        assertThat(storage.listAllQuotesWithSummary()).hasSize(50);
+        storage.shutdown();
+
+        assertThat(storageDir.resolve("CES-00050.pdf")).exists();
+        assertThat(storageDir.resolve(".write-behind.journal")).isEmptyFile();
+    }
+
+    private static WriteBehindQueue.PendingQuote pendingQuote(String documentNumber, String json) {
+        return new WriteBehindQueue.PendingQuote(documentNumber, new byte[]{1, 2, 3},
+                json.getBytes(StandardCharsets.UTF_8), new byte[0]);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package yea.ecomservapi.modules.quoting.controller;
+
+import com.jayway.jsonpath.JsonPath;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import yea.ecomservapi.config.GlobalExceptionHandler;
+import yea.ecomservapi.kernel.service.FileStorageService;
+import yea.ecomservapi.kernel.service.PdfGeneratorService;
+import yea.ecomservapi.kernel.service.TestStorage;
+import yea.ecomservapi.modules.quoting.domain.Quote;
+import yea.ecomservapi.modules.quoting.dto.CreateQuoteRequest;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+import yea.ecomservapi.modules.quoting.dto.QuoteItemDTO;
+import yea.ecomservapi.modules.quoting.service.QuoteExportService;
+import yea.ecomservapi.modules.quoting.service.QuoteRecordService;
+import yea.ecomservapi.modules.quoting.service.QuoteService;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class QuoteControllerTest {
+
+    private static final String PDF_TEXT = "%PDF-1.7 cotización %%EOF".repeat(100);
+    private static final byte[] PDF_BYTES = PDF_TEXT.getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path storageDir;
+
+    private FileStorageService storage;
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() {
+        open(TestStorage.in(storageDir));
+    }
+
+    private void open(TestStorage config) {
+        open(config, new QuoteRecordService(null) {
+            @Override
+            public Quote save(QuoteDTO quoteDTO, CreateQuoteRequest request) {
+                return null;
+            }
+        });
+    }
+
+    private void open(TestStorage config, QuoteRecordService records) {
+        if (storage != null) {
+            storage.shutdown();
+        }
+        storage = config.open();
+        PdfGeneratorService generator = new PdfGeneratorService(null, null, new SimpleMeterRegistry()) {
+            @Override
+            public byte[] generateQuotePdf(QuoteDTO quote) {
+                return PDF_TEXT.getBytes(StandardCharsets.UTF_8);
+            }
+        };
+        ReflectionTestUtils.setField(generator, "maxItems", 50);
+        QuoteController controller = new QuoteController(new QuoteService(), generator, storage,
+                null, records, null, new QuoteExportService(storage), null, null, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(controller, "exportTimeoutMs", 60_000L);
+        mvc = MockMvcBuilders.standaloneSetup(controller)
+                .setControllerAdvice(new GlobalExceptionHandler())
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        storage.shutdown();
+    }
+
+    @Test
+    void quotesAboveTheItemCapAreRejectedBeforeNumbering() throws Exception {
+        mvc.perform(post("/api/quotes/generate").contentType(MediaType.APPLICATION_JSON).content(request(51)))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.message").value(containsString("51")));
+
+        assertThat(storage.peekNextDocumentNumber()).isEqualTo("CES-00001");
+    }
+
+    @Test
+    void aFailedDatabaseRecordRemovesTheNewQuoteFromStorage() throws Exception {
+        open(TestStorage.in(storageDir), new QuoteRecordService(null) {
+            @Override
+            public Quote save(QuoteDTO quoteDTO, CreateQuoteRequest request) {
+                throw new IllegalStateException("Base de datos no disponible");
+            }
+        });
+
+        mvc.perform(post("/api/quotes/generate").contentType(MediaType.APPLICATION_JSON).content(request(1)))
+                .andExpect(status().isBadRequest());
+
+        assertThat(storage.existsPdf("CES-00001")).isFalse();
+        assertThat(storage.getJson("CES-00001", CreateQuoteRequest.class)).isEmpty();
+    }
+
+    @Test
+    void gzipIsAcceptedOnlyWithAPositiveQuality() {
+        assertThat(QuoteController.acceptsGzip("gzip, deflate, br")).isTrue();
+        assertThat(QuoteController.acceptsGzip("GZIP;Q=0.5")).isTrue();
+        assertThat(QuoteController.acceptsGzip("x-gzip")).isTrue();
+        assertThat(QuoteController.acceptsGzip("br, *;q=0.1")).isTrue();
+
+        assertThat(QuoteController.acceptsGzip(null)).isFalse();
+        assertThat(QuoteController.acceptsGzip("identity, deflate")).isFalse();
+        assertThat(QuoteController.acceptsGzip("gzip;q=0")).isFalse();
+        assertThat(QuoteController.acceptsGzip("gzip; q=0.000, deflate")).isFalse();
+        assertThat(QuoteController.acceptsGzip("gzip;q=0, *")).isFalse();
+        assertThat(QuoteController.acceptsGzip("*;q=0")).isFalse();
+        assertThat(QuoteController.acceptsGzip("gzip;q=abc")).isFalse();
+    }
+
+    @Test
+    void storedJsonIsSentGzippedOrDecodedByAcceptEncoding() throws Exception {
+        open(TestStorage.in(storageDir).jsonCompression("gzip"));
+        save("CES-00001");
+
+        MvcResult gzipped = mvc.perform(get("/api/quotes/CES-00001/data").header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.VARY, containsString(HttpHeaders.ACCEPT_ENCODING)))
+                .andReturn();
+        assertThat(gunzip(gzipped.getResponse().getContentAsByteArray())).contains("Minera Andina");
+
+        mvc.perform(get("/api/quotes/CES-00001/data").header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(content().string(containsString("Minera Andina")));
+    }
+
+    @Test
+    void gzippedPdfIsPassedThroughOrDecodedByAcceptEncoding() throws Exception {
+        open(TestStorage.in(storageDir).pdfCompression("gzip"));
+        save("CES-00001");
+
+        MvcResult gzipped = mvc.perform(get("/api/quotes/CES-00001/pdf").header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn();
+        assertThat(gunzip(gzipped.getResponse().getContentAsByteArray())).isEqualTo(PDF_TEXT);
+
+        mvc.perform(get("/api/quotes/CES-00001/pdf").header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(content().bytes(PDF_TEXT.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void pageEndpointFollowsTheCursorAndRejectsABadOne() throws Exception {
+        save("CES-00001");
+        save("CES-00002");
+        save("CES-00003");
+
+        MvcResult first = mvc.perform(get("/api/quotes/page")
+                        .param("limit", "2").param("sort", "documentNumber").param("direction", "asc"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[*].documentNumber").value(contains("CES-00001", "CES-00002")))
+                .andExpect(jsonPath("$.nextCursor").isString())
+                .andReturn();
+        String cursor = JsonPath.read(first.getResponse().getContentAsString(), "$.nextCursor");
+
+        mvc.perform(get("/api/quotes/page")
+                        .param("limit", "2").param("sort", "documentNumber").param("direction", "asc")
+                        .param("cursor", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[*].documentNumber").value(contains("CES-00003")))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+
+        mvc.perform(get("/api/quotes/page").param("clientName", "andina").param("limit", "0"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(1));
+        mvc.perform(get("/api/quotes/page").param("cursor", cursor))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get("/api/quotes/page").param("sort", "clientRuc"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void pdfCarriesValidatorsAndAnswersConditionalRequestsWith304() throws Exception {
+        save("CES-00001");
+
+        MvcResult full = mvc.perform(get("/api/quotes/CES-00001/pdf"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, matchesPattern("\"[0-9a-f-]+\"")))
+                .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+                .andExpect(content().bytes(PDF_BYTES))
+                .andReturn();
+        String etag = full.getResponse().getHeader(HttpHeaders.ETAG);
+        long lastModified = full.getResponse().getDateHeader(HttpHeaders.LAST_MODIFIED);
+
+        mvc.perform(get("/api/quotes/CES-00001/pdf").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+        mvc.perform(get("/api/quotes/CES-00001/pdf").header(HttpHeaders.IF_MODIFIED_SINCE, lastModified))
+                .andExpect(status().isNotModified());
+        mvc.perform(get("/api/quotes/CES-00001/pdf").header(HttpHeaders.IF_MODIFIED_SINCE, lastModified - 60_000))
+                .andExpect(status().isOk());
+
+        // Reescribir el documento cambia el ETag (la fecha se fuerza para no depender
+        // de la resolución del reloj del sistema de archivos)
+        save("CES-00001");
+        Files.setLastModifiedTime(storageDir.resolve("000").resolve("CES-00001.pdf"),
+                FileTime.fromMillis(lastModified + 60_000));
+        mvc.perform(get("/api/quotes/CES-00001/pdf").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, not(etag)));
+    }
+
+    @Test
+    void aRewrittenPdfInASegmentIsNotAnsweredWith304() throws Exception {
+        open(TestStorage.in(storageDir).engine("segments"));
+        save("CES-00001");
+        String lastModified = mvc.perform(get("/api/quotes/CES-00001/pdf"))
+                .andReturn().getResponse().getHeader(HttpHeaders.LAST_MODIFIED);
+
+        // Last-Modified tiene resolución de segundos
+        Thread.sleep(1100);
+        save("CES-00001");
+
+        mvc.perform(get("/api/quotes/CES-00001/pdf").header(HttpHeaders.IF_MODIFIED_SINCE, lastModified))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.LAST_MODIFIED, not(lastModified)))
+                .andExpect(content().bytes(PDF_BYTES));
+    }
+
+    @Test
+    void gzippedAndDecodedPdfsHaveDifferentEtags() throws Exception {
+        open(TestStorage.in(storageDir).pdfCompression("gzip"));
+        save("CES-00001");
+
+        String gzipEtag = mvc.perform(get("/api/quotes/CES-00001/pdf").header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        String identityEtag = mvc.perform(get("/api/quotes/CES-00001/pdf"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        assertThat(identityEtag).isNotEqualTo(gzipEtag);
+        mvc.perform(get("/api/quotes/CES-00001/pdf").header(HttpHeaders.IF_NONE_MATCH, gzipEtag))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(PDF_BYTES));
+    }
+
+    @Test
+    void pdfRangesAreServedFromTheFile() throws Exception {
+        save("CES-00001");
+        assertRanges();
+    }
+
+    @Test
+    void pdfRangesAreServedFromASegment() throws Exception {
+        open(TestStorage.in(storageDir).engine("segments"));
+        save("CES-00001");
+        // Otro documento en el mismo segmento: el rango no debe salirse del tramo
+        save("CES-00002");
+        assertRanges();
+    }
+
+    private void assertRanges() throws Exception {
+        int length = PDF_BYTES.length;
+
+        mvc.perform(get("/api/quotes/CES-00001/pdf").header(HttpHeaders.RANGE, "bytes=0-9"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 0-9/" + length))
+                .andExpect(content().bytes(Arrays.copyOfRange(PDF_BYTES, 0, 10)));
+        mvc.perform(get("/api/quotes/CES-00001/pdf").header(HttpHeaders.RANGE, "bytes=-5"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE,
+                        "bytes " + (length - 5) + "-" + (length - 1) + "/" + length))
+                .andExpect(content().bytes(Arrays.copyOfRange(PDF_BYTES, length - 5, length)));
+        mvc.perform(get("/api/quotes/CES-00001/pdf").header(HttpHeaders.RANGE, "bytes=100-"))
+                .andExpect(status().isPartialContent())
+                .andExpect(content().bytes(Arrays.copyOfRange(PDF_BYTES, 100, length)));
+
+        MvcResult multi = mvc.perform(get("/api/quotes/CES-00001/pdf").header(HttpHeaders.RANGE, "bytes=0-4,20-24"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, startsWith("multipart/byteranges")))
+                .andReturn();
+        String parts = multi.getResponse().getContentAsString(StandardCharsets.UTF_8);
+        assertThat(parts)
+                .contains("Content-Range: bytes 0-4/" + length)
+                .contains("Content-Range: bytes 20-24/" + length)
+                .contains(new String(PDF_BYTES, 0, 5, StandardCharsets.UTF_8));
+
+        mvc.perform(get("/api/quotes/CES-00001/pdf").header(HttpHeaders.RANGE, "bytes=" + length + "-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */" + length));
+        mvc.perform(get("/api/quotes/CES-00001/pdf").header(HttpHeaders.RANGE, "bytes=9-0"))
+                .andExpect(status().isRequestedRangeNotSatisfiable());
+        mvc.perform(get("/api/quotes/CES-00001/pdf").header(HttpHeaders.RANGE, "lines=0-9"))
+                .andExpect(status().isRequestedRangeNotSatisfiable());
+    }
+
+    @Test
+    void exportIsStreamedAsAZipWithItsOwnTimeout() throws Exception {
+        save("CES-00001");
+        save("CES-00002");
+
+        MvcResult started = mvc.perform(get("/api/quotes/export").param("fromNumber", "CES-00002"))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+        assertThat(started.getRequest().getAsyncContext().getTimeout()).isEqualTo(60_000L);
+
+        MvcResult result = mvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/zip"))
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, containsString("cotizaciones.zip")))
+                .andReturn();
+        List<String> entries = new ArrayList<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(result.getResponse().getContentAsByteArray()))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                entries.add(entry.getName());
+            }
+        }
+        assertThat(entries).containsExactlyInAnyOrder("CES-00002.pdf", "CES-00002.json");
+    }
+
+    private void save(String documentNumber) {
+        CreateQuoteRequest request = CreateQuoteRequest.builder()
+                .clientName("Minera Andina")
+                .items(List.of(QuoteItemDTO.builder()
+                        .code("VLV-020")
+                        .description("Válvula de compuerta")
+                        .quantity(BigDecimal.ONE)
+                        .unitPrice(new BigDecimal("100.00"))
+                        .build()))
+                .build();
+        QuoteDTO quote = new QuoteService().buildQuoteDTO(request, documentNumber);
+        storage.saveQuote(PDF_TEXT.getBytes(StandardCharsets.UTF_8), request, quote);
+    }
+
+    private static String gunzip(byte[] content) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(content))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String request(int items) {
+        StringJoiner json = new StringJoiner(",", "{\"clientName\":\"Minera Andina\",\"items\":[", "]}");
+        for (int i = 1; i <= items; i++) {
+            json.add("{\"code\":\"VLV-" + i + "\",\"description\":\"Válvula\",\"quantity\":1,\"unitPrice\":10.00}");
+        }
+        return json.toString();
+    }
+}
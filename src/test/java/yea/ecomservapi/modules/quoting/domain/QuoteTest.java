@@ -0,0 +1,55 @@
+package yea.ecomservapi.modules.quoting.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QuoteTest {
+
+    @Test
+    void replacingItemsKeepsTheCollectionAndLinksEachItem() {
+        Quote quote = new Quote();
+        List<QuoteItem> original = quote.getItems();
+        quote.replaceItems(List.of(item(0, "VLV-1"), item(1, "VLV-2")));
+
+        quote.replaceItems(List.of(item(0, "TUB-9")));
+
+        // Misma colección: orphanRemoval borra los ítems que salieron
+        assertThat(quote.getItems()).isSameAs(original);
+        assertThat(quote.getItems()).extracting(QuoteItem::getCode).containsExactly("TUB-9");
+        assertThat(quote.getItems()).allSatisfy(item -> assertThat(item.getQuote()).isSameAs(quote));
+    }
+
+    @Test
+    void creationKeepsAnImportedDateAndUpdatesRefreshOnlyUpdatedAt() {
+        LocalDateTime imported = LocalDateTime.of(2023, 7, 14, 10, 30);
+        Quote quote = Quote.builder().createdAt(imported).build();
+
+        quote.onCreate();
+        LocalDateTime created = quote.getUpdatedAt();
+        assertThat(quote.getCreatedAt()).isEqualTo(imported);
+        assertThat(created).isAfter(imported);
+
+        quote.onUpdate();
+        assertThat(quote.getCreatedAt()).isEqualTo(imported);
+        assertThat(quote.getUpdatedAt()).isAfterOrEqualTo(created);
+
+        Quote fresh = new Quote();
+        fresh.onCreate();
+        assertThat(fresh.getCreatedAt()).isNotNull();
+    }
+
+    private static QuoteItem item(int position, String code) {
+        return QuoteItem.builder()
+                .position(position)
+                .code(code)
+                .quantity(BigDecimal.ONE)
+                .unitPrice(BigDecimal.TEN)
+                .subtotal(BigDecimal.TEN)
+                .build();
+    }
+}
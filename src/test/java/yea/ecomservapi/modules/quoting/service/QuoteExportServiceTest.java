@@ -0,0 +1,102 @@
+package yea.ecomservapi.modules.quoting.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import yea.ecomservapi.kernel.service.FileStorageService;
+import yea.ecomservapi.kernel.service.TestStorage;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QuoteExportServiceTest {
+
+    @TempDir
+    Path storageDir;
+
+    private FileStorageService storage;
+    private QuoteExportService exportService;
+
+    @BeforeEach
+    void setUp() {
+        storage = TestStorage.in(storageDir).pdfCompression("gzip").open();
+        exportService = new QuoteExportService(storage);
+
+        save("CES-00001", "Minera Andina");
+        save("CES-00002", "Constructora Lima");
+        save("CES-00003", "Minera del Sur");
+        save("CES-00004", "Minera Andina");
+    }
+
+    @AfterEach
+    void tearDown() {
+        storage.shutdown();
+    }
+
+    @Test
+    void exportsDecodedPdfAndJsonOfMatchingQuotes() throws IOException {
+        Map<String, String> entries = export(new QuoteExportService.ExportFilter(
+                null, null, "minera", "CES-00002", "CES-00003"));
+
+        assertThat(entries).containsOnlyKeys("CES-00003.pdf", "CES-00003.json");
+        assertThat(entries.get("CES-00003.pdf")).isEqualTo("%PDF CES-00003");
+        assertThat(entries.get("CES-00003.json")).contains("\"clientName\":\"Minera del Sur\"");
+    }
+
+    @Test
+    void dateRangeOutsideTheStoreExportsAnEmptyArchive() throws IOException {
+        LocalDate tomorrow = LocalDate.now().plusDays(1);
+
+        assertThat(export(new QuoteExportService.ExportFilter(tomorrow, null, null, null, null))).isEmpty();
+        assertThat(export(new QuoteExportService.ExportFilter(null, null, null, null, null))).hasSize(8);
+    }
+
+    @Test
+    void datesFilterOnTheQuoteDateNotTheFileDate() throws IOException {
+        storage.saveQuote("%PDF CES-00005".getBytes(StandardCharsets.UTF_8),
+                Map.of("clientName", "Minera Andina", "documentDate", "2024-03-05"),
+                QuoteDTO.builder().documentNumber("CES-00005").clientName("Minera Andina")
+                        .documentDate(LocalDate.of(2024, 3, 5)).build());
+        QuoteExportService.ExportFilter march = new QuoteExportService.ExportFilter(
+                LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 31), null, null, null);
+
+        assertThat(export(march)).containsOnlyKeys("CES-00005.pdf", "CES-00005.json");
+
+        // La fecha queda en el resumen guardado
+        storage.shutdown();
+        storage = TestStorage.in(storageDir).pdfCompression("gzip").open();
+        exportService = new QuoteExportService(storage);
+        assertThat(export(march)).containsOnlyKeys("CES-00005.pdf", "CES-00005.json");
+    }
+
+    private void save(String documentNumber, String clientName) {
+        storage.saveQuote(("%PDF " + documentNumber).getBytes(StandardCharsets.UTF_8),
+                Map.of("clientName", clientName),
+                QuoteDTO.builder().documentNumber(documentNumber).clientName(clientName).build());
+    }
+
+    private Map<String, String> export(QuoteExportService.ExportFilter filter) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exportService.writeZip(filter, out);
+
+        Map<String, String> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                entries.put(entry.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,258 @@
+package yea.ecomservapi.modules.quoting.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import yea.ecomservapi.kernel.exception.RenderBusyException;
+import yea.ecomservapi.kernel.exception.RenderDeadlineException;
+import yea.ecomservapi.kernel.service.FileStorageService;
+import yea.ecomservapi.kernel.service.PdfGeneratorService;
+import yea.ecomservapi.kernel.service.TestStorage;
+import yea.ecomservapi.modules.quoting.domain.Quote;
+import yea.ecomservapi.modules.quoting.dto.CreateQuoteRequest;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+import yea.ecomservapi.modules.quoting.dto.QuoteItemDTO;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class QuoteJobServiceTest {
+
+    private static final byte[] PDF = "%PDF-1.7 cotización".getBytes();
+
+    @TempDir
+    Path storageDir;
+
+    private FileStorageService storage;
+    private QuoteJobService jobs;
+
+    @AfterEach
+    void tearDown() {
+        jobs.shutdown();
+        storage.shutdown();
+    }
+
+    @Test
+    void generatesAndStoresTheQuoteInTheBackground() {
+        CountDownLatch release = new CountDownLatch(1);
+        jobs = newService(new BlockingGenerator(release), 1, 4);
+
+        QuoteJobService.JobStatus submitted = jobs.submit(request(), 1, () -> quote("CES-00001"));
+
+        assertThat(submitted.state()).isEqualTo(QuoteJobService.State.QUEUED);
+        assertThat(storage.existsPdf("CES-00001")).isFalse();
+
+        release.countDown();
+        waitUntil(() -> jobs.status(submitted.id()).orElseThrow().state().finished());
+
+        QuoteJobService.JobStatus done = jobs.status(submitted.id()).orElseThrow();
+        assertThat(done.state()).isEqualTo(QuoteJobService.State.SUCCEEDED);
+        assertThat(done.pdfUrl()).isEqualTo("/api/quotes/CES-00001/pdf");
+        assertThat(done.finishedAt()).isAfterOrEqualTo(done.startedAt());
+        assertThat(storage.getPdf("CES-00001")).hasValue(PDF);
+    }
+
+    @Test
+    void rejectsJobsBeyondTheConcurrencyLimitAndQueue() {
+        CountDownLatch release = new CountDownLatch(1);
+        jobs = newService(new BlockingGenerator(release), 1, 1);
+        try {
+            QuoteJobService.JobStatus running = jobs.submit(request(), 1, () -> quote("CES-00001"));
+            waitUntil(() -> jobs.status(running.id()).orElseThrow().state() == QuoteJobService.State.RUNNING);
+            jobs.submit(request(), 1, () -> quote("CES-00002"));
+
+            // El rechazo llega antes de numerar
+            AtomicBoolean numbered = new AtomicBoolean();
+            assertThatThrownBy(() -> jobs.submit(request(), 1, () -> {
+                numbered.set(true);
+                return quote("CES-00003");
+            })).isInstanceOf(RenderBusyException.class);
+            assertThat(numbered).isFalse();
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void failedJobsReportTheErrorAndExpireAfterTheRetention() {
+        PdfGeneratorService failing = new PdfGeneratorService(null, null, new SimpleMeterRegistry()) {
+            @Override
+            public void writeQuotePdfForJob(QuoteDTO quote, OutputStream out) {
+                throw new RuntimeException("Error al generar PDF");
+            }
+        };
+        jobs = newService(failing, 1, 4);
+
+        QuoteJobService.JobStatus submitted = jobs.submit(request(), 1, () -> quote("CES-00001"));
+        waitUntil(() -> jobs.status(submitted.id()).orElseThrow().state().finished());
+
+        assertThat(jobs.status(submitted.id())).hasValueSatisfying(status -> {
+            assertThat(status.state()).isEqualTo(QuoteJobService.State.FAILED);
+            // El detalle interno queda en el log
+            assertThat(status.error()).isEqualTo("Error al generar la cotización");
+        });
+        assertThat(storage.existsPdf("CES-00001")).isFalse();
+
+        ReflectionTestUtils.setField(jobs, "retentionMinutes", 0L);
+        jobs.purgeExpired();
+        assertThat(jobs.status(submitted.id())).isEmpty();
+    }
+
+    @Test
+    void anErrorThrownByTheGeneratorStillFinishesTheJob() {
+        PdfGeneratorService failing = new PdfGeneratorService(null, null, new SimpleMeterRegistry()) {
+            @Override
+            public void writeQuotePdfForJob(QuoteDTO quote, OutputStream out) {
+                throw new OutOfMemoryError("Java heap space");
+            }
+        };
+        jobs = newService(failing, 1, 4);
+
+        QuoteJobService.JobStatus submitted = jobs.submit(request(), 1, () -> quote("CES-00001"));
+        waitUntil(() -> jobs.status(submitted.id()).orElseThrow().state().finished());
+
+        assertThat(jobs.status(submitted.id())).hasValueSatisfying(status -> {
+            assertThat(status.state()).isEqualTo(QuoteJobService.State.FAILED);
+            assertThat(status.error()).isEqualTo("Error al generar la cotización");
+            assertThat(status.finishedAt()).isNotNull();
+        });
+    }
+
+    @Test
+    void onlyAFullRenderQueueIsRetried() {
+        AtomicInteger calls = new AtomicInteger();
+        PdfGeneratorService generator = new PdfGeneratorService(null, null, new SimpleMeterRegistry()) {
+            @Override
+            public void writeQuotePdfForJob(QuoteDTO quote, OutputStream out) {
+                if (quote.getDocumentNumber().equals("CES-00001")) {
+                    calls.incrementAndGet();
+                    throw new RenderDeadlineException("El PDF no se generó dentro del plazo", 1);
+                }
+                if (calls.incrementAndGet() == 2) {
+                    throw new RenderBusyException("Demasiados PDF en proceso", 1);
+                }
+                try {
+                    out.write(PDF);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        jobs = newService(generator, 1, 4);
+        ReflectionTestUtils.setField(jobs, "renderAttempts", 3);
+
+        QuoteJobService.JobStatus expired = jobs.submit(request(), 1, () -> quote("CES-00001"));
+        waitUntil(() -> jobs.status(expired.id()).orElseThrow().state().finished());
+        assertThat(jobs.status(expired.id()).orElseThrow().state()).isEqualTo(QuoteJobService.State.FAILED);
+        assertThat(calls).hasValue(1);
+
+        QuoteJobService.JobStatus rejectedOnce = jobs.submit(request(), 1, () -> quote("CES-00002"));
+        waitUntil(() -> jobs.status(rejectedOnce.id()).orElseThrow().state().finished());
+        assertThat(jobs.status(rejectedOnce.id()).orElseThrow().state()).isEqualTo(QuoteJobService.State.SUCCEEDED);
+        assertThat(calls).hasValue(3);
+    }
+
+    @Test
+    void aFailedDatabaseRecordFailsTheJobAndRemovesTheQuote() {
+        jobs = newService(new BlockingGenerator(new CountDownLatch(0)), 1, 4, new QuoteRecordService(null) {
+            @Override
+            public Quote save(QuoteDTO quoteDTO, CreateQuoteRequest request) {
+                throw new IllegalStateException("Base de datos no disponible");
+            }
+        });
+
+        QuoteJobService.JobStatus submitted = jobs.submit(request(), 1, () -> quote("CES-00001"));
+        waitUntil(() -> jobs.status(submitted.id()).orElseThrow().state().finished());
+
+        assertThat(jobs.status(submitted.id()).orElseThrow().state()).isEqualTo(QuoteJobService.State.FAILED);
+        assertThat(storage.existsPdf("CES-00001")).isFalse();
+    }
+
+    private QuoteJobService newService(PdfGeneratorService generator, int threads, int queueCapacity) {
+        return newService(generator, threads, queueCapacity, new QuoteRecordService(null) {
+            @Override
+            public Quote save(QuoteDTO quoteDTO, CreateQuoteRequest request) {
+                return null;
+            }
+        });
+    }
+
+    private QuoteJobService newService(PdfGeneratorService generator, int threads, int queueCapacity,
+                                       QuoteRecordService records) {
+        storage = TestStorage.in(storageDir).open();
+
+        QuoteJobService service = new QuoteJobService(generator, storage, records, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "threads", threads);
+        ReflectionTestUtils.setField(service, "queueCapacity", queueCapacity);
+        ReflectionTestUtils.setField(service, "retentionMinutes", 30L);
+        ReflectionTestUtils.setField(service, "maxRetained", 100);
+        ReflectionTestUtils.setField(service, "renderAttempts", 1);
+        service.init();
+        return service;
+    }
+
+    private static void waitUntil(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("tiempo de espera agotado").isLessThan(deadline);
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static CreateQuoteRequest request() {
+        return CreateQuoteRequest.builder()
+                .clientName("Minera Andina")
+                .items(List.of(QuoteItemDTO.builder()
+                        .code("VLV-020")
+                        .description("Válvula de compuerta")
+                        .quantity(BigDecimal.ONE)
+                        .unitPrice(new BigDecimal("100.00"))
+                        .build()))
+                .build();
+    }
+
+    private static QuoteDTO quote(String documentNumber) {
+        return new QuoteService().buildQuoteDTO(request(), documentNumber);
+    }
+
+    private static final class BlockingGenerator extends PdfGeneratorService {
+
+        private final CountDownLatch release;
+
+        private BlockingGenerator(CountDownLatch release) {
+            super(null, null, new SimpleMeterRegistry());
+            this.release = release;
+        }
+
+        @Override
+        public void writeQuotePdfForJob(QuoteDTO quote, OutputStream out) {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+                out.write(PDF);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package yea.ecomservapi.modules.quoting.service;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import yea.ecomservapi.kernel.service.FileStorageService;
+import yea.ecomservapi.kernel.service.TestStorage;
+import yea.ecomservapi.modules.quoting.domain.Quote;
+import yea.ecomservapi.modules.quoting.domain.QuoteItem;
+import yea.ecomservapi.modules.quoting.dto.CreateQuoteRequest;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+import yea.ecomservapi.modules.quoting.dto.QuoteItemDTO;
+import yea.ecomservapi.modules.quoting.repository.QuoteRepository;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tabla quotes sobre PostgreSQL real: el mapeo jsonb de las entidades y el
+ * {@code ON CONFLICT DO NOTHING} del backfill no se pueden probar en otra base.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Testcontainers(disabledWithoutDocker = true)
+class QuotePersistenceTest {
+
+    @Container
+    @ServiceConnection
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @TempDir
+    Path storageDir;
+
+    @Autowired
+    private QuoteRepository repository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private FileStorageService storage;
+    private QuoteRecordService records;
+    private QuoteBackfillService backfill;
+
+    @BeforeEach
+    void setUp() {
+        storage = TestStorage.in(storageDir).open();
+        records = new QuoteRecordService(repository);
+        backfill = new QuoteBackfillService(storage, new QuoteService(), jdbcTemplate,
+                new TransactionTemplate(transactionManager), JsonMapper.builder().findAndAddModules().build());
+        // Lotes chicos para cruzar varios
+        ReflectionTestUtils.setField(backfill, "batchSize", 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        storage.shutdown();
+    }
+
+    @Test
+    void recordsKeepTheirItemsInOrderAndTheRequestAsJsonb() {
+        CreateQuoteRequest request = request("Minera Andina", 3);
+        records.save(new QuoteService().buildQuoteDTO(request, "CES-00001"), request);
+        entityManager.flush();
+        entityManager.clear();
+
+        Quote loaded = repository.findByDocumentNumber("CES-00001").orElseThrow();
+        assertThat(loaded.getTotal()).isEqualByComparingTo("708.00");
+        assertThat(loaded.getCreatedAt()).isNotNull();
+        assertThat(loaded.getItems()).extracting(QuoteItem::getCode).containsExactly("VLV-1", "VLV-2", "VLV-3");
+        assertThat(loaded.getRequest().getClientName()).isEqualTo("Minera Andina");
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT request ->> 'clientName' FROM quotes WHERE document_number = 'CES-00001'", String.class))
+                .isEqualTo("Minera Andina");
+    }
+
+    @Test
+    void backfillImportsEachQuoteOnceAndSkipsThoseAlreadyRecorded() {
+        for (int i = 1; i <= 5; i++) {
+            store("CES-0000" + i, request("Cliente " + i, i));
+        }
+        // CES-00002 ya tiene registro: el backfill no lo toca ni le duplica ítems
+        CreateQuoteRequest recorded = request("Cliente 2", 2);
+        records.save(new QuoteService().buildQuoteDTO(recorded, "CES-00002"), recorded);
+        entityManager.flush();
+
+        assertThat(backfill.backfill()).isEqualTo(new QuoteBackfillService.BackfillReport(4, 1, 0));
+        assertThat(backfill.backfill()).isEqualTo(new QuoteBackfillService.BackfillReport(0, 5, 0));
+
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM quotes", Integer.class)).isEqualTo(5);
+        // 1 + 2 + 3 + 4 + 5 ítems, una sola vez cada uno
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM quote_items", Integer.class)).isEqualTo(15);
+        assertThat(jdbcTemplate.queryForList("""
+                SELECT i.code FROM quote_items i JOIN quotes q ON q.id = i.quote_id
+                WHERE q.document_number = 'CES-00004' ORDER BY i.position
+                """, String.class)).containsExactly("VLV-1", "VLV-2", "VLV-3", "VLV-4");
+        entityManager.clear();
+        assertThat(repository.findByDocumentNumber("CES-00005").orElseThrow().getRequest().getClientName())
+                .isEqualTo("Cliente 5");
+    }
+
+    private void store(String documentNumber, CreateQuoteRequest request) {
+        QuoteDTO quote = new QuoteService().buildQuoteDTO(request, documentNumber);
+        storage.saveQuote(("%PDF " + documentNumber).getBytes(StandardCharsets.UTF_8), request, quote);
+    }
+
+    private static CreateQuoteRequest request(String clientName, int items) {
+        List<QuoteItemDTO> lines = new ArrayList<>();
+        for (int i = 1; i <= items; i++) {
+            lines.add(QuoteItemDTO.builder()
+                    .code("VLV-" + i)
+                    .description("Válvula de compuerta")
+                    .quantity(BigDecimal.valueOf(i))
+                    .unitPrice(new BigDecimal("100.00"))
+                    .build());
+        }
+        return CreateQuoteRequest.builder()
+                .documentDate(LocalDate.of(2024, 3, 5))
+                .clientName(clientName)
+                .items(lines)
+                .build();
+    }
+}
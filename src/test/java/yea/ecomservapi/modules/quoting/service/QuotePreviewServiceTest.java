@@ -0,0 +1,140 @@
+package yea.ecomservapi.modules.quoting.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import yea.ecomservapi.kernel.service.PdfGeneratorService;
+import yea.ecomservapi.modules.quoting.dto.CreateQuoteRequest;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+import yea.ecomservapi.modules.quoting.dto.QuoteItemDTO;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QuotePreviewServiceTest {
+
+    @Test
+    void identicalRequestsHitTheCacheRegardlessOfNumberFormatting() {
+        CountingGenerator generator = new CountingGenerator(null);
+        QuotePreviewService previews = newService(generator, 32);
+
+        QuotePreviewService.Preview first = previews.preview(request("Minera Andina", "2", "10.5"));
+        QuotePreviewService.Preview second = previews.preview(request("Minera Andina", "2.00", "10.50"));
+        QuotePreviewService.Preview other = previews.preview(request("Minera Andina", "3", "10.5"));
+
+        assertThat(second.key()).isEqualTo(first.key());
+        assertThat(second.pdf()).isSameAs(first.pdf());
+        assertThat(other.key()).isNotEqualTo(first.key());
+        assertThat(generator.renders).hasValue(2);
+        // El número de la vista previa sale del contenido, no de la hora
+        assertThat(generator.lastNumber).isEqualTo("PREVIEW-" + other.key().substring(0, 8).toUpperCase(Locale.ROOT));
+        assertThat(previews.stats()).satisfies(stats -> {
+            assertThat(stats.hits()).isEqualTo(1);
+            assertThat(stats.misses()).isEqualTo(2);
+            assertThat(stats.entries()).isEqualTo(2);
+        });
+    }
+
+    @Test
+    void concurrentIdenticalRequestsRenderOnce() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountingGenerator generator = new CountingGenerator(release);
+        QuotePreviewService previews = newService(generator, 32);
+
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<QuotePreviewService.Preview>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(callers.submit(() -> previews.preview(request("Constructora Sur", "1", "99"))));
+            }
+            // Todos los pedidos quedan esperando el primer render antes de liberarlo
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (previews.stats().collapsed() < 7 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+            for (Future<QuotePreviewService.Preview> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS).pdf()).isNotEmpty();
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+
+        assertThat(generator.renders).hasValue(1);
+        assertThat(previews.stats().collapsed()).isEqualTo(7);
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedPreviewsBeyondTheSizeLimit() {
+        CountingGenerator generator = new CountingGenerator(null);
+        QuotePreviewService previews = newService(generator, 1);
+
+        // Cada PDF de prueba ocupa 400 KB: entran dos
+        previews.preview(request("A", "1", "1"));
+        previews.preview(request("B", "1", "1"));
+        previews.preview(request("A", "1", "1"));
+        previews.preview(request("C", "1", "1"));
+        previews.preview(request("A", "1", "1"));
+        previews.preview(request("B", "1", "1"));
+
+        assertThat(generator.renders).hasValue(4);
+        assertThat(previews.stats().evictions()).isEqualTo(2);
+        assertThat(previews.stats().bytes()).isLessThanOrEqualTo(1024 * 1024);
+    }
+
+    private static QuotePreviewService newService(PdfGeneratorService generator, long cacheMaxMb) {
+        QuotePreviewService previews = new QuotePreviewService(new QuoteService(), generator);
+        ReflectionTestUtils.setField(previews, "cacheMaxMb", cacheMaxMb);
+        return previews;
+    }
+
+    private static CreateQuoteRequest request(String client, String quantity, String unitPrice) {
+        return CreateQuoteRequest.builder()
+                .clientName(client)
+                .documentDate(LocalDate.of(2024, 3, 5))
+                .items(List.of(QuoteItemDTO.builder()
+                        .code("VLV-020")
+                        .description("Válvula de compuerta")
+                        .quantity(new BigDecimal(quantity))
+                        .unitPrice(new BigDecimal(unitPrice))
+                        .build()))
+                .build();
+    }
+
+    private static final class CountingGenerator extends PdfGeneratorService {
+
+        private final AtomicInteger renders = new AtomicInteger();
+        private final CountDownLatch release;
+        private volatile String lastNumber;
+
+        private CountingGenerator(CountDownLatch release) {
+            super(null, null, new SimpleMeterRegistry());
+            this.release = release;
+        }
+
+        @Override
+        public byte[] generateQuotePdf(QuoteDTO quote) {
+            renders.incrementAndGet();
+            lastNumber = quote.getDocumentNumber();
+            if (release != null) {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return new byte[400 * 1024];
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package yea.ecomservapi.modules.quoting.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import yea.ecomservapi.modules.quoting.domain.Currency;
+import yea.ecomservapi.modules.quoting.domain.Quote;
+import yea.ecomservapi.modules.quoting.domain.QuoteItem;
+import yea.ecomservapi.modules.quoting.dto.CreateQuoteRequest;
+import yea.ecomservapi.modules.quoting.dto.QuoteDTO;
+import yea.ecomservapi.modules.quoting.dto.QuoteItemDTO;
+import yea.ecomservapi.modules.quoting.repository.QuoteRepository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class QuoteRecordServiceTest {
+
+    private QuoteRepository repository;
+    private QuoteRecordService records;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(QuoteRepository.class);
+        when(repository.save(any(Quote.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        records = new QuoteRecordService(repository);
+    }
+
+    @Test
+    void savesANewRecordWithTheCalculatedTotalsAndItemsInOrder() {
+        when(repository.findByDocumentNumber("CES-00001")).thenReturn(Optional.empty());
+        CreateQuoteRequest request = request(3);
+        QuoteDTO quoteDTO = new QuoteService().buildQuoteDTO(request, "CES-00001");
+
+        Quote saved = records.save(quoteDTO, request);
+
+        assertThat(saved.getDocumentNumber()).isEqualTo("CES-00001");
+        assertThat(saved.getDocumentDate()).isEqualTo(LocalDate.of(2024, 3, 5));
+        assertThat(saved.getCurrency()).isEqualTo(Currency.USD);
+        assertThat(saved.getClientId()).isEqualTo(42L);
+        assertThat(saved.getSubtotal()).isEqualByComparingTo("600.00");
+        assertThat(saved.getIgv()).isEqualByComparingTo("108.00");
+        assertThat(saved.getTotal()).isEqualByComparingTo("708.00");
+        assertThat(saved.getRequest()).isSameAs(request);
+        assertThat(saved.getItems()).extracting(QuoteItem::getPosition).containsExactly(0, 1, 2);
+        assertThat(saved.getItems()).extracting(QuoteItem::getCode).containsExactly("VLV-1", "VLV-2", "VLV-3");
+        assertThat(saved.getItems()).allSatisfy(item -> assertThat(item.getQuote()).isSameAs(saved));
+    }
+
+    @Test
+    void regeneratingANumberUpdatesItsRecordInPlace() {
+        Quote existing = Quote.builder().id(7L).documentNumber("CES-00001").build();
+        existing.replaceItems(List.of(QuoteItem.builder().code("OLD").build()));
+        when(repository.findByDocumentNumber("CES-00001")).thenReturn(Optional.of(existing));
+        CreateQuoteRequest request = request(1);
+
+        Quote saved = records.save(new QuoteService().buildQuoteDTO(request, "CES-00001"), request);
+
+        assertThat(saved).isSameAs(existing);
+        assertThat(saved.getId()).isEqualTo(7L);
+        assertThat(saved.getItems()).extracting(QuoteItem::getCode).containsExactly("VLV-1");
+        verify(repository).save(existing);
+    }
+
+    @Test
+    void deletesByDocumentNumber() {
+        records.delete("CES-00001");
+
+        verify(repository).deleteByDocumentNumber("CES-00001");
+    }
+
+    private static CreateQuoteRequest request(int items) {
+        List<QuoteItemDTO> lines = new ArrayList<>();
+        for (int i = 1; i <= items; i++) {
+            lines.add(QuoteItemDTO.builder()
+                    .code("VLV-" + i)
+                    .description("Válvula de compuerta")
+                    .quantity(BigDecimal.valueOf(i))
+                    .unitPrice(new BigDecimal("100.00"))
+                    .build());
+        }
+        return CreateQuoteRequest.builder()
+                .documentDate(LocalDate.of(2024, 3, 5))
+                .currency(Currency.USD)
+                .clientId(42L)
+                .clientName("Minera Andina")
+                .items(lines)
+                .build();
+    }
+}